@@ -17,6 +17,12 @@ public class Citizen extends Person {
   // Private attributes in the Citizen class
   private int passportNumber;
 
+  /** 
+   * Constructs a citizen object to be read from the database.
+   */
+  protected Citizen() {
+  }
+
   /** 
    * Constructs a citizen object.
    *
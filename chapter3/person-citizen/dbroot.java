@@ -9,9 +9,9 @@
  */
 //*************************************************************************
 
-import java.util.Enumeration;
 import java.util.StringTokenizer;
 import java.io.*;
+import java.util.List;
 
 /**
  * This class is the database root.  It contains an extent for the 
@@ -30,7 +30,7 @@ public class DBRoot {
   private static String smAdminPassword = null;
 
   /* Vectors of collection (extents). */
-  private PVector persons = new PVector();
+  private PVector persons = new PVector(Person.NAME_KEY);
 
   /**
    * Constructor.
@@ -67,10 +67,17 @@ public class DBRoot {
    * @return  an array of person objects
    */
   public Person[] getPersons() {
-    Object[] o = persons.toArray();
-    Person[] r = new Person[o.length];
-    for (int i=0; i<o.length; i++) r[i] = (Person)o[i];
-    return r;
+    return (Person[]) persons.toArray(new Person[persons.size()]);
+  }
+
+  /**
+   * Returns a read-only list view of the persons.  Unlike getPersons,
+   * it does not copy the persons.
+   *
+   * @return the persons as a read-only list
+   */
+  public List<Person> getPersonList() {
+    return persons.asList();
   }
 
   /**
@@ -89,12 +96,7 @@ public class DBRoot {
    * @return Person object.  Null if none matched.
    */
   public Person getPerson(String name) {
-    Enumeration e = persons.elements();
-    while (e.hasMoreElements()) {
-      Person c = (Person) e.nextElement();
-      if (c.getName().equals(name)) return c;
-    }
-    return null;
+    return (Person) persons.getByKey(name);
   }
 
   /**
@@ -230,9 +232,9 @@ public class DBRoot {
 	  }
 	  
 	  if ("all".startsWith(name)) {
-	    Person[] ps = o.getPersons();
-	    for (int i=0; i<ps.length; i++) {
-	      Person p = ps[i];
+	    List<Person> ps = o.getPersonList();
+	    for (int i=0; i<ps.size(); i++) {
+	      Person p = ps.get(i);
 	      show(" " + p.toString());
 	    }
           } else {
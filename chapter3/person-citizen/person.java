@@ -12,12 +12,27 @@
  * This is a simple class that demonstrates the basic concepts of
  * attributes and operations.
  */
-public class Person {
+public class Person implements PVector.KeyedElement {
+
+  /** 
+   * A key extractor that returns the name of a Person.  Use it
+   * to construct a PVector that looks up persons by name.
+   */
+  public static final PVector.KeyExtractor NAME_KEY = new NameKey();
 
   // Private attributes in the Person class
   private String name;
   private int age;
 
+  /** The keyed vectors that hold this person.  Not persistent. */
+  private transient PVector[] holders;
+
+  /** 
+   * Constructs a person object to be read from the database.
+   */
+  protected Person() {
+  }
+
   /** 
    * Constructs a person object.
    *
@@ -53,7 +68,48 @@ public class Person {
    * @param name	the new name of this person
    */
   public void changeName(String name) { 
+    String oldName = this.name;
     this.name = name; 
+    PVector[] h = getHolders();
+    for (int i=0; i<h.length; i++) h[i].keyChanged(this, oldName);
+  }
+
+  /** 
+   * Adds a keyed vector that holds this person.  Called by PVector.
+   *
+   * @param v	the vector
+   */
+  public synchronized void addHolder(PVector v) {
+    PVector[] h = getHolders();
+    PVector[] x = new PVector[h.length + 1];
+    System.arraycopy(h, 0, x, 0, h.length);
+    x[h.length] = v;
+    holders = x;
+  }
+
+  /** 
+   * Removes a keyed vector that held this person.  Called by PVector.
+   *
+   * @param v	the vector
+   */
+  public synchronized void removeHolder(PVector v) {
+    PVector[] h = getHolders();
+    for (int i=0; i<h.length; i++) {
+      if (h[i] == v) {
+        PVector[] x = new PVector[h.length - 1];
+        System.arraycopy(h, 0, x, 0, i);
+        System.arraycopy(h, i+1, x, i, h.length-i-1);
+        holders = x;
+	return;
+      }
+    }
+  }
+
+  /** 
+   * Returns the keyed vectors that hold this person.
+   */
+  private synchronized PVector[] getHolders() {
+    return holders == null ? new PVector[0] : holders;
   }
  
   /** 
@@ -175,5 +231,13 @@ public class Person {
     this.children = children;
   }
 
-}
+  /**
+   * A key extractor that returns the name of a Person.
+   */
+  static class NameKey implements PVector.KeyExtractor {
+    public Object getKey(Object element) {
+      return ((Person) element).getName();
+    }
+  }
 
+}
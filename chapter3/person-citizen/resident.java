@@ -18,6 +18,12 @@ public class Resident extends Person {
   private String nationality;
   private String visaType;
 
+  /** 
+   * Constructs a resident object to be read from the database.
+   */
+  protected Resident() {
+  }
+
   /** 
    * Constructs a resident object.
    *
@@ -9,9 +9,9 @@
  */
 //*************************************************************************
 
-import java.util.Enumeration;
 import java.util.StringTokenizer;
 import java.io.*;
+import java.util.List;
 
 /**
  * This class is the database root.  It contains a set of extents for the 
@@ -19,14 +19,20 @@ import java.io.*;
  * identical to the original one, except they are marked serializable.
  * The persistent enabled PVector is used for the extents.
  */
-public class DBRoot implements java.io.Serializable {
+public class DBRoot implements java.io.Serializable, POManager.Redoable {
 
   // Will validate password if it is not empty.
   private static String smAdminPassword = null;
 
   /* Vectors of collection (extents). */
-  private PVector persons = new PVector();
-  private PVector hobbies = new PVector();
+  private PVector persons = new PVector(Person.NAME_KEY);
+  private PVector hobbies = new PVector(Hobby.NAME_KEY);
+
+  /** Size of the input buffer of runBatch. */
+  private final static int BUFFER_SIZE = 65536;
+
+  /** Number of commands of a transaction of runBatch, by default. */
+  private final static int DEFAULT_CHUNK = 1000;
 
   /**
    * Constructor.
@@ -63,10 +69,17 @@ public class DBRoot implements java.io.Serializable {
    * @return  an array of person objects
    */
   public Person[] getPersons() {
-    Object[] o = persons.toArray();
-    Person[] r = new Person[o.length];
-    for (int i=0; i<o.length; i++) r[i] = (Person)o[i];
-    return r;
+    return (Person[]) persons.toArray(new Person[persons.size()]);
+  }
+
+  /**
+   * Returns a read-only list view of the persons.  Unlike getPersons,
+   * it does not copy the persons.
+   *
+   * @return the persons as a read-only list
+   */
+  public List<Person> getPersonList() {
+    return persons.asList();
   }
 
   /**
@@ -85,12 +98,7 @@ public class DBRoot implements java.io.Serializable {
    * @return Person object.  Null if none matched.
    */
   public Person getPerson(String name) {
-    Enumeration e = persons.elements();
-    while (e.hasMoreElements()) {
-      Person c = (Person) e.nextElement();
-      if (c.getName().equals(name)) return c;
-    }
-    return null;
+    return (Person) persons.getByKey(name);
   }
 
   /**
@@ -156,10 +164,17 @@ public class DBRoot implements java.io.Serializable {
    * @return  an array of hobby objects
    */
   public Hobby[] getHobbies() {
-    Object[] o = hobbies.toArray();
-    Hobby[] r = new Hobby[o.length];
-    for (int i=0; i<o.length; i++) r[i] = (Hobby)o[i];
-    return r;
+    return (Hobby[]) hobbies.toArray(new Hobby[hobbies.size()]);
+  }
+
+  /**
+   * Returns a read-only list view of the hobbies.  Unlike getHobbies,
+   * it does not copy the hobbies.
+   *
+   * @return the hobbies as a read-only list
+   */
+  public List<Hobby> getHobbyList() {
+    return hobbies.asList();
   }
 
   /**
@@ -178,12 +193,7 @@ public class DBRoot implements java.io.Serializable {
    * @return Hobby object.  Null if none matched.
    */
   public Hobby getHobby(String name) {
-    Enumeration e = hobbies.elements();
-    while (e.hasMoreElements()) {
-      Hobby c = (Hobby) e.nextElement();
-      if (c.getName().equals(name)) return c;
-    }
-    return null;
+    return (Hobby) hobbies.getByKey(name);
   }
 
   /**
@@ -243,7 +253,8 @@ public class DBRoot implements java.io.Serializable {
 
   /**
    * Runs a command-line terminal for the object o with the input.
-   * It can handle o being a persistent object.
+   * It can handle o being a persistent object.  Each command that
+   * may change the database is logged as a redo record.
    */
   public static void runTerminal(DBRoot o, InputStream input) {
 
@@ -305,6 +316,42 @@ public class DBRoot implements java.io.Serializable {
 	return;
       }
 
+      // Queries run in a read transaction, which logs nothing.  They
+      // hold TOKEN too, so they see no update half done.
+      else if (isQuery(command)) {
+        synchronized (POManager.TOKEN) {
+          try {
+            if (POManager.getDB() != null) POManager.beginReadTrx();
+
+            execute(o, command, tokenizer, System.out);
+
+            if (POManager.getDB() != null) POManager.commitTrx();
+          } catch (Exception e) {
+            if (POManager.getDB() != null) POManager.handleTrxError(e);
+            System.out.println(e.getMessage());
+          }
+        }
+        continue;
+      }
+
+      // Runs a command file in batch mode; see runBatch.
+      else if ("batch".startsWith(command)) {
+	try {
+	  String file = readString(tokenizer);
+	  int chunkSize = DEFAULT_CHUNK;
+	  if (tokenizer.hasMoreTokens()) chunkSize = readInt(tokenizer);
+	  InputStream batch = new FileInputStream(file);
+	  try {
+	    runBatch(o, batch, chunkSize);
+	  } finally {
+	    batch.close();
+	  }
+	} catch (Exception e) {
+	  System.out.println(e.getMessage());
+	}
+	continue;
+      }
+
      // Commands below may involve transaction.  We put them in
      // a synchronized block to make threads cooperating with 
      // each other.
@@ -312,90 +359,292 @@ public class DBRoot implements java.io.Serializable {
       try {
         if (POManager.getDB() != null) POManager.beginUpdateTrx();
 
-        if ("showperson".startsWith(command)) {
-	  String name = "";
-	  try { name = readString(tokenizer); }
-	  catch(TerminalException e) { 
-	    name = "all";  // default to all if no name specified
-	  }
-	  
-	  if ("all".startsWith(name)) {
-	    Person[] ps = o.getPersons();
-	    for (int i=0; i<ps.length; i++) {
-	      Person p = ps[i];
-	      show(" " + p.toString());
-	    }
-          } else {
-	    Person p = o.getPerson(name);
-	    show(" " + p.toString());
-          }
-        }
+        if (execute(o, command, tokenizer, System.out))
+          POManager.logUpdate(inputLine);  // redo record for the update
 
-        else if ("addperson".startsWith(command)) {
-          String name = readString(tokenizer);
-          int age = readInt(tokenizer);
-	  Person p = new Person(name, age);
-	  o.addPerson(p);
-        }
+        if (POManager.getDB() != null) POManager.commitTrx();
+	
+      } catch (Exception e) {
 
-        else if ("addhobby".startsWith(command)) {
-          String name = readString(tokenizer);
-          String hobby = readString(tokenizer);
-	  Person p = o.getPerson(name);
-	  if (p != null) {
-  	    Hobby h = new Hobby(hobby, p);
-	    o.addHobby(h);
- 	    p.addHobby(h);
-          } else {
-     	    show("No such person: " + name);
-	  }
-        }
+        if (POManager.getDB() != null) POManager.handleTrxError(e);
+	System.out.println(e.getMessage());
+      }
+     }
+
+    }
+
+  }
 
-        else if ("removeperson".startsWith(command)) {
-          String name = readString(tokenizer);
-	  Person p = o.getPerson(name);
-	  if (p != null) {
-	    // remove all hobbies
-	    Hobby[] h = p.getHobbies();
-	    for (int i=0; i<h.length; i++) {
-	      p.removeHobby(h[i]);
+  /** Numbers of the commands of execute, as in smCommands. */
+  private final static int SHOWPERSON = 0, ADDPERSON = 1, ADDHOBBY = 2,
+  	REMOVEPERSON = 3, REMOVEHOBBY = 4, REMOVEALL = 5, CHECKPOINT = 6;
+
+  /** The commands of execute, in the order their prefixes are matched. */
+  private final static CommandTable smCommands = new CommandTable(
+    new String[] {
+    	"showperson", "addperson", "addhobby", "removeperson",
+    	"removehobby", "removeall", "checkpoint" });
+
+  /**
+   * Runs the commands of the input in batch mode, e.g. for a bulk
+   * load.  The input is read a line at a time, without prompts.  The
+   * commands are run in update transactions of chunkSize commands
+   * each, holding POManager.TOKEN, so that a commit, and the write of
+   * the log, is shared by many commands.  Queries see the updates of
+   * the commands before them.  A command that fails is reported and
+   * not logged, as in runTerminal, and the others of its chunk are
+   * committed.  A checkpoint command ends its chunk, so that the
+   * commands before it are committed before the checkpoint.
+   * <P>
+   * The automatic checkpoints are put off until the end, since each
+   * one writes the whole database.  The number of lines per second is
+   * shown at the end.
+   *
+   * @param o		the database root
+   * @param input	the commands, ending at the end of input or "quit"
+   * @param chunkSize	number of commands in a transaction
+   */
+  public static void runBatch(DBRoot o, InputStream input,
+  	int chunkSize) {
+    BufferedReader in = new BufferedReader(new InputStreamReader(input),
+    	BUFFER_SIZE);
+    boolean db = POManager.getDB() != null;
+    int interval = POManager.getCheckpointInterval();
+    long[] lines = new long[1];
+    long commands = 0, logged = 0, transactions = 0;
+    long t0 = System.currentTimeMillis();
+
+    if (db) POManager.setCheckpointInterval(Integer.MAX_VALUE);
+    try {
+      String line = readCommand(in, lines);
+      while (line != null) {
+	synchronized (POManager.TOKEN) {
+	  try {
+	    if (db) POManager.beginUpdateTrx();
+	    for (int n=0; n<chunkSize && line != null; n++) {
+	      if (n > 0 && isCheckpoint(line)) break;  // commit the chunk first
+	      if (runCommand(o, line)) logged++;
+	      commands++;
+	      line = readCommand(in, lines);
 	    }
-	    p.removeAllHobbies();
-	    o.removePerson(p);
-          } else {
-     	    show("No such person: " + name);
+	    if (db) POManager.commitTrx();
+	  } catch (Exception e) {
+	    if (db) POManager.handleTrxError(e);
+	    System.out.println(e.getMessage());
 	  }
-        }
+	  transactions++;
+	}
+      }
+    } finally {
+      if (db) {
+	POManager.setCheckpointInterval(interval);
+	if (logged >= interval) {
+	  synchronized (POManager.TOKEN) {
+	    POManager.checkpoint();
+	  }
+	}
+      }
+    }
 
-        else if ("removehobby".startsWith(command)) {
-          String name = readString(tokenizer);
-          String hobby = readString(tokenizer);
-	  Person p = o.getPerson(name);
-	  // remove hobby from person and extent
-	  p.removeHobby(hobby);
-	  o.removeHobby(hobby);
-        }
+    long millis = Math.max(System.currentTimeMillis() - t0, 1);
+    show("Batch: " + lines[0] + " lines, " + commands + " commands in "
+    	+ transactions + " transactions, " + millis + " ms, "
+	+ lines[0] * 1000 / millis + " lines/s");
+  }
 
-        else if ("removeall".startsWith(command)) {
-	  o.removeAllPersons();
-	  o.removeAllHobbies();
-	}
+  /**
+   * Returns whether a command line of runBatch is a checkpoint.
+   *
+   * @param line	the command line
+   * @return true if it is a checkpoint
+   */
+  private static boolean isCheckpoint(String line) {
+    StringTokenizer tokenizer = new StringTokenizer(line, " 	");
+    return smCommands.lookup(tokenizer.nextToken()) == CHECKPOINT;
+  }
 
-        else {
-          show(" Command not recognized.  Try \"help\"");
-        }
+  /**
+   * Returns the next line of the input that has a command, skipping
+   * empty lines and comments.
+   *
+   * @param in	the input
+   * @param lines	lines[0] is the number of lines read
+   * @return the line, or null at the end of input or at "quit"
+   */
+  private static String readCommand(BufferedReader in, long[] lines) {
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+	lines[0]++;
+	if (line.startsWith("#")) continue;
+	StringTokenizer tokenizer = new StringTokenizer(line, " 	");
+	if (!tokenizer.hasMoreTokens()) continue;
+	String command = tokenizer.nextToken();
+	if ("quit".startsWith(command) || "shutdown".equalsIgnoreCase(line))
+	  return null;
+	return line;
+      }
+    } catch (IOException e) {
+      show("  " + e.toString());
+    }
+    return null;
+  }
 
-        if (POManager.getDB() != null) POManager.commitTrx();
-	
+  /**
+   * Runs a command of runBatch in its transaction.
+   *
+   * @param o		the database root
+   * @param line	the command line
+   * @return true if the command is logged
+   */
+  private static boolean runCommand(DBRoot o, String line) {
+    StringTokenizer tokenizer = new StringTokenizer(line, " 	");
+    String command = tokenizer.nextToken();
+    if ("help".startsWith(command)) {
+      printHelp();
+    } else {
+      try {
+	if (execute(o, command, tokenizer, System.out)) {
+	  POManager.logUpdate(line);  // redo record for the update
+	  return true;
+	}
       } catch (Exception e) {
-
-        if (POManager.getDB() != null) POManager.handleTrxError(e);
+	show(e.toString());  // as POManager.handleTrxError
 	System.out.println(e.getMessage());
       }
-     }
+    }
+    return false;
+  }
 
+  /**
+   * Returns whether the command only reads the database.
+   *
+   * @param command	the command (or a prefix of it)
+   * @return true if the command is a query
+   */
+  static boolean isQuery(String command) {
+    return smCommands.lookup(command) == SHOWPERSON;
+  }
+
+  /**
+   * Executes a command other than help and quit on the object o.
+   * It is called by runTerminal, runBatch, and by redo for a logged
+   * command.  The command is looked up in smCommands.
+   *
+   * @param o		the database root
+   * @param command	the command (or a prefix of it)
+   * @param tokenizer	tokenizer for the arguments of the command
+   * @param out		where to write the output of the command
+   * @return true if the command may change the database
+   * @exception Exception if the command fails
+   */
+  static boolean execute(DBRoot o, String command, StringTokenizer tokenizer,
+      PrintStream out) throws Exception {
+    boolean update = true;
+
+    switch (smCommands.lookup(command)) {
+
+    case SHOWPERSON: {
+      update = false;
+      String name = "";
+      try { name = readString(tokenizer); }
+      catch(TerminalException e) { 
+	name = "all";  // default to all if no name specified
+      }
+
+      if ("all".startsWith(name)) {
+	List<Person> ps = o.getPersonList();
+	for (int i=0; i<ps.size(); i++) {
+	  Person p = ps.get(i);
+	  out.println(" " + p.toString());
+	}
+      } else {
+	Person p = o.getPerson(name);
+	out.println(" " + p.toString());
+      }
+      break;
+    }
+
+    case ADDPERSON: {
+      String name = readString(tokenizer);
+      int age = readInt(tokenizer);
+      Person p = new Person(name, age);
+      o.addPerson(p);
+      break;
+    }
+
+    case ADDHOBBY: {
+      String name = readString(tokenizer);
+      String hobby = readString(tokenizer);
+      Person p = o.getPerson(name);
+      if (p != null) {
+	Hobby h = new Hobby(hobby, p);
+	o.addHobby(h);
+	p.addHobby(h);
+      } else {
+	out.println("No such person: " + name);
+      }
+      break;
+    }
+
+    case REMOVEPERSON: {
+      String name = readString(tokenizer);
+      Person p = o.getPerson(name);
+      if (p != null) {
+	// remove all hobbies
+	Hobby[] h = p.getHobbies();
+	for (int i=0; i<h.length; i++) {
+	  p.removeHobby(h[i]);
+	}
+	p.removeAllHobbies();
+	o.removePerson(p);
+      } else {
+	out.println("No such person: " + name);
+      }
+      break;
     }
 
+    case REMOVEHOBBY: {
+      String name = readString(tokenizer);
+      String hobby = readString(tokenizer);
+      Person p = o.getPerson(name);
+      // remove hobby from person and extent
+      p.removeHobby(hobby);
+      o.removeHobby(hobby);
+      break;
+    }
+
+    case REMOVEALL: {
+      o.removeAllPersons();
+      o.removeAllHobbies();
+      break;
+    }
+
+    case CHECKPOINT: {
+      update = false;
+      POManager.checkpoint();
+      break;
+    }
+
+    default: {
+      update = false;
+      out.println(" Command not recognized.  Try \"help\"");
+    }
+    }
+    return update;
+  }
+
+  /**
+   * Redoes a command logged by runTerminal.
+   *
+   * @param record	the command line
+   * @param out		where to write the output of the command
+   * @exception Exception if the command fails
+   */
+  public void redo(String record, PrintStream out) throws Exception {
+    StringTokenizer tokenizer = new StringTokenizer(record, " 	");
+    if (tokenizer.hasMoreTokens())
+      execute(this, tokenizer.nextToken(), tokenizer, out);
   }
 
   /** 
@@ -412,6 +661,9 @@ public class DBRoot implements java.io.Serializable {
     show("  removeperson name      // remove the person");
     show("  removehobby name hobby // remove the hobby from the person");
     show("  removeall              // remove all persons");
+    show("  checkpoint             // save a snapshot & empty the log");
+    show("  batch file [nChunk]    // run a command file, nChunk commands");
+    show("                         // in a transaction");
 
     show("");
     show("  quit                   // shutdown DB & quit");
@@ -468,14 +720,18 @@ public class DBRoot implements java.io.Serializable {
    */
   public static void main(String[] args) throws Exception {
 
-    show("Usage: java DBRoot [database_file.odb] [command_file.txt]");
+    show("Usage: java DBRoot [database_file.odb] [command_file.txt] [nChunk]");
     show("  If no database file is specified, run on transient objects.");
+    show("  With nChunk, run the command file in batch mode.");
 
     String dbfile = null;
     if (args.length >= 1) {
       dbfile = args[0];
     }
 
+    int chunkSize = 0;  // not in batch mode
+    if (args.length >= 3) chunkSize = Integer.parseInt(args[2]);
+
     // Get input stream
     InputStream input = System.in;
     if (args.length >= 2) {
@@ -490,13 +746,15 @@ public class DBRoot implements java.io.Serializable {
 
       DBRoot mgr = (DBRoot)POManager.getDbRoot();
 
-      DBRoot.runTerminal(mgr, input);
+      if (chunkSize > 0) runBatch(mgr, input, chunkSize);
+      else DBRoot.runTerminal(mgr, input);
 
       POManager.shutdown();
 
     } else {  // transient test
       DBRoot mgr = new DBRoot();
-      runTerminal(mgr, input);
+      if (chunkSize > 0) runBatch(mgr, input, chunkSize);
+      else runTerminal(mgr, input);
     }
 
   }
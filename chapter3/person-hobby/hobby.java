@@ -17,6 +17,13 @@
  * This class is also Serializable.
  */
 public class Hobby implements java.io.Serializable {
+
+  /** 
+   * A key extractor that returns the name of a Hobby.  Use it
+   * to construct a PVector that looks up hobbies by name.
+   */
+  public static final PVector.KeyExtractor NAME_KEY = new NameKey();
+
   /** the name of the hobby */
   private String name;
 
@@ -62,4 +69,14 @@ public class Hobby implements java.io.Serializable {
     s += " (" + person.getName() + ")\n";
     return s;
   }
+
+  /**
+   * A key extractor that returns the name of a Hobby.
+   */
+  static class NameKey implements PVector.KeyExtractor {
+    public Object getKey(Object element) {
+      return ((Hobby) element).getName();
+    }
+  }
+
 }
@@ -0,0 +1,849 @@
+//*************************************************************************
+/**
+ * MappedStore.java - A page store in a memory-mapped file.
+ *
+ *   Copyright (C) 1998-2000    Yun-Tung Lau
+ *   All Rights Reserved.  See the license file in the home
+ *   directory of this package for important license information.
+ */
+//*************************************************************************
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * This class is a storage backend for POManager.  It keeps each
+ * Externalizable object as a record in fixed-size pages of a
+ * memory-mapped file, and writes only the changed records at commit.
+ * <P>
+ * Typical usage:
+ * <PRE>
+ *    POManager.setBackend(new MappedStore());
+ *    POManager.initialize("DB_filename", "DB_Root_Class");
+ * </PRE>
+ * <P>
+ * Objects are marked as changed by POManager.dirty, which the
+ * classes call when they change.  A PVector is stored in the record
+ * of the object that holds it, so adding an element marks the holder.
+ * At commit, the marked objects are written, together with the new
+ * objects they refer to.  Other objects refer to each other by object
+ * id (oid), and the object table maps each oid to the page and offset
+ * of its record.
+ * <P>
+ * Small records are packed into pages.  A record is rewritten in
+ * place if it still fits, and moved otherwise.  A record larger than
+ * a page gets a run of pages of its own.  The free space of the pages
+ * is kept in memory, and rebuilt from the object table when the file
+ * is opened.  A page is compacted when more than half of it is free,
+ * and reused when it is empty.
+ * <P>
+ * The pages changed by a commit are first written to a journal
+ * ("DB_filename.jnl"), which is forced to disk.  They are then copied
+ * into the mapped file, and only those pages are forced.  If we crash
+ * while copying, the journal is redone on the next open.
+ * <P>
+ * The file is read entirely when it is opened.  Records of objects
+ * that can no longer be reached from the root are freed then.  The
+ * file is mapped in one piece, so it is limited to 2 GB.
+ */
+public class MappedStore implements POManager.Backend {
+
+  /** Size of a page in bytes. */
+  public final static int PAGE_SIZE = 4096;
+
+  /** Magic number at the start of the file. */
+  private final static int MAGIC = 0x50444d31;  // "PDM1"
+
+  /** Version of the file format. */
+  private final static int VERSION = 1;
+
+  /** Length of a record header: oid, capacity and length. */
+  private final static int HEADER = 12;
+
+  /** Length of an object table entry: page and offset. */
+  private final static int ENTRY = 8;
+
+  /** Bytes used in pages that do not hold packed records. */
+  private final static int NONE = -1;
+
+  /** Tags of the values in a record. */
+  private final static byte NULL = 0, STRING = 1, VECTOR = 2,
+  	OBJECT = 3, SERIAL = 4;
+
+  private RandomAccessFile dbFile;    // the database file
+  private FileChannel channel;
+  private MappedByteBuffer map;       // the mapped pages
+  private int mapped;                 // number of pages mapped
+  private File journal;               // pages of the last commit
+
+  private int nPages;                 // pages in use
+  private int rootOid = -1;           // oid of the root
+  private int tablePage;              // first page of the object table
+  private int tableSize;              // entries in the object table
+  private int nOids;                  // oids given out so far
+
+  private int[] pageOf = new int[0];      // oid to page, 0 if free
+  private int[] offsetOf = new int[0];    // oid to offset in the page
+  private int[] capacityOf = new int[0];  // oid to capacity of record
+  private Object[] objectOf = new Object[0]; // oid to object
+  private IdentityHashMap<Object, Integer> ids =
+  	new IdentityHashMap<Object, Integer>();  // object to oid
+  private LinkedList<Integer> freeOids = new LinkedList<Integer>();
+
+  private int[] used = new int[0];    // bytes used in each page
+  private int[] live = new int[0];    // bytes of live records in each page
+  private BitSet empty = new BitSet(); // pages without records
+  private LinkedList<Integer> roomy = new LinkedList<Integer>(); // compacted
+  private int fillPage;               // page being filled, 0 if none
+
+  private IdentityHashMap<Object, Object> changed =
+  	new IdentityHashMap<Object, Object>();  // to be written
+  private LinkedList<Object> queue = new LinkedList<Object>(); // written now
+  private TreeMap<Integer, byte[]> dirtyPages =
+  	new TreeMap<Integer, byte[]>();  // page to its new image
+
+  private long recordsWritten;        // records written by commits
+  private long pagesWritten;          // pages written by commits
+
+
+  /**
+   * Constructs a MappedStore.  The file is given by open.
+   */
+  public MappedStore() {
+
+  }
+
+  /**
+   * Returns the number of pages in the file.
+   *
+   * @return the number of pages
+   */
+  public synchronized int getPageCount() {
+    return nPages;
+  }
+
+  /**
+   * Returns the number of records written by commits so far.
+   *
+   * @return the number of records written
+   */
+  public synchronized long getRecordsWritten() {
+    return recordsWritten;
+  }
+
+  /**
+   * Returns the number of pages written by commits so far.
+   *
+   * @return the number of pages written
+   */
+  public synchronized long getPagesWritten() {
+    return pagesWritten;
+  }
+
+  /********** POManager.Backend *************/
+
+  /**
+   * Opens the input file, or creates it if not found, and reads all
+   * objects in it.
+   *
+   * @param file	the database file
+   * @return the root object, or null if there is none yet
+   * @exception IOException if the file cannot be read
+   */
+  public synchronized Object open(File file) throws IOException {
+    journal = new File(file.getPath() + ".jnl");
+    boolean exists = file.exists() && file.length() > 0;
+    dbFile = new RandomAccessFile(file, "rw");
+    channel = dbFile.getChannel();
+    if (!exists) {
+      format();
+      return null;
+    }
+
+    recover();
+    mapPages(Math.max(1, (int) (dbFile.length() / PAGE_SIZE)));
+    if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION
+    	|| map.getInt(8) != PAGE_SIZE) {
+      close();
+      throw new IOException("Not a mapped database: " + file);
+    }
+    nPages = map.getInt(12);
+    rootOid = map.getInt(16);
+    tablePage = map.getInt(20);
+    tableSize = map.getInt(24);
+    nOids = map.getInt(28);
+    mapPages(nPages);
+    growPages(nPages);
+    growTable(tableSize);
+
+    used[0] = NONE;
+    for (int p=0; p<tableSize * ENTRY / PAGE_SIZE; p++)
+      used[tablePage + p] = NONE;
+
+    // Create the objects first, since records refer to each other.
+    byte[][] records = new byte[nOids][];
+    for (int oid=0; oid<nOids; oid++) {
+      int pos = tablePage * PAGE_SIZE + oid * ENTRY;
+      int page = map.getInt(pos);
+      if (page == 0) {
+        freeOids.add(Integer.valueOf(oid));
+	continue;
+      }
+      pageOf[oid] = page;
+      offsetOf[oid] = map.getInt(pos + 4);
+      pos = page * PAGE_SIZE + offsetOf[oid];
+      capacityOf[oid] = map.getInt(pos + 4);
+      records[oid] = new byte[map.getInt(pos + 8)];
+      map.get(pos + HEADER, records[oid]);
+      use(oid);
+
+      String className = new DataInputStream(
+      	new ByteArrayInputStream(records[oid])).readUTF();
+      try {
+        objectOf[oid] = Class.forName(className).getDeclaredConstructor()
+	  .newInstance();
+      } catch (Exception e) {
+        throw new IOException("Cannot create " + className + ": " + e);
+      }
+      ids.put(objectOf[oid], Integer.valueOf(oid));
+    }
+    for (int p=1; p<nPages; p++) if (used[p] == 0) empty.set(p);
+
+    // Then read their fields, and note which objects they refer to.
+    int[][] refs = new int[nOids][];
+    for (int oid=0; oid<nOids; oid++) {
+      if (records[oid] == null) continue;
+      RecordInput in = new RecordInput(records[oid]);
+      try {
+        in.readUTF();
+        ((Externalizable) objectOf[oid]).readExternal(in);
+      } catch (ClassNotFoundException e) {
+        throw new IOException("Class not found: " + e.getMessage());
+      }
+      refs[oid] = in.getRefs();
+      records[oid] = null;
+    }
+
+    collect(refs);
+    return (rootOid >= 0) ? objectOf[rootOid] : null;
+  }
+
+  /**
+   * Marks the input object as changed.  Objects that are not stored
+   * yet are ignored; they are written when a stored object refers to
+   * them.
+   *
+   * @param o	the object
+   */
+  public synchronized void dirty(Object o) {
+    if (ids.containsKey(o)) changed.put(o, o);
+  }
+
+  /**
+   * Writes the objects marked as changed, and the new objects they
+   * refer to.  The root is written if it is not stored yet.
+   *
+   * @param root	the root object
+   * @exception IOException if the file cannot be written
+   */
+  public synchronized void commit(Object root) throws IOException {
+    if (rootOid < 0) {
+      if (!(root instanceof Externalizable))
+        throw new IOException("Root is not Externalizable: " + root);
+      rootOid = oidOf(root);  // queues the root
+    }
+    queue.addAll(changed.keySet());
+    changed.clear();
+
+    IdentityHashMap<Object, Object> written =
+    	new IdentityHashMap<Object, Object>();
+    while (!queue.isEmpty()) {
+      Object o = queue.removeFirst();
+      if (written.put(o, o) != null) continue;
+      store(ids.get(o).intValue(), encode(o));
+      recordsWritten++;
+    }
+    flush();
+  }
+
+  /**
+   * Forgets the objects marked as changed.  Note that the changes
+   * already made to the objects are not undone.
+   */
+  public synchronized void abort() {
+    changed.clear();
+  }
+
+  /**
+   * Closes the file.  Objects not committed are not written.
+   *
+   * @exception IOException if an I/O error occurs
+   */
+  public synchronized void close() throws IOException {
+    if (channel == null) return;
+    channel.close();
+    dbFile.close();
+    channel = null;
+    map = null;  // unmapped when it is garbage collected
+  }
+
+  /********** Records *************/
+
+  /**
+   * Returns the oid of the input object.  A new object gets an oid,
+   * and is queued to be written.
+   *
+   * @param o	the object
+   * @return its oid
+   */
+  private int oidOf(Object o) {
+    Integer oid = ids.get(o);
+    if (oid != null) return oid.intValue();
+
+    if (!freeOids.isEmpty()) {
+      oid = freeOids.removeFirst();
+    } else {
+      if (nOids == tableSize) moveTable(2 * tableSize);
+      oid = Integer.valueOf(nOids++);
+      growTable(nOids);
+    }
+    ids.put(o, oid);
+    objectOf[oid.intValue()] = o;
+    queue.add(o);
+    return oid.intValue();
+  }
+
+  /**
+   * Returns the record of the input object: its class name followed
+   * by its fields.
+   *
+   * @param o	an Externalizable object
+   * @return the record
+   * @exception IOException if the object cannot be written
+   */
+  private byte[] encode(Object o) throws IOException {
+    ByteArrayOutputStream b = new ByteArrayOutputStream(256);
+    RecordOutput out = new RecordOutput(b);
+    out.writeUTF(o.getClass().getName());
+    ((Externalizable) o).writeExternal(out);
+    out.flush();
+    return b.toByteArray();
+  }
+
+  /**
+   * Writes a record.  It is written in place if it fits, and is moved
+   * otherwise.  A moved record gets some room to grow.
+   *
+   * @param oid	the oid of the record
+   * @param record	the record
+   */
+  private void store(int oid, byte[] record) {
+    int len = record.length;
+    if (pageOf[oid] != 0) {
+      if (len <= capacityOf[oid]) {
+        int pos = pageOf[oid] * PAGE_SIZE + offsetOf[oid];
+        writeInt(pos + 8, len);
+	write(pos + HEADER, record);
+	return;
+      }
+      free(oid);
+    }
+
+    int cap = len + len / 4;
+    int pos;
+    if (HEADER + len <= PAGE_SIZE) {  // pack it with other records
+      cap = Math.min(cap, PAGE_SIZE - HEADER);
+      pos = allocate(HEADER + cap);
+    } else {  // a run of pages of its own
+      int n = (HEADER + cap + PAGE_SIZE - 1) / PAGE_SIZE;
+      cap = n * PAGE_SIZE - HEADER;
+      pos = allocateRun(n) * PAGE_SIZE;
+    }
+    pageOf[oid] = pos / PAGE_SIZE;
+    offsetOf[oid] = pos % PAGE_SIZE;
+    capacityOf[oid] = cap;
+    writeInt(pos, oid);
+    writeInt(pos + 4, cap);
+    writeInt(pos + 8, len);
+    write(pos + HEADER, record);
+    writeEntry(oid);
+  }
+
+  /**
+   * Frees the record of the input oid.  The oid itself is kept.
+   *
+   * @param oid	the oid
+   */
+  private void free(int oid) {
+    int page = pageOf[oid];
+    int size = HEADER + capacityOf[oid];
+    pageOf[oid] = 0;  // not live, when the page is compacted
+
+    if (size > PAGE_SIZE) {
+      freeRun(page, size / PAGE_SIZE);
+      return;
+    }
+    live[page] -= size;
+    if (live[page] == 0) {
+      used[page] = 0;
+      if (page != fillPage) empty.set(page);
+    } else if (used[page] - live[page] > PAGE_SIZE / 2) {
+      compact(page);
+    }
+  }
+
+  /**
+   * Counts the record of the input oid in the free space map.
+   *
+   * @param oid	the oid
+   */
+  private void use(int oid) {
+    int page = pageOf[oid];
+    int size = HEADER + capacityOf[oid];
+    if (size > PAGE_SIZE) {
+      for (int p=0; p<size / PAGE_SIZE; p++) used[page + p] = NONE;
+    } else {
+      used[page] = Math.max(used[page], offsetOf[oid] + size);
+      live[page] += size;
+    }
+  }
+
+  /**
+   * Frees the records of the objects that cannot be reached from the
+   * root, and forgets the objects.
+   *
+   * @param refs	oids referred to by each record
+   * @exception IOException if the file cannot be written
+   */
+  private void collect(int[][] refs) throws IOException {
+    if (rootOid < 0) return;
+    BitSet reached = new BitSet();
+    LinkedList<Integer> todo = new LinkedList<Integer>();
+    reached.set(rootOid);
+    todo.add(Integer.valueOf(rootOid));
+    while (!todo.isEmpty()) {
+      int[] r = refs[todo.removeFirst().intValue()];
+      for (int i=0; r != null && i<r.length; i++) {
+        if (reached.get(r[i])) continue;
+	reached.set(r[i]);
+	todo.add(Integer.valueOf(r[i]));
+      }
+    }
+
+    for (int oid=0; oid<nOids; oid++) {
+      if (pageOf[oid] == 0 || reached.get(oid)) continue;
+      free(oid);
+      writeEntry(oid);
+      ids.remove(objectOf[oid]);
+      objectOf[oid] = null;
+      freeOids.add(Integer.valueOf(oid));
+    }
+    flush();
+  }
+
+  /********** Pages *************/
+
+  /**
+   * Returns the position of free space for a record in a page with
+   * other records.
+   *
+   * @param size	size of the record and its header
+   * @return the position in the file
+   */
+  private int allocate(int size) {
+    if (fillPage == 0 || PAGE_SIZE - used[fillPage] < size) {
+      fillPage = 0;
+      while (fillPage == 0 && !roomy.isEmpty()) {
+        int p = roomy.removeFirst().intValue();
+	if (used[p] != NONE && PAGE_SIZE - used[p] >= size) fillPage = p;
+      }
+      if (fillPage == 0) {
+        fillPage = allocateRun(1);
+	used[fillPage] = 0;
+      }
+    }
+    int pos = fillPage * PAGE_SIZE + used[fillPage];
+    used[fillPage] += size;
+    live[fillPage] += size;
+    empty.clear(fillPage);
+    return pos;
+  }
+
+  /**
+   * Returns the first of n empty pages in a row.  The file is extended
+   * if there are none.
+   *
+   * @param n	number of pages
+   * @return the first page
+   */
+  private int allocateRun(int n) {
+    int p = empty.nextSetBit(1);
+    while (p >= 0 && empty.nextClearBit(p) - p < n)
+      p = empty.nextSetBit(empty.nextClearBit(p));
+    if (p < 0) {
+      p = nPages;
+      growPages(nPages + n);
+    }
+    empty.clear(p, p + n);
+    for (int i=0; i<n; i++) {
+      used[p + i] = NONE;
+      live[p + i] = 0;
+    }
+    return p;
+  }
+
+  /**
+   * Makes a run of pages empty.
+   *
+   * @param page	the first page
+   * @param n	number of pages
+   */
+  private void freeRun(int page, int n) {
+    for (int p=page; p<page + n; p++) {
+      used[p] = 0;
+      live[p] = 0;
+    }
+    empty.set(page, page + n);
+  }
+
+  /**
+   * Moves the live records of a page to its start, so that the free
+   * space is in one piece.
+   *
+   * @param page	the page
+   */
+  private void compact(int page) {
+    byte[] b = image(page);
+    ByteBuffer bb = ByteBuffer.wrap(b);
+    int to = 0;
+    for (int off=0; off<used[page]; ) {
+      int oid = bb.getInt(off);
+      int size = HEADER + bb.getInt(off + 4);
+      if (oid < nOids && pageOf[oid] == page && offsetOf[oid] == off) {
+        if (to != off) {
+	  System.arraycopy(b, off, b, to, size);
+	  offsetOf[oid] = to;
+	  writeEntry(oid);
+	}
+	to += size;
+      }
+      off += size;
+    }
+    used[page] = to;
+    if (page != fillPage) roomy.add(Integer.valueOf(page));
+  }
+
+  /**
+   * Writes the object table entry of the input oid.
+   *
+   * @param oid	the oid
+   */
+  private void writeEntry(int oid) {
+    int pos = tablePage * PAGE_SIZE + oid * ENTRY;
+    writeInt(pos, pageOf[oid]);
+    writeInt(pos + 4, offsetOf[oid]);
+  }
+
+  /**
+   * Moves the object table to a larger run of pages.
+   *
+   * @param size	the new number of entries
+   */
+  private void moveTable(int size) {
+    int old = tablePage;
+    int n = tableSize * ENTRY / PAGE_SIZE;
+    tablePage = allocateRun(size * ENTRY / PAGE_SIZE);
+    tableSize = size;
+    for (int oid=0; oid<nOids; oid++) writeEntry(oid);
+    freeRun(old, n);
+  }
+
+  /**
+   * Writes a new file with a header and an empty object table.
+   *
+   * @exception IOException if the file cannot be written
+   */
+  private void format() throws IOException {
+    nPages = 0;
+    growPages(1);
+    used[0] = NONE;
+    tableSize = PAGE_SIZE / ENTRY;
+    tablePage = allocateRun(1);
+    image(tablePage);  // zeros
+    flush();
+  }
+
+  /**
+   * Writes the changed pages: first to the journal, and then to the
+   * mapped file.  The header is written with them.
+   *
+   * @exception IOException if the file cannot be written
+   */
+  private void flush() throws IOException {
+    if (dirtyPages.isEmpty()) return;
+    ByteBuffer h = ByteBuffer.wrap(image(0));
+    h.putInt(0, MAGIC);
+    h.putInt(4, VERSION);
+    h.putInt(8, PAGE_SIZE);
+    h.putInt(12, nPages);
+    h.putInt(16, rootOid);
+    h.putInt(20, tablePage);
+    h.putInt(24, tableSize);
+    h.putInt(28, nOids);
+
+    FileOutputStream fos = new FileOutputStream(journal);
+    CheckedOutputStream cos = new CheckedOutputStream(
+    	new BufferedOutputStream(fos, 65536), new CRC32());
+    DataOutputStream out = new DataOutputStream(cos);
+    Iterator<Map.Entry<Integer, byte[]>> i = dirtyPages.entrySet().iterator();
+    while (i.hasNext()) {
+      Map.Entry<Integer, byte[]> e = i.next();
+      out.writeInt(e.getKey().intValue());
+      out.write(e.getValue());
+    }
+    long crc = cos.getChecksum().getValue();
+    out.writeInt(dirtyPages.size());
+    out.writeLong(crc);
+    out.flush();
+    fos.getFD().sync();
+    out.close();
+
+    // Copy the pages into the file, and force only those pages.
+    mapPages(nPages);
+    i = dirtyPages.entrySet().iterator();
+    while (i.hasNext()) {
+      Map.Entry<Integer, byte[]> e = i.next();
+      int pos = e.getKey().intValue() * PAGE_SIZE;
+      map.put(pos, e.getValue());
+      map.force(pos, PAGE_SIZE);
+    }
+    pagesWritten += dirtyPages.size();
+    dirtyPages.clear();
+    journal.delete();
+  }
+
+  /**
+   * Redoes the journal, if it is complete.  It is complete if we
+   * crashed while copying its pages into the file.
+   *
+   * @exception IOException if the file cannot be written
+   */
+  private void recover() throws IOException {
+    if (!journal.exists()) return;
+    long len = journal.length() - 12;
+    if (len >= 0 && len % (4 + PAGE_SIZE) == 0) {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(
+      	new FileInputStream(journal), 65536));
+      try {
+        byte[] pages = new byte[(int) len];
+	in.readFully(pages);
+	int n = in.readInt();
+	CRC32 crc = new CRC32();
+	crc.update(pages);
+	if (n == len / (4 + PAGE_SIZE) && in.readLong() == crc.getValue()) {
+	  ByteBuffer b = ByteBuffer.wrap(pages);
+	  for (int k=0; k<n; k++) {
+	    int p = b.getInt();
+	    channel.write(ByteBuffer.wrap(pages, b.position(), PAGE_SIZE),
+	    	(long) p * PAGE_SIZE);
+	    b.position(b.position() + PAGE_SIZE);
+	  }
+	  channel.force(false);
+	}
+      } finally {
+        in.close();
+      }
+    }
+    journal.delete();  // a torn journal was never applied
+  }
+
+  /**
+   * Returns the new image of a page, to be written by the next flush.
+   *
+   * @param page	the page
+   * @return the image
+   */
+  private byte[] image(int page) {
+    Integer key = Integer.valueOf(page);
+    byte[] b = dirtyPages.get(key);
+    if (b == null) {
+      b = new byte[PAGE_SIZE];
+      if (page < mapped) map.get(page * PAGE_SIZE, b);
+      dirtyPages.put(key, b);
+    }
+    return b;
+  }
+
+  /**
+   * Writes an int to the page images.  It does not cross a page.
+   */
+  private void writeInt(int pos, int v) {
+    ByteBuffer.wrap(image(pos / PAGE_SIZE)).putInt(pos % PAGE_SIZE, v);
+  }
+
+  /**
+   * Writes bytes to the page images.  They may cross pages.
+   */
+  private void write(int pos, byte[] b) {
+    for (int i=0; i<b.length; ) {
+      int off = (pos + i) % PAGE_SIZE;
+      int n = Math.min(b.length - i, PAGE_SIZE - off);
+      System.arraycopy(b, i, image((pos + i) / PAGE_SIZE), off, n);
+      i += n;
+    }
+  }
+
+  /**
+   * Maps at least the input number of pages.  The mapping grows by
+   * doubling, which also extends the file.
+   *
+   * @param pages	number of pages
+   * @exception IOException if the file cannot be mapped
+   */
+  private void mapPages(int pages) throws IOException {
+    if (map != null && pages <= mapped) return;
+    long n = Math.max(pages, Math.max(2L * mapped, 16));
+    if (n * PAGE_SIZE > Integer.MAX_VALUE) {
+      n = Integer.MAX_VALUE / PAGE_SIZE;
+      if (n < pages) throw new IOException("Database file too large");
+    }
+    map = channel.map(FileChannel.MapMode.READ_WRITE, 0, n * PAGE_SIZE);
+    mapped = (int) n;
+  }
+
+  /**
+   * Grows the free space map to the input number of pages.
+   */
+  private void growPages(int pages) {
+    if (pages > used.length) {
+      int n = Math.max(pages, 2 * used.length);
+      int[] u = new int[n];
+      int[] l = new int[n];
+      System.arraycopy(used, 0, u, 0, used.length);
+      System.arraycopy(live, 0, l, 0, live.length);
+      used = u;
+      live = l;
+    }
+    nPages = pages;
+  }
+
+  /**
+   * Grows the object table in memory to the input number of oids.
+   */
+  private void growTable(int oids) {
+    if (oids <= pageOf.length) return;
+    int n = Math.max(oids, 2 * pageOf.length);
+    int[] p = new int[n];
+    int[] o = new int[n];
+    int[] c = new int[n];
+    Object[] x = new Object[n];
+    System.arraycopy(pageOf, 0, p, 0, pageOf.length);
+    System.arraycopy(offsetOf, 0, o, 0, offsetOf.length);
+    System.arraycopy(capacityOf, 0, c, 0, capacityOf.length);
+    System.arraycopy(objectOf, 0, x, 0, objectOf.length);
+    pageOf = p;
+    offsetOf = o;
+    capacityOf = c;
+    objectOf = x;
+  }
+
+  /**
+   * An output stream of a record.  Strings and vectors are written in
+   * the record, other Externalizable objects by their oids, and other
+   * objects by Java serialization.
+   */
+  private class RecordOutput extends DataOutputStream
+  	implements ObjectOutput {
+
+    RecordOutput(OutputStream out) {
+      super(out);
+    }
+
+    public void writeObject(Object o) throws IOException {
+      if (o == null) {
+        writeByte(NULL);
+      } else if (o instanceof String) {
+        writeByte(STRING);
+	writeUTF((String) o);
+      } else if (o instanceof PVector) {
+        writeByte(VECTOR);
+	((PVector) o).writeExternal(this);
+      } else if (o instanceof Externalizable) {
+        writeByte(OBJECT);
+	writeInt(oidOf(o));
+      } else {
+        ByteArrayOutputStream b = new ByteArrayOutputStream();
+	ObjectOutputStream oos = new ObjectOutputStream(b);
+	oos.writeObject(o);
+	oos.close();
+	writeByte(SERIAL);
+	writeInt(b.size());
+	b.writeTo(this);
+      }
+    }
+  }
+
+  /**
+   * An input stream of a record.  It notes the oids it reads.
+   */
+  private class RecordInput extends DataInputStream
+  	implements ObjectInput {
+    private int[] refs = new int[8];
+    private int nRefs;
+
+    RecordInput(byte[] record) {
+      super(new ByteArrayInputStream(record));
+    }
+
+    public Object readObject() throws IOException, ClassNotFoundException {
+      switch (readByte()) {
+      case NULL:
+        return null;
+      case STRING:
+        return readUTF();
+      case VECTOR:
+        PVector v = new PVector();
+	v.readExternal(this);
+	return v;
+      case OBJECT:
+        int oid = readInt();
+	if (oid < 0 || oid >= nOids || objectOf[oid] == null)
+	  throw new IOException("Invalid oid: " + oid);
+	if (nRefs == refs.length) {
+	  int[] r = new int[2 * nRefs];
+	  System.arraycopy(refs, 0, r, 0, nRefs);
+	  refs = r;
+	}
+	refs[nRefs++] = oid;
+	return objectOf[oid];
+      case SERIAL:
+        byte[] b = new byte[readInt()];
+	readFully(b);
+	ObjectInputStream ois = new ObjectInputStream(
+		new ByteArrayInputStream(b));
+	Object o = ois.readObject();
+	ois.close();
+	return o;
+      default:
+        throw new IOException("Invalid record");
+      }
+    }
+
+    int[] getRefs() {
+      int[] r = new int[nRefs];
+      System.arraycopy(refs, 0, r, 0, nRefs);
+      return r;
+    }
+  }
+
+}
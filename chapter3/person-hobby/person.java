@@ -8,7 +8,7 @@
  */
 //*************************************************************************
 
-import java.util.Enumeration;
+import java.util.List;
 
 /**
  * A class describing a person.
@@ -20,14 +20,24 @@ import java.util.Enumeration;
  * (chapter2\Person-Hobby) except it uses PVector, which is a 
  * persistent enabled class.  It is also Serializable.
  */
-public class Person implements java.io.Serializable {
+public class Person implements java.io.Serializable,
+	PVector.KeyedElement {
+
+  /** 
+   * A key extractor that returns the name of a Person.  Use it
+   * to construct a PVector that looks up persons by name.
+   */
+  public static final PVector.KeyExtractor NAME_KEY = new NameKey();
 
   // Private attributes in the Person class
   private String name;
   private int age;
 
+  /** The keyed vectors that hold this person.  Not persistent. */
+  private transient PVector[] holders;
+
   /** A vector is used to contain the hobbies. */
-  private PVector hobbies = new PVector();
+  private PVector hobbies = new PVector(Hobby.NAME_KEY);
 
 
   /** 
@@ -65,7 +75,48 @@ public class Person implements java.io.Serializable {
    * @param name	the new name of this person
    */
   public void changeName(String name) { 
+    String oldName = this.name;
     this.name = name; 
+    PVector[] h = getHolders();
+    for (int i=0; i<h.length; i++) h[i].keyChanged(this, oldName);
+  }
+
+  /** 
+   * Adds a keyed vector that holds this person.  Called by PVector.
+   *
+   * @param v	the vector
+   */
+  public synchronized void addHolder(PVector v) {
+    PVector[] h = getHolders();
+    PVector[] x = new PVector[h.length + 1];
+    System.arraycopy(h, 0, x, 0, h.length);
+    x[h.length] = v;
+    holders = x;
+  }
+
+  /** 
+   * Removes a keyed vector that held this person.  Called by PVector.
+   *
+   * @param v	the vector
+   */
+  public synchronized void removeHolder(PVector v) {
+    PVector[] h = getHolders();
+    for (int i=0; i<h.length; i++) {
+      if (h[i] == v) {
+        PVector[] x = new PVector[h.length - 1];
+        System.arraycopy(h, 0, x, 0, i);
+        System.arraycopy(h, i+1, x, i, h.length-i-1);
+        holders = x;
+	return;
+      }
+    }
+  }
+
+  /** 
+   * Returns the keyed vectors that hold this person.
+   */
+  private synchronized PVector[] getHolders() {
+    return holders == null ? new PVector[0] : holders;
   }
  
   /** 
@@ -94,10 +145,17 @@ public class Person implements java.io.Serializable {
    * @return the hobbies of this person as an array
    */
   public Hobby[] getHobbies() {
-    Object[] o = hobbies.toArray();
-    Hobby[] r = new Hobby[o.length];
-    for (int i=0; i<o.length; i++) r[i] = (Hobby)o[i];
-    return r;
+    return (Hobby[]) hobbies.toArray(new Hobby[hobbies.size()]);
+  }
+
+  /**
+   * Returns a read-only list view of the hobbies.  Unlike getHobbies,
+   * it does not copy the hobbies.
+   *
+   * @return the hobbies as a read-only list
+   */
+  public List<Hobby> getHobbyList() {
+    return hobbies.asList();
   }
 
   /**
@@ -116,12 +174,7 @@ public class Person implements java.io.Serializable {
    * @return Hobby object.  Null if none matched.
    */
   public Hobby getHobby(String name) {
-    Enumeration e = hobbies.elements();
-    while (e.hasMoreElements()) {
-      Hobby c = (Hobby) e.nextElement();
-      if (c.getName().equals(name)) return c;
-    }
-    return null;
+    return (Hobby) hobbies.getByKey(name);
   }
 
   /**
@@ -196,9 +249,9 @@ public class Person implements java.io.Serializable {
     s += "Age: " + age + "\n";
     s += "Hobbies:\n";
 
-    Hobby[] h = getHobbies();
-    for (int i=0; i<h.length; i++) {
-      s += "  " + h[i].toString();
+    List<Hobby> h = getHobbyList();
+    for (int i=0; i<h.size(); i++) {
+      s += "  " + h.get(i).toString();
     }
 
     return s;
@@ -249,5 +302,13 @@ public class Person implements java.io.Serializable {
     show(test());
   }
 
-}
+  /**
+   * A key extractor that returns the name of a Person.
+   */
+  static class NameKey implements PVector.KeyExtractor {
+    public Object getKey(Object element) {
+      return ((Person) element).getName();
+    }
+  }
 
+}
@@ -10,11 +10,14 @@
 //*************************************************************************
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Vector;
+import java.util.zip.CRC32;
 
 /**
  * This class provides static methods to read and write persistent objects
- * serialized in a file.  No transaction management is provided.
- * The objects are read in or created by setupDB.
+ * serialized in a file.  The objects are read in or created by setupDB.
  * <P>
  * This class has the same API as the DBManager class, which works with
  * PSE Pro.
@@ -29,6 +32,39 @@ import java.io.*;
  *
  *    POManager.shutdown();
  * </PRE>
+ * <P>
+ * If the database root implements Redoable, updates are kept in a
+ * redo log ("DB_filename.log") instead of being saved at shutdown.
+ * Within an update transaction, call logUpdate with a record (e.g.
+ * the terminal command) that redoes the update.  commitTrx appends
+ * the records of the transaction to the log as one group.  The log
+ * is forced to disk every few commits, as set by setSyncInterval.
+ * <P>
+ * On initialize, the root is read from the last snapshot and the
+ * records logged after it are redone.  A checkpoint writes a new
+ * snapshot and empties the log.  It is done every few records, as
+ * set by setCheckpointInterval, or by calling checkpoint.  Changes
+ * made to such a root without logging them are saved only by a
+ * checkpoint.
+ * <P>
+ * Otherwise the whole root is written to the file at shutdown.
+ * <P>
+ * A storage backend may be set by setBackend (e.g. MappedStore).  It
+ * reads the file on initialize, and writes the objects marked by
+ * dirty at each commit, instead of the snapshots and log above.
+ * <P>
+ * Read and update transactions are both run while holding TOKEN, as
+ * the terminals do, so a reader sees the objects as left by the last
+ * update transaction.  A read transaction only reads the objects, and
+ * is ended by commitTrx or abortTrx without logging anything.
+ * <P>
+ * An Externalizable root is written in pages (see PagedStore), so
+ * that it can be loaded lazily.  Only the root and its extents are
+ * read on initialize; other vectors are read on their first use.
+ * A snapshot copies the pages not read from the old file, so that
+ * checkpoint and shutdown do not read them either.  Use
+ * setLazyLoading(false) to read all on initialize, and to write the
+ * root as one stream.
  *
  */
 public class POManager {
@@ -36,9 +72,33 @@ public class POManager {
   /** A dummy token object used as a synchronization lock. */
   public static Object TOKEN = new Object();
 
+  /** Size of the file buffers.  Streams are written in large blocks. */
+  private final static int BUFFER_SIZE = 65536;
+
   private static File smDb;        // Database file handle
   private static Object smDbRoot;  // DB root object
 
+  private static File smLogFile;             // Redo log file handle
+  private static FileOutputStream smLog;     // Redo log, opened to append
+  private static Vector<String> smPending = new Vector<String>(); // of trx
+  private static long smLsn;        // sequence number of the last record
+
+  private static int smSyncInterval = 1;     // commits per forced write
+  private static long smSyncMillis = 0;      // max. delay of forced write
+  private static int smUnsynced;             // commits not forced yet
+  private static long smUnsyncedSince;       // time of the first of them
+  private static Thread smSyncThread;
+
+  private static int smCheckpointInterval = 10000; // records per checkpoint
+  private static int smLogged;               // records since checkpoint
+
+  private static ThreadLocal<Boolean> smReadTrx =
+  	new ThreadLocal<Boolean>();  // set in a read trx
+
+  private static boolean smLazy = true;      // load pages on first use
+  private static PagedStore smStore;         // paged file, if still needed
+  private static Backend smBackend;          // storage backend, if any
+
 
   /**
    * Open a database file or create it if not found.
@@ -53,22 +113,32 @@ public class POManager {
 
      // setup the database root.  May create it if not found.
      setupDbRoot(dbRootClassName);
+
+     // redo the logged updates, if any, and open the log
+     if (smBackend == null && smDbRoot instanceof Redoable) openLog();
   }
 
   /**
    * Shut down the database system, including closing the database file.
-   *
+   * With a backend, the changed objects are written.  With a redo log, the log is forced to disk and closed.  Otherwise
+   * a snapshot of the root replaces the file.
    */
   public static void shutdown() {
-    try {
-      FileOutputStream fos = new FileOutputStream(smDb);
-      ObjectOutputStream oos = new ObjectOutputStream(fos);
-      oos.writeObject(smDbRoot);
-      oos.flush();
-      oos.close();
-
-    } catch (IOException e) {
-      show(e.toString());
+    if (smBackend != null) {
+      try {
+        smBackend.commit(smDbRoot);  // changes made outside transactions
+        smBackend.close();
+      } catch (IOException e) {
+        show(e.toString());
+      }
+    } else if (smLog != null) {
+      closeLog();
+    } else {
+      try {
+        saveSnapshot();
+      } catch (IOException e) {
+        show(e.toString());
+      }
     }
 
     closeDb();
@@ -110,34 +180,211 @@ public class POManager {
     // System.out.println(s);
   }
 
-  /********** Dummy operations for transaction handling *************/
+  /********** Transaction handling *************/
 
   /**
-   * Open a read-only database transaction.
+   * Open a read-only database transaction.  Call it holding TOKEN.
    */
   public static void beginReadTrx() {
     debug("... begin read transaction");
+    smReadTrx.set(Boolean.TRUE);
   }
 
   /**
    * Open an update database transaction.
    */
-  public static void beginUpdateTrx() {
+  public static synchronized void beginUpdateTrx() {
     debug("... begin update transaction");
+    smPending.removeAllElements();
   }
 
   /**
-   * Abort a database transaction.
+   * Abort a database transaction.  The log records of an update
+   * transaction are discarded.  Note that the changes already made
+   * to the objects are not undone.
    */
   public static void abortTrx() {
     debug("... abort transaction");
+    if (endReadTrx()) return;
+
+    synchronized (POManager.class) {
+      smPending.removeAllElements();
+      if (smBackend != null) smBackend.abort();
+    }
   }
 
   /**
-   * Commit a database transaction.
+   * Commit a database transaction.  The log records of an update
+   * transaction are appended to the redo log as one group.  A
+   * checkpoint is done if enough records have been logged since the
+   * last one.
+   *
+   * @exception RuntimeException if the log cannot be written
    */
   public static void commitTrx() {
     debug("... commit transaction");
+    if (endReadTrx()) return;
+    commitUpdateTrx();
+  }
+
+  /**
+   * Commit an update transaction.
+   */
+  private static synchronized void commitUpdateTrx() {
+    if (smBackend != null) {
+      try {
+        smBackend.commit(smDbRoot);
+      } catch (IOException e) {
+        throw new RuntimeException("Cannot write the database: " + e);
+      }
+      return;
+    }
+    if (smLog == null || smPending.isEmpty()) return;
+
+    try {
+      appendLog();
+    } catch (IOException e) {
+      throw new RuntimeException("Cannot write the redo log: " + e);
+    } finally {
+      smPending.removeAllElements();
+    }
+
+    if (smLogged >= smCheckpointInterval) checkpoint();
+  }
+
+  /**
+   * Adds a record to the current update transaction.  The record must
+   * redo the update when passed to the redo method of the root.  Do
+   * nothing if there is no redo log.
+   *
+   * @param record	a record that redoes the update
+   */
+  public static synchronized void logUpdate(String record) {
+    if (smLog != null) smPending.addElement(record);
+  }
+
+  /**
+   * Writes a snapshot of the root and empties the redo log.  The
+   * snapshot is written to a temporary file, which then replaces the
+   * database file, so a crash leaves either the old or new snapshot.
+   * Do nothing if there is no redo log.
+   *
+   * @exception IllegalStateException if the current transaction has
+   *			log records that are not committed
+   * @exception RuntimeException if the snapshot cannot be written
+   */
+  public static synchronized void checkpoint() {
+    if (smLog == null) return;
+    if (!smPending.isEmpty())
+      throw new IllegalStateException("Uncommitted updates in checkpoint");
+
+    try {
+      syncLog();
+      saveSnapshot();
+
+      // The new snapshot has the sequence number of the last record,
+      // so the log is not redone twice if we crash before this.
+      smLog.getChannel().truncate(0);
+      smLogged = 0;
+    } catch (IOException e) {
+      throw new RuntimeException("Cannot write a checkpoint: " + e);
+    }
+  }
+
+  /**
+   * Marks the input object as changed in the current update
+   * transaction, so that a backend writes it at commit.  Like
+   * ObjectStore.dirty of PSE Pro, it is called by the methods that
+   * change the object.  Do nothing if there is no backend.
+   *
+   * @param o	the changed object
+   */
+  public static void dirty(Object o) {
+    Backend b = smBackend;
+    if (b != null) b.dirty(o);
+  }
+
+  /**
+   * Sets the storage backend.  Call it before initialize.  Use null
+   * for the default, which writes snapshots and a redo log.
+   *
+   * @param backend	the backend, or null
+   */
+  public static synchronized void setBackend(Backend backend) {
+    smBackend = backend;
+  }
+
+  /**
+   * Sets whether the database is loaded lazily.  If so, a paged file
+   * is read page by page on first use, and an Externalizable root is
+   * written in pages.  Otherwise the whole file is read on initialize,
+   * and the root is written as one stream.  Call it before initialize.
+   * <P>
+   * The default is to load lazily.
+   *
+   * @param lazy	true to load lazily
+   */
+  public static synchronized void setLazyLoading(boolean lazy) {
+    smLazy = lazy;
+  }
+
+  /**
+   * Sets how often the redo log is forced to disk.  It is forced after
+   * the given number of commits, or when the oldest commit not forced
+   * is older than the given delay, whichever comes first.  Records
+   * not forced are kept by the operating system if the program
+   * crashes, but they may be lost if the system crashes.
+   * <P>
+   * The default is to force the log at every commit.
+   *
+   * @param commits	number of commits per forced write (at least 1)
+   * @param millis	maximum delay in milli seconds.  0 for no limit.
+   */
+  public static synchronized void setSyncInterval(int commits,
+  	long millis) {
+    smSyncInterval = Math.max(commits, 1);
+    smSyncMillis = Math.max(millis, 0);
+    if (smSyncMillis > 0 && smSyncThread == null) startSyncThread();
+  }
+
+  /**
+   * Sets the number of log records between automatic checkpoints.
+   * The default is 10000.
+   *
+   * @param records	number of records per checkpoint
+   */
+  public static synchronized void setCheckpointInterval(int records) {
+    smCheckpointInterval = Math.max(records, 1);
+  }
+
+  /**
+   * Returns the number of log records between automatic checkpoints.
+   *
+   * @return number of records per checkpoint
+   */
+  public static synchronized int getCheckpointInterval() {
+    return smCheckpointInterval;
+  }
+
+  /**
+   * Returns the number of pages read so far from a paged file that
+   * is loaded lazily.
+   *
+   * @return the number of pages read.  -1 if no paged file is open,
+   *		e.g. it has been read all.
+   */
+  public static synchronized int getPagesRead() {
+    return (smStore != null) ? smStore.getPagesRead() : -1;
+  }
+
+  /**
+   * Returns the number of pages of a paged file that is loaded
+   * lazily.
+   *
+   * @return the number of pages.  -1 if no paged file is open.
+   */
+  public static synchronized int getPageCount() {
+    return (smStore != null) ? smStore.getPageCount() : -1;
   }
 
   /**
@@ -151,8 +398,79 @@ public class POManager {
      show(e.toString());
   }
 
+  /**
+   * An interface for a database root that redoes logged updates.
+   */
+  public interface Redoable {
+
+    /**
+     * Redoes an update with a record given to logUpdate.
+     *
+     * @param record	a log record
+     * @param out	where to write the output of the update.  It was
+     *			shown when the update was first done, so the
+     *			output is discarded when the log is redone.
+     * @exception Exception if the update fails
+     */
+    public void redo(String record, PrintStream out) throws Exception;
+  }
+
+  /**
+   * An interface for a storage backend, which keeps the objects in
+   * the database file in its own way.
+   */
+  public interface Backend {
+
+    /**
+     * Opens the database file, or creates it if not found.
+     *
+     * @param file	the database file
+     * @return the root object, or null if the file has none
+     * @exception IOException if the file cannot be read
+     */
+    public Object open(File file) throws IOException;
+
+    /**
+     * Marks an object as changed.
+     *
+     * @param o	the changed object
+     */
+    public void dirty(Object o);
+
+    /**
+     * Writes the changed objects.  A new root is written too.
+     *
+     * @param root	the root object
+     * @exception IOException if the file cannot be written
+     */
+    public void commit(Object root) throws IOException;
+
+    /**
+     * Forgets the changed objects.
+     */
+    public void abort();
+
+    /**
+     * Closes the database file.
+     *
+     * @exception IOException if an I/O error occurs
+     */
+    public void close() throws IOException;
+  }
+
   /********** Private methods *************/
 
+  /**
+   * Ends the read transaction of this thread, if any.
+   *
+   * @return true if there was a read transaction
+   */
+  private static boolean endReadTrx() {
+    if (smReadTrx.get() == null) return false;
+    smReadTrx.remove();
+    return true;
+  }
+
   /**
    * Open a database file or create it if not found.
    * Since we don't have transaction management, we
@@ -172,6 +490,10 @@ public class POManager {
    *
    */
   private static void closeDb() {
+     if (smStore != null) {  // pages not read are not needed
+       smStore.close();
+       smStore = null;
+     }
      smDb = null;
   }
 
@@ -183,11 +505,37 @@ public class POManager {
    */
   private static void setupDbRoot(String dbRootClassName) {
 
-    if (smDb.exists()) {  // DB file exists, read it
+    smLsn = 0;
+    if (smBackend != null) {  // the backend reads the file, if any
+      try {
+	smDbRoot = smBackend.open(smDb);
+	if (smDbRoot == null) smDbRoot = Class.forName(dbRootClassName)
+	  .getDeclaredConstructor().newInstance();
+      } catch (Exception e) {
+	show(e.toString());
+      }
+
+    } else if (smDb.exists() && PagedStore.isPaged(smDb)) {  // read the first page
+      try {
+	smStore = new PagedStore(smDb);
+	smDbRoot = smStore.getRoot();
+	smLsn = smStore.getLsn();
+	if (!smLazy) closeStore();  // read the rest now
+      } catch (Exception e) {
+	show(e.toString());
+      }
+
+    } else if (smDb.exists()) {  // DB file exists, read it
       try {
 	FileInputStream fis = new FileInputStream(smDb);
-	ObjectInputStream ois = new ObjectInputStream(fis);
+	ObjectInputStream ois = new ObjectInputStream(
+		new BufferedInputStream(fis, BUFFER_SIZE));
 	smDbRoot = ois.readObject();
+	try {
+	  smLsn = ois.readLong();  // last record in the snapshot
+	} catch (EOFException e) {
+	  // written without a redo log
+	}
 	ois.close();
 
       } catch (Exception e) {
@@ -207,4 +555,230 @@ public class POManager {
 
   }
 
+  /**
+   * Reads all pages not read yet, if any, and closes the paged file.
+   *
+   * @exception RuntimeException if a page cannot be read
+   */
+  private static void closeStore() {
+    if (smStore == null) return;
+    try {
+      smStore.loadAll();
+    } catch (IOException e) {
+      throw new RuntimeException("Cannot read the database: " + e);
+    } finally {
+      smStore.close();
+      smStore = null;
+    }
+  }
+
+  /**
+   * Writes a snapshot to a temporary file, which then replaces the
+   * database file, so a crash leaves either the old or new snapshot.
+   * A paged file that is still open is read from the new file then.
+   *
+   * @exception IOException if an I/O error occurs
+   */
+  private static void saveSnapshot() throws IOException {
+    File tmp = new File(smDb.getPath() + ".tmp");
+    writeSnapshot(tmp);
+    Files.move(tmp.toPath(), smDb.toPath(),
+    		StandardCopyOption.REPLACE_EXISTING,
+		StandardCopyOption.ATOMIC_MOVE);
+    if (smStore != null) smStore.reopen(smDb);
+  }
+
+  /**
+   * Writes the root and the sequence number of the last log record
+   * to the input file, and forces it to disk.  If the paged file is
+   * still open, its pages not read are copied, unless all have been
+   * read, in which case the file is closed and written whole.
+   *
+   * @param file	the file
+   * @exception IOException if an I/O error occurs
+   */
+  private static void writeSnapshot(File file) throws IOException {
+    if (smStore != null && smStore.isAllRead()) closeStore();
+    if (smStore != null) {
+      smStore.rewrite(file, smDbRoot, smLsn);
+      return;
+    }
+    if (smLazy && smDbRoot instanceof Externalizable) {
+      PagedStore.write(file, smDbRoot, smLsn);
+      return;
+    }
+
+    FileOutputStream fos = new FileOutputStream(file);
+    ObjectOutputStream oos = new ObjectOutputStream(
+    		new BufferedOutputStream(fos, BUFFER_SIZE));
+    oos.writeObject(smDbRoot);
+    oos.writeLong(smLsn);
+    oos.flush();
+    fos.getFD().sync();
+    oos.close();
+  }
+
+  /**
+   * Redoes the log records written after the snapshot, and opens
+   * the log for appending.  A torn group at the end of the log (from
+   * a crash while writing it) is cut off.
+   */
+  private static void openLog() {
+    smLogFile = new File(smDb.getPath() + ".log");
+    smLogged = 0;
+    long good = 0;  // length of the valid part of the log
+
+    if (smLogFile.exists()) {
+      try {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+		new FileInputStream(smLogFile), BUFFER_SIZE));
+	long length = smLogFile.length();
+	while (length - good >= 8) {
+	  int n = in.readInt();
+	  if (n < 12 || n > length - good - 8) break;  // torn group
+	  byte[] payload = new byte[n];
+	  in.readFully(payload);
+	  CRC32 crc = new CRC32();
+	  crc.update(payload, 0, n);
+	  if (in.readInt() != (int) crc.getValue()) break;
+
+	  redoGroup(payload);
+	  good += n + 8;
+	}
+	in.close();
+      } catch (IOException e) {
+        show(e.toString());
+      }
+    }
+
+    try {
+      smLog = new FileOutputStream(smLogFile, true);
+      smLog.getChannel().truncate(good);
+      smUnsynced = 0;
+    } catch (IOException e) {
+      show(e.toString());
+      smLog = null;
+    }
+  }
+
+  /**
+   * Redoes the records of one log group that are not in the snapshot.
+   *
+   * @param payload	the group without length and checksum
+   * @exception IOException if the group cannot be read
+   */
+  private static void redoGroup(byte[] payload) throws IOException {
+    DataInputStream in = new DataInputStream(
+    	new ByteArrayInputStream(payload));
+    long lsn = in.readLong();
+    int count = in.readInt();
+    PrintStream quiet = new PrintStream(OutputStream.nullOutputStream());
+    for (int i=0; i<count; i++, lsn++) {
+      String record = in.readUTF();
+      if (lsn <= smLsn) continue;  // already in the snapshot
+
+      try {
+        ((Redoable) smDbRoot).redo(record, quiet);  // shown already
+      } catch (Exception e) {
+        show("Cannot redo \"" + record + "\": " + e.getMessage());
+      }
+      smLsn = lsn;
+      smLogged++;
+    }
+  }
+
+  /**
+   * Appends the pending records to the log as one group:
+   * length, first sequence number, count, records and CRC-32.
+   * The group is written with a single write.
+   *
+   * @exception IOException if an I/O error occurs
+   */
+  private static void appendLog() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(0);  // length, filled in below
+    out.writeLong(smLsn + 1);
+    out.writeInt(smPending.size());
+    for (int i=0; i<smPending.size(); i++)
+      out.writeUTF(smPending.elementAt(i));
+    out.writeInt(0);  // CRC-32, filled in below
+    out.flush();
+
+    byte[] b = bytes.toByteArray();
+    int n = b.length - 8;
+    CRC32 crc = new CRC32();
+    crc.update(b, 4, n);
+    putInt(b, 0, n);
+    putInt(b, b.length - 4, (int) crc.getValue());
+    smLog.write(b);
+
+    smLsn += smPending.size();
+    smLogged += smPending.size();
+    if (smUnsynced++ == 0) smUnsyncedSince = System.currentTimeMillis();
+    if (smUnsynced >= smSyncInterval || (smSyncMillis > 0 &&
+    	System.currentTimeMillis() - smUnsyncedSince >= smSyncMillis)) {
+      syncLog();
+    }
+  }
+
+  /**
+   * Stores an int into the array, high byte first.
+   */
+  private static void putInt(byte[] b, int off, int v) {
+    b[off] = (byte) (v >>> 24);
+    b[off+1] = (byte) (v >>> 16);
+    b[off+2] = (byte) (v >>> 8);
+    b[off+3] = (byte) v;
+  }
+
+  /**
+   * Forces the committed log groups to disk.
+   *
+   * @exception IOException if an I/O error occurs
+   */
+  private static synchronized void syncLog() throws IOException {
+    if (smLog == null || smUnsynced == 0) return;
+    smLog.getChannel().force(false);
+    smUnsynced = 0;
+  }
+
+  /**
+   * Forces and closes the redo log.
+   */
+  private static synchronized void closeLog() {
+    try {
+      syncLog();
+      smLog.close();
+    } catch (IOException e) {
+      show(e.toString());
+    }
+    smLog = null;
+    smPending.removeAllElements();
+  }
+
+  /**
+   * Starts a daemon thread that forces the log when the oldest commit
+   * not forced is older than the maximum delay.
+   */
+  private static void startSyncThread() {
+    smSyncThread = new Thread("POManager log sync") {
+      public void run() {
+        while (true) {
+	  try {
+	    Thread.sleep(smSyncMillis > 0 ? smSyncMillis : 1000);
+	    synchronized (POManager.class) {
+	      if (smSyncMillis > 0 && smUnsynced > 0 && System.currentTimeMillis()
+	      		- smUnsyncedSince >= smSyncMillis) syncLog();
+	    }
+	  } catch (Exception e) {
+	    // try again later
+	  }
+	}
+      }
+    };
+    smSyncThread.setDaemon(true);
+    smSyncThread.start();
+  }
+
 }
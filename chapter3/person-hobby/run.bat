@@ -1 +1 @@
-java DBRoot %1 %2
+java DBRoot %1 %2 %3
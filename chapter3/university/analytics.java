@@ -0,0 +1,344 @@
+//*************************************************************************
+/**
+ * Analytics.java - Statistics of the departments and campuses of a
+ *	university, computed in parallel
+ *
+ *   Copyright (C) 1998-2000    Yun-Tung Lau
+ *   All Rights Reserved.  See the license file in the home
+ *   directory of this package for important license information.
+ */
+//*************************************************************************
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class computes the statistics of each department (its courses,
+ * instructors and sessions, and the load of its instructors) and of
+ * each campus (its classrooms and their use).  The departments and
+ * campuses are split among the threads of a fork-join pool, each
+ * computes the statistics of its share, and the results are merged in
+ * the order of the extents.  The objects are only read, so the
+ * statistics may be computed in a read transaction.
+ * <P>
+ * Typical usage:
+ * <PRE>
+ *    Analytics a = university.analyze(4);
+ *    a.writeTo(out);
+ * </PRE>
+ */
+public class Analytics {
+
+  /** The teaching hours of a classroom in a week: M-F, 8 to 18. */
+  public final static int WEEK_MINUTES = 5 * 10 * 60;
+
+  private Vector<DepartmentStats> departments =
+  	new Vector<DepartmentStats>();
+  private Vector<CampusStats> campuses = new Vector<CampusStats>();
+  private int parallelism = 1;
+  private long nanos;
+
+
+  /**
+   * Computes the statistics of a university.
+   *
+   * @param u	the university
+   * @param parallelism	number of threads of the fork-join pool
+   * @return the statistics
+   */
+  public static Analytics compute(University u, int parallelism) {
+    long t0 = System.nanoTime();
+    Vector<NamedObject> units = new Vector<NamedObject>();
+    units.addAll(u.getDepartmentList());
+    units.addAll(u.getCampusList());
+    NamedObject[] a = units.toArray(new NamedObject[units.size()]);
+
+    Analytics result;
+    ForkJoinPool pool = new ForkJoinPool(Math.max(parallelism, 1));
+    try {
+      result = pool.invoke(new Task(a, 0, a.length));
+    } finally {
+      pool.shutdown();
+    }
+    result.parallelism = Math.max(parallelism, 1);
+    result.nanos = System.nanoTime() - t0;
+    return result;
+  }
+
+  /**
+   * Returns the statistics of the departments.
+   */
+  public DepartmentStats[] getDepartmentStats() {
+    return departments.toArray(new DepartmentStats[departments.size()]);
+  }
+
+  /**
+   * Returns the statistics of the campuses.
+   */
+  public CampusStats[] getCampusStats() {
+    return campuses.toArray(new CampusStats[campuses.size()]);
+  }
+
+  /**
+   * Returns the time the statistics took.
+   *
+   * @return the time in nano seconds
+   */
+  public long getTime() {
+    return nanos;
+  }
+
+  /**
+   * Returns the statistics as a table.
+   */
+  public String toString() {
+    StringBuffer b = new StringBuffer();
+    try {
+      writeTo(b);
+    } catch (IOException e) {}  // not thrown by a StringBuffer
+    return b.toString();
+  }
+
+  /**
+   * Writes the statistics as a table: a row for each department and
+   * campus, and one for all of them.
+   *
+   * @param out	where to write the statistics
+   * @exception IOException if an I/O error occurs
+   */
+  public void writeTo(Appendable out) throws IOException {
+    out.append("  department        courses  unsched  instrs  sessions"
+    	+ "   hours  max/instr\n");
+    DepartmentStats all = new DepartmentStats("all");
+    for (int i=0; i<departments.size(); i++) {
+      DepartmentStats d = departments.elementAt(i);
+      d.writeTo(out);
+      all.merge(d);
+    }
+    all.writeTo(out);
+
+    out.append("  campus          classrooms  sessions   hours  use\n");
+    CampusStats total = new CampusStats("all");
+    for (int i=0; i<campuses.size(); i++) {
+      CampusStats c = campuses.elementAt(i);
+      c.writeTo(out);
+      total.merge(c);
+    }
+    total.writeTo(out);
+    out.append("  (" + Math.round(nanos / 1e5) / 10.0 + " ms on "
+    	+ parallelism + " threads; use is of " + WEEK_MINUTES / 60
+	+ " hours a week)\n");
+  }
+
+  /**
+   * Computes the statistics of a range of departments and campuses,
+   * splitting it in halves.
+   */
+  private static class Task extends RecursiveTask<Analytics> {
+    private NamedObject[] units;
+    private int lo, hi;
+
+    Task(NamedObject[] units, int lo, int hi) {
+      this.units = units;
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    protected Analytics compute() {
+      if (hi - lo <= 1) {
+	Analytics a = new Analytics();
+	if (hi > lo && units[lo] instanceof Department)
+	  a.departments.addElement(analyze((Department) units[lo]));
+	else if (hi > lo)
+	  a.campuses.addElement(analyze((Campus) units[lo]));
+	return a;
+      }
+      int mid = (lo + hi) >>> 1;
+      Task left = new Task(units, lo, mid);
+      left.fork();
+      Analytics b = new Task(units, mid, hi).compute();
+      Analytics a = left.join();
+      a.departments.addAll(b.departments);  // in the order of the extents
+      a.campuses.addAll(b.campuses);
+      return a;
+    }
+  }
+
+  /**
+   * Computes the statistics of a department.
+   */
+  static DepartmentStats analyze(Department d) {
+    DepartmentStats s = new DepartmentStats(d.getName());
+    List<Course> cs = d.getCourseList();
+    s.courses = cs.size();
+    for (int i=0; i<cs.size(); i++) {
+      List<Session> t = cs.get(i).getSessionList();
+      if (t.isEmpty()) s.unscheduled++;
+      s.sessions += t.size();
+      for (int j=0; j<t.size(); j++) s.minutes += minutes(t.get(j));
+    }
+    List<Instructor> is = d.getInstructorList();
+    s.instructors = is.size();
+    for (int i=0; i<is.size(); i++) {
+      int n = is.get(i).getSessionCount();
+      if (n > s.maxSessions || s.busiest == null) {
+	s.maxSessions = n;
+	s.busiest = is.get(i).getName();
+      }
+    }
+    return s;
+  }
+
+  /**
+   * Computes the statistics of a campus.
+   */
+  static CampusStats analyze(Campus c) {
+    CampusStats s = new CampusStats(c.getName());
+    List<Classroom> rs = c.getClassroomList();
+    s.classrooms = rs.size();
+    for (int i=0; i<rs.size(); i++) {
+      List<Session> t = rs.get(i).getSessionList();
+      s.sessions += t.size();
+      for (int j=0; j<t.size(); j++) s.minutes += minutes(t.get(j));
+    }
+    return s;
+  }
+
+  /**
+   * Returns the minutes a week of a session.
+   */
+  private static long minutes(Session session) {
+    Schedule schedule = session.getSchedule();
+    if (schedule == null) return 0;
+    int[] s = schedule.getIntervals();
+    long n = 0;
+    for (int k=0; k<s.length; k+=2) n += s[k+1] - s[k];
+    return n;
+  }
+
+  private static String pad(String s, int width) {
+    StringBuffer b = new StringBuffer(s);
+    while (b.length() < Math.abs(width)) {
+      if (width > 0) b.insert(0, ' ');
+      else b.append(' ');
+    }
+    return b.toString();
+  }
+
+  /**
+   * The statistics of a department, or of several merged.
+   */
+  public static class DepartmentStats {
+    String name;
+    int courses, unscheduled, instructors, sessions, maxSessions;
+    long minutes;
+    String busiest;  // instructor with the most sessions
+
+    DepartmentStats(String name) {
+      this.name = name;
+    }
+
+    /** Returns the name of the department. */
+    public String getName() { return name; }
+
+    /** Returns the number of courses. */
+    public int getCourseCount() { return courses; }
+
+    /** Returns the number of courses without sessions. */
+    public int getUnscheduledCount() { return unscheduled; }
+
+    /** Returns the number of instructors. */
+    public int getInstructorCount() { return instructors; }
+
+    /** Returns the number of sessions of the courses. */
+    public int getSessionCount() { return sessions; }
+
+    /** Returns the minutes a week of the sessions. */
+    public long getMinutes() { return minutes; }
+
+    /** Returns the most sessions of an instructor. */
+    public int getMaxSessions() { return maxSessions; }
+
+    /** Returns the instructor with the most sessions; null if none. */
+    public String getBusiest() { return busiest; }
+
+    void merge(DepartmentStats d) {
+      courses += d.courses;
+      unscheduled += d.unscheduled;
+      instructors += d.instructors;
+      sessions += d.sessions;
+      minutes += d.minutes;
+      if (d.busiest != null
+	  && (busiest == null || d.maxSessions > maxSessions)) {
+	maxSessions = d.maxSessions;
+	busiest = d.busiest;
+      }
+    }
+
+    void writeTo(Appendable out) throws IOException {
+      out.append("  ").append(pad(name, -16))
+	 .append(pad(String.valueOf(courses), 9))
+	 .append(pad(String.valueOf(unscheduled), 9))
+	 .append(pad(String.valueOf(instructors), 8))
+	 .append(pad(String.valueOf(sessions), 10))
+	 .append(pad(String.valueOf(Math.round(minutes / 60.0)), 8))
+	 .append(pad(String.valueOf(maxSessions), 11));
+      if (busiest != null) out.append(" (").append(busiest).append(')');
+      out.append('\n');
+    }
+  }
+
+  /**
+   * The statistics of a campus, or of several merged.
+   */
+  public static class CampusStats {
+    String name;
+    int classrooms, sessions;
+    long minutes;
+
+    CampusStats(String name) {
+      this.name = name;
+    }
+
+    /** Returns the name of the campus. */
+    public String getName() { return name; }
+
+    /** Returns the number of classrooms. */
+    public int getClassroomCount() { return classrooms; }
+
+    /** Returns the number of sessions in the classrooms. */
+    public int getSessionCount() { return sessions; }
+
+    /** Returns the minutes a week of the sessions. */
+    public long getMinutes() { return minutes; }
+
+    /**
+     * Returns the use of the classrooms: the minutes of the sessions
+     * over WEEK_MINUTES for each classroom.
+     *
+     * @return the use in per cent
+     */
+    public double getUtilization() {
+      return classrooms == 0 ? 0 : 100.0 * minutes / classrooms / WEEK_MINUTES;
+    }
+
+    void merge(CampusStats c) {
+      classrooms += c.classrooms;
+      sessions += c.sessions;
+      minutes += c.minutes;
+    }
+
+    void writeTo(Appendable out) throws IOException {
+      out.append("  ").append(pad(name, -16))
+	 .append(pad(String.valueOf(classrooms), 10))
+	 .append(pad(String.valueOf(sessions), 10))
+	 .append(pad(String.valueOf(Math.round(minutes / 60.0)), 8))
+	 .append(pad(Math.round(getUtilization()) + "%", 5))
+	 .append('\n');
+    }
+  }
+
+}
@@ -0,0 +1,87 @@
+//*************************************************************************
+/**
+ * AnalyticsBench.java - A benchmark for the parallel statistics of the
+ *	university.
+ *
+ *   Copyright (C) 1998-2000    Yun-Tung Lau
+ *   All Rights Reserved.  See the license file in the home
+ *   directory of this package for important license information.
+ */
+//*************************************************************************
+
+import java.util.Vector;
+
+/**
+ * This class builds a university with the script of IndexBench: 100
+ * departments of 500 courses, each with a session, and 10 campuses.
+ * It then computes the statistics of Analytics on 1, 2, 4, ... threads
+ * up to the number of processors, and shows the time of each and the
+ * speedup over one thread.  The statistics themselves are shown once.
+ * <P>
+ * Usage: java AnalyticsBench [nDept] [nCourse] [rounds]
+ * <P>
+ * The defaults are 100 departments with 500 courses each, and 20
+ * rounds for each number of threads.
+ */
+public class AnalyticsBench {
+
+  /**
+   * Returns the mean time of the statistics.
+   *
+   * @param u	the university
+   * @param threads	number of threads
+   * @param rounds	number of rounds
+   * @return the time in micro seconds
+   */
+  public static long runCase(University u, int threads, int rounds) {
+    long t = 0;
+    for (int i=0; i<rounds; i++) t += u.analyze(threads).getTime();
+    return t / rounds / 1000;
+  }
+
+  /**
+   * Shows the input string.
+   *
+   * @s the string to be shown
+   */
+  public static void show(String s) {
+    System.out.println(s);
+  }
+
+  /**
+   * Main method for the benchmark.
+   *
+   * @exception Exception if any exception is thrown
+   */
+  public static void main(String[] args) throws Exception {
+    int nDept = 100;
+    int nCourse = 500;
+    int rounds = 20;
+    if (args.length >= 1) nDept = Integer.parseInt(args[0]);
+    if (args.length >= 2) nCourse = Integer.parseInt(args[1]);
+    if (args.length >= 3) rounds = Integer.parseInt(args[2]);
+
+    University u = new University();
+    Vector<String> script = IndexBench.script(nDept, nCourse);
+    for (int i=0; i<script.size(); i++) u.redo(script.elementAt(i), System.out);
+    int cpus = Runtime.getRuntime().availableProcessors();
+
+    // warm up the JIT compiler first
+    runCase(u, 1, rounds);
+    runCase(u, cpus, rounds);
+    show(u.analyze(cpus).toString());
+
+    show("Departments: " + nDept + " x " + nCourse + " courses, rounds: "
+    	+ rounds + ", processors: " + cpus);
+    show("  threads   time (us)   speedup");
+    long one = 0;
+    for (int n=1; ; n=Math.min(2*n, cpus)) {
+      long t = runCase(u, n, rounds);
+      if (n == 1) one = t;
+      show("  " + n + "\t    " + t + "\t\t" + Math.round(100.0 * one
+      	/ Math.max(t, 1)) / 100.0);
+      if (n == cpus) break;
+    }
+  }
+
+}
@@ -8,21 +8,32 @@
  */
 //*************************************************************************
 
-import java.util.Enumeration;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.List;
 
 /**
  * This class describes a campus with classrooms.
  */
-public class Campus extends NamedObject {
+public class Campus extends NamedObject
+	implements PVector.KeyListener {
 
   /** A vector is used to contain the classrooms. */
-  private PVector classrooms = new PVector();
+  private PVector classrooms = new PVector(NAME_KEY);
+
+  /** 
+   * The university of this campus, which indexes its classrooms by
+   * name.  Set when it is added to the university, or when the
+   * university is first used after loading.  Not persistent.
+   */
+  private transient University university;
 
   /** 
    * Constructs an object.
    */
   public Campus() {
-
+    listen();
   }
 
   /** 
@@ -32,6 +43,7 @@ public class Campus extends NamedObject {
    */
   public Campus(String name) {
     super(name); 
+    listen();
   }
 
 
@@ -43,10 +55,17 @@ public class Campus extends NamedObject {
    * @return the classrooms of this campus as an array
    */
   public Classroom[] getClassrooms() {
-    Object[] o = classrooms.toArray();
-    Classroom[] r = new Classroom[o.length];
-    for (int i=0; i<o.length; i++) r[i] = (Classroom)o[i];
-    return r;
+    return (Classroom[]) classrooms.toArray(new Classroom[classrooms.size()]);
+  }
+
+  /**
+   * Returns a read-only list view of the classrooms.  Unlike getClassrooms,
+   * it does not copy the classrooms.
+   *
+   * @return the classrooms as a read-only list
+   */
+  public List<Classroom> getClassroomList() {
+    return classrooms.asList();
   }
 
   /**
@@ -65,12 +84,7 @@ public class Campus extends NamedObject {
    * @return Classroom object.  Null if none matched.
    */
   public Classroom getClassroom(String name) {
-    Enumeration e = classrooms.elements();
-    while (e.hasMoreElements()) {
-      Classroom c = (Classroom) e.nextElement();
-      if (c.getName().equals(name)) return c;
-    }
-    return null;
+    return (Classroom) classrooms.getByKey(name);
   }
 
   /**
@@ -90,6 +104,8 @@ public class Campus extends NamedObject {
    */
   public void addClassroom(Classroom classroom) {
     classrooms.addElement(classroom);
+    if (university != null) university.indexAdd(classroom, this);
+    POManager.dirty(this);
   }
 
   /** 
@@ -98,7 +114,10 @@ public class Campus extends NamedObject {
    * @param name	name of the classroom
    */
   public void addClassroom(String name) {
-    classrooms.add(new Classroom(name, null));
+    Classroom classroom = new Classroom(name, null);
+    classrooms.add(classroom);
+    if (university != null) university.indexAdd(classroom, this);
+    POManager.dirty(this);
   }
 
   /**
@@ -114,6 +133,8 @@ public class Campus extends NamedObject {
 
     /* Remove the classroom Object from the vector */
     classrooms.removeElement(c);
+    if (university != null) university.indexRemove(c, this);
+    POManager.dirty(this);
   }
 
   /**
@@ -126,13 +147,47 @@ public class Campus extends NamedObject {
     if (!classrooms.contains(classroom))
       throw new Exception("Classroom not found: " + classroom.getName());
     classrooms.removeElement(classroom);
+    if (university != null) university.indexRemove(classroom, this);
+    POManager.dirty(this);
   }
 
   /**
    * Removes all classroom objects.
    */
   public void removeAllClassrooms( ) {
+    NamedObject[] removed = getClassrooms();
     classrooms.removeAllElements();
+    if (university != null) university.indexRemoveAll(removed, this);
+    POManager.dirty(this);
+  }
+
+  /**
+   * Sets the university that indexes the classrooms of this campus.
+   *
+   * @param u	the university; null if this campus is removed from it
+   */
+  void setUniversity(University u) {
+    university = u;
+  }
+
+  /**
+   * Called when one of the classrooms of this campus is renamed.  The
+   * university is told, to update its index.
+   *
+   * @param v		the vector of the classroom
+   * @param element	the classroom
+   * @param oldKey	the old name of the classroom
+   */
+  public void keyChanged(PVector v, Object element, Object oldKey) {
+    if (university != null) 
+      university.indexRename((NamedObject) element, (String) oldKey, this);
+  }
+
+  /**
+   * Listens to the renaming of the classrooms.
+   */
+  private void listen() {
+    classrooms.setKeyListener(this);
   }
 
   /** 
@@ -141,16 +196,48 @@ public class Campus extends NamedObject {
    * @return the information of this campus
    */
   public String toString() { 
-    String s = "  Campus: " + super.toString() + "\n";
-    s += "    Classrooms:\n";
+    return writeToString();
+  }
 
-    Classroom[] h = getClassrooms();
-    for (int i=0; i<h.length; i++) {
-      s += h[i].toString();
+  /** 
+   * Writes the information of this campus, with its classrooms.
+   *
+   * @param out	where to write the information
+   * @exception IOException if an I/O error occurs
+   */
+  public void writeTo(Appendable out) throws IOException { 
+    out.append("  Campus: ").append(getName()).append('\n');
+    out.append("    Classrooms:\n");
+
+    List<Classroom> h = getClassroomList();
+    for (int i=0; i<h.size(); i++) {
+      h.get(i).writeTo(out);
     }
+  }
 
-    return s;
+  /**
+   * Writes the fields of this object to the stream.
+   *
+   * @param out	the stream to write to
+   * @exception IOException if an I/O error occurs
+   */
+  public void writeExternal(ObjectOutput out) throws IOException {
+    super.writeExternal(out);
+    out.writeObject(classrooms);
   }
 
-}
+  /**
+   * Reads the fields written by writeExternal.
+   *
+   * @param in	the stream to read from
+   * @exception IOException if an I/O error occurs
+   * @exception ClassNotFoundException if a class is not found
+   */
+  public void readExternal(ObjectInput in)
+          throws IOException, ClassNotFoundException {
+    super.readExternal(in);
+    classrooms = (PVector) in.readObject();
+    listen();
+  }
 
+}
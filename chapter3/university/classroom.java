@@ -8,7 +8,10 @@
  */
 //*************************************************************************
 
-import java.util.Enumeration;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.List;
 
 /**
  * A class describing a classroom.
@@ -20,8 +23,19 @@ public class Classroom extends NamedObject {
   private String location;
 
   /** A vector is used to contain the sessions. */
-  private PVector sessions = new PVector();
+  private PVector sessions = new PVector(NAME_KEY);
 
+  /** The sessions by time, see getIndex.  Not persistent. */
+  private transient SessionIndex index;
+
+
+  /** 
+   * Constructs an empty classroom object.  It is used when the object
+   * is read from a stream.
+   */
+  public Classroom() {
+
+  }
 
   /** 
    * Constructs a classroom object.
@@ -59,6 +73,7 @@ public class Classroom extends NamedObject {
    */
   public void setLocation(String location) { 
     this.location = location; 
+    POManager.dirty(this);
   }
 
   /**
@@ -68,12 +83,7 @@ public class Classroom extends NamedObject {
    * @return Session object.  Null if none matched.
    */
   public Session getSession(String name) {
-    Enumeration e = sessions.elements();
-    while (e.hasMoreElements()) {
-      Session c = (Session) e.nextElement();
-      if (c.getName().equals(name)) return c;
-    }
-    return null;
+    return (Session) sessions.getByKey(name);
   }
 
   /** 
@@ -81,11 +91,18 @@ public class Classroom extends NamedObject {
    *
    * @return the sessions of this classroom as an array
    */
-  public Session[] getSessions() { 
-    Object[] o = sessions.toArray();
-    Session[] r = new Session[o.length];
-    for (int i=0; i<o.length; i++) r[i] = (Session)o[i];
-    return r;
+  public Session[] getSessions() {
+    return (Session[]) sessions.toArray(new Session[sessions.size()]);
+  }
+
+  /**
+   * Returns a read-only list view of the sessions.  Unlike getSessions,
+   * it does not copy the sessions.
+   *
+   * @return the sessions as a read-only list
+   */
+  public List<Session> getSessionList() {
+    return sessions.asList();
   }
 
   /** 
@@ -95,6 +112,8 @@ public class Classroom extends NamedObject {
    */
   public void addSession(Session session) {
     sessions.add(session);
+    if (index != null) index.add(session);
+    POManager.dirty(this);
   }
 
   /**
@@ -110,6 +129,8 @@ public class Classroom extends NamedObject {
 
     /* Remove the session Object from the vector */
     sessions.removeElement(c);
+    if (index != null) index.remove(c);
+    POManager.dirty(this);
   }
 
   /**
@@ -122,6 +143,8 @@ public class Classroom extends NamedObject {
     if (!sessions.contains(session))
       throw new Exception("Session not found: " + session.getName());
     sessions.removeElement(session);
+    if (index != null) index.remove(session);
+    POManager.dirty(this);
   }
 
   /**
@@ -129,6 +152,47 @@ public class Classroom extends NamedObject {
    */
   public void removeAllSessions( ) {
     sessions.removeAllElements();
+    index = null;
+    POManager.dirty(this);
+  }
+
+  /**
+   * Returns the sessions of this classroom whose time slots overlap
+   * those of the input schedule.
+   *
+   * @param schedule	the schedule
+   * @param except	a session to leave out; may be null
+   * @return the sessions
+   */
+  public Session[] getConflicts(Schedule schedule, Session except) {
+    return getIndex().getConflicts(schedule, except);
+  }
+
+  /**
+   * Updates the index for a session whose schedule has changed.
+   *
+   * @param session	the session
+   */
+  void reindex(Session session) {
+    if (index == null) return;
+    index.remove(session);
+    if (sessions.contains(session)) index.add(session);
+  }
+
+  /**
+   * Returns the index of the sessions by time.  It is built when first
+   * needed, e.g. after the classroom is read.
+   *
+   * @return the index
+   */
+  private synchronized SessionIndex getIndex() {
+    if (index == null) {
+      SessionIndex x = new SessionIndex();
+      List<Session> t = getSessionList();
+      for (int i=0; i<t.size(); i++) x.add(t.get(i));
+      index = x;
+    }
+    return index;
   }
 
   /** 
@@ -137,18 +201,51 @@ public class Classroom extends NamedObject {
    * @return the information of this classroom
    */
   public String toString() { 
-    String s = "      " + super.toString();
-    if (location != null) s += " (" + location + ")";
-    s += "\n";
-    s += "        Sessions:\n";
-
-    Session[] t = getSessions();
-    for (int i=0; i<t.length; i++) {
-      s += t[i].toString(this);
+    return writeToString();
+  }
+
+  /** 
+   * Writes the information of this classroom, with its sessions.
+   *
+   * @param out	where to write the information
+   * @exception IOException if an I/O error occurs
+   */
+  public void writeTo(Appendable out) throws IOException { 
+    out.append("      ").append(getName());
+    if (location != null) out.append(" (").append(location).append(')');
+    out.append('\n');
+    out.append("        Sessions:\n");
+
+    List<Session> t = getSessionList();
+    for (int i=0; i<t.size(); i++) {
+      t.get(i).writeTo(out, this);
     }
+  }
 
-    return s;
+  /**
+   * Writes the fields of this object to the stream.
+   *
+   * @param out	the stream to write to
+   * @exception IOException if an I/O error occurs
+   */
+  public void writeExternal(ObjectOutput out) throws IOException {
+    super.writeExternal(out);
+    out.writeObject(location);
+    out.writeObject(sessions);
   }
 
-}
+  /**
+   * Reads the fields written by writeExternal.
+   *
+   * @param in	the stream to read from
+   * @exception IOException if an I/O error occurs
+   * @exception ClassNotFoundException if a class is not found
+   */
+  public void readExternal(ObjectInput in)
+          throws IOException, ClassNotFoundException {
+    super.readExternal(in);
+    location = (String) in.readObject();
+    sessions = (PVector) in.readObject();
+  }
 
+}
@@ -8,7 +8,11 @@
  */
 //*************************************************************************
 
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.Enumeration;
+import java.util.List;
 
 /**
  * This class describes a course with sessions.
@@ -16,7 +20,7 @@ import java.util.Enumeration;
 public class Course extends NamedObject {
 
   /** A vector is used to contain the sessions. */
-  private PVector sessions = new PVector();
+  private PVector sessions = new PVector(NAME_KEY);
 
   /** 
    * Constructs an object.
@@ -43,10 +47,17 @@ public class Course extends NamedObject {
    * @return the sessions of this course as an array
    */
   public Session[] getSessions() {
-    Object[] o = sessions.toArray();
-    Session[] r = new Session[o.length];
-    for (int i=0; i<o.length; i++) r[i] = (Session)o[i];
-    return r;
+    return (Session[]) sessions.toArray(new Session[sessions.size()]);
+  }
+
+  /**
+   * Returns a read-only list view of the sessions.  Unlike getSessions,
+   * it does not copy the sessions.
+   *
+   * @return the sessions as a read-only list
+   */
+  public List<Session> getSessionList() {
+    return sessions.asList();
   }
 
   /**
@@ -65,12 +76,7 @@ public class Course extends NamedObject {
    * @return Session object.  Null if none matched.
    */
   public Session getSession(String name) {
-    Enumeration e = sessions.elements();
-    while (e.hasMoreElements()) {
-      Session c = (Session) e.nextElement();
-      if (c.getName().equals(name)) return c;
-    }
-    return null;
+    return (Session) sessions.getByKey(name);
   }
 
   /**
@@ -86,17 +92,47 @@ public class Course extends NamedObject {
   /** 
    * Add a new session for this course.
    * This core operation guarantees referential integrity.
+   * The session is rejected if its time slots overlap those of another
+   * session in the classroom or with one of the instructors.
    *
    * @param name	name of the Session
    * @param schedule	schedule of the Session
    * @param classroom	classroom of the Session
    * @param itor1	first instructor of the Session
    * @param itor2	second instructor of the Session (may be null)
+   * @exception Exception if there is a scheduling conflict
    */
   public void addSession(String name, Schedule schedule, 
-  	Classroom classroom, Instructor itor1, Instructor itor2) {
+  	Classroom classroom, Instructor itor1, Instructor itor2)
+	throws Exception {
+    String conflicts = "";
+    if (classroom != null) conflicts += describe(
+    	classroom.getConflicts(schedule, null), "in " + classroom.getName());
+    if (itor1 != null) conflicts += describe(
+    	itor1.getConflicts(schedule, null), "with " + itor1.getName());
+    if (itor2 != null && itor2 != itor1) conflicts += describe(
+    	itor2.getConflicts(schedule, null), "with " + itor2.getName());
+    if (conflicts.length() > 0)
+      throw new Exception("Session " + name + " (" + schedule.getName()
+      	+ ") conflicts with" + conflicts.substring(1));
+
     Session s = new Session(name, this, schedule, classroom, itor1, itor2);
     sessions.add(s);
+    POManager.dirty(this);
+  }
+
+  /**
+   * Returns the names of the sessions and where they conflict, each
+   * after a comma, e.g. ", 1081 (M1-2) in C-A31", or "" if there are
+   * none.
+   */
+  private static String describe(Session[] sessions, String where) {
+    String s = "";
+    for (int i=0; i<sessions.length; i++) {
+      s += ", " + sessions[i].getName() + " ("
+      	+ sessions[i].getSchedule().getName() + ") " + where;
+    }
+    return s;
   }
 
   /**
@@ -134,6 +170,7 @@ public class Course extends NamedObject {
     session.setInstructors(null, null);
 
     sessions.removeElement(session);
+    POManager.dirty(this);
   }
 
   /**
@@ -156,16 +193,47 @@ public class Course extends NamedObject {
    * @return the information of this course
    */
   public String toString() { 
-    String s = "    " + super.toString() + "\n";
-    s += "      Sessions:\n";
+    return writeToString();
+  }
 
-    Session[] h = getSessions();
-    for (int i=0; i<h.length; i++) {
-      s += h[i].toString(this);
+  /** 
+   * Writes the information of this course, with its sessions.
+   *
+   * @param out	where to write the information
+   * @exception IOException if an I/O error occurs
+   */
+  public void writeTo(Appendable out) throws IOException { 
+    out.append("    ").append(getName()).append('\n');
+    out.append("      Sessions:\n");
+
+    List<Session> h = getSessionList();
+    for (int i=0; i<h.size(); i++) {
+      h.get(i).writeTo(out, this);
     }
+  }
 
-    return s;
+  /**
+   * Writes the fields of this object to the stream.
+   *
+   * @param out	the stream to write to
+   * @exception IOException if an I/O error occurs
+   */
+  public void writeExternal(ObjectOutput out) throws IOException {
+    super.writeExternal(out);
+    out.writeObject(sessions);
   }
 
-}
+  /**
+   * Reads the fields written by writeExternal.
+   *
+   * @param in	the stream to read from
+   * @exception IOException if an I/O error occurs
+   * @exception ClassNotFoundException if a class is not found
+   */
+  public void readExternal(ObjectInput in)
+          throws IOException, ClassNotFoundException {
+    super.readExternal(in);
+    sessions = (PVector) in.readObject();
+  }
 
+}
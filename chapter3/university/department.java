@@ -8,24 +8,35 @@
  */
 //*************************************************************************
 
-import java.util.Enumeration;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.List;
 
 /**
  * This class describes a department with instructors and courses.
  */
-public class Department extends NamedObject {
+public class Department extends NamedObject
+	implements PVector.KeyListener {
 
   /** A vector is used to contain the instructors. */
-  private PVector instructors = new PVector();
+  private PVector instructors = new PVector(NAME_KEY);
 
   /** A vector is used to contain the course. */
-  private PVector courses = new PVector();
+  private PVector courses = new PVector(NAME_KEY);
+
+  /** 
+   * The university of this department, which indexes its courses and
+   * instructors by name.  Set when it is added to the university, or
+   * when the university is first used after loading.  Not persistent.
+   */
+  private transient University university;
 
   /** 
    * Constructs an object.
    */
   public Department() {
-
+    listen();
   }
 
   /** 
@@ -35,6 +46,7 @@ public class Department extends NamedObject {
    */
   public Department(String name) {
     super(name); 
+    listen();
   }
 
 
@@ -46,10 +58,17 @@ public class Department extends NamedObject {
    * @return the courses of this department as an array
    */
   public Course[] getCourses() {
-    Object[] o = courses.toArray();
-    Course[] r = new Course[o.length];
-    for (int i=0; i<o.length; i++) r[i] = (Course)o[i];
-    return r;
+    return (Course[]) courses.toArray(new Course[courses.size()]);
+  }
+
+  /**
+   * Returns a read-only list view of the courses.  Unlike getCourses,
+   * it does not copy the courses.
+   *
+   * @return the courses as a read-only list
+   */
+  public List<Course> getCourseList() {
+    return courses.asList();
   }
 
   /**
@@ -68,12 +87,7 @@ public class Department extends NamedObject {
    * @return Course object.  Null if none matched.
    */
   public Course getCourse(String name) {
-    Enumeration e = courses.elements();
-    while (e.hasMoreElements()) {
-      Course c = (Course) e.nextElement();
-      if (c.getName().equals(name)) return c;
-    }
-    return null;
+    return (Course) courses.getByKey(name);
   }
 
   /**
@@ -93,6 +107,8 @@ public class Department extends NamedObject {
    */
   public void addCourse(Course course) {
     courses.addElement(course);
+    if (university != null) university.indexAdd(course, this);
+    POManager.dirty(this);
   }
 
   /** 
@@ -101,7 +117,10 @@ public class Department extends NamedObject {
    * @param name	name of the course
    */
   public void addCourse(String name) {
-    courses.add(new Course(name));
+    Course course = new Course(name);
+    courses.add(course);
+    if (university != null) university.indexAdd(course, this);
+    POManager.dirty(this);
   }
 
   /**
@@ -117,6 +136,8 @@ public class Department extends NamedObject {
 
     /* Remove the course Object from the vector */
     courses.removeElement(c);
+    if (university != null) university.indexRemove(c, this);
+    POManager.dirty(this);
   }
 
   /**
@@ -129,13 +150,18 @@ public class Department extends NamedObject {
     if (!courses.contains(course))
       throw new Exception("Course not found: " + course.getName());
     courses.removeElement(course);
+    if (university != null) university.indexRemove(course, this);
+    POManager.dirty(this);
   }
 
   /**
    * Removes all course objects.
    */
   public void removeAllCourses( ) {
+    NamedObject[] removed = getCourses();
     courses.removeAllElements();
+    if (university != null) university.indexRemoveAll(removed, this);
+    POManager.dirty(this);
   }
 
 
@@ -147,10 +173,18 @@ public class Department extends NamedObject {
    * @return the instructors of this department as an array
    */
   public Instructor[] getInstructors() {
-    Object[] o = instructors.toArray();
-    Instructor[] r = new Instructor[o.length];
-    for (int i=0; i<o.length; i++) r[i] = (Instructor)o[i];
-    return r;
+    return (Instructor[]) instructors.toArray(
+    		new Instructor[instructors.size()]);
+  }
+
+  /**
+   * Returns a read-only list view of the instructors.  Unlike getInstructors,
+   * it does not copy the instructors.
+   *
+   * @return the instructors as a read-only list
+   */
+  public List<Instructor> getInstructorList() {
+    return instructors.asList();
   }
 
   /**
@@ -169,12 +203,7 @@ public class Department extends NamedObject {
    * @return Instructor object.  Null if none matched.
    */
   public Instructor getInstructor(String name) {
-    Enumeration e = instructors.elements();
-    while (e.hasMoreElements()) {
-      Instructor c = (Instructor) e.nextElement();
-      if (c.getName().equals(name)) return c;
-    }
-    return null;
+    return (Instructor) instructors.getByKey(name);
   }
 
   /**
@@ -194,6 +223,8 @@ public class Department extends NamedObject {
    */
   public void addInstructor(Instructor instructor) {
     instructors.addElement(instructor);
+    if (university != null) university.indexAdd(instructor, this);
+    POManager.dirty(this);
   }
 
   /** 
@@ -202,7 +233,10 @@ public class Department extends NamedObject {
    * @param name	name of the instructor
    */
   public void addInstructor(String name) {
-    instructors.add(new Instructor(name));
+    Instructor instructor = new Instructor(name);
+    instructors.add(instructor);
+    if (university != null) university.indexAdd(instructor, this);
+    POManager.dirty(this);
   }
 
   /**
@@ -218,6 +252,8 @@ public class Department extends NamedObject {
 
     /* Remove the instructor Object from the vector */
     instructors.removeElement(c);
+    if (university != null) university.indexRemove(c, this);
+    POManager.dirty(this);
   }
 
   /**
@@ -230,13 +266,48 @@ public class Department extends NamedObject {
     if (!instructors.contains(instructor))
       throw new Exception("Instructor not found: " + instructor.getName());
     instructors.removeElement(instructor);
+    if (university != null) university.indexRemove(instructor, this);
+    POManager.dirty(this);
   }
 
   /**
    * Removes all instructor objects.
    */
   public void removeAllInstructors( ) {
+    NamedObject[] removed = getInstructors();
     instructors.removeAllElements();
+    if (university != null) university.indexRemoveAll(removed, this);
+    POManager.dirty(this);
+  }
+
+  /**
+   * Sets the university that indexes the courses and instructors of this department.
+   *
+   * @param u	the university; null if this department is removed from it
+   */
+  void setUniversity(University u) {
+    university = u;
+  }
+
+  /**
+   * Called when a course or instructor of this department is renamed.
+   * The university is told, to update its index.
+   *
+   * @param v		the vector of the course or instructor
+   * @param element	the course or instructor
+   * @param oldKey	the old name of it
+   */
+  public void keyChanged(PVector v, Object element, Object oldKey) {
+    if (university != null) 
+      university.indexRename((NamedObject) element, (String) oldKey, this);
+  }
+
+  /**
+   * Listens to the renaming of the courses and instructors.
+   */
+  private void listen() {
+    instructors.setKeyListener(this);
+    courses.setKeyListener(this);
   }
 
   /** 
@@ -245,22 +316,58 @@ public class Department extends NamedObject {
    * @return the information of this department
    */
   public String toString() { 
-    String s = "Department: " + super.toString() + "\n";
+    return writeToString();
+  }
+
+  /** 
+   * Writes the information of this department, with its courses and
+   * instructors.
+   *
+   * @param out	where to write the information
+   * @exception IOException if an I/O error occurs
+   */
+  public void writeTo(Appendable out) throws IOException { 
+    out.append("Department: ").append(getName()).append('\n');
 
-    s += "  Courses in " + getName() + " department:\n";
-    Course[] c = getCourses();
-    for (int i=0; i<c.length; i++) {
-      s += c[i].toString();
+    out.append("  Courses in ").append(getName()).append(" department:\n");
+    List<Course> c = getCourseList();
+    for (int i=0; i<c.size(); i++) {
+      c.get(i).writeTo(out);
     }
 
-    s += "  Instructors in " + getName() + " department:\n";
-    Instructor[] h = getInstructors();
-    for (int i=0; i<h.length; i++) {
-      s += h[i].toString();
+    out.append("  Instructors in ").append(getName())
+       .append(" department:\n");
+    List<Instructor> h = getInstructorList();
+    for (int i=0; i<h.size(); i++) {
+      h.get(i).writeTo(out);
     }
+  }
 
-    return s;
+  /**
+   * Writes the fields of this object to the stream.
+   *
+   * @param out	the stream to write to
+   * @exception IOException if an I/O error occurs
+   */
+  public void writeExternal(ObjectOutput out) throws IOException {
+    super.writeExternal(out);
+    out.writeObject(instructors);
+    out.writeObject(courses);
   }
 
-}
+  /**
+   * Reads the fields written by writeExternal.
+   *
+   * @param in	the stream to read from
+   * @exception IOException if an I/O error occurs
+   * @exception ClassNotFoundException if a class is not found
+   */
+  public void readExternal(ObjectInput in)
+          throws IOException, ClassNotFoundException {
+    super.readExternal(in);
+    instructors = (PVector) in.readObject();
+    courses = (PVector) in.readObject();
+    listen();
+  }
 
+}
@@ -0,0 +1,196 @@
+//*************************************************************************
+/**
+ * IndexBench.java - A benchmark for the name indexes of the university.
+ *
+ *   Copyright (C) 1998-2000    Yun-Tung Lau
+ *   All Rights Reserved.  See the license file in the home
+ *   directory of this package for important license information.
+ */
+//*************************************************************************
+
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * This class writes a script of terminal commands that builds a large
+ * university: departments with courses and instructors, campuses with
+ * classrooms, and a session for each course.  Each "addsession" looks
+ * up a course, a classroom and an instructor by name.  The script is
+ * run through University.redo, as the log is redone, and timed.  The
+ * lookups of all the courses, instructors and classrooms are then
+ * timed with the indexes of the university and with a scan of the
+ * departments and campuses, as University did without them.
+ * <P>
+ * The script is also saved in index.txt, so that it can be fed to
+ * the terminal:
+ * <PRE>
+ *    java University &lt; index.txt
+ * </PRE>
+ * Usage: java IndexBench [nDept] [nCourse]
+ * <P>
+ * The defaults are 100 departments with 500 courses each, i.e. 50000
+ * courses.  There are 10 campuses, and a classroom for every 16
+ * sessions.
+ */
+public class IndexBench {
+
+  /** Name of the script file. */
+  private final static String SCRIPT_FILE = "index.txt";
+
+  /** Number of campuses. */
+  private final static int CAMPUSES = 10;
+
+  /**
+   * Returns the commands of the script.
+   *
+   * @param nDept	number of departments
+   * @param nCourse	number of courses per department
+   * @return the command lines
+   */
+  public static Vector<String> script(int nDept, int nCourse) {
+    Vector<String> s = new Vector<String>();
+    String[] slots = Timetable.SLOTS;
+    int nRooms = (nDept * nCourse + slots.length - 1) / slots.length;
+    for (int i=0; i<CAMPUSES; i++) s.addElement("addcampus Campus-" + i);
+    for (int k=0; k<nRooms; k++)
+      s.addElement("addclassroom Room-" + k + " Campus-" + (k % CAMPUSES));
+    for (int i=0; i<nDept; i++) {
+      s.addElement("adddepartment Dept-" + i);
+      for (int k=0; k<(nCourse + slots.length - 1) / slots.length; k++)
+	s.addElement("addinstructor Itor-" + i + "." + k + " Dept-" + i);
+      for (int j=0; j<nCourse; j++)
+	s.addElement("addcourse Course-" + i + "." + j + " Dept-" + i);
+    }
+    // each classroom and instructor has a session in each slot
+    for (int i=0; i<nDept; i++) {
+      for (int j=0; j<nCourse; j++) {
+	int g = i * nCourse + j;
+	s.addElement("addsession S" + g + " Course-" + i + "." + j + " "
+	  + slots[g % slots.length] + " Room-" + (g / slots.length)
+	  + " Itor-" + i + "." + (j / slots.length));
+      }
+    }
+    return s;
+  }
+
+  /**
+   * Returns the course for the input name, by a scan of the departments.
+   */
+  static Course scanCourse(University u, String name) {
+    List<Department> ds = u.getDepartmentList();
+    for (int i=0; i<ds.size(); i++) {
+      Course c = ds.get(i).getCourse(name);
+      if (c != null) return c;
+    }
+    return null;
+  }
+
+  /**
+   * Returns the instructor for the input name, by a scan of the
+   * departments.
+   */
+  static Instructor scanInstructor(University u, String name) {
+    List<Department> ds = u.getDepartmentList();
+    for (int i=0; i<ds.size(); i++) {
+      Instructor c = ds.get(i).getInstructor(name);
+      if (c != null) return c;
+    }
+    return null;
+  }
+
+  /**
+   * Returns the classroom for the input name, by a scan of the campuses.
+   */
+  static Classroom scanClassroom(University u, String name) {
+    List<Campus> cs = u.getCampusList();
+    for (int i=0; i<cs.size(); i++) {
+      Classroom c = cs.get(i).getClassroom(name);
+      if (c != null) return c;
+    }
+    return null;
+  }
+
+  /**
+   * Looks up the course, classroom and instructor of each session, as
+   * "addsession" does.
+   *
+   * @param u	the university
+   * @param sessions	the sessions
+   * @param scan	true to scan, false to use the indexes
+   * @return the time of a lookup in nano seconds
+   */
+  public static long lookup(University u, Session[] sessions, boolean scan) {
+    int found = 0;
+    long t0 = System.nanoTime();
+    for (int i=0; i<sessions.length; i++) {
+      Session s = sessions[i];
+      String course = s.getCourse().getName();
+      String room = s.getClassroom().getName();
+      String itor = s.getInstructors()[0].getName();
+      if (scan) {
+	if (scanCourse(u, course) != null) found++;
+	if (scanClassroom(u, room) != null) found++;
+	if (scanInstructor(u, itor) != null) found++;
+      } else {
+	if (u.getCourse(course) != null) found++;
+	if (u.getClassroom(room) != null) found++;
+	if (u.getInstructor(itor) != null) found++;
+      }
+    }
+    long t = System.nanoTime() - t0;
+    if (found != 3 * sessions.length) show("Not all found: " + found);
+    return t / Math.max(found, 1);
+  }
+
+  /**
+   * Shows the input string.
+   *
+   * @s the string to be shown
+   */
+  public static void show(String s) {
+    System.out.println(s);
+  }
+
+  /**
+   * Main method for the benchmark.
+   *
+   * @exception Exception if any exception is thrown
+   */
+  public static void main(String[] args) throws Exception {
+    int nDept = 100;
+    int nCourse = 500;
+    if (args.length >= 1) nDept = Integer.parseInt(args[0]);
+    if (args.length >= 2) nCourse = Integer.parseInt(args[1]);
+
+    Vector<String> script = script(nDept, nCourse);
+    PrintWriter out = new PrintWriter(new FileWriter(SCRIPT_FILE));
+    for (int i=0; i<script.size(); i++) out.println(script.elementAt(i));
+    out.println("quit");
+    out.close();
+    show("Script: " + script.size() + " commands, " + nDept * nCourse
+    	+ " courses, written to " + SCRIPT_FILE);
+
+    University u = new University();
+    long t0 = System.currentTimeMillis();
+    for (int i=0; i<script.size(); i++) u.redo(script.elementAt(i), System.out);
+    show("  run in " + (System.currentTimeMillis() - t0) + " ms");
+
+    Vector<Session> all = new Vector<Session>();
+    List<Department> ds = u.getDepartmentList();
+    for (int i=0; i<ds.size(); i++) {
+      List<Course> cs = ds.get(i).getCourseList();
+      for (int j=0; j<cs.size(); j++) all.addAll(cs.get(j).getSessionList());
+    }
+    Session[] sessions = all.toArray(new Session[all.size()]);
+
+    // warm up the JIT compiler first
+    lookup(u, sessions, false);
+    lookup(u, sessions, true);
+    show("Lookups of a course, a classroom and an instructor by name:");
+    show("  indexes  " + lookup(u, sessions, false) + " ns per lookup");
+    show("  scan     " + lookup(u, sessions, true) + " ns per lookup");
+  }
+
+}
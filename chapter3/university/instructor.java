@@ -8,7 +8,10 @@
  */
 //*************************************************************************
 
-import java.util.Enumeration;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.List;
 
 /**
  * This class describes a instructor with sessions.
@@ -16,7 +19,10 @@ import java.util.Enumeration;
 public class Instructor extends NamedObject {
 
   /** A vector is used to contain the sessions. */
-  private PVector sessions = new PVector();
+  private PVector sessions = new PVector(NAME_KEY);
+
+  /** The sessions by time, see getIndex.  Not persistent. */
+  private transient SessionIndex index;
 
   /** 
    * Constructs an object.
@@ -43,10 +49,17 @@ public class Instructor extends NamedObject {
    * @return the sessions of this instructor as an array
    */
   public Session[] getSessions() {
-    Object[] o = sessions.toArray();
-    Session[] r = new Session[o.length];
-    for (int i=0; i<o.length; i++) r[i] = (Session)o[i];
-    return r;
+    return (Session[]) sessions.toArray(new Session[sessions.size()]);
+  }
+
+  /**
+   * Returns a read-only list view of the sessions.  Unlike getSessions,
+   * it does not copy the sessions.
+   *
+   * @return the sessions as a read-only list
+   */
+  public List<Session> getSessionList() {
+    return sessions.asList();
   }
 
   /**
@@ -65,12 +78,7 @@ public class Instructor extends NamedObject {
    * @return Session object.  Null if none matched.
    */
   public Session getSession(String name) {
-    Enumeration e = sessions.elements();
-    while (e.hasMoreElements()) {
-      Session c = (Session) e.nextElement();
-      if (c.getName().equals(name)) return c;
-    }
-    return null;
+    return (Session) sessions.getByKey(name);
   }
 
   /**
@@ -90,6 +98,8 @@ public class Instructor extends NamedObject {
    */
   public void addSession(Session session) {
     sessions.addElement(session);
+    if (index != null) index.add(session);
+    POManager.dirty(this);
   }
 
   /**
@@ -105,6 +115,8 @@ public class Instructor extends NamedObject {
 
     /* Remove the session Object from the vector */
     sessions.removeElement(c);
+    if (index != null) index.remove(c);
+    POManager.dirty(this);
   }
 
   /**
@@ -117,6 +129,8 @@ public class Instructor extends NamedObject {
     if (!sessions.contains(session))
       throw new Exception("Session not found: " + session.getName());
     sessions.removeElement(session);
+    if (index != null) index.remove(session);
+    POManager.dirty(this);
   }
 
   /**
@@ -124,6 +138,47 @@ public class Instructor extends NamedObject {
    */
   public void removeAllSessions( ) {
     sessions.removeAllElements();
+    index = null;
+    POManager.dirty(this);
+  }
+
+  /**
+   * Returns the sessions of this instructor whose time slots overlap
+   * those of the input schedule.
+   *
+   * @param schedule	the schedule
+   * @param except	a session to leave out; may be null
+   * @return the sessions
+   */
+  public Session[] getConflicts(Schedule schedule, Session except) {
+    return getIndex().getConflicts(schedule, except);
+  }
+
+  /**
+   * Updates the index for a session whose schedule has changed.
+   *
+   * @param session	the session
+   */
+  void reindex(Session session) {
+    if (index == null) return;
+    index.remove(session);
+    if (sessions.contains(session)) index.add(session);
+  }
+
+  /**
+   * Returns the index of the sessions by time.  It is built when first
+   * needed, e.g. after the instructor is read.
+   *
+   * @return the index
+   */
+  private synchronized SessionIndex getIndex() {
+    if (index == null) {
+      SessionIndex x = new SessionIndex();
+      List<Session> t = getSessionList();
+      for (int i=0; i<t.size(); i++) x.add(t.get(i));
+      index = x;
+    }
+    return index;
   }
 
   /** 
@@ -132,16 +187,47 @@ public class Instructor extends NamedObject {
    * @return the information of this instructor
    */
   public String toString() { 
-    String s = "    " + super.toString() + "\n";
-    s += "      Sessions:\n";
+    return writeToString();
+  }
 
-    Session[] h = getSessions();
-    for (int i=0; i<h.length; i++) {
-      s += h[i].toString(this);
+  /** 
+   * Writes the information of this instructor, with its sessions.
+   *
+   * @param out	where to write the information
+   * @exception IOException if an I/O error occurs
+   */
+  public void writeTo(Appendable out) throws IOException { 
+    out.append("    ").append(getName()).append('\n');
+    out.append("      Sessions:\n");
+
+    List<Session> h = getSessionList();
+    for (int i=0; i<h.size(); i++) {
+      h.get(i).writeTo(out, this);
     }
+  }
 
-    return s;
+  /**
+   * Writes the fields of this object to the stream.
+   *
+   * @param out	the stream to write to
+   * @exception IOException if an I/O error occurs
+   */
+  public void writeExternal(ObjectOutput out) throws IOException {
+    super.writeExternal(out);
+    out.writeObject(sessions);
   }
 
-}
+  /**
+   * Reads the fields written by writeExternal.
+   *
+   * @param in	the stream to read from
+   * @exception IOException if an I/O error occurs
+   * @exception ClassNotFoundException if a class is not found
+   */
+  public void readExternal(ObjectInput in)
+          throws IOException, ClassNotFoundException {
+    super.readExternal(in);
+    sessions = (PVector) in.readObject();
+  }
 
+}
@@ -0,0 +1,201 @@
+//*************************************************************************
+/**
+ * LazyLoadBench.java - A benchmark for loading the university database
+ *	lazily.
+ *
+ *   Copyright (C) 1998-2000    Yun-Tung Lau
+ *   All Rights Reserved.  See the license file in the home
+ *   directory of this package for important license information.
+ */
+//*************************************************************************
+
+import java.io.File;
+
+/**
+ * This class builds a university as SerializationBench does, and
+ * saves it both as one stream and in pages.  It then measures the
+ * time to initialize POManager, and the time of a first query that
+ * shows one course and its sessions, for three cases: the stream
+ * file, the paged file read all at once, and the paged file read
+ * lazily.  Each case is run in a new JVM, so that the classes are
+ * loaded and compiled in the same way.  The first query of the lazy
+ * case includes reading the pages it needs.
+ * <P>
+ * A last case opens the paged file lazily, runs the query, adds a
+ * course to the department in an update transaction and checkpoints.
+ * It shows the pages read after each step, and then opens the file
+ * again to find both courses.  The pages not read are copied by the
+ * checkpoint, so they are not read.
+ * <P>
+ * Usage: java LazyLoadBench [nDept] [nCourse]
+ * <P>
+ * The defaults are 20 departments with 500 courses each.
+ */
+public class LazyLoadBench {
+
+  /** Name of the database file as one stream. */
+  private final static String STREAM_FILE = "lazy-stream.odb";
+
+  /** Name of the database file in pages. */
+  private final static String PAGED_FILE = "lazy-paged.odb";
+
+  /**
+   * Runs the first query: finds a course and counts its sessions.
+   *
+   * @param u	the university
+   * @param nDept	number of departments
+   * @param nCourse	number of courses per department
+   * @return a description of the course
+   */
+  public static String query(University u, int nDept, int nCourse) {
+    Department d = u.getDepartment("Department " + (nDept / 2));
+    Course c = d.getCourse("Course " + (nDept / 2) + "." + (nCourse / 2));
+    return c.getName() + ", sessions: " + c.getSessionCount();
+  }
+
+  /**
+   * Runs one case in this JVM, and shows the times.
+   *
+   * @param file	the database file
+   * @param lazy	true to load lazily
+   * @param nDept	number of departments
+   * @param nCourse	number of courses per department
+   */
+  public static void runCase(String file, boolean lazy, int nDept,
+  	int nCourse) {
+    POManager.setLazyLoading(lazy);
+    long t0 = System.nanoTime();
+    POManager.initialize(file, "University");
+    long t1 = System.nanoTime();
+    String s = query((University) POManager.getDbRoot(), nDept, nCourse);
+    long t2 = System.nanoTime();
+
+    show("  " + file + (lazy ? " (lazy)" : " (eager)") + ":  initialize "
+    	+ (t1 - t0) / 1000000 + " ms,  first query " + (t2 - t1) / 1000000
+	+ " ms,  total " + (t2 - t0) / 1000000 + " ms,  file "
+	+ (new File(file).length() / 1024) + " KB");
+    show("    " + s);
+    POManager.shutdown();  // nothing is written with a redo log
+  }
+
+  /**
+   * Runs the update case in this JVM, and shows the pages read.
+   *
+   * @param file	the paged database file
+   * @param nDept	number of departments
+   * @param nCourse	number of courses per department
+   * @exception Exception if any exception is thrown
+   */
+  public static void runUpdateCase(String file, int nDept, int nCourse)
+  	throws Exception {
+    POManager.setLazyLoading(true);
+    POManager.initialize(file, "University");
+    University u = (University) POManager.getDbRoot();
+    show("  " + file + " (lazy, update):  pages " + POManager.getPageCount());
+    show("    initialize:  pages read " + POManager.getPagesRead());
+    query(u, nDept, nCourse);
+    show("    query:       pages read " + POManager.getPagesRead());
+
+    String dept = "Department " + (nDept / 2);
+    synchronized (POManager.TOKEN) {
+      POManager.beginUpdateTrx();
+      u.getDepartment(dept).addCourse("New course");  // not logged,
+      POManager.commitTrx();                         // but checkpointed
+    }
+    show("    update:      pages read " + POManager.getPagesRead());
+    long t0 = System.nanoTime();
+    POManager.checkpoint();
+    long t1 = System.nanoTime();
+    show("    checkpoint:  pages read " + POManager.getPagesRead() + ",  "
+    	+ (t1 - t0) / 1000000 + " ms");
+    POManager.shutdown();
+
+    POManager.initialize(file, "University");
+    u = (University) POManager.getDbRoot();
+    Department d = u.getDepartment(dept);
+    show("    reopened:    " + query(u, nDept, nCourse) + ",  new course "
+    	+ (d.getCourse("New course") != null ? "found" : "not found")
+	+ ",  pages read " + POManager.getPagesRead());
+    POManager.shutdown();
+  }
+
+  /**
+   * Runs one case in a new JVM.
+   *
+   * @param args	the arguments of the case
+   * @exception Exception if any exception is thrown
+   */
+  public static void fork(String[] args) throws Exception {
+    String[] cmd = new String[args.length + 5];
+    cmd[0] = System.getProperty("java.home") + File.separator + "bin"
+    	+ File.separator + "java";
+    cmd[1] = "-cp";
+    cmd[2] = System.getProperty("java.class.path");
+    cmd[3] = "LazyLoadBench";
+    cmd[4] = args.length == 4 ? "-case" : "-update";
+    System.arraycopy(args, 0, cmd, 5, args.length);
+    ProcessBuilder pb = new ProcessBuilder(cmd);
+    pb.inheritIO();
+    pb.start().waitFor();
+  }
+
+  /**
+   * Shows the input string.
+   *
+   * @s the string to be shown
+   */
+  public static void show(String s) {
+    System.out.println(s);
+  }
+
+  /**
+   * Main method for the benchmark.
+   *
+   * @exception Exception if any exception is thrown
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length == 4 && args[0].equals("-update")) {
+      runUpdateCase(args[1], Integer.parseInt(args[2]),
+      	Integer.parseInt(args[3]));
+      return;
+    }
+    if (args.length == 5 && args[0].equals("-case")) {
+      runCase(args[1], Boolean.valueOf(args[2]).booleanValue(),
+      	Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+      return;
+    }
+
+    int nDept = 20;
+    int nCourse = 500;
+    if (args.length >= 1) nDept = Integer.parseInt(args[0]);
+    if (args.length >= 2) nCourse = Integer.parseInt(args[1]);
+    String d = String.valueOf(nDept);
+    String c = String.valueOf(nCourse);
+
+    // build the university, and save it in both formats
+    String[] files = { STREAM_FILE, PAGED_FILE };
+    for (int i=0; i<files.length; i++) {
+      new File(files[i]).delete();
+      new File(files[i] + ".log").delete();
+      POManager.setLazyLoading(i == 1);
+      POManager.initialize(files[i], "University");
+      SerializationBench.build((University) POManager.getDbRoot(),
+      	nDept, nCourse);
+      POManager.checkpoint();
+      POManager.shutdown();
+    }
+    show("Departments: " + nDept + ", courses and sessions: "
+    	+ (nDept * nCourse));
+
+    fork(new String[] { STREAM_FILE, "false", d, c });
+    fork(new String[] { PAGED_FILE, "false", d, c });
+    fork(new String[] { PAGED_FILE, "true", d, c });
+    fork(new String[] { PAGED_FILE, d, c });
+
+    for (int i=0; i<files.length; i++) {
+      new File(files[i]).delete();
+      new File(files[i] + ".log").delete();
+    }
+  }
+
+}
@@ -0,0 +1,233 @@
+//*************************************************************************
+/**
+ * NameDirectory.java - A persistent index from names to owners
+ *
+ *   Copyright (C) 1998-2000    Yun-Tung Lau
+ *   All Rights Reserved.  See the license file in the home
+ *   directory of this package for important license information.
+ */
+//*************************************************************************
+
+import java.io.*;
+
+/**
+ * This class maps a name to the names of its owners, e.g. the name of
+ * a course to the names of the departments that have a course of that
+ * name.  University keeps one for its courses, instructors and
+ * classrooms, so that it finds an object by name by reading only its
+ * owner, and not the objects of all owners.
+ * <P>
+ * It is saved with the database.  The names are hashed into a fixed
+ * number of buckets, and each bucket keeps its entries in a keyed
+ * PVector.  In a paged database (see PagedStore) the vector of each
+ * bucket is in a page of its own, so a lookup reads one page of the
+ * directory.  With a MappedStore, a change writes only the bucket and
+ * the entry changed.
+ */
+public class NameDirectory implements Externalizable {
+
+  /** Number of buckets. */
+  private final static int BUCKETS = 64;
+
+  private final static long serialVersionUID = 1L;
+
+  /**
+   * @serial	the buckets, of Bucket
+   */
+  private PVector buckets;
+
+
+  /**
+   * Constructs a directory to be read by readExternal.
+   */
+  public NameDirectory() {
+
+  }
+
+  /**
+   * Constructs an empty directory.
+   *
+   * @param nBuckets	number of buckets; 0 for the default
+   */
+  public NameDirectory(int nBuckets) {
+    buckets = newBuckets(nBuckets > 0 ? nBuckets : BUCKETS);
+  }
+
+  /**
+   * Returns the owners of the input name.
+   *
+   * @param name	the name
+   * @return the names of the owners, in the order they were added.
+   *		Null if none.
+   */
+  public String[] get(String name) {
+    if (name == null) return null;
+    Entry e = getBucket(name).get(name);
+    return (e != null) ? e.getOwners() : null;
+  }
+
+  /**
+   * Adds an owner of the input name, unless it is there already.
+   *
+   * @param name	the name
+   * @param owner	the name of the owner
+   */
+  public void add(String name, String owner) {
+    if (name == null || owner == null) return;
+    Bucket b = getBucket(name);
+    Entry e = b.get(name);
+    if (e == null) b.add(new Entry(name, owner));
+    else e.addOwner(owner);
+  }
+
+  /**
+   * Removes an owner of the input name.  Do nothing if it is not
+   * there.
+   *
+   * @param name	the name
+   * @param owner	the name of the owner
+   */
+  public void remove(String name, String owner) {
+    if (name == null || owner == null) return;
+    Bucket b = getBucket(name);
+    Entry e = b.get(name);
+    if (e != null && e.removeOwner(owner)) b.remove(e);  // none left
+  }
+
+  /**
+   * Removes all the names.  The buckets are replaced, so that the
+   * old ones need not be read.
+   */
+  public void clear() {
+    buckets = newBuckets(buckets.size());
+    POManager.dirty(this);
+  }
+
+  /**
+   * Returns the bucket of the input name.
+   */
+  private Bucket getBucket(String name) {
+    int n = buckets.size();
+    return (Bucket) buckets.elementAt((name.hashCode() & 0x7fffffff) % n);
+  }
+
+  /**
+   * Returns a vector of new buckets.
+   */
+  private static PVector newBuckets(int n) {
+    PVector v = new PVector(n, n);
+    for (int i=0; i<n; i++) v.addElement(new Bucket());
+    return v;
+  }
+
+  /**
+   * Writes the fields of this object to the stream.
+   *
+   * @param out	the stream to write to
+   * @exception IOException if an I/O error occurs
+   */
+  public void writeExternal(ObjectOutput out) throws IOException {
+    out.writeObject(buckets);
+  }
+
+  /**
+   * Reads the fields written by writeExternal.
+   *
+   * @param in	the stream to read from
+   * @exception IOException if an I/O error occurs
+   * @exception ClassNotFoundException if a class is not found
+   */
+  public void readExternal(ObjectInput in)
+          throws IOException, ClassNotFoundException {
+    buckets = (PVector) in.readObject();
+  }
+
+  /**
+   * A bucket of entries, looked up by name.
+   */
+  public static class Bucket implements Externalizable {
+    private PVector entries = new PVector(NamedObject.NAME_KEY);
+
+    public Bucket() {
+    }
+
+    Entry get(String name) {
+      return (Entry) entries.getByKey(name);
+    }
+
+    void add(Entry e) {
+      entries.addElement(e);
+      POManager.dirty(this);
+    }
+
+    void remove(Entry e) {
+      entries.removeElement(e);
+      POManager.dirty(this);
+    }
+
+    public void writeExternal(ObjectOutput out) throws IOException {
+      out.writeObject(entries);
+    }
+
+    public void readExternal(ObjectInput in)
+    	throws IOException, ClassNotFoundException {
+      entries = (PVector) in.readObject();
+    }
+  }
+
+  /**
+   * A name with the names of its owners.
+   */
+  public static class Entry extends NamedObject {
+    private String[] owners;
+
+    public Entry() {
+    }
+
+    Entry(String name, String owner) {
+      super(name);
+      owners = new String[] { owner };
+    }
+
+    String[] getOwners() {
+      return owners;
+    }
+
+    void addOwner(String owner) {
+      for (int i=0; i<owners.length; i++)
+        if (owners[i].equals(owner)) return;
+      String[] x = new String[owners.length + 1];
+      System.arraycopy(owners, 0, x, 0, owners.length);
+      x[owners.length] = owner;
+      owners = x;
+      POManager.dirty(this);
+    }
+
+    /** Removes an owner; returns true if there is none left. */
+    boolean removeOwner(String owner) {
+      for (int i=0; i<owners.length; i++) {
+        if (owners[i].equals(owner)) {
+	  String[] x = new String[owners.length - 1];
+	  System.arraycopy(owners, 0, x, 0, i);
+	  System.arraycopy(owners, i+1, x, i, owners.length-i-1);
+	  owners = x;
+	  POManager.dirty(this);
+	  break;
+	}
+      }
+      return owners.length == 0;
+    }
+
+    public void writeExternal(ObjectOutput out) throws IOException {
+      super.writeExternal(out);
+      out.writeObject(owners);
+    }
+
+    public void readExternal(ObjectInput in)
+    	throws IOException, ClassNotFoundException {
+      super.readExternal(in);
+      owners = (String[]) in.readObject();
+    }
+  }
+
+}
@@ -8,16 +8,39 @@
  */
 //*************************************************************************
 
+import java.io.*;
+
 /**
  * This is a simple class with a name.  It is also serializable.
+ * <P>
+ * It implements Externalizable, so the fields are written by
+ * writeExternal instead of by reflection.  A subclass with
+ * persistent fields must override writeExternal and readExternal,
+ * call the superclass versions first, and have a public constructor
+ * without arguments.
+ * <P>
+ * The keyed PVectors that hold it, i.e. look it up by name, are its
+ * holders.  When it is renamed, it tells them, so that they update
+ * their indexes.
  */
-public class NamedObject implements java.io.Serializable {
+public class NamedObject implements Externalizable, PVector.KeyedElement {
+
+  /** 
+   * A key extractor that returns the name of a NamedObject.  Use it
+   * to construct a PVector that looks up its elements by name.
+   */
+  public static final PVector.KeyExtractor NAME_KEY = new NameKey();
+
+  private final static long serialVersionUID = 1L;
 
   /**
    * @serial name of this object
    */
   private String name;
 
+  /** The keyed vectors that hold this object.  Not persistent. */
+  private transient PVector[] holders;
+
 
   /** 
    * Constructs an object.
@@ -50,7 +73,49 @@ public class NamedObject implements java.io.Serializable {
    * @param name	the new name of this object
    */
   public void setName(String name) { 
+    String oldName = this.name;
     this.name = name; 
+    PVector[] h = getHolders();
+    for (int i=0; i<h.length; i++) h[i].keyChanged(this, oldName);
+    POManager.dirty(this);
+  }
+
+  /** 
+   * Adds a keyed vector that holds this object.  Called by PVector.
+   *
+   * @param v	the vector
+   */
+  public synchronized void addHolder(PVector v) {
+    PVector[] h = getHolders();
+    PVector[] x = new PVector[h.length + 1];
+    System.arraycopy(h, 0, x, 0, h.length);
+    x[h.length] = v;
+    holders = x;
+  }
+
+  /** 
+   * Removes a keyed vector that held this object.  Called by PVector.
+   *
+   * @param v	the vector
+   */
+  public synchronized void removeHolder(PVector v) {
+    PVector[] h = getHolders();
+    for (int i=0; i<h.length; i++) {
+      if (h[i] == v) {
+        PVector[] x = new PVector[h.length - 1];
+        System.arraycopy(h, 0, x, 0, i);
+        System.arraycopy(h, i+1, x, i, h.length-i-1);
+        holders = x;
+	return;
+      }
+    }
+  }
+
+  /** 
+   * Returns the keyed vectors that hold this object.
+   */
+  private synchronized PVector[] getHolders() {
+    return holders == null ? new PVector[0] : holders;
   }
  
   /** 
@@ -62,5 +127,61 @@ public class NamedObject implements java.io.Serializable {
     return name;
   }
 
-}
+  /** 
+   * Writes the information of this object, as returned by toString.
+   * Subclasses that show the objects they contain override it, and
+   * return what it writes from toString, so that a large report can
+   * be written to a stream without being built in memory first.
+   *
+   * @param out	where to write the information
+   * @exception IOException if an I/O error occurs
+   */
+  public void writeTo(Appendable out) throws IOException { 
+    out.append(toString());
+  }
+
+  /** 
+   * Returns what writeTo writes, as a string.
+   *
+   * @return the information of this object
+   */
+  protected String writeToString() { 
+    StringBuffer b = new StringBuffer();
+    try {
+      writeTo(b);
+    } catch (IOException e) {}  // not thrown by a StringBuffer
+    return b.toString();
+  }
 
+  /**
+   * Writes the fields of this object to the stream.
+   *
+   * @param out	the stream to write to
+   * @exception IOException if an I/O error occurs
+   */
+  public void writeExternal(ObjectOutput out) throws IOException {
+    out.writeObject(name);
+  }
+
+  /**
+   * Reads the fields written by writeExternal.
+   *
+   * @param in	the stream to read from
+   * @exception IOException if an I/O error occurs
+   * @exception ClassNotFoundException if a class is not found
+   */
+  public void readExternal(ObjectInput in)
+          throws IOException, ClassNotFoundException {
+    name = (String) in.readObject();
+  }
+
+  /**
+   * A key extractor that returns the name of a NamedObject.
+   */
+  static class NameKey implements PVector.KeyExtractor {
+    public Object getKey(Object element) {
+      return ((NamedObject) element).getName();
+    }
+  }
+
+}
@@ -0,0 +1,659 @@
+//*************************************************************************
+/**
+ * PagedStore.java - A paged database file with lazy loading.
+ *
+ *   Copyright (C) 1998-2000    Yun-Tung Lau
+ *   All Rights Reserved.  See the license file in the home
+ *   directory of this package for important license information.
+ */
+//*************************************************************************
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+
+/**
+ * This class writes an object graph to a paged file, and loads it
+ * lazily.  It is used by POManager for roots that are Externalizable.
+ * <P>
+ * Every Externalizable object other than a PVector gets an object id
+ * (oid), and it is stored in exactly one page: the page where it is
+ * first reached.  A reference to an object stored elsewhere is written
+ * as a stub with its oid, class and page.  The first page holds the
+ * root, the vectors in the root (the extents) and their elements.
+ * Every other vector is stored in a page of its own, together with
+ * the objects first reached from it.
+ * <P>
+ * When the file is opened, only the first page is read.  The other
+ * vectors are hollow (see PVector.isHollow), and a vector's page is
+ * read on its first use.  When a page refers to an object whose page
+ * has not been read, that page is read too, so that an object is
+ * never seen with its fields unset.  Objects are kept in an oid table,
+ * so an object reached through several pages is loaded only once.
+ * <P>
+ * An open store writes the graph again (see rewrite) without reading
+ * the pages it has not read.  Those pages are copied as they are, and
+ * every object read keeps its oid and page, so that the copied pages
+ * still refer to it correctly.  The hollow vectors stay hollow, and
+ * the store reads them from the new file after reopen.  Objects and
+ * pages that are no longer used are dropped only when the graph is
+ * written whole, by the static write.
+ * <P>
+ * The file starts with a header (magic number, format version, log
+ * sequence number, number of pages, the offset of the page directory
+ * and the number of oids).  The directory has the offset and length
+ * of each page, so that a page is found with one seek.
+ */
+public class PagedStore {
+
+  /** Magic number at the start of a paged file. */
+  private final static int MAGIC = 0x50444231;  // "PDB1"
+
+  /** Version of the file format. */
+  private final static int VERSION = 2;
+
+  /** Length of the header in bytes. */
+  private final static int HEADER_SIZE = 32;
+
+  /** Length of a directory entry in bytes: offset and length. */
+  private final static int ENTRY_SIZE = 12;
+
+  private RandomAccessFile file;   // the open file
+  private int nPages;              // number of pages
+  private long directory;          // offset of the page directory
+  private long lsn;                // log sequence number in the header
+  private int nOids;               // number of oids in the file
+  private Object root;             // the root object
+
+  private HashMap<Integer, Object> objects =
+  	new HashMap<Integer, Object>();          // oid to object
+  private IdentityHashMap<Object, Integer> oids =
+  	new IdentityHashMap<Object, Integer>();  // object to oid
+  private int[] pageOf;                     // oid to page, if read
+  private HashMap<Integer, PVector> vectors =
+  	new HashMap<Integer, PVector>();         // page to hollow vector
+  private HashMap<Integer, Object> contents =
+  	new HashMap<Integer, Object>();          // page to contents read
+  private BitSet loaded = new BitSet();     // pages read
+  private LinkedList<Integer> queue = new LinkedList<Integer>(); // to read
+  private int reading;                      // page being read
+  private int pagesRead;                    // number of pages read
+
+  /**
+   * Opens a paged file and reads its first page.
+   *
+   * @param f	the file
+   * @exception IOException if the file cannot be read
+   */
+  public PagedStore(File f) throws IOException {
+    openFile(f);
+    pageOf = new int[nOids];
+
+    // The first page starts with a stub of the root.
+    root = loadPage(0);
+  }
+
+  /**
+   * Returns whether the input file is a paged file.
+   *
+   * @param f	the file
+   * @return true if the file starts with the magic number
+   */
+  public static boolean isPaged(File f) {
+    try {
+      DataInputStream in = new DataInputStream(new FileInputStream(f));
+      try {
+        return in.readInt() == MAGIC;
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Returns the root object.
+   *
+   * @return the root object
+   */
+  public Object getRoot() {
+    return root;
+  }
+
+  /**
+   * Returns the log sequence number stored with the graph.
+   *
+   * @return the log sequence number
+   */
+  public long getLsn() {
+    return lsn;
+  }
+
+  /**
+   * Returns the number of pages in the file.
+   *
+   * @return the number of pages
+   */
+  public int getPageCount() {
+    return nPages;
+  }
+
+  /**
+   * Returns the number of pages read so far.
+   *
+   * @return the number of pages read
+   */
+  public synchronized int getPagesRead() {
+    return pagesRead;
+  }
+
+  /**
+   * Reads all pages, and fetches the contents of all hollow vectors.
+   * The file is no longer needed afterwards.
+   *
+   * @exception IOException if a page cannot be read
+   */
+  public void loadAll() throws IOException {
+    Object[] v;
+    synchronized (this) {
+      for (int p=0; p<nPages; p++) loadPage(p);
+      v = vectors.values().toArray();
+    }
+    // Fetch outside the lock, since a vector locks itself first.
+    for (int i=0; i<v.length; i++) ((PVector) v[i]).size();
+  }
+
+  /**
+   * Returns whether all pages have been read.
+   *
+   * @return true if all pages have been read
+   */
+  public synchronized boolean isAllRead() {
+    return loaded.cardinality() == nPages;
+  }
+
+  /**
+   * Writes the object graph of the root to a paged file, keeping the
+   * pages of this store.  The pages not read are copied from this
+   * file, the objects read keep their oids and pages, and the vectors
+   * and objects not in this file get new pages and oids.  Call reopen
+   * once the new file has replaced this one.
+   *
+   * @param f	the new file
+   * @param root	the root object
+   * @param lsn	the log sequence number to be stored
+   * @exception IOException if an I/O error occurs
+   */
+  public synchronized void rewrite(File f, Object root, long lsn)
+  	throws IOException {
+    Writer w = new Writer(root, this);
+    w.write(f, lsn);
+
+    // The new pages and objects are in memory.
+    for (int p=nPages; p<w.pages.size(); p++) {
+      vectors.put(Integer.valueOf(p), (PVector) w.pages.get(p));
+      loaded.set(p);
+    }
+    int n = w.pageOfOid.size();
+    int[] x = new int[n];
+    System.arraycopy(pageOf, 0, x, 0, nOids);
+    for (int oid=nOids; oid<n; oid++)
+      x[oid] = w.pageOfOid.get(oid).intValue();
+    pageOf = x;
+    Object[] o = w.oids.keySet().toArray();
+    for (int i=0; i<o.length; i++) {
+      if (oids.containsKey(o[i])) continue;
+      oids.put(o[i], w.oids.get(o[i]));
+      objects.put(w.oids.get(o[i]), o[i]);
+    }
+  }
+
+  /**
+   * Reads the pages from the input file, which has been written by
+   * rewrite and has replaced the file of this store.
+   *
+   * @param f	the new file
+   * @exception IOException if the file cannot be read
+   */
+  public synchronized void reopen(File f) throws IOException {
+    file.close();
+    openFile(f);
+  }
+
+  /**
+   * Closes the file.  Hollow vectors cannot be fetched afterwards.
+   */
+  public synchronized void close() {
+    try {
+      file.close();
+    } catch (IOException e) {
+      // nothing to do
+    }
+  }
+
+  /**
+   * Returns the contents of the vector stored in the input page.
+   * Called by a hollow vector on its first use.
+   *
+   * @param page	the page of the vector
+   * @return the contents of the vector
+   * @exception RuntimeException if the page cannot be read
+   */
+  synchronized PVector loadVector(int page) {
+    try {
+      loadPage(page);
+    } catch (Exception e) {
+      throw new RuntimeException("Cannot read page " + page + ": " + e);
+    }
+    return (PVector) contents.remove(Integer.valueOf(page));
+  }
+
+  /**
+   * Writes the object graph of the root to a paged file.  All hollow
+   * vectors in the graph are fetched first.
+   *
+   * @param f	the file
+   * @param root	the root object
+   * @param lsn	the log sequence number to be stored
+   * @exception IOException if an I/O error occurs
+   */
+  public static void write(File f, Object root, long lsn)
+  	throws IOException {
+    new Writer(root).write(f, lsn);
+  }
+
+  /********** Private methods *************/
+
+  /**
+   * Opens the file and reads its header.
+   *
+   * @param f	the file
+   * @exception IOException if the file cannot be read
+   */
+  private void openFile(File f) throws IOException {
+    file = new RandomAccessFile(f, "r");
+    if (file.readInt() != MAGIC || file.readInt() != VERSION) {
+      file.close();
+      throw new IOException("Not a paged database: " + f);
+    }
+    lsn = file.readLong();
+    nPages = file.readInt();
+    directory = file.readLong();
+    nOids = file.readInt();
+  }
+
+  /**
+   * Reads the input page, and the pages it needs, unless they have
+   * been read.
+   *
+   * @param page	the page
+   * @return the first object of the page
+   * @exception IOException if a page cannot be read
+   */
+  private Object loadPage(int page) throws IOException {
+    Object first = null;
+    if (loaded.get(page)) return null;
+    queue.add(Integer.valueOf(page));
+    while (!queue.isEmpty()) {
+      int p = queue.removeFirst().intValue();
+      if (loaded.get(p)) continue;
+      Object o = readPage(p);
+      if (p == page) first = o;
+    }
+    return first;
+  }
+
+  /**
+   * Reads one page.  Pages of objects that are referred to, but not
+   * read yet, are added to the queue.
+   *
+   * @param page	the page
+   * @return the first object of the page
+   * @exception IOException if the page cannot be read
+   */
+  private Object readPage(int page) throws IOException {
+    if (page < 0 || page >= nPages)
+      throw new IOException("Invalid page: " + page);
+    loaded.set(page);
+    pagesRead++;
+    reading = page;
+
+    byte[] b = readBytes(page);
+    PageInput in = new PageInput(new ByteArrayInputStream(b));
+    try {
+      Object first = in.readObject();
+      while (in.readBoolean()) {  // the objects stored in this page
+        int oid = in.readInt();
+	String className = in.readUTF();
+	Externalizable o = (Externalizable) getObject(oid, className, page);
+	o.readExternal(in);
+      }
+      in.close();
+
+      if (page > 0) contents.put(Integer.valueOf(page), first);
+      return first;
+    } catch (ClassNotFoundException e) {
+      throw new IOException("Class not found: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Returns the bytes of a page as they are in the file.
+   *
+   * @param page	the page
+   * @return the bytes of the page
+   * @exception IOException if the page cannot be read
+   */
+  private byte[] readBytes(int page) throws IOException {
+    file.seek(directory + (long) page * ENTRY_SIZE);
+    long offset = file.readLong();
+    byte[] b = new byte[file.readInt()];
+    file.seek(offset);
+    file.readFully(b);
+    return b;
+  }
+
+  /**
+   * Returns the vector of a page that has been read, as it is in
+   * memory.  The root for the first page.
+   *
+   * @param page	the page
+   * @return the vector.  Null if the page has not been read.
+   */
+  private Object vectorOf(int page) {
+    if (!loaded.get(page)) return null;
+    if (page == 0) return root;
+    PVector v = vectors.get(Integer.valueOf(page));
+    if (v != null && !v.isHollow()) return v;
+    return contents.get(Integer.valueOf(page));  // read, not fetched
+  }
+
+  /**
+   * Returns the object of the input oid.  If it is not loaded yet, an
+   * empty object is created, and its page is added to the queue.  The
+   * page fills in its fields.
+   *
+   * @param oid	the object id
+   * @param className	the class of the object
+   * @param page	the page of the object
+   * @return the object
+   * @exception IOException if the object cannot be created
+   */
+  private Object getObject(int oid, String className, int page)
+  	throws IOException {
+    Integer key = Integer.valueOf(oid);
+    Object o = objects.get(key);
+    if (o != null) return o;
+
+    if (oid < 0 || oid >= nOids) throw new IOException("Invalid oid: " + oid);
+    try {
+      o = Class.forName(className).getDeclaredConstructor().newInstance();
+    } catch (Exception e) {
+      throw new IOException("Cannot create " + className + ": " + e);
+    }
+    objects.put(key, o);
+    oids.put(o, key);
+    pageOf[oid] = page;
+    if (page != reading && !loaded.get(page))
+      queue.add(Integer.valueOf(page));
+    return o;
+  }
+
+  /**
+   * A stub for an object stored in the file.
+   */
+  public static class Ref implements Externalizable {
+    int oid;
+    int page;
+    String className;
+
+    public Ref() {
+    }
+
+    Ref(int oid, int page, String className) {
+      this.oid = oid;
+      this.page = page;
+      this.className = className;
+    }
+
+    public void writeExternal(ObjectOutput out) throws IOException {
+      out.writeInt(oid);
+      out.writeInt(page);
+      out.writeObject(className);  // shared within a page
+    }
+
+    public void readExternal(ObjectInput in)
+    	throws IOException, ClassNotFoundException {
+      oid = in.readInt();
+      page = in.readInt();
+      className = (String) in.readObject();
+    }
+  }
+
+  /**
+   * A stub for a vector stored in a page of its own.
+   */
+  public static class PageRef implements Externalizable {
+    int page;
+
+    public PageRef() {
+    }
+
+    PageRef(int page) {
+      this.page = page;
+    }
+
+    public void writeExternal(ObjectOutput out) throws IOException {
+      out.writeInt(page);
+    }
+
+    public void readExternal(ObjectInput in) throws IOException {
+      page = in.readInt();
+    }
+  }
+
+  /**
+   * The loader of a hollow vector.
+   */
+  private class PageLoader implements PVector.Loader {
+    private int page;
+
+    PageLoader(int page) {
+      this.page = page;
+    }
+
+    public PVector load() {
+      return loadVector(page);
+    }
+  }
+
+  /**
+   * An input stream of a page.  Stubs are replaced by the objects,
+   * and by hollow vectors.
+   */
+  private class PageInput extends ObjectInputStream {
+
+    PageInput(InputStream in) throws IOException {
+      super(in);
+      enableResolveObject(true);
+    }
+
+    protected Object resolveObject(Object obj) throws IOException {
+      if (obj instanceof Ref) {
+        Ref r = (Ref) obj;
+	return getObject(r.oid, r.className, r.page);
+      }
+      if (obj instanceof PageRef) {
+        int page = ((PageRef) obj).page;
+	PVector v = vectors.get(Integer.valueOf(page));
+	if (v == null) {  // shared vectors are read once
+	  v = new PVector();
+	  v.setLoader(new PageLoader(page));
+	  vectors.put(Integer.valueOf(page), v);
+	}
+	return v;
+      }
+      return obj;
+    }
+  }
+
+  /**
+   * Writes an object graph to a paged file.
+   */
+  private static class Writer {
+    private Object root;
+    private PagedStore base;   // the store whose pages are kept, if any
+    private IdentityHashMap<Object, Integer> oids =
+    	new IdentityHashMap<Object, Integer>();  // object to oid
+    private ArrayList<Integer> pageOfOid = new ArrayList<Integer>(); // to page
+    private ArrayList<Object> pages = new ArrayList<Object>(); // to vector
+    private IdentityHashMap<Object, Integer> pageOfVector =
+    	new IdentityHashMap<Object, Integer>();
+    private ArrayList<ArrayList<Object>> kept;  // page to objects of base
+
+    Writer(Object root) {
+      this.root = root;
+      pages.add(root);
+    }
+
+    /**
+     * A writer that keeps the pages of the base store.  A page not
+     * read is null in pages, and is copied from the base file.
+     */
+    Writer(Object root, PagedStore base) {
+      this.root = root;
+      this.base = base;
+      kept = new ArrayList<ArrayList<Object>>(base.nPages);
+      for (int p=0; p<base.nPages; p++) {
+        Object v = base.vectorOf(p);
+        pages.add(v);
+	if (v != null) pageOfVector.put(v, Integer.valueOf(p));
+	Object h = base.vectors.get(Integer.valueOf(p));  // maybe hollow
+	if (h != null) pageOfVector.put(h, Integer.valueOf(p));
+	kept.add(new ArrayList<Object>());
+      }
+      for (int oid=0; oid<base.nOids; oid++) {
+        Integer key = Integer.valueOf(oid);
+        Object o = base.objects.get(key);
+	pageOfOid.add(Integer.valueOf(o == null ? 0 : base.pageOf[oid]));
+	if (o == null) continue;  // in a page not read
+	oids.put(o, key);
+	kept.get(base.pageOf[oid]).add(o);  // even if no longer used
+      }
+    }
+
+    /**
+     * Writes the pages and then the directory.  The header is
+     * written last, once the directory is known.
+     */
+    void write(File f, long lsn) throws IOException {
+      FileOutputStream fos = new FileOutputStream(f);
+      try {
+        OutputStream out = new BufferedOutputStream(fos, 65536);
+	out.write(new byte[HEADER_SIZE]);
+	long offset = HEADER_SIZE;
+
+	ByteArrayOutputStream dir = new ByteArrayOutputStream();
+	DataOutputStream d = new DataOutputStream(dir);
+	for (int p=0; p<pages.size(); p++) {  // grows while writing
+	  byte[] b = writePage(p);
+	  out.write(b);
+	  d.writeLong(offset);
+	  d.writeInt(b.length);
+	  offset += b.length;
+	}
+	d.flush();
+	dir.writeTo(out);
+	out.flush();
+
+	ByteArrayOutputStream h = new ByteArrayOutputStream();
+	DataOutputStream hd = new DataOutputStream(h);
+	hd.writeInt(MAGIC);
+	hd.writeInt(VERSION);
+	hd.writeLong(lsn);
+	hd.writeInt(pages.size());
+	hd.writeLong(offset);
+	hd.writeInt(pageOfOid.size());
+	hd.flush();
+	fos.getChannel().write(java.nio.ByteBuffer.wrap(h.toByteArray()), 0);
+	fos.getFD().sync();
+      } finally {
+        fos.close();
+      }
+    }
+
+    /**
+     * Writes a page: its vector (or the root stub for the first
+     * page), and then the objects first reached from this page.
+     */
+    byte[] writePage(int page) throws IOException {
+      if (pages.get(page) == null) return base.readBytes(page);
+
+      ByteArrayOutputStream b = new ByteArrayOutputStream();
+      PageOutput out = new PageOutput(b, page);
+      if (kept != null && page < kept.size()) out.stored.addAll(kept.get(page));
+      out.writeObject(pages.get(page));
+      for (int i=0; i<out.stored.size(); i++) {  // grows while writing
+        Externalizable o = (Externalizable) out.stored.get(i);
+	out.writeBoolean(true);
+	out.writeInt(oids.get(o).intValue());
+	out.writeUTF(o.getClass().getName());
+	out.owner = o;
+	o.writeExternal(out);
+      }
+      out.writeBoolean(false);
+      out.close();
+      return b.toByteArray();
+    }
+
+    /**
+     * An output stream of a page.  Objects and vectors stored in
+     * other pages are replaced by stubs.
+     */
+    private class PageOutput extends ObjectOutputStream {
+      int page;                         // this page
+      Object owner;                     // the object being written
+      ArrayList<Object> stored = new ArrayList<Object>(); // stored here
+
+      PageOutput(OutputStream out, int page) throws IOException {
+        super(out);
+	this.page = page;
+	enableReplaceObject(true);
+      }
+
+      protected Object replaceObject(Object obj) {
+        if (obj instanceof PVector) {
+	  // vectors in the root are stored with the root
+	  if (obj == pages.get(page) || owner == root) return obj;
+	  Integer p = pageOfVector.get(obj);
+	  if (p == null) {  // first reached: give it a page
+	    p = Integer.valueOf(pages.size());
+	    pages.add(obj);
+	    pageOfVector.put(obj, p);
+	  }
+	  return new PageRef(p.intValue());
+	}
+
+	if (obj instanceof Externalizable) {
+	  Integer oid = oids.get(obj);
+	  if (oid == null) {  // first reached: store it here
+	    oid = Integer.valueOf(pageOfOid.size());
+	    oids.put(obj, oid);
+	    pageOfOid.add(Integer.valueOf(page));
+	    stored.add(obj);
+	  }
+	  return new Ref(oid.intValue(),
+	  	pageOfOid.get(oid.intValue()).intValue(),
+		obj.getClass().getName());
+	}
+
+	return obj;
+      }
+    }
+  }
+
+}
@@ -9,8 +9,12 @@
 //*************************************************************************
 
 import java.io.*;
+import java.util.AbstractList;
 import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.RandomAccess;
 
 /** 
  * A light-weight persistent enabled vector class that contains 
@@ -20,12 +24,39 @@ import java.util.NoSuchElementException;
  * <P>
  * It can be used with PSE Pro, provided the following classes are
  * post-processed: PVector and PVector$Enumerator.
- * It is also serializable using the standard Java approach.
+ * It is also serializable.  It implements Externalizable, so only
+ * the size and the used elements are written, without reflection.
+ * <P>
+ * A PVector may optionally be keyed.  A keyed vector is given a
+ * KeyExtractor, and it keeps a hash index from keys to elements so
+ * that getByKey runs in constant time instead of scanning the array.
+ * If several elements have the same key, getByKey returns the first
+ * one, as a linear scan would.  An element whose key may change
+ * (e.g. a NamedObject, which may be renamed) implements KeyedElement.
+ * A keyed vector is a holder of such elements while they are in it,
+ * and they tell it when their keys change, so that only the indexes
+ * of the vectors that hold a renamed element are rebuilt.  The owner
+ * of a vector may listen to these changes with a KeyListener.
+ * <P>
+ * By default the array grows geometrically (doubling), so that adding
+ * n elements costs O(n) in total.  A vector constructed with a size
+ * increment grows by that fixed increment, as in earlier versions.
+ * A vector may also be set to be unordered.  Removing an element
+ * from an unordered vector moves the last element into its place 
+ * instead of shifting the tail of the array.
+ * <P>
+ * To traverse the elements without copying them, use elements() or
+ * the read-only list view returned by asList().
+ * <P>
+ * A PVector may be hollow when it is loaded from a paged database
+ * (see PagedStore).  Its contents are fetched on first use.
  */
-public class PVector implements Serializable {
+public class PVector implements Externalizable {
 
   // static attributes are not serialized.
   private final static int DEFAULT_INIT_SIZE = 8;
+  private final static float DEFAULT_GROWTH_FACTOR = 2.0f;
+  private final static long serialVersionUID = 1L;
 
   // Note: do not use transient attributes here.  Their values
   // will not be restored by PSE Pro when deserialized.
@@ -42,6 +73,17 @@ public class PVector implements Serializable {
    */
   private int size_increment = init_size;
 
+  /** 
+   * @serial 	growth factor of the array.  The fixed size_increment
+   *		is used instead if it is not greater than 1.
+   */
+  private float growth_factor = DEFAULT_GROWTH_FACTOR;
+
+  /** 
+   * @serial 	whether removal may change the order of elements
+   */
+  private boolean unordered = false;
+
   /** 
    * @serial 	an array of objects
    */
@@ -53,6 +95,26 @@ public class PVector implements Serializable {
    */
   private int size;
 
+  /** 
+   * @serial 	extracts the key of an element.  Null if not keyed.
+   */
+  private KeyExtractor extractor;
+
+  /** 
+   * Hash index from keys to elements.  It is derived from objs, so
+   * it is not saved but rebuilt on the first lookup after loading.
+   */
+  private transient volatile Hashtable<Object, Object> index;
+
+  /** Told when the key of an element changes.  Null if none. */
+  private transient KeyListener listener;
+
+  /** 
+   * Fetches the elements of a hollow vector.  Null if the elements
+   * are in memory.
+   */
+  private transient volatile Loader loader;
+
   /**
    * Constructs a PVector.
    */
@@ -61,7 +123,18 @@ public class PVector implements Serializable {
   }
 
   /**
-   * Constructs a PVector with input arguments.
+   * Constructs a keyed PVector.
+   *
+   * @param extractor	extracts the lookup key of an element
+   */
+  public PVector(KeyExtractor extractor) {
+    this();
+    this.extractor = extractor;
+  }
+
+  /**
+   * Constructs a PVector with input arguments.  The array grows by 
+   * the fixed increment.
    *
    * @param init_size		initial size of array
    * @param size_increment	increment in size
@@ -69,15 +142,74 @@ public class PVector implements Serializable {
   public PVector(int init_size, int size_increment) {
     this.init_size = init_size;
     this.size_increment = size_increment;
+    this.growth_factor = 0;  // use the fixed increment
     objs = new Object[init_size]; // storage array
   }
 
+  /**
+   * Constructs a keyed PVector with input arguments.
+   *
+   * @param init_size		initial size of array
+   * @param size_increment	increment in size
+   * @param extractor		extracts the lookup key of an element
+   */
+  public PVector(int init_size, int size_increment, KeyExtractor extractor) {
+    this(init_size, size_increment);
+    this.extractor = extractor;
+  }
+
+  /**
+   * Sets the growth factor of the array.  The array is multiplied
+   * by this factor when it is full.  Use a factor not greater than 1
+   * to grow by the fixed size increment instead.
+   *
+   * @param growth_factor	the growth factor
+   */
+  public void setGrowthFactor(float growth_factor) {
+    fetch();
+    this.growth_factor = growth_factor;
+  }
+
+  /**
+   * Returns the growth factor of the array.
+   *
+   * @return 	the growth factor.  Not greater than 1 if the fixed 
+   *		size increment is used.
+   */
+  public float getGrowthFactor() {
+    fetch();
+    return growth_factor;
+  }
+
+  /**
+   * Sets whether this vector is unordered.  Removal from an unordered
+   * vector takes constant time once the element is located, but it
+   * moves the last element into the hole.
+   *
+   * @param unordered	true if the order of elements need not be kept
+   */
+  public void setUnordered(boolean unordered) {
+    fetch();
+    this.unordered = unordered;
+  }
+
+  /**
+   * Returns whether this vector is unordered.
+   *
+   * @return 	true if removal may change the order of elements
+   */
+  public boolean isUnordered() {
+    fetch();
+    return unordered;
+  }
+
   /**
    * Returns the size of the vector.
    *
    * @return 	the size of the vector
    */
   public int size() {
+    fetch();
     return size;
   }
 
@@ -85,6 +217,7 @@ public class PVector implements Serializable {
    * Returns an element of the array.
    */
   public Object elementAt(int index) throws ArrayIndexOutOfBoundsException {
+    fetch();
     if (index >= size) throw new ArrayIndexOutOfBoundsException(index);
     else return objs[index];
   }
@@ -95,17 +228,51 @@ public class PVector implements Serializable {
    * @return the objects as an array
    */
   public Object[] toArray() {
+    fetch();
     Object[] o = new Object[size];
     System.arraycopy(objs, 0, o, 0, size); // copy array elements
     return o;
   }
 
+  /** 
+   * Returns the objects in the input array, if it is large enough.
+   * Otherwise a new array of the same runtime type is allocated.
+   * Thus a typed array is returned with a single copy.
+   *
+   * @param a	the array into which the objects are to be stored
+   * @return the objects as an array
+   * @exception ArrayStoreException if an object is not of the runtime
+   *		type of the array
+   */
+  public Object[] toArray(Object[] a) {
+    fetch();
+    if (a.length < size) 
+      a = (Object[]) java.lang.reflect.Array.newInstance(
+      		a.getClass().getComponentType(), size);
+    System.arraycopy(objs, 0, a, 0, size); // copy array elements
+    if (a.length > size) a[size] = null;
+    return a;
+  }
+
+  /** 
+   * Returns a read-only list view of the objects.  The view does not
+   * copy the array, and it reflects later changes to this vector.
+   * The vector should not be changed while the view is iterated.
+   *
+   * @return a read-only list view of the objects
+   */
+  public <E> List<E> asList() {
+    fetch();
+    return new ListView<E>();
+  }
+
   /** 
    * Returns an enumeration for the objects.
    *
    * @return an enumeration for the objects
    */
   public Enumeration elements() {
+    fetch();
     return new Enumerator();
   }
 
@@ -117,6 +284,7 @@ public class PVector implements Serializable {
    * @return true if the input object is found.  False otherwise.
    */
   public boolean contains(Object object) {
+    fetch();
     for (int i=0; i<size; i++) {
       if( objs[i].equals(object) ) return true;
     }
@@ -129,9 +297,12 @@ public class PVector implements Serializable {
    * @param object 	an object
    */
   public boolean add(Object object) {
+    fetch();
     // Grow array, if needed.
-    if (objs.length == size) resize(objs.length + size_increment);
+    if (objs.length == size) grow();
     objs[size++] = object;
+    indexElement(object);
+    hold(object);
     return true;
   }
 
@@ -141,9 +312,12 @@ public class PVector implements Serializable {
    * @param object 	an object
    */
   public void addElement(Object object) {
+    fetch();
     // Grow array, if needed.
-    if (objs.length == size) resize(objs.length + size_increment);
+    if (objs.length == size) grow();
     objs[size++] = object;
+    indexElement(object);
+    hold(object);
   }
 
   /**
@@ -154,33 +328,258 @@ public class PVector implements Serializable {
    * @param object 	the object
    */
   public void removeElement(Object object) {
+    fetch();
     for (int i=0; i<size; i++) {
       if( objs[i].equals(object) ) {
-        System.arraycopy(objs, i+1, objs, i, size-i-1); // shift the elements
-        size--;
+        removeElementAt(i);
 	return;
       }
     }
     // do nothing if not found
   }
 
+  /**
+   * Removes the object at the input index.  The elements after it
+   * are shifted, unless this vector is unordered, in which case the
+   * last element is moved into its place.
+   *
+   * @param index 	index of the object
+   * @exception ArrayIndexOutOfBoundsException if the index is invalid
+   */
+  public void removeElementAt(int index) 
+  	throws ArrayIndexOutOfBoundsException {
+    fetch();
+    if (index < 0 || index >= size) 
+      throw new ArrayIndexOutOfBoundsException(index);
+
+    Object removed = objs[index];
+    if (unordered) {
+      objs[index] = objs[size-1];  // move the last element
+    } else {
+      System.arraycopy(objs, index+1, objs, index, size-index-1); // shift
+    }
+    objs[--size] = null;
+    unindexElement(removed);
+    release(removed);
+  }
+
   /**
    * Removes all objects in the vector.  Resets size to zero afterwards.
    * Note that the array length remains unchanged though.
    */
   public void removeAllElements() {
-    for (int i=0; i<size; i++) objs[i] = null;
+    fetch();
+    for (int i=0; i<size; i++) {
+      release(objs[i]);
+      objs[i] = null;
+    }
     size = 0;
+    if (index != null) index.clear();
+  }
+
+  /******** Keyed access *********/
+
+  /**
+   * Returns whether this vector is keyed.
+   *
+   * @return true if this vector has a key extractor
+   */
+  public boolean isKeyed() {
+    fetch();
+    return extractor != null;
+  }
+
+  /**
+   * Returns the first element with the input key.  It uses the hash
+   * index, which is rebuilt here if it is not available yet.
+   *
+   * @param key 	the key of the element
+   * @return the element.  Null if none matched.
+   * @exception IllegalStateException if this vector is not keyed
+   */
+  public Object getByKey(Object key) {
+    fetch();
+    if (extractor == null) 
+      throw new IllegalStateException("PVector is not keyed");
+    if (key == null) return null;
+
+    // Rebuild the index if it is not built yet or a key has changed.
+    Hashtable<Object, Object> h = index;
+    if (h == null) h = buildIndex();
+    return h.get(key);
+  }
+
+  /**
+   * Rebuilds the hash index from the array.  Do nothing if this 
+   * vector is not keyed.  The new index is used only when it is
+   * complete, so threads that only read the vector may call it at
+   * the same time.
+   */
+  public void reindex() {
+    fetch();
+    if (extractor != null) buildIndex();
+  }
+
+  /**
+   * Called by a KeyedElement of this vector when its key has changed.
+   * The hash index is dropped, and rebuilt on the next lookup, and
+   * the listener is told.
+   *
+   * @param element	the element
+   * @param oldKey	the key of the element before the change
+   */
+  public void keyChanged(Object element, Object oldKey) {
+    index = null;
+    KeyListener l = listener;
+    if (l != null) l.keyChanged(this, element, oldKey);
+  }
+
+  /**
+   * Sets the listener that is told when the key of an element of 
+   * this vector changes, e.g. the object that holds this vector.  It
+   * is not saved, so the holder sets it again after loading.
+   *
+   * @param listener	the listener.  Null for none.
+   */
+  public void setKeyListener(KeyListener listener) {
+    this.listener = listener;
+  }
+
+
+  /******** Hollow vectors *********/
+
+  /**
+   * Returns whether this vector is hollow, i.e. its elements are not
+   * fetched from the database yet.  They are fetched when the vector
+   * is first used.
+   *
+   * @return true if this vector is hollow
+   */
+  public boolean isHollow() {
+    return loader != null;
+  }
+
+  /**
+   * Makes this vector hollow.  The contents of the vector are replaced
+   * by those returned by the loader when it is first used.
+   *
+   * @param loader	the loader of the contents
+   */
+  void setLoader(Loader loader) {
+    this.loader = loader;
   }
 
 
   /******** Protected and Private Methods *********/
 
+  /** 
+   * Fetches the contents of this vector if it is hollow.  Called
+   * first by all public methods that use the contents.
+   */
+  private void fetch() {
+    if (loader != null) fetchContents();
+  }
+
+  /** 
+   * Replaces the contents of this vector by those of the loader.
+   */
+  private synchronized void fetchContents() {
+    Loader l = loader;
+    if (l == null) return;  // fetched by another thread
+    PVector v = l.load();
+    init_size = v.init_size;
+    size_increment = v.size_increment;
+    growth_factor = v.growth_factor;
+    unordered = v.unordered;
+    extractor = v.extractor;
+    objs = v.objs;
+    size = v.size;
+    index = null;
+    for (int i=0; i<size; i++) {  // we hold the elements, not v
+      v.release(objs[i]);
+      hold(objs[i]);
+    }
+    loader = null;
+  }
+
+  /** 
+   * Builds the hash index from the array.  The new index is used
+   * only when it is complete.
+   */
+  private Hashtable<Object, Object> buildIndex() {
+    Hashtable<Object, Object> h =
+    	new Hashtable<Object, Object>(Math.max(2*size, 11));
+    for (int i=0; i<size; i++) {
+      Object key = extractor.getKey(objs[i]);
+      if (key != null && !h.containsKey(key)) h.put(key, objs[i]);
+    }
+    index = h;
+    return h;
+  }
+
+  /** 
+   * Registers this vector as a holder of the input element, if this
+   * vector is keyed and the key of the element may change.
+   */
+  private void hold(Object object) {
+    if (extractor != null && object instanceof KeyedElement)
+      ((KeyedElement) object).addHolder(this);
+  }
+
+  /** 
+   * Unregisters this vector as a holder of the input element.
+   */
+  private void release(Object object) {
+    if (extractor != null && object instanceof KeyedElement)
+      ((KeyedElement) object).removeHolder(this);
+  }
+
+  /** 
+   * Adds the input element to the hash index, unless an earlier
+   * element has the same key.
+   */
+  private void indexElement(Object object) {
+    Hashtable<Object, Object> h = index;
+    if (h == null) return;  // not keyed, or not built yet
+    Object key = extractor.getKey(object);
+    if (key != null && !h.containsKey(key)) h.put(key, object);
+  }
+
+  /** 
+   * Removes the input element from the hash index.  If another
+   * element has the same key, it takes over the index entry.
+   */
+  private void unindexElement(Object object) {
+    Hashtable<Object, Object> h = index;
+    if (h == null) return;
+    Object key = extractor.getKey(object);
+    if (key == null || h.get(key) != object) return;
+
+    h.remove(key);
+    for (int i=0; i<size; i++) {
+      if (key.equals(extractor.getKey(objs[i]))) {
+        h.put(key, objs[i]);
+	return;
+      }
+    }
+  }
+
+  /** 
+   * An internal method to enlarge the array by the growth factor, or
+   * by the fixed size increment.
+   */
+  private void grow() {
+    int newsize;
+    if (growth_factor > 1) newsize = (int) (objs.length * growth_factor);
+    else newsize = objs.length + size_increment;
+    resize(Math.max(newsize, objs.length + 1));
+  }
+
   /** 
    * An internal method to change the allocated size of the array.
    */
   protected void resize(int newsize) {
-    // show("Increasing size by " + size_increment + " to " + newsize);
+    // show("Increasing size to " + newsize);
     Object[] oldobjs = objs;
     objs = new Object[newsize]; // create a new array
     System.arraycopy(oldobjs, 0, objs, 0, size); // copy elements
@@ -188,22 +587,146 @@ public class PVector implements Serializable {
 
 
   /**
-   * Write the non-static and non-transient fields of the
-   * current class to this stream.  Omit unused array elements
-   * before writing the array. 
+   * Writes this vector to the stream: the extractor, the growth
+   * settings, the number of elements and then the elements.  Only
+   * the used part of the array is written, and the vector itself is
+   * not changed, so it is safe to save a vector that is in use.
+   *
+   * @param out	the stream to write to
+   * @exception IOException if an I/O error occurs
    */
-  private void writeObject(ObjectOutputStream out) throws IOException {
-    if (objs.length > size) resize(size);  // Compact the array.
-    out.defaultWriteObject();              // Then write it out normally.
+  public void writeExternal(ObjectOutput out) throws IOException {
+    fetch();
+    out.writeObject(extractor);
+    out.writeInt(init_size);  // the primitives are written in one block
+    out.writeInt(size_increment);
+    out.writeFloat(growth_factor);
+    out.writeBoolean(unordered);
+    out.writeInt(size);  // length prefix
+    for (int i=0; i<size; i++) out.writeObject(objs[i]);
   }
 
-  /** 
-   * Compute the transient size field after deserializing the array.
+  /**
+   * Reads a vector written by writeExternal.  The hash index is 
+   * rebuilt on the first lookup.
+   *
+   * @param in	the stream to read from
+   * @exception IOException if an I/O error occurs
+   * @exception ClassNotFoundException if an element class is not found
    */
-  private void readObject(ObjectInputStream in)
+  public void readExternal(ObjectInput in)
           throws IOException, ClassNotFoundException {
-    in.defaultReadObject(); // read the fields normally
-    // restore the transient fields here if needed
+    extractor = (KeyExtractor) in.readObject();
+    init_size = in.readInt();
+    size_increment = in.readInt();
+    growth_factor = in.readFloat();
+    unordered = in.readBoolean();
+    int n = in.readInt();
+    objs = new Object[Math.max(n, init_size)];
+    for (int i=0; i<n; i++) objs[i] = in.readObject();
+    size = n;
+    index = null;
+    for (int i=0; i<n; i++) hold(objs[i]);
+  }
+
+  /**
+   * An interface for extracting the lookup key of an element in a
+   * keyed PVector.  It is serializable since a keyed PVector keeps
+   * its extractor.
+   */
+  public interface KeyExtractor extends Serializable {
+
+    /**
+     * Returns the key of the input element.
+     *
+     * @param element	an element of the vector
+     * @return the key of the element.  Null if it has no key.
+     */
+    public Object getKey(Object element);
+  }
+
+  /**
+   * An interface of elements whose keys may change.  A keyed vector
+   * adds itself as a holder of each such element it holds, and 
+   * removes itself when the element is removed.  The element must
+   * call keyChanged of its holders when its key changes.
+   */
+  public interface KeyedElement {
+
+    /**
+     * Adds a vector that holds this element.  A vector that holds
+     * the element more than once is added as many times.
+     *
+     * @param v	the vector
+     */
+    public void addHolder(PVector v);
+
+    /**
+     * Removes a vector that held this element, once.
+     *
+     * @param v	the vector
+     */
+    public void removeHolder(PVector v);
+  }
+
+  /**
+   * An interface for being told when the key of an element of a
+   * keyed vector changes.
+   */
+  public interface KeyListener {
+
+    /**
+     * Called after the key of an element of the vector has changed.
+     *
+     * @param v		the vector
+     * @param element	the element
+     * @param oldKey	the key of the element before the change
+     */
+    public void keyChanged(PVector v, Object element, Object oldKey);
+  }
+
+  /**
+   * An interface for fetching the contents of a hollow vector.
+   */
+  public interface Loader {
+
+    /**
+     * Returns a vector with the contents of the hollow vector.
+     *
+     * @return the contents
+     * @exception RuntimeException if the contents cannot be fetched
+     */
+    public PVector load();
+  }
+
+  /**
+   * An inner class that implements a read-only list view of the 
+   * array elements.
+   */
+  private class ListView<E> extends AbstractList<E> implements RandomAccess {
+
+    /**
+     * Returns the element at the input index.
+     *
+     * @param index	index of the element
+     * @return the element
+     * @exception IndexOutOfBoundsException if the index is invalid
+     */
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+      if (index < 0 || index >= size) 
+        throw new IndexOutOfBoundsException("Index: " + index);
+      return (E) objs[index];
+    }
+
+    /**
+     * Returns the number of elements.
+     *
+     * @return the number of elements
+     */
+    public int size() {
+      return size;
+    }
   }
 
   /**
@@ -282,9 +805,46 @@ public class PVector implements Serializable {
       s += "  " + oe.toString();
     }
 
+    // Test the keyed mode, keyed by the string itself
+    PVector k = new PVector(new StringKey());
+    k.add("Alpha");
+    k.add("Beta");
+    k.add("Gamma");
+    k.removeElement("Beta");
+
+    s += "\n";
+    s += "...keyed lookup:\n";
+    s += "  " + k.getByKey("Alpha") + "  " + k.getByKey("Beta") 
+       + "  " + k.getByKey("Gamma");
+
+    // Test the unordered mode
+    PVector u = new PVector();
+    u.setUnordered(true);
+    u.add("One");
+    u.add("Two");
+    u.add("Three");
+    u.add("Four");
+    u.removeElement("One");
+
+    s += "\n";
+    s += "...unordered removal:\n";
+    e = u.elements();
+    while (e.hasMoreElements()) {
+      s += "  " + e.nextElement().toString();
+    }
+
     return s;
   }
 
+  /**
+   * A key extractor for testing.  Strings are their own keys.
+   */
+  static class StringKey implements KeyExtractor {
+    public Object getKey(Object element) {
+      return element;
+    }
+  }
+
   /**
    * Main method for testing.
    *
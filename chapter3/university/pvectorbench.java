@@ -0,0 +1,91 @@
+//*************************************************************************
+/**
+ * PVectorBench.java - A benchmark for the growth and removal modes
+ *	of PVector.
+ *
+ *   Copyright (C) 1998-2000    Yun-Tung Lau
+ *   All Rights Reserved.  See the license file in the home
+ *   directory of this package for important license information.
+ */
+//*************************************************************************
+
+/**
+ * This class bulk-loads elements into PVectors with different growth
+ * policies, and then removes elements from the front of ordered and
+ * unordered vectors.  The elapsed times are shown.
+ * <P>
+ * Usage: java PVectorBench [nElements]
+ * <P>
+ * The default is 1,000,000 elements.  Note that the legacy fixed
+ * increment takes O(n*n) time to load, so it is much slower.
+ */
+public class PVectorBench {
+
+  /**
+   * Loads n elements into the input vector.
+   *
+   * @param v	the vector
+   * @param n	number of elements
+   * @return elapsed time in milli seconds
+   */
+  public static long load(PVector v, int n) {
+    long t0 = System.currentTimeMillis();
+    for (int i=0; i<n; i++) v.add(Integer.valueOf(i));
+    return System.currentTimeMillis() - t0;
+  }
+
+  /**
+   * Removes the first n elements from the input vector.
+   *
+   * @param v	the vector
+   * @param n	number of elements to be removed
+   * @return elapsed time in milli seconds
+   */
+  public static long removeFront(PVector v, int n) {
+    long t0 = System.currentTimeMillis();
+    for (int i=0; i<n; i++) v.removeElementAt(0);
+    return System.currentTimeMillis() - t0;
+  }
+
+  /**
+   * Shows the input string.
+   *
+   * @s the string to be shown
+   */
+  public static void show(String s) {
+    System.out.println(s);
+  }
+
+  /**
+   * Main method for the benchmark.
+   *
+   * @exception Exception if any exception is thrown
+   */
+  public static void main(String[] args) throws Exception {
+    int n = 1000000;
+    if (args.length >= 1) n = Integer.parseInt(args[0]);
+    int nRemove = Math.max(n / 100, 1);
+
+    show("Loading " + n + " elements into each PVector:");
+
+    PVector geometric = new PVector();
+    show("  geometric growth (x2):       " + load(geometric, n) + " ms");
+
+    PVector factor = new PVector();
+    factor.setGrowthFactor(1.5f);
+    show("  geometric growth (x1.5):     " + load(factor, n) + " ms");
+
+    PVector fixed = new PVector(8, 8);
+    show("  fixed increment (8, legacy): " + load(fixed, n) + " ms");
+    fixed = null;
+
+    show("Removing " + nRemove + " elements from the front:");
+    show("  ordered (shift the tail):    " + removeFront(geometric, nRemove)
+    	+ " ms");
+
+    factor.setUnordered(true);
+    show("  unordered (swap the last):   " + removeFront(factor, nRemove)
+    	+ " ms");
+  }
+
+}
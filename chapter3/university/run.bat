@@ -1 +1 @@
-java University %1 %2
+java University %1 %2 %3
@@ -8,19 +8,51 @@
  */
 //*************************************************************************
 
-import java.util.Enumeration;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.List;
+import java.util.StringTokenizer;
 
 /**
  * A class describing a schedule.
  * This class is part of a binary association (Session).
+ * <P>
+ * The description of a schedule gives its weekly time slots, e.g.
+ * "M1-2&Th2-3" or "TTh10:30-12".  Each slot has one or more days (M,
+ * T, W, Th, F, Sa, Su) and the hours it begins and ends.  Hours from
+ * 1 to 7 are in the afternoon, as on a timetable; 13 to 23 may also be
+ * used.  The slots are read from the description when first needed,
+ * as intervals in minutes from Monday 0:00.  A description that is not
+ * in this form, such as one written by an earlier version, has no
+ * slots and never conflicts.
  */
 public class Schedule extends NamedObject {
 
+  /** Minutes in a day, and in a week. */
+  public final static int DAY = 24 * 60, WEEK = 7 * DAY;
+
+  /** Names of the days, from Monday. */
+  private final static String[] DAYS = { "M", "T", "W", "Th", "F", "Sa", "Su" };
+
   // Private attributes in the Schedule class
 
   /** A vector is used to contain the sessions. */
-  private PVector sessions = new PVector();
+  private PVector sessions = new PVector(NAME_KEY);
+
+  /** The slots, and the description they were read from.  Not
+      persistent. */
+  private transient int[] intervals;
+  private transient String intervalsOf;
+
 
+  /** 
+   * Constructs an empty schedule object.  It is used when the object
+   * is read from a stream.
+   */
+  public Schedule() {
+
+  }
 
   /** 
    * Constructs a schedule object.
@@ -31,6 +63,152 @@ public class Schedule extends NamedObject {
     super(description);  // use name of superclass for this
   }
 
+  /**
+   * Constructs a schedule object, after checking that the description
+   * gives its time slots.
+   *
+   * @param description	description of the schedule, e.g. "M1-2&Th2-3"
+   * @return the schedule
+   * @exception Exception if the description is not in that form
+   */
+  public static Schedule parse(String description) throws Exception {
+    parseIntervals(description);
+    return new Schedule(description);
+  }
+
+  /**
+   * Returns the time slots of this schedule.
+   *
+   * @return the start and end of each slot, in minutes from Monday
+   *		0:00, sorted by start.  Empty if the description does not
+   *		give any.
+   */
+  public int[] getIntervals() {
+    String name = getName();
+    int[] result = intervals;
+    if (result == null || intervalsOf != name) {
+      try {
+	result = parseIntervals(name);
+      } catch (Exception e) {
+	result = new int[0];
+      }
+      intervals = result;
+      intervalsOf = name;
+    }
+    return result;
+  }
+
+  /**
+   * Returns whether this schedule has a time slot that overlaps one of
+   * the other schedule.  Slots that only touch, such as 1-2 and 2-3,
+   * do not overlap.
+   *
+   * @param other	the other schedule
+   * @return true if they overlap
+   */
+  public boolean overlaps(Schedule other) {
+    int[] a = getIntervals();
+    int[] b = other.getIntervals();
+    int i = 0, j = 0;
+    while (i < a.length && j < b.length) {
+      if (a[i] < b[j+1] && b[j] < a[i+1]) return true;
+      if (a[i+1] < b[j+1]) i += 2;
+      else j += 2;
+    }
+    return false;
+  }
+
+  /**
+   * Reads the time slots of a description.
+   *
+   * @param description	the description, e.g. "M1-2&Th2-3"
+   * @return the start and end of each slot, in minutes from Monday
+   *		0:00, sorted by start
+   * @exception Exception if the description is not in that form
+   */
+  public static int[] parseIntervals(String description) throws Exception {
+    if (description == null) throw new Exception("No schedule");
+    int[] result = new int[0];
+    StringTokenizer slots = new StringTokenizer(description, "&");
+    if (!slots.hasMoreTokens()) throw badSchedule(description);
+    while (slots.hasMoreTokens()) {
+      String slot = slots.nextToken();
+
+      // the days, then the times
+      boolean[] days = new boolean[DAYS.length];
+      int i = 0;
+      boolean any = false;
+      while (i < slot.length() && Character.isLetter(slot.charAt(i))) {
+	int day = -1;
+	for (int d=0; d<DAYS.length; d++) {
+	  if (slot.startsWith(DAYS[d], i)
+	      && (day < 0 || DAYS[d].length() > DAYS[day].length()))
+	    day = d;
+	}
+	if (day < 0) throw badSchedule(description);
+	days[day] = true;
+	any = true;
+	i += DAYS[day].length();
+      }
+      int dash = slot.indexOf('-', i);
+      if (!any || dash < 0) throw badSchedule(description);
+      int start = parseTime(slot.substring(i, dash), description);
+      int end = parseTime(slot.substring(dash + 1), description);
+      if (end <= start) throw badSchedule(description);
+
+      int n = result.length;
+      for (int d=0; d<DAYS.length; d++) {
+	if (!days[d]) continue;
+	int[] r = new int[n + 2];
+	System.arraycopy(result, 0, r, 0, n);
+	r[n] = d * DAY + start;
+	r[n+1] = d * DAY + end;
+	result = r;
+	n += 2;
+      }
+    }
+
+    // sort the slots by start; there are only a few
+    for (int i=2; i<result.length; i+=2) {
+      for (int j=i; j>0 && result[j] < result[j-2]; j-=2) {
+	int t = result[j]; result[j] = result[j-2]; result[j-2] = t;
+	t = result[j+1]; result[j+1] = result[j-1]; result[j-1] = t;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Reads a time of day, e.g. "2" or "10:30".
+   *
+   * @return the minutes from 0:00
+   */
+  private static int parseTime(String time, String description)
+  	throws Exception {
+    int colon = time.indexOf(':');
+    int hour, minute = 0;
+    try {
+      if (colon < 0) {
+	hour = Integer.parseInt(time);
+      } else {
+	hour = Integer.parseInt(time.substring(0, colon));
+	minute = Integer.parseInt(time.substring(colon + 1));
+      }
+    } catch (NumberFormatException e) {
+      throw badSchedule(description);
+    }
+    if (hour >= 1 && hour <= 7) hour += 12;  // in the afternoon
+    if (hour < 0 || hour > 24 || minute < 0 || minute > 59
+	|| hour == 24 && minute > 0)
+      throw badSchedule(description);
+    return hour * 60 + minute;
+  }
+
+  private static Exception badSchedule(String description) {
+    return new Exception("Bad schedule: " + description
+    	+ " (e.g. M1-2&Th2-3 or TTh10:30-12)");
+  }
+
   /**
    * Returns the session object for the input name.
    *
@@ -38,12 +216,7 @@ public class Schedule extends NamedObject {
    * @return Session object.  Null if none matched.
    */
   public Session getSession(String name) {
-    Enumeration e = sessions.elements();
-    while (e.hasMoreElements()) {
-      Session c = (Session) e.nextElement();
-      if (c.getName().equals(name)) return c;
-    }
-    return null;
+    return (Session) sessions.getByKey(name);
   }
 
   /** 
@@ -51,11 +224,18 @@ public class Schedule extends NamedObject {
    *
    * @return the sessions of this schedule as an array
    */
-  public Session[] getSessions() { 
-    Object[] o = sessions.toArray();
-    Session[] r = new Session[o.length];
-    for (int i=0; i<o.length; i++) r[i] = (Session)o[i];
-    return r;
+  public Session[] getSessions() {
+    return (Session[]) sessions.toArray(new Session[sessions.size()]);
+  }
+
+  /**
+   * Returns a read-only list view of the sessions.  Unlike getSessions,
+   * it does not copy the sessions.
+   *
+   * @return the sessions as a read-only list
+   */
+  public List<Session> getSessionList() {
+    return sessions.asList();
   }
 
   /** 
@@ -65,6 +245,7 @@ public class Schedule extends NamedObject {
    */
   public void addSession(Session session) {
     sessions.add(session);
+    POManager.dirty(this);
   }
 
   /**
@@ -80,6 +261,7 @@ public class Schedule extends NamedObject {
 
     /* Remove the session Object from the vector */
     sessions.removeElement(c);
+    POManager.dirty(this);
   }
 
   /**
@@ -92,6 +274,7 @@ public class Schedule extends NamedObject {
     if (!sessions.contains(session))
       throw new Exception("Session not found: " + session.getName());
     sessions.removeElement(session);
+    POManager.dirty(this);
   }
 
   /**
@@ -99,6 +282,7 @@ public class Schedule extends NamedObject {
    */
   public void removeAllSessions( ) {
     sessions.removeAllElements();
+    POManager.dirty(this);
   }
 
   /** 
@@ -107,17 +291,49 @@ public class Schedule extends NamedObject {
    * @return the information of this schedule
    */
   public String toString() { 
-    String s = "Schedule: " + super.toString();
-    s += "\n";
-    s += "\tSessions:\n";
+    return writeToString();
+  }
+
+  /** 
+   * Writes the information of this schedule, with the names of its
+   * sessions.
+   *
+   * @param out	where to write the information
+   * @exception IOException if an I/O error occurs
+   */
+  public void writeTo(Appendable out) throws IOException { 
+    out.append("Schedule: ").append(getName());
+    out.append('\n');
+    out.append("\tSessions:\n");
 
-    Session[] t = getSessions();
-    for (int i=0; i<t.length; i++) {
-      s += "  " + t[i].getName();
+    List<Session> t = getSessionList();
+    for (int i=0; i<t.size(); i++) {
+      out.append("  ").append(t.get(i).getName());
     }
+  }
+
+  /**
+   * Writes the fields of this object to the stream.
+   *
+   * @param out	the stream to write to
+   * @exception IOException if an I/O error occurs
+   */
+  public void writeExternal(ObjectOutput out) throws IOException {
+    super.writeExternal(out);
+    out.writeObject(sessions);
+  }
 
-    return s;
+  /**
+   * Reads the fields written by writeExternal.
+   *
+   * @param in	the stream to read from
+   * @exception IOException if an I/O error occurs
+   * @exception ClassNotFoundException if a class is not found
+   */
+  public void readExternal(ObjectInput in)
+          throws IOException, ClassNotFoundException {
+    super.readExternal(in);
+    sessions = (PVector) in.readObject();
   }
 
 }
-
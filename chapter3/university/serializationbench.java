@@ -0,0 +1,129 @@
+//*************************************************************************
+/**
+ * SerializationBench.java - A benchmark for saving and loading the
+ *	university database.
+ *
+ *   Copyright (C) 1998-2000    Yun-Tung Lau
+ *   All Rights Reserved.  See the license file in the home
+ *   directory of this package for important license information.
+ */
+//*************************************************************************
+
+import java.io.File;
+
+/**
+ * This class builds a university with departments, courses,
+ * instructors, campuses, classrooms and sessions.  It then saves and
+ * loads it a few times through POManager, and shows the elapsed times
+ * and the size of the database file.  The university is saved by a
+ * checkpoint, since its updates are otherwise kept in the redo log.
+ * <P>
+ * Usage: java SerializationBench [nDept] [nCourse] [rounds]
+ * <P>
+ * The defaults are 20 departments with 500 courses each, and 3 rounds.
+ * Each course has one session.
+ */
+public class SerializationBench {
+
+  /** Name of the temporary database file. */
+  private final static String DB_FILE = "bench.odb";
+
+  /**
+   * Adds nDept departments to the input university.  Each department
+   * has nCourse courses with one session each, and a campus with one
+   * classroom for every ten courses.
+   *
+   * @param u		the university
+   * @param nDept	number of departments
+   * @param nCourse	number of courses per department
+   * @exception Exception if any exception is thrown
+   */
+  public static void build(University u, int nDept, int nCourse)
+      throws Exception {
+    Schedule[] schedules = new Schedule[20];
+    for (int k=0; k<schedules.length; k++)
+      schedules[k] = new Schedule("Schedule " + k);
+
+    for (int i=0; i<nDept; i++) {
+      Department d = new Department("Department " + i);
+      Campus c = new Campus("Campus " + i);
+      u.addDepartment(d);
+      u.addCampus(c);
+
+      Instructor[] itors = new Instructor[Math.max(nCourse / 10, 1)];
+      Classroom[] rooms = new Classroom[itors.length];
+      for (int k=0; k<itors.length; k++) {
+        itors[k] = new Instructor("Instructor " + i + "." + k);
+	d.addInstructor(itors[k]);
+	rooms[k] = new Classroom("Room " + i + "." + k, "Building " + i);
+	c.addClassroom(rooms[k]);
+      }
+
+      for (int j=0; j<nCourse; j++) {
+        Course course = new Course("Course " + i + "." + j);
+	d.addCourse(course);
+	int k = j % itors.length;
+	course.addSession("Session " + i + "." + j,
+		schedules[j % schedules.length], rooms[k], itors[k], null);
+      }
+    }
+  }
+
+  /**
+   * Shows the input string.
+   *
+   * @s the string to be shown
+   */
+  public static void show(String s) {
+    System.out.println(s);
+  }
+
+  /**
+   * Main method for the benchmark.
+   *
+   * @exception Exception if any exception is thrown
+   */
+  public static void main(String[] args) throws Exception {
+    int nDept = 20;
+    int nCourse = 500;
+    int rounds = 3;
+    if (args.length >= 1) nDept = Integer.parseInt(args[0]);
+    if (args.length >= 2) nCourse = Integer.parseInt(args[1]);
+    if (args.length >= 3) rounds = Integer.parseInt(args[2]);
+
+    File f = new File(DB_FILE);
+    File log = new File(DB_FILE + ".log");
+    f.delete();
+    log.delete();
+
+    POManager.initialize(DB_FILE, "University");
+    University u = (University) POManager.getDbRoot();
+    build(u, nDept, nCourse);
+    show("Departments: " + nDept + ", courses and sessions: "
+    	+ (nDept * nCourse));
+
+    for (int r=0; r<rounds; r++) {
+      long t0 = System.currentTimeMillis();
+      POManager.checkpoint();
+      long t1 = System.currentTimeMillis();
+      POManager.shutdown();
+      long t2 = System.currentTimeMillis();
+      POManager.initialize(DB_FILE, "University");
+      long t3 = System.currentTimeMillis();
+
+      u = (University) POManager.getDbRoot();
+      int n = 0;
+      Department[] d = u.getDepartments();
+      for (int i=0; i<d.length; i++) n += d[i].getCourseCount();
+      if (n != nDept * nCourse) show("Wrong number of courses: " + n);
+
+      show("  round " + (r+1) + ":  save " + (t1 - t0) + " ms,  load "
+      	+ (t3 - t2) + " ms,  file " + (f.length() / 1024) + " KB");
+    }
+
+    POManager.shutdown();
+    f.delete();
+    log.delete();
+  }
+
+}
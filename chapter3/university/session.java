@@ -8,16 +8,19 @@
  */
 //*************************************************************************
 
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
 /**
  * This class is an association class between Schedule and Classroom.
- * Note that this implementation does not enforce the candidate key
- * requirement for association class.  Thus the same pair of schedule
- * and classroom may be associated with mulitple sessions, which
- * is really a scheduling conflict.
- * <P>
- * To make implementation consistent with the requirement, one may 
- * have a collection of all sessions and dynamically check for duplication.
- * Readers are encouraged to implement this feature.
+ * The candidate key requirement for the association class is enforced
+ * by Course.addSession: a session whose time slots overlap those of
+ * another session in the same classroom, or with the same instructor,
+ * is a scheduling conflict and is rejected.  The classrooms and
+ * instructors index their sessions by time for this (see SessionIndex).
+ * University.getConflicts finds the conflicts that are already stored,
+ * e.g. by an earlier version.
  */
 public class Session extends NamedObject {
 
@@ -31,6 +34,14 @@ public class Session extends NamedObject {
   private Schedule schedule;
   private Classroom classroom;
 
+  /** 
+   * Constructs an empty Session object.  It is used when the object
+   * is read from a stream.
+   */
+  public Session() {
+
+  }
+
   /** 
    * Constructs a Session object.  It also sets backward links from
    * the schedule and classroom objects for referential integrity.
@@ -107,6 +118,7 @@ public class Session extends NamedObject {
    */
   public void setCourse(Course course) {
     this.course = course;
+    POManager.dirty(this);
   }
 
   /** 
@@ -122,6 +134,12 @@ public class Session extends NamedObject {
       // should not occur
     }
     this.schedule = schedule;
+
+    // the time slots have changed
+    if (classroom != null) classroom.reindex(this);
+    if (itor1 != null) itor1.reindex(this);
+    if (itor2 != null) itor2.reindex(this);
+    POManager.dirty(this);
   }
 
   /** 
@@ -137,6 +155,7 @@ public class Session extends NamedObject {
       // should not occur
     }
     this.classroom = classroom;
+    POManager.dirty(this);
   }
 
   /** 
@@ -155,6 +174,7 @@ public class Session extends NamedObject {
     }
     this.itor1 = itor1;
     this.itor2 = itor2;
+    POManager.dirty(this);
   }
 
   /** 
@@ -165,21 +185,72 @@ public class Session extends NamedObject {
    * @return the information of this Session
    */
   public String toString(Object caller) { 
+    StringBuffer b = new StringBuffer();
+    try {
+      writeTo(b, caller);
+    } catch (IOException e) {}  // not thrown by a StringBuffer
+    return b.toString();
+  }
+
+  /** 
+   * Writes the information of this Session, as toString(caller)
+   * returns it.
+   *
+   * @param out	where to write the information
+   * @param caller the caller of this operation.
+   * @exception IOException if an I/O error occurs
+   */
+  public void writeTo(Appendable out, Object caller) throws IOException { 
     String lead = "        ";
-    String s = lead + "Session: " + super.toString() + "\n";
+    out.append(lead).append("Session: ").append(getName()).append('\n');
     if (! (caller instanceof Course) )
-      s += lead + "  Course: " + course.getName() + "\n";
+      out.append(lead).append("  Course: ").append(course.getName())
+         .append('\n');
     if (! (caller instanceof Schedule) )
-      s += lead + "  Schedule: " + schedule.getName() + "\n";
+      out.append(lead).append("  Schedule: ").append(schedule.getName())
+         .append('\n');
     if (! (caller instanceof Classroom) )
-      s += lead + "  Classroom: " + classroom.getName() + "\n";
+      out.append(lead).append("  Classroom: ").append(classroom.getName())
+         .append('\n');
     if (! (caller instanceof Instructor) ) {
-      s += lead + "  Instructor 1: " + itor1.getName() + "\n";
+      out.append(lead).append("  Instructor 1: ").append(itor1.getName())
+         .append('\n');
       if (itor2 != null)
-        s += lead + "  Instructor 2: " + itor2.getName() + "\n";
+        out.append(lead).append("  Instructor 2: ").append(itor2.getName())
+           .append('\n');
     }
-    return s;
   }
 
-}
+  /**
+   * Writes the fields of this object to the stream.
+   *
+   * @param out	the stream to write to
+   * @exception IOException if an I/O error occurs
+   */
+  public void writeExternal(ObjectOutput out) throws IOException {
+    super.writeExternal(out);
+    out.writeObject(itor1);
+    out.writeObject(itor2);
+    out.writeObject(course);
+    out.writeObject(schedule);
+    out.writeObject(classroom);
+  }
 
+  /**
+   * Reads the fields written by writeExternal.
+   *
+   * @param in	the stream to read from
+   * @exception IOException if an I/O error occurs
+   * @exception ClassNotFoundException if a class is not found
+   */
+  public void readExternal(ObjectInput in)
+          throws IOException, ClassNotFoundException {
+    super.readExternal(in);
+    itor1 = (Instructor) in.readObject();
+    itor2 = (Instructor) in.readObject();
+    course = (Course) in.readObject();
+    schedule = (Schedule) in.readObject();
+    classroom = (Classroom) in.readObject();
+  }
+
+}
@@ -0,0 +1,354 @@
+//*************************************************************************
+/**
+ * SessionIndex.java - An index of sessions by their time slots
+ *
+ *   Copyright (C) 1998-2000    Yun-Tung Lau
+ *   All Rights Reserved.  See the license file in the home
+ *   directory of this package for important license information.
+ */
+//*************************************************************************
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Vector;
+
+/**
+ * An index of the sessions of a classroom or an instructor by the
+ * time slots of their schedules (see Schedule.getIntervals).  It is
+ * an interval tree: a balanced binary tree of the slots ordered by
+ * start, where each node also keeps the latest end below it.  Adding
+ * or removing a session, and finding the sessions that overlap a
+ * schedule, take O(log n) for n slots, plus the number found.
+ * <P>
+ * The index is not persistent.  Classroom and Instructor build it
+ * from their sessions when it is first needed.
+ * <P>
+ * The class also finds all the conflicts among a list of sessions in
+ * one sweep; see findConflicts.
+ */
+public class SessionIndex {
+
+  private Node root;
+  private boolean deleted;  // set by delete
+
+  /** The slots each session was added with. */
+  private Hashtable<Session, int[]> slots = new Hashtable<Session, int[]>();
+
+
+  /**
+   * Adds a session with the slots of its schedule.  Does nothing if it
+   * has been added.
+   *
+   * @param session	the session
+   */
+  public void add(Session session) {
+    if (slots.containsKey(session)) return;
+    Schedule schedule = session.getSchedule();
+    int[] s = schedule == null ? new int[0] : schedule.getIntervals();
+    slots.put(session, s);
+    for (int i=0; i<s.length; i+=2)
+      root = insert(root, new Node(s[i], s[i+1], session));
+  }
+
+  /**
+   * Removes a session, with the slots it was added with.  Does nothing
+   * if it has not been added.
+   *
+   * @param session	the session
+   */
+  public void remove(Session session) {
+    int[] s = slots.remove(session);
+    if (s == null) return;
+    for (int i=0; i<s.length; i+=2)
+      root = delete(root, s[i], s[i+1], session);
+  }
+
+  /**
+   * Returns the number of sessions.
+   */
+  public int size() {
+    return slots.size();
+  }
+
+  /**
+   * Returns the sessions that have a slot overlapping one of the
+   * schedule.
+   *
+   * @param schedule	the schedule
+   * @param except	a session to leave out, e.g. the one of the
+   *		schedule; may be null
+   * @return the sessions, each once
+   */
+  public Session[] getConflicts(Schedule schedule, Session except) {
+    Vector<Session> found = new Vector<Session>();
+    int[] s = schedule.getIntervals();
+    for (int i=0; i<s.length; i+=2) search(root, s[i], s[i+1], found);
+    found.removeElement(except);
+    return found.toArray(new Session[found.size()]);
+  }
+
+  /**
+   * Adds to found the sessions of the slots below the node that
+   * overlap the interval from start to end.
+   */
+  private static void search(Node n, int start, int end,
+  	Vector<Session> found) {
+    while (n != null && n.maxEnd > start) {
+      search(n.left, start, end, found);
+      if (n.start >= end) return;  // so are the slots on the right
+      if (n.end > start && !found.contains(n.session))
+	found.addElement(n.session);
+      n = n.right;
+    }
+  }
+
+  /********** Conflicts among sessions *************/
+
+  /**
+   * Finds all the conflicts among the sessions: two sessions whose
+   * slots overlap, in the same classroom or with the same instructor.
+   * All the slots are sorted by start and swept once.  For each
+   * classroom and instructor, the slots that have not ended are kept;
+   * a new slot conflicts with those.  This takes O(n log n) for n
+   * slots, plus the number of conflicts.
+   *
+   * @param sessions	the sessions
+   * @return the conflicts, by the start of the later slot; each pair of
+   *		sessions is given once for each classroom or instructor
+   */
+  public static Conflict[] findConflicts(List<Session> sessions) {
+    Vector<Node> all = new Vector<Node>();
+    for (int i=0; i<sessions.size(); i++) {
+      Session session = sessions.get(i);
+      if (session.getSchedule() == null) continue;
+      int[] s = session.getSchedule().getIntervals();
+      for (int k=0; k<s.length; k+=2)
+	all.addElement(new Node(s[k], s[k+1], session));
+    }
+    Node[] nodes = all.toArray(new Node[all.size()]);
+    Arrays.sort(nodes, new Comparator<Node>() {
+      public int compare(Node a, Node b) {
+	return Integer.compare(a.start, b.start);
+      }
+    });
+
+    Hashtable<NamedObject, Vector<Node>> active =
+    	new Hashtable<NamedObject, Vector<Node>>();  // slots not ended
+    Hashtable<Conflict, Conflict> seen =
+    	new Hashtable<Conflict, Conflict>();  // conflicts already found
+    Vector<Conflict> conflicts = new Vector<Conflict>();
+    for (int i=0; i<nodes.length; i++) {
+      Node n = nodes[i];
+      NamedObject[] resources = getResources(n.session);
+      for (int r=0; r<resources.length; r++) {
+	if (resources[r] == null) continue;
+	Vector<Node> slots = active.get(resources[r]);
+	if (slots == null) {
+	  slots = new Vector<Node>();
+	  active.put(resources[r], slots);
+	}
+	for (int k=slots.size()-1; k>=0; k--) {
+	  Node m = slots.elementAt(k);
+	  if (m.end <= n.start) {
+	    slots.removeElementAt(k);  // it has ended
+	  } else if (m.session != n.session) {
+	    Conflict c = new Conflict(m.session, n.session, resources[r]);
+	    if (seen.put(c, c) == null) conflicts.addElement(c);
+	  }
+	}
+	slots.addElement(n);
+      }
+    }
+    return conflicts.toArray(new Conflict[conflicts.size()]);
+  }
+
+  /**
+   * Returns the classroom and the instructors of a session.  Some of
+   * them may be null.
+   */
+  private static NamedObject[] getResources(Session session) {
+    Instructor[] itors = session.getInstructors();
+    return new NamedObject[] { session.getClassroom(), itors[0],
+    	itors[1] == itors[0] ? null : itors[1] };
+  }
+
+  /**
+   * A conflict: two sessions whose slots overlap, in a classroom or
+   * with an instructor.
+   */
+  public static class Conflict {
+    private Session first, second;
+    private NamedObject resource;
+
+    /**
+     * Constructs a conflict.
+     *
+     * @param first	the session that begins first
+     * @param second	the other session
+     * @param resource	the classroom or instructor
+     */
+    public Conflict(Session first, Session second, NamedObject resource) {
+      this.first = first;
+      this.second = second;
+      this.resource = resource;
+    }
+
+    /** Returns the session that begins first. */
+    public Session getFirst() {
+      return first;
+    }
+
+    /** Returns the other session. */
+    public Session getSecond() {
+      return second;
+    }
+
+    /** Returns the classroom or instructor. */
+    public NamedObject getResource() {
+      return resource;
+    }
+
+    /** The same sessions, in either order, and resource. */
+    public boolean equals(Object o) {
+      if (!(o instanceof Conflict)) return false;
+      Conflict c = (Conflict) o;
+      return resource == c.resource
+	&& (first == c.first && second == c.second
+	    || first == c.second && second == c.first);
+    }
+
+    public int hashCode() {
+      return first.hashCode() ^ second.hashCode() ^ resource.hashCode();
+    }
+
+    /**
+     * Returns the conflict as a string, e.g. "Sessions 1081
+     * (Physics-101, M1-2) and 1082 (Physics-102, M1-3) in classroom
+     * C-A31".
+     */
+    public String toString() {
+      return "Sessions " + describe(first) + " and " + describe(second)
+      	+ (resource instanceof Classroom ? " in classroom " : " with ")
+	+ resource.getName();
+    }
+
+    private static String describe(Session s) {
+      return s.getName() + " ("
+      	+ (s.getCourse() == null ? "" : s.getCourse().getName() + ", ")
+	+ s.getSchedule().getName() + ")";
+    }
+  }
+
+  /********** The interval tree *************/
+
+  /**
+   * A slot of a session, as a node of an AVL tree ordered by start.
+   */
+  private static class Node {
+    int start, end;
+    Session session;
+    int maxEnd;     // latest end in this subtree
+    int height = 1;
+    Node left, right;
+
+    Node(int start, int end, Session session) {
+      this.start = start;
+      this.end = end;
+      this.session = session;
+      maxEnd = end;
+    }
+
+    /** Updates the height and maxEnd from the children. */
+    void update() {
+      height = 1 + Math.max(height(left), height(right));
+      maxEnd = Math.max(end, Math.max(maxEnd(left), maxEnd(right)));
+    }
+  }
+
+  private static int height(Node n) {
+    return n == null ? 0 : n.height;
+  }
+
+  private static int maxEnd(Node n) {
+    return n == null ? Integer.MIN_VALUE : n.maxEnd;
+  }
+
+  private static Node insert(Node n, Node x) {
+    if (n == null) return x;
+    if (x.start < n.start) n.left = insert(n.left, x);
+    else n.right = insert(n.right, x);
+    return balance(n);
+  }
+
+  /**
+   * Deletes the node of a slot of a session, and sets deleted if it is
+   * found.  Nodes with the same start may be on either side after
+   * rotations, so both are searched.
+   */
+  private Node delete(Node n, int start, int end, Session session) {
+    if (n == null) return null;
+    if (start < n.start) {
+      n.left = delete(n.left, start, end, session);
+    } else if (start > n.start) {
+      n.right = delete(n.right, start, end, session);
+    } else if (n.end == end && n.session == session) {
+      deleted = true;
+      if (n.left == null) return n.right;
+      if (n.right == null) return n.left;
+      Node m = n.right;  // the next node takes its place
+      while (m.left != null) m = m.left;
+      n.right = deleteFirst(n.right);
+      m.left = n.left;
+      m.right = n.right;
+      n = m;
+    } else {
+      deleted = false;
+      n.left = delete(n.left, start, end, session);
+      if (!deleted) n.right = delete(n.right, start, end, session);
+    }
+    return balance(n);
+  }
+
+  private static Node deleteFirst(Node n) {
+    if (n.left == null) return n.right;
+    n.left = deleteFirst(n.left);
+    return balance(n);
+  }
+
+  private static Node balance(Node n) {
+    n.update();
+    int b = height(n.left) - height(n.right);
+    if (b > 1) {
+      if (height(n.left.left) < height(n.left.right))
+	n.left = rotateLeft(n.left);
+      return rotateRight(n);
+    }
+    if (b < -1) {
+      if (height(n.right.right) < height(n.right.left))
+	n.right = rotateRight(n.right);
+      return rotateLeft(n);
+    }
+    return n;
+  }
+
+  private static Node rotateRight(Node n) {
+    Node l = n.left;
+    n.left = l.right;
+    l.right = n;
+    n.update();
+    l.update();
+    return l;
+  }
+
+  private static Node rotateLeft(Node n) {
+    Node r = n.right;
+    n.right = r.left;
+    r.left = n;
+    n.update();
+    r.update();
+    return r;
+  }
+
+}
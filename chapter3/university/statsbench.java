@@ -0,0 +1,197 @@
+//*************************************************************************
+/**
+ * StatsBench.java - A benchmark for the cost of the transaction statistics.
+ *
+ *   Copyright (C) 1998-2000    Yun-Tung Lau
+ *   All Rights Reserved.  See the license file in the home
+ *   directory of this package for important license information.
+ */
+//*************************************************************************
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * This class runs transactions as the terminal does: read transactions
+ * that count the sessions of all courses, and update transactions
+ * that add or remove a course under POManager.TOKEN and log it.  It is
+ * run with TrxStats enabled and disabled, taking turns, and the
+ * transactions per second of each case are shown with the overhead of
+ * the statistics, per cent and in nano seconds per transaction.  The
+ * cost of recording one event, and the statistics of the last round,
+ * are shown at the end.
+ * <P>
+ * Usage: java StatsBench [seconds] [updatePercent] [rounds]
+ * <P>
+ * The defaults are 2 seconds per case, 10% updates and 4 rounds.  The
+ * university has 10 departments with 200 courses.
+ */
+public class StatsBench {
+
+  /** Name of the temporary database file. */
+  private final static String DB_FILE = "stats.odb";
+
+  /** Number of departments. */
+  private final static int DEPARTMENTS = 10;
+
+  private static int smNext;  // number of the next course added
+
+  /**
+   * Counts the sessions of all courses in the university.
+   *
+   * @param u	the university
+   * @return the number of sessions
+   */
+  public static int countSessions(University u) {
+    int n = 0;
+    List<Department> ds = u.getDepartmentList();
+    for (int i=0; i<ds.size(); i++) {
+      List<Course> cs = ds.get(i).getCourseList();
+      for (int j=0; j<cs.size(); j++) n += cs.get(j).getSessionCount();
+    }
+    return n;
+  }
+
+  /**
+   * Runs one case.
+   *
+   * @param enabled	true to enable the statistics
+   * @param millis	duration of the case
+   * @param percent	percentage of the transactions that update
+   * @return read and update transactions per second
+   * @exception Exception if any exception is thrown
+   */
+  public static long[] runCase(boolean enabled, long millis, int percent)
+  	throws Exception {
+    University u = (University) POManager.getDbRoot();
+    TrxStats.setEnabled(enabled);
+    POManager.getStats().reset();
+    long reads = 0, updates = 0;
+    long end = System.currentTimeMillis() + millis;
+    for (int i=0; System.currentTimeMillis() < end; ) {
+      for (int k=0; k<100; k++, i++) {
+	if (i % 100 < percent) {
+	  // each course is added and then removed in the same department
+	  Department d = u.getDepartment("Department "
+	  	+ (smNext / 2 % DEPARTMENTS));
+	  long waitStart = TrxStats.start();
+	  synchronized (POManager.TOKEN) {
+	    POManager.recordLockWait(waitStart);
+	    POManager.beginUpdateTrx();
+	    String name = "New " + (smNext / 2);
+	    if (smNext++ % 2 == 0) d.addCourse(name);
+	    else d.removeCourse(name);
+	    POManager.logUpdate(d.getName() + " " + name);
+	    POManager.commitTrx();
+	  }
+	  updates++;
+	} else {
+	  long waitStart = TrxStats.start();
+	  synchronized (POManager.TOKEN) {
+	    POManager.recordLockWait(waitStart);
+	    POManager.beginReadTrx();
+	    countSessions(u);
+	    POManager.commitTrx();
+	  }
+	  reads++;
+	}
+      }
+    }
+    return new long[] { reads * 1000 / millis, updates * 1000 / millis };
+  }
+
+  /**
+   * Returns the cost of recording one event, as the managers do.
+   *
+   * @return the cost in nano seconds
+   */
+  public static double eventCost() {
+    TrxStats stats = new TrxStats();
+    TrxStats.setEnabled(true);
+    int n = 10000000;
+    long t0 = System.nanoTime();
+    for (int i=0; i<n; i++)
+      stats.record(TrxStats.BEGIN_READ, TrxStats.start());
+    return (double) (System.nanoTime() - t0) / n;
+  }
+
+  /**
+   * Shows the input string.
+   *
+   * @s the string to be shown
+   */
+  public static void show(String s) {
+    System.out.println(s);
+  }
+
+  /**
+   * Main method for the benchmark.
+   *
+   * @exception Exception if any exception is thrown
+   */
+  public static void main(String[] args) throws Exception {
+    int seconds = 2;
+    int percent = 10;
+    int rounds = 4;
+    if (args.length >= 1) seconds = Integer.parseInt(args[0]);
+    if (args.length >= 2) percent = Integer.parseInt(args[1]);
+    if (args.length >= 3) rounds = Integer.parseInt(args[2]);
+
+    File f = new File(DB_FILE);
+    File log = new File(DB_FILE + ".log");
+    f.delete();
+    log.delete();
+    POManager.initialize(DB_FILE, "University");
+    SerializationBench.build((University) POManager.getDbRoot(),
+    	DEPARTMENTS, 200);
+    POManager.checkpoint();
+
+    show("Updates: " + percent + "%, rounds: " + rounds + " x "
+    	+ seconds + " s per case");
+
+    // warm up the JIT compiler first
+    runCase(true, 1000, percent);
+    runCase(false, 1000, percent);
+
+    // the cases take turns, and go first in turns, so that both get
+    // the same conditions
+    long[] on = new long[2];
+    long[] off = new long[2];
+    TrxStats last = null;
+    for (int round=0; round<rounds; round++) {
+      long[] r, s;
+      if (round % 2 == 0) {
+	r = runCase(false, seconds * 1000L, percent);
+	s = runCase(true, seconds * 1000L, percent);
+	last = POManager.getStats().snapshot();
+      } else {
+	s = runCase(true, seconds * 1000L, percent);
+	last = POManager.getStats().snapshot();
+	r = runCase(false, seconds * 1000L, percent);
+      }
+      for (int i=0; i<2; i++) {
+	off[i] += r[i] / rounds;
+	on[i] += s[i] / rounds;
+      }
+    }
+    double offRate = off[0] + off[1];
+    double onRate = on[0] + on[1];
+    double overhead = 100.0 * (offRate - onRate) / offRate;
+    long perTrx = Math.round(1e9 / onRate - 1e9 / offRate);
+    show("                  reads/s   updates/s");
+    show("  no statistics   " + off[0] + "\t    " + off[1]);
+    show("  statistics      " + on[0] + "\t    " + on[1]);
+    show("  overhead        " + Math.round(overhead * 100) / 100.0 + "%, "
+    	+ perTrx + " ns per transaction");
+    eventCost();  // warm up
+    show("  cost of an event " + Math.round(eventCost()) + " ns");
+    show("");
+    show("Statistics of the last round:");
+    if (last != null) show(last.toString());
+
+    POManager.shutdown();
+    f.delete();
+    log.delete();
+  }
+
+}
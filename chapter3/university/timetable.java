@@ -0,0 +1,577 @@
+//*************************************************************************
+/**
+ * Timetable.java - A solver that schedules the sessions of courses
+ *
+ *   Copyright (C) 1998-2000    Yun-Tung Lau
+ *   All Rights Reserved.  See the license file in the home
+ *   directory of this package for important license information.
+ */
+//*************************************************************************
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * This class makes a timetable for the courses of a university that
+ * have no sessions yet.  It gives each of them sessions, each with a
+ * time slot (see SLOTS), a classroom of any campus, and an instructor
+ * of the department of the course.  The sessions that are already in
+ * the university are kept, and the new ones must not conflict with
+ * them.
+ * <P>
+ * The hard constraints are that a classroom or an instructor has one
+ * session at a time.  The soft ones are that an instructor stays on
+ * one campus on a day, and teaches at most MAX_PER_DAY sessions a
+ * day.  The solver places the sessions greedily, and then improves
+ * them by local search: it moves a session in conflict (or, once there
+ * are none, any session) to the best of a few slots, classrooms and
+ * instructors tried.
+ * <P>
+ * Several searches with different random seeds run on a fork-join
+ * pool, and the best result is kept.  The result depends only on the
+ * university and the settings, not on the threads, so the
+ * "timetable" command can be redone from the redo log.
+ * <P>
+ * Typical usage:
+ * <PRE>
+ *    Timetable t = new Timetable(university);
+ *    t.solve();
+ *    show(t.getReport());
+ *    t.apply();  // add the sessions with Course.addSession
+ * </PRE>
+ */
+public class Timetable {
+
+  /** The weekly time slots: 50 minutes on MWF, 75 minutes on TTh. */
+  public final static String[] SLOTS = {
+    "MWF8-8:50", "MWF9-9:50", "MWF10-10:50", "MWF11-11:50", "MWF12-12:50",
+    "MWF1-1:50", "MWF2-2:50", "MWF3-3:50", "MWF4-4:50",
+    "TTh8-9:15", "TTh9:30-10:45", "TTh11-12:15", "TTh12:30-1:45",
+    "TTh2-3:15", "TTh3:30-4:45", "TTh5-6:15" };
+
+  /** The most sessions an instructor should teach on a day. */
+  public final static int MAX_PER_DAY = 3;
+
+  /** Weight of a conflict against the soft constraints. */
+  private final static int HARD = 1000;
+
+  /** Classrooms and instructors tried for each slot in a step. */
+  private final static int ROOM_TRIES = 3, INSTRUCTOR_TRIES = 2;
+
+  /** Chance in percent of a random move for a session in conflict. */
+  private final static int NOISE = 5;
+
+  // Settings
+  private int sessionsPerCourse = 1;
+  private int searches = 8;
+  private int steps = 20000;
+  private int parallelism = Runtime.getRuntime().availableProcessors();
+
+  // The problem, read from the university
+  private Vector<Course> courses = new Vector<Course>();  // of the sessions
+  private int[][] candidates;        // instructors of each session
+  private Instructor[] instructors;
+  private Classroom[] rooms;
+  private int[] campusOf;            // campus of each room
+  private int nCampuses;
+  private boolean[] roomBusy;        // room x slot taken by old sessions
+  private boolean[] instructorBusy;  // instructor x slot, likewise
+  private int[][] slotDays;          // days of each slot
+  private int unplaceable;           // courses without instructors
+
+  // The result
+  private Search best;
+  private long solveMillis;
+
+
+  /**
+   * Reads the problem from a university: the courses without sessions,
+   * the instructors of their departments, the classrooms of all
+   * campuses, and the slots taken by the sessions already there.
+   *
+   * @param u	the university
+   */
+  public Timetable(University u) {
+    // the classrooms, and their campuses
+    Vector<Classroom> rs = new Vector<Classroom>();
+    Vector<Integer> cs = new Vector<Integer>();
+    List<Campus> campuses = u.getCampusList();
+    for (int i=0; i<campuses.size(); i++) {
+      List<Classroom> t = campuses.get(i).getClassroomList();
+      for (int j=0; j<t.size(); j++) {
+	rs.addElement(t.get(j));
+	cs.addElement(Integer.valueOf(i));
+      }
+    }
+    rooms = rs.toArray(new Classroom[rs.size()]);
+    campusOf = new int[rooms.length];
+    for (int i=0; i<rooms.length; i++)
+      campusOf[i] = cs.elementAt(i).intValue();
+    nCampuses = campuses.size();
+
+    // the instructors and courses, by department
+    Vector<Instructor> itors = new Vector<Instructor>();
+    Vector<int[]> depts = new Vector<int[]>();  // instructors of each course
+    List<Department> ds = u.getDepartmentList();
+    for (int i=0; i<ds.size(); i++) {
+      List<Instructor> t = ds.get(i).getInstructorList();
+      int[] c = new int[t.size()];
+      for (int j=0; j<t.size(); j++) {
+	c[j] = itors.size();
+	itors.addElement(t.get(j));
+      }
+      List<Course> cl = ds.get(i).getCourseList();
+      for (int j=0; j<cl.size(); j++) {
+	Course course = cl.get(j);
+	if (course.getSessionCount() > 0) continue;
+	if (c.length == 0) {
+	  unplaceable++;
+	  continue;
+	}
+	courses.addElement(course);
+	depts.addElement(c);
+      }
+    }
+    instructors = itors.toArray(new Instructor[itors.size()]);
+    candidates = depts.toArray(new int[depts.size()][]);
+
+    // the slots and the days they take
+    Schedule[] schedules = new Schedule[SLOTS.length];
+    slotDays = new int[SLOTS.length][];
+    for (int t=0; t<SLOTS.length; t++) {
+      schedules[t] = new Schedule(SLOTS[t]);
+      int[] iv = schedules[t].getIntervals();
+      slotDays[t] = new int[iv.length / 2];
+      for (int k=0; k<iv.length; k+=2) slotDays[t][k/2] = iv[k] / Schedule.DAY;
+    }
+
+    // the slots taken by the old sessions
+    int nSlots = SLOTS.length;
+    roomBusy = new boolean[rooms.length * nSlots];
+    for (int r=0; r<rooms.length; r++) {
+      if (rooms[r].getSessionList().isEmpty()) continue;
+      for (int t=0; t<nSlots; t++)
+	roomBusy[r*nSlots + t] =
+	  rooms[r].getConflicts(schedules[t], null).length > 0;
+    }
+    instructorBusy = new boolean[instructors.length * nSlots];
+    for (int i=0; i<instructors.length; i++) {
+      if (instructors[i].getSessionCount() == 0) continue;
+      for (int t=0; t<nSlots; t++)
+	instructorBusy[i*nSlots + t] =
+	  instructors[i].getConflicts(schedules[t], null).length > 0;
+    }
+  }
+
+  /**
+   * Sets the number of sessions to give each course.  It is 1 by
+   * default.
+   *
+   * @param n	the number
+   */
+  public void setSessionsPerCourse(int n) {
+    sessionsPerCourse = Math.max(n, 1);
+  }
+
+  /**
+   * Sets the number of searches, and the steps of local search in each.
+   * They are 8 and 20000 by default.
+   *
+   * @param searches	number of searches, each with its own seed
+   * @param steps	number of steps of each search
+   */
+  public void setSearches(int searches, int steps) {
+    this.searches = Math.max(searches, 1);
+    this.steps = Math.max(steps, 0);
+  }
+
+  /**
+   * Sets the number of threads of the fork-join pool.  It is the
+   * number of processors by default.
+   *
+   * @param n	the number of threads
+   */
+  public void setParallelism(int n) {
+    parallelism = Math.max(n, 1);
+  }
+
+  /**
+   * Runs the searches on a fork-join pool, and keeps the best result.
+   */
+  public void solve() {
+    long t0 = System.currentTimeMillis();
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      best = pool.invoke(new SearchTask(0, searches));
+    } finally {
+      pool.shutdown();
+    }
+    solveMillis = System.currentTimeMillis() - t0;
+  }
+
+  /**
+   * Returns the number of sessions to place.
+   */
+  public int getSessionCount() {
+    return courses.size() * sessionsPerCourse;
+  }
+
+  /**
+   * Returns the number of conflicts left in the result of solve; 0 if
+   * the timetable is free of conflicts.
+   */
+  public int getConflictCount() {
+    return best == null ? 0 : best.hard;
+  }
+
+  /**
+   * Returns the penalty of the soft constraints in the result of
+   * solve: the campus changes of the instructors on a day, plus the
+   * sessions above MAX_PER_DAY.
+   */
+  public int getPenalty() {
+    return best == null ? 0 : best.soft;
+  }
+
+  /**
+   * Returns the time solve took.
+   *
+   * @return the time in ms
+   */
+  public long getSolveTime() {
+    return solveMillis;
+  }
+
+  /**
+   * Returns a report of the result of solve: its time and quality.
+   *
+   * @return the report
+   */
+  public String getReport() {
+    int n = getSessionCount();
+    String s = "Timetable: " + n + " sessions of " + courses.size()
+      + " courses, " + rooms.length + " classrooms, "
+      + instructors.length + " instructors\n";
+    if (unplaceable > 0)
+      s += "  " + unplaceable + " courses have no instructors\n";
+    if (best == null || n == 0) return s + "  nothing to schedule";
+
+    int placed = 0;
+    for (int k=0; k<n; k++) if (!best.isConflicted(k)) placed++;
+    int[] soft = best.getPenalties();
+    s += "  solved in " + solveMillis + " ms: " + searches + " searches of "
+      + steps + " steps on " + parallelism + " threads, best seed "
+      + best.seed + "\n";
+    s += "  conflicts: " + best.hard + ", sessions without conflicts: "
+      + placed + "\n";
+    s += "  campus changes: " + soft[0] + ", sessions above "
+      + MAX_PER_DAY + " a day: " + soft[1] + "\n";
+    s += "  classroom use: " + (100 * n / Math.max(rooms.length
+      * SLOTS.length, 1)) + "% of the slots";
+    return s;
+  }
+
+  /**
+   * Adds the sessions of the result of solve to their courses with
+   * Course.addSession.  A session that is still in conflict is not
+   * added.  Each session is named after its course, e.g.
+   * "Physics-101/1", and the sessions of a slot share a schedule.
+   *
+   * @return the number of sessions added
+   * @exception Exception if a session cannot be added
+   */
+  public int apply() throws Exception {
+    if (best == null) return 0;
+    Schedule[] schedules = new Schedule[SLOTS.length];
+    int added = 0;
+    for (int k=0; k<getSessionCount(); k++) {
+      if (best.isConflicted(k)) continue;
+      int t = best.slot[k];
+      if (schedules[t] == null) schedules[t] = new Schedule(SLOTS[t]);
+      Course course = courses.elementAt(k / sessionsPerCourse);
+      course.addSession(course.getName() + "/" + (k % sessionsPerCourse + 1),
+	schedules[t], rooms[best.room[k]], instructors[best.itor[k]], null);
+      added++;
+    }
+    return added;
+  }
+
+  /**
+   * Runs the searches from lo to hi, splitting them in halves.
+   */
+  private class SearchTask extends RecursiveTask<Search> {
+    private int lo, hi;
+
+    SearchTask(int lo, int hi) {
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    protected Search compute() {
+      if (hi - lo == 1) {
+	Search s = new Search(lo);
+	s.run();
+	return s;
+      }
+      int mid = (lo + hi) >>> 1;
+      SearchTask left = new SearchTask(lo, mid);
+      left.fork();
+      Search b = new SearchTask(mid, hi).compute();
+      Search a = left.join();
+      return a.cost() <= b.cost() ? a : b;  // the lower seed on a tie
+    }
+  }
+
+  /**
+   * One search, with its own random numbers.  It keeps the best
+   * assignment it has seen.
+   */
+  private class Search {
+    private int seed;
+    private Random random;
+    private int n, nSlots, nCampus;
+
+    // The current assignment of each session, and the counts of it
+    private int[] slot, room, itor;
+    private int[] roomUse;      // room x slot, 1 more if busy before
+    private int[] itorUse;      // instructor x slot, likewise
+    private int[] dayCount;     // instructor x day: sessions
+    private int[] dayCampus;    // instructor x day x campus: sessions
+    private int[] distinct;     // instructor x day: campuses
+    private int hard, soft;
+
+    // The best assignment
+    private int[] bestSlot, bestRoom, bestItor;
+    private int bestHard, bestSoft;
+
+    Search(int seed) {
+      this.seed = seed;
+      random = new Random(seed);
+      n = getSessionCount();
+      nSlots = SLOTS.length;
+      nCampus = Math.max(nCampuses, 1);
+      slot = new int[n];
+      room = new int[n];
+      itor = new int[n];
+      roomUse = new int[rooms.length * nSlots];
+      itorUse = new int[instructors.length * nSlots];
+      for (int x=0; x<roomUse.length; x++) if (roomBusy[x]) roomUse[x] = 1;
+      for (int x=0; x<itorUse.length; x++)
+	if (instructorBusy[x]) itorUse[x] = 1;
+      dayCount = new int[instructors.length * 7];
+      distinct = new int[instructors.length * 7];
+      dayCampus = new int[instructors.length * 7 * nCampus];
+    }
+
+    int cost() {
+      return hard * HARD + soft;
+    }
+
+    /**
+     * Places the sessions greedily, then runs the local search.
+     */
+    void run() {
+      if (n == 0 || rooms.length == 0) {
+	save();
+	return;
+      }
+
+      // the sessions with fewer instructors first, else at random
+      Integer[] order = new Integer[n];
+      for (int k=0; k<n; k++) order[k] = Integer.valueOf(k);
+      for (int k=n-1; k>0; k--) {
+	int j = random.nextInt(k + 1);
+	Integer x = order[k]; order[k] = order[j]; order[j] = x;
+      }
+      Arrays.sort(order, new Comparator<Integer>() {
+	public int compare(Integer a, Integer b) {
+	  return candidates[a.intValue() / sessionsPerCourse].length
+	    - candidates[b.intValue() / sessionsPerCourse].length;
+	}
+      });
+      for (int k=0; k<n; k++) place(order[k].intValue());
+      save();
+
+      int next = 0;  // where to look for a session in conflict
+      for (int step=0; step<steps && cost() > 0; step++) {
+	int k = -1;
+	if (hard > 0) {
+	  for (int j=0; j<n && k < 0; j++) {
+	    int c = (next + j) % n;
+	    if (isConflicted(c)) k = c;
+	  }
+	  next = k + 1 + random.nextInt(n);
+	}
+	if (k < 0) k = random.nextInt(n);
+	move(k);
+	if (cost() < bestHard * HARD + bestSoft) save();
+      }
+    }
+
+    /**
+     * Places a new session at its best slot, with a free classroom
+     * and the least busy instructor free then, if any.
+     */
+    private void place(int k) {
+      int[] c = candidates[k / sessionsPerCourse];
+      int bestCost = Integer.MAX_VALUE, bt = 0, br = 0, bi = 0;
+      for (int t=0; t<nSlots; t++) {
+	int r = random.nextInt(rooms.length);
+	for (int j=0; j<rooms.length; j++) {
+	  int x = (r + j) % rooms.length;
+	  if (roomUse[x*nSlots + t] == 0) {
+	    r = x;
+	    break;
+	  }
+	}
+	int i = c[random.nextInt(c.length)];
+	for (int j=0; j<c.length; j++) {
+	  if (itorUse[c[j]*nSlots + t] == 0
+	      && (itorUse[i*nSlots + t] > 0 || load(c[j]) < load(i)))
+	    i = c[j];
+	}
+	int cost = tryMove(k, t, r, i);
+	if (cost < bestCost) {
+	  bestCost = cost;
+	  bt = t; br = r; bi = i;
+	}
+      }
+      slot[k] = bt; room[k] = br; itor[k] = bi;
+      add(k);
+    }
+
+    /**
+     * Moves a session to the best of the slots, classrooms and
+     * instructors tried.  A session in conflict moves even if the cost
+     * goes up, and sometimes at random; another one moves only if the
+     * cost does not go up.
+     */
+    private void move(int k) {
+      boolean conflicted = isConflicted(k);
+      int[] c = candidates[k / sessionsPerCourse];
+      int current = cost();
+      int ot = slot[k], or = room[k], oi = itor[k];
+      remove(k);
+
+      int bestCost = Integer.MAX_VALUE, ties = 0;
+      int bt = ot, br = or, bi = oi;
+      if (conflicted && random.nextInt(100) < NOISE) {
+	bt = random.nextInt(nSlots);
+	br = random.nextInt(rooms.length);
+	bi = c[random.nextInt(c.length)];
+      } else {
+	for (int t=0; t<nSlots; t++) {
+	  for (int a=0; a<=ROOM_TRIES; a++) {
+	    int r = a == 0 ? or : random.nextInt(rooms.length);
+	    for (int b=0; b<=INSTRUCTOR_TRIES; b++) {
+	      int i = b == 0 ? oi : c[random.nextInt(c.length)];
+	      if (!conflicted && t == ot && r == or && i == oi) continue;
+	      int cost = tryMove(k, t, r, i);
+	      if (cost < bestCost) {
+		bestCost = cost;
+		ties = 1;
+		bt = t; br = r; bi = i;
+	      } else if (cost == bestCost && random.nextInt(++ties) == 0) {
+		bt = t; br = r; bi = i;
+	      }
+	    }
+	  }
+	}
+	if (!conflicted && bestCost > current) {
+	  bt = ot; br = or; bi = oi;
+	}
+      }
+      slot[k] = bt; room[k] = br; itor[k] = bi;
+      add(k);
+    }
+
+    /**
+     * Returns the cost with a session, which is not counted, at the
+     * input slot, classroom and instructor.
+     */
+    private int tryMove(int k, int t, int r, int i) {
+      slot[k] = t; room[k] = r; itor[k] = i;
+      add(k);
+      int cost = cost();
+      remove(k);
+      return cost;
+    }
+
+    /** Counts a session. */
+    private void add(int k) {
+      int t = slot[k];
+      if (roomUse[room[k]*nSlots + t]++ > 0) hard++;
+      if (itorUse[itor[k]*nSlots + t]++ > 0) hard++;
+      int[] days = slotDays[t];
+      for (int d=0; d<days.length; d++) {
+	int x = itor[k]*7 + days[d];
+	soft -= penalty(x);
+	dayCount[x]++;
+	if (dayCampus[x*nCampus + campusOf[room[k]]]++ == 0) distinct[x]++;
+	soft += penalty(x);
+      }
+    }
+
+    /** Stops counting a session. */
+    private void remove(int k) {
+      int t = slot[k];
+      if (--roomUse[room[k]*nSlots + t] > 0) hard--;
+      if (--itorUse[itor[k]*nSlots + t] > 0) hard--;
+      int[] days = slotDays[t];
+      for (int d=0; d<days.length; d++) {
+	int x = itor[k]*7 + days[d];
+	soft -= penalty(x);
+	dayCount[x]--;
+	if (--dayCampus[x*nCampus + campusOf[room[k]]] == 0) distinct[x]--;
+	soft += penalty(x);
+      }
+    }
+
+    /** Returns the soft penalty of an instructor on a day. */
+    private int penalty(int x) {
+      return Math.max(distinct[x] - 1, 0)
+	+ Math.max(dayCount[x] - MAX_PER_DAY, 0);
+    }
+
+    /** Returns the sessions of an instructor in all slots. */
+    private int load(int i) {
+      int s = 0;
+      for (int d=0; d<7; d++) s += dayCount[i*7 + d];
+      return s;
+    }
+
+    /** Tells if a session of the current assignment is in conflict. */
+    private boolean isConflicted(int k) {
+      return roomUse[room[k]*nSlots + slot[k]] > 1
+	|| itorUse[itor[k]*nSlots + slot[k]] > 1;
+    }
+
+    /** Keeps the current assignment as the best. */
+    private void save() {
+      bestSlot = slot.clone();
+      bestRoom = room.clone();
+      bestItor = itor.clone();
+      bestHard = hard;
+      bestSoft = soft;
+    }
+
+    /**
+     * Returns the soft penalties of the current assignment: the campus
+     * changes, and the sessions above MAX_PER_DAY.
+     */
+    int[] getPenalties() {
+      int[] p = new int[2];
+      for (int x=0; x<dayCount.length; x++) {
+	p[0] += Math.max(distinct[x] - 1, 0);
+	p[1] += Math.max(dayCount[x] - MAX_PER_DAY, 0);
+      }
+      return p;
+    }
+  }
+
+}
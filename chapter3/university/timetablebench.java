@@ -0,0 +1,124 @@
+//*************************************************************************
+/**
+ * TimetableBench.java - A benchmark for the timetable solver.
+ *
+ *   Copyright (C) 1998-2000    Yun-Tung Lau
+ *   All Rights Reserved.  See the license file in the home
+ *   directory of this package for important license information.
+ */
+//*************************************************************************
+
+/**
+ * This class builds a university whose courses have no sessions, and
+ * makes a timetable for it with Timetable, first on one thread and
+ * then on all processors.  The time and the quality of each solve
+ * are shown; both give the same timetable.  The sessions are then
+ * added with Course.addSession, and the conflicts of the university
+ * counted.
+ * <P>
+ * Usage: java TimetableBench [nDept] [nCourse] [searches] [steps]
+ * <P>
+ * The defaults are 10 departments with 100 courses each, 8 searches
+ * and 20000 steps.  Each department has an instructor for every 5
+ * courses.  There are 3 campuses, with enough classrooms for the
+ * sessions to fill 80% of the slots.
+ */
+public class TimetableBench {
+
+  /** Number of campuses. */
+  private final static int CAMPUSES = 3;
+
+  /**
+   * Adds nDept departments without sessions to the input university,
+   * and the campuses and classrooms.
+   *
+   * @param u		the university
+   * @param nDept	number of departments
+   * @param nCourse	number of courses per department
+   */
+  public static void build(University u, int nDept, int nCourse) {
+    for (int i=0; i<nDept; i++) {
+      Department d = new Department("Department " + i);
+      u.addDepartment(d);
+      for (int k=0; k<Math.max(nCourse / 5, 1); k++)
+	d.addInstructor(new Instructor("Instructor " + i + "." + k));
+      for (int j=0; j<nCourse; j++)
+	d.addCourse(new Course("Course " + i + "." + j));
+    }
+    int nRooms = nDept * nCourse * 100 / 80 / Timetable.SLOTS.length + 1;
+    for (int i=0; i<CAMPUSES; i++) {
+      Campus c = new Campus("Campus " + i);
+      u.addCampus(c);
+      for (int k=i; k<nRooms; k+=CAMPUSES)
+	c.addClassroom(new Classroom("Room " + k, "Building " + i));
+    }
+  }
+
+  /**
+   * Solves the timetable of a university, and shows the result.
+   *
+   * @param u		the university
+   * @param threads	number of threads
+   * @param searches	number of searches
+   * @param steps	number of steps of each search
+   * @return the solver
+   */
+  public static Timetable runCase(University u, int threads, int searches,
+  	int steps) {
+    Timetable t = new Timetable(u);
+    t.setSearches(searches, steps);
+    t.setParallelism(threads);
+    t.solve();
+    show(t.getReport());
+    return t;
+  }
+
+  /**
+   * Shows the input string.
+   *
+   * @s the string to be shown
+   */
+  public static void show(String s) {
+    System.out.println(s);
+  }
+
+  /**
+   * Main method for the benchmark.
+   *
+   * @exception Exception if any exception is thrown
+   */
+  public static void main(String[] args) throws Exception {
+    int nDept = 10;
+    int nCourse = 100;
+    int searches = 8;
+    int steps = 20000;
+    if (args.length >= 1) nDept = Integer.parseInt(args[0]);
+    if (args.length >= 2) nCourse = Integer.parseInt(args[1]);
+    if (args.length >= 3) searches = Integer.parseInt(args[2]);
+    if (args.length >= 4) steps = Integer.parseInt(args[3]);
+
+    University u = new University();
+    build(u, nDept, nCourse);
+    int cpus = Runtime.getRuntime().availableProcessors();
+
+    // warm up the JIT compiler first
+    runCase(u, cpus, Math.min(searches, cpus), steps / 4);
+    show("");
+
+    Timetable one = runCase(u, 1, searches, steps);
+    show("");
+    Timetable all = runCase(u, cpus, searches, steps);
+    show("");
+    show("Speedup on " + cpus + " threads: " + Math.round(100.0
+    	* one.getSolveTime() / Math.max(all.getSolveTime(), 1)) / 100.0
+	+ (one.getConflictCount() == all.getConflictCount()
+	   && one.getPenalty() == all.getPenalty() ? ", same timetable"
+	   : ", different timetables!"));
+
+    long t0 = System.currentTimeMillis();
+    int n = all.apply();
+    show(n + " sessions added in " + (System.currentTimeMillis() - t0)
+    	+ " ms, " + u.getConflicts().length + " conflicts in the university");
+  }
+
+}
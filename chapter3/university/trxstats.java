@@ -0,0 +1,312 @@
+//*************************************************************************
+/*
+ * TrxStats.java - statistics of transactions and locks
+ *
+ *   Copyright (C) 1998-2000 	Yun-Tung Lau
+ *   All Rights Reserved.  The contents of this file are proprietary to
+ *   the above copyright holder.
+ *
+ */
+//*************************************************************************
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class keeps the statistics of the transactions of POManager or
+ * DBManager: a histogram of the time of each kind of begin, commit and
+ * abort, of the wait for locks, and of the size of the commits.  The
+ * times are in nano seconds.  The histograms may be updated by many
+ * threads at once without locking.
+ * <P>
+ * Reading the clock costs more than a short transaction, so only one
+ * in every few events is timed (see setSampling).  All events are
+ * counted, and all sizes are recorded.
+ * <P>
+ * Typical usage by a manager:
+ * <PRE>
+ *    long start = TrxStats.start();
+ *    ... begin the transaction
+ *    smStats.record(TrxStats.BEGIN_UPDATE, start);
+ * </PRE>
+ * When the statistics are disabled, start returns 0 and record does
+ * nothing.  When the event is not sampled, start returns UNTIMED and
+ * record only counts it.  The clock is not read in either case.
+ */
+public class TrxStats {
+
+  /** Kinds of statistics. */
+  public final static int BEGIN_READ = 0, BEGIN_UPDATE = 1,
+  	COMMIT_READ = 2, COMMIT_UPDATE = 3, ABORT = 4, LOCK_WAIT = 5,
+	COMMIT_SIZE = 6;
+
+  /** Names of the kinds, as shown. */
+  private final static String[] NAMES = { "begin read", "begin update",
+  	"commit read", "commit update", "abort", "lock wait", "commit size" };
+
+  /** Returned by start for an event that is counted but not timed. */
+  public final static long UNTIMED = Long.MIN_VALUE;
+
+  private static volatile boolean smEnabled = true;
+  private static volatile int smSampleMask = 15;  // see setSampling
+  private static int smSeed = 1;  // of the events sampled; races only
+  				 // skew the sampling
+
+  private Histogram[] histograms = new Histogram[NAMES.length];
+
+
+  /**
+   * Constructs empty statistics.
+   */
+  public TrxStats() {
+    for (int i=0; i<histograms.length; i++) histograms[i] = new Histogram();
+  }
+
+  /**
+   * Enables or disables the statistics of all managers.  They are
+   * enabled by default.
+   *
+   * @param on	true to enable them
+   */
+  public static void setEnabled(boolean on) {
+    smEnabled = on;
+  }
+
+  /**
+   * Tells if the statistics are enabled.
+   */
+  public static boolean isEnabled() {
+    return smEnabled;
+  }
+
+  /**
+   * Sets how many events of all managers make one that is timed.  It
+   * is 16 by default.  The events are picked at random, so that kinds
+   * that take turns, such as begin and commit, are sampled alike.
+   *
+   * @param n	the number, rounded down to a power of 2 up to 65536; 1
+   *		to time every event
+   */
+  public static void setSampling(int n) {
+    smSampleMask = Integer.highestOneBit(Math.max(1, Math.min(n, 65536))) - 1;
+  }
+
+  /**
+   * Returns the start time of something to be recorded.
+   *
+   * @return the time in nano seconds, 0 if disabled, or UNTIMED
+   */
+  public static long start() {
+    if (!smEnabled) return 0;
+    int x = smSeed * 1103515245 + 12345;  // the next random number
+    smSeed = x;
+    if ((x >>> 16 & smSampleMask) != 0) return UNTIMED;
+    return System.nanoTime();
+  }
+
+  /**
+   * Returns the start time of a wait that has to be made, e.g. for a
+   * lock that is held.  Such waits are always timed, since they cost
+   * more than reading the clock.
+   *
+   * @return the time in nano seconds, or 0 if disabled
+   */
+  public static long startWait() {
+    return smEnabled ? System.nanoTime() : 0;
+  }
+
+  /**
+   * Records the time since the input start time.
+   *
+   * @param kind	kind of statistics, e.g. BEGIN_READ
+   * @param start	the value returned by start
+   */
+  public void record(int kind, long start) {
+    if (start == 0) return;
+    if (start == UNTIMED) histograms[kind].count();
+    else histograms[kind].add(System.nanoTime() - start);
+  }
+
+  /**
+   * Records a value, e.g. the size of a commit.
+   *
+   * @param kind	kind of statistics, e.g. COMMIT_SIZE
+   * @param value	the value
+   */
+  public void recordValue(int kind, long value) {
+    if (smEnabled) histograms[kind].add(value);
+  }
+
+  /**
+   * Returns a histogram.
+   *
+   * @param kind	kind of statistics, e.g. BEGIN_READ
+   * @return the histogram
+   */
+  public Histogram getHistogram(int kind) {
+    return histograms[kind];
+  }
+
+  /**
+   * Returns a copy of the statistics, which is not changed by later
+   * transactions.
+   */
+  public TrxStats snapshot() {
+    TrxStats s = new TrxStats();
+    for (int i=0; i<histograms.length; i++)
+      s.histograms[i] = histograms[i].snapshot();
+    return s;
+  }
+
+  /**
+   * Clears the statistics.
+   */
+  public void reset() {
+    for (int i=0; i<histograms.length; i++) histograms[i].reset();
+  }
+
+  /**
+   * Returns the statistics as a table, with the times in micro seconds.
+   * The count is of all events, and the rest of the timed ones.  The
+   * percentiles are upper bounds, within a factor of 2.
+   */
+  public String toString() {
+    StringBuffer s = new StringBuffer();
+    s.append("  kind              count      mean      p50      p99      max");
+    for (int i=0; i<histograms.length; i++) {
+      Histogram h = histograms[i];
+      double unit = i == COMMIT_SIZE ? 1 : 1000;  // sizes have no unit
+      s.append("\n  ").append(pad(NAMES[i], -14))
+       .append(pad(String.valueOf(h.getCount()), 9))
+       .append(pad(format(h.getMean() / unit), 10))
+       .append(pad(format(h.getPercentile(50) / unit), 9))
+       .append(pad(format(h.getPercentile(99) / unit), 9))
+       .append(pad(format(h.getMax() / unit), 9));
+    }
+    if (smSampleMask == 0) s.append("\n  (times in us)");
+    else s.append("\n  (times in us, of 1 in " + (smSampleMask + 1) + " events)");
+    return s.toString();
+  }
+
+  private static String format(double d) {
+    if (d >= 100) return String.valueOf(Math.round(d));
+    return String.valueOf(Math.round(d * 10) / 10.0);
+  }
+
+  /**
+   * Pads a string with spaces, on the left if width > 0, else on
+   * the right.
+   */
+  private static String pad(String s, int width) {
+    StringBuffer b = new StringBuffer(s);
+    while (b.length() < Math.abs(width)) {
+      if (width > 0) b.insert(0, ' ');
+      else b.append(' ');
+    }
+    return b.toString();
+  }
+
+  /**
+   * A histogram of values that are not negative.  Bucket i holds the
+   * values with i significant bits, i.e. from 2^(i-1) to 2^i - 1.  It
+   * also counts the events that have no value, i.e. were not timed.
+   */
+  public static class Histogram {
+
+    private AtomicLongArray buckets = new AtomicLongArray(65);
+    private AtomicLong count = new AtomicLong();
+    private AtomicLong total = new AtomicLong();
+    private AtomicLong max = new AtomicLong();
+
+    /**
+     * Adds a value.
+     *
+     * @param v	the value; a negative one is taken as 0
+     */
+    public void add(long v) {
+      if (v < 0) v = 0;
+      buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(v));
+      count.incrementAndGet();
+      total.addAndGet(v);
+      long m = max.get();
+      while (v > m && !max.compareAndSet(m, v)) m = max.get();
+    }
+
+    /**
+     * Counts an event without a value.
+     */
+    public void count() {
+      count.incrementAndGet();
+    }
+
+    /** Returns the number of events, with or without values. */
+    public long getCount() {
+      return count.get();
+    }
+
+    /** Returns the number of values. */
+    public long getValueCount() {
+      long n = 0;
+      for (int i=0; i<65; i++) n += buckets.get(i);
+      return n;
+    }
+
+    /** Returns the sum of the values. */
+    public long getTotal() {
+      return total.get();
+    }
+
+    /** Returns the largest value. */
+    public long getMax() {
+      return max.get();
+    }
+
+    /** Returns the mean of the values, 0 if there are none. */
+    public double getMean() {
+      long n = getValueCount();
+      return n == 0 ? 0 : (double) total.get() / n;
+    }
+
+    /**
+     * Returns an upper bound of a percentile: the largest value of
+     * its bucket, but not more than the largest value.
+     *
+     * @param p	the percentile, e.g. 99
+     * @return the bound, 0 if there are no values
+     */
+    public long getPercentile(double p) {
+      long n = getValueCount();
+      long rank = (long) Math.ceil(n * p / 100);
+      long seen = 0;
+      for (int i=0; i<65; i++) {
+        seen += buckets.get(i);
+	if (seen >= rank && seen > 0)
+	  return Math.min((1L << i) - 1, getMax());
+      }
+      return 0;
+    }
+
+    /**
+     * Returns a copy of the histogram.
+     */
+    Histogram snapshot() {
+      Histogram h = new Histogram();
+      for (int i=0; i<65; i++) h.buckets.set(i, buckets.get(i));
+      h.count.set(count.get());
+      h.total.set(total.get());
+      h.max.set(max.get());
+      return h;
+    }
+
+    /**
+     * Clears the histogram.
+     */
+    void reset() {
+      for (int i=0; i<65; i++) buckets.set(i, 0);
+      count.set(0);
+      total.set(0);
+      max.set(0);
+    }
+  }
+
+}
@@ -19,19 +19,43 @@ import java.io.*;
  * serializable.  Their implementation is the same as non-persistent 
  * classes.
  */
-public class University extends NamedObject {
+public class University extends NamedObject
+	implements POManager.Redoable, PVector.KeyListener {
 
   // Will validate password if it is not empty.
   private static String smAdminPassword = null;
 
   /* Vectors of collection (extents). */
-  private PVector departments = new PVector();
-  private PVector campuses = new PVector();
+  private PVector departments = new PVector(NAME_KEY);
+  private PVector campuses = new PVector(NAME_KEY);
+
+  /** Size of the buffers of the output of "show", and of runBatch. */
+  private final static int BUFFER_SIZE = 65536;
+
+  /** Number of commands of a transaction of runBatch, by default. */
+  private final static int DEFAULT_CHUNK = 1000;
+
+  /* Kinds of the name directories. */
+  private final static int COURSES = 0, INSTRUCTORS = 1, CLASSROOMS = 2;
+
+  /**
+   * Directories of the courses, instructors and classrooms of all
+   * departments and campuses by name.  Each maps a name to the
+   * departments or campuses that have an object of that name.  They
+   * are saved with the extents, so that a lookup after loading reads
+   * the pages of the owner found, not those of all owners.  Null if
+   * the database was saved without them, until the first lookup.
+   */
+  private NameDirectory[] directories = newDirectories();
+
+  /** Whether the departments and campuses know this university. */
+  private transient volatile boolean bound;
 
   /**
    * Constructor.
    */
   public University() {
+    listen();
   }
 
   /**
@@ -41,6 +65,7 @@ public class University extends NamedObject {
    */
   public University(String adminPassword) {
     smAdminPassword = adminPassword;
+    listen();
   }
 
   /**
@@ -63,10 +88,20 @@ public class University extends NamedObject {
    * @return  an array of department objects
    */
   public Department[] getDepartments() {
-    Object[] o = departments.toArray();
-    Department[] r = new Department[o.length];
-    for (int i=0; i<o.length; i++) r[i] = (Department)o[i];
-    return r;
+    bind();
+    return (Department[]) departments.toArray(
+    		new Department[departments.size()]);
+  }
+
+  /**
+   * Returns a read-only list view of the departments.  Unlike getDepartments,
+   * it does not copy the departments.
+   *
+   * @return the departments as a read-only list
+   */
+  public List<Department> getDepartmentList() {
+    bind();
+    return departments.asList();
   }
 
   /**
@@ -85,12 +120,8 @@ public class University extends NamedObject {
    * @return Department object.  Null if none matched.
    */
   public Department getDepartment(String name) {
-    Enumeration e = departments.elements();
-    while (e.hasMoreElements()) {
-      Department c = (Department) e.nextElement();
-      if (c.getName().equals(name)) return c;
-    }
-    return null;
+    bind();
+    return (Department) departments.getByKey(name);
   }
 
   /**
@@ -111,6 +142,8 @@ public class University extends NamedObject {
   public void addDepartment(String name) {
     Department d = new Department(name);
     departments.addElement(d);
+    d.setUniversity(this);
+    POManager.dirty(this);
   }
 
   /**
@@ -120,6 +153,12 @@ public class University extends NamedObject {
    */
   public void addDepartment(Department department) {
     departments.addElement(department);
+    department.setUniversity(this);
+    List<Course> c = department.getCourseList();
+    for (int i=0; i<c.size(); i++) indexAdd(c.get(i), department);
+    List<Instructor> t = department.getInstructorList();
+    for (int i=0; i<t.size(); i++) indexAdd(t.get(i), department);
+    POManager.dirty(this);
   }
 
   /**
@@ -135,6 +174,10 @@ public class University extends NamedObject {
 
     /* Remove the department Object from the vector */
     departments.removeElement(c);
+    c.setUniversity(null);
+    indexRemoveAll(c.getCourses(), c);
+    indexRemoveAll(c.getInstructors(), c);
+    POManager.dirty(this);
   }
 
   /**
@@ -147,13 +190,25 @@ public class University extends NamedObject {
     if (!departments.contains(department))
       throw new Exception("Department not found: " + department.getName());
     departments.removeElement(department);
+    department.setUniversity(null);
+    indexRemoveAll(department.getCourses(), department);
+    indexRemoveAll(department.getInstructors(), department);
+    POManager.dirty(this);
   }
 
   /**
    * Removes all department objects from the extent.
    */
   public void removeAllDepartments( ) {
+    List<Department> d = departments.asList();
+    for (int i=0; i<d.size(); i++) d.get(i).setUniversity(null);
     departments.removeAllElements();
+    NameDirectory[] x = directories;
+    if (x != null) {
+      x[COURSES].clear();
+      x[INSTRUCTORS].clear();
+    }
+    POManager.dirty(this);
   }
 
 
@@ -166,10 +221,19 @@ public class University extends NamedObject {
    * @return  an array of campus objects
    */
   public Campus[] getCampuses() {
-    Object[] o = campuses.toArray();
-    Campus[] r = new Campus[o.length];
-    for (int i=0; i<o.length; i++) r[i] = (Campus)o[i];
-    return r;
+    bind();
+    return (Campus[]) campuses.toArray(new Campus[campuses.size()]);
+  }
+
+  /**
+   * Returns a read-only list view of the campuses.  Unlike getCampuses,
+   * it does not copy the campuses.
+   *
+   * @return the campuses as a read-only list
+   */
+  public List<Campus> getCampusList() {
+    bind();
+    return campuses.asList();
   }
 
   /**
@@ -188,12 +252,8 @@ public class University extends NamedObject {
    * @return Campus object.  Null if none matched.
    */
   public Campus getCampus(String name) {
-    Enumeration e = campuses.elements();
-    while (e.hasMoreElements()) {
-      Campus c = (Campus) e.nextElement();
-      if (c.getName().equals(name)) return c;
-    }
-    return null;
+    bind();
+    return (Campus) campuses.getByKey(name);
   }
 
   /**
@@ -214,6 +274,8 @@ public class University extends NamedObject {
   public void addCampus(String name) {
     Campus c = new Campus(name);
     campuses.addElement(c);
+    c.setUniversity(this);
+    POManager.dirty(this);
   }
 
   /**
@@ -223,6 +285,10 @@ public class University extends NamedObject {
    */
   public void addCampus(Campus campus) {
     campuses.addElement(campus);
+    campus.setUniversity(this);
+    List<Classroom> c = campus.getClassroomList();
+    for (int i=0; i<c.size(); i++) indexAdd(c.get(i), campus);
+    POManager.dirty(this);
   }
 
   /**
@@ -238,6 +304,9 @@ public class University extends NamedObject {
 
     /* Remove the campus Object from the vector */
     campuses.removeElement(c);
+    c.setUniversity(null);
+    indexRemoveAll(c.getClassrooms(), c);
+    POManager.dirty(this);
   }
 
   /**
@@ -250,72 +319,317 @@ public class University extends NamedObject {
     if (!campuses.contains(campus))
       throw new Exception("Campus not found: " + campus.getName());
     campuses.removeElement(campus);
+    campus.setUniversity(null);
+    indexRemoveAll(campus.getClassrooms(), campus);
+    POManager.dirty(this);
   }
 
   /**
    * Removes all campus objects from the extent.
    */
   public void removeAllCampuses( ) {
+    List<Campus> c = campuses.asList();
+    for (int i=0; i<c.size(); i++) c.get(i).setUniversity(null);
     campuses.removeAllElements();
+    NameDirectory[] x = directories;
+    if (x != null) x[CLASSROOMS].clear();
+    POManager.dirty(this);
+  }
+
+  /******** Name directories *********/
+
+  /**
+   * Tells the departments and campuses of this university, so that
+   * they keep the directories up to date as their courses, etc. are
+   * added, removed and renamed.  It is done on the first use after
+   * loading, and reads the pages of the extents only, not those of
+   * the courses, instructors and classrooms.
+   */
+  private void bind() {
+    if (bound) return;
+    synchronized (this) {
+      if (bound) return;
+      List<Department> d = departments.asList();
+      for (int i=0; i<d.size(); i++) d.get(i).setUniversity(this);
+      List<Campus> c = campuses.asList();
+      for (int i=0; i<c.size(); i++) c.get(i).setUniversity(this);
+      bound = true;
+    }
+  }
+
+  /**
+   * Returns a directory, which is built first if the database was
+   * saved without it.
+   *
+   * @param kind	COURSES, INSTRUCTORS or CLASSROOMS
+   * @return the directory
+   */
+  private NameDirectory getDirectory(int kind) {
+    bind();
+    NameDirectory[] x = directories;
+    if (x == null) x = buildDirectories();
+    return x[kind];
+  }
+
+  /**
+   * Builds the directories by a scan of the extents.  Only done once,
+   * for a database saved before they were kept.
+   *
+   * @return the directories
+   */
+  private synchronized NameDirectory[] buildDirectories() {
+    NameDirectory[] x = directories;
+    if (x != null) return x;  // just built
+    x = newDirectories();
+    List<Department> d = departments.asList();
+    for (int i=0; i<d.size(); i++) {
+      String owner = d.get(i).getName();
+      List<Course> c = d.get(i).getCourseList();
+      for (int j=0; j<c.size(); j++) x[COURSES].add(c.get(j).getName(), owner);
+      List<Instructor> t = d.get(i).getInstructorList();
+      for (int j=0; j<t.size(); j++) 
+        x[INSTRUCTORS].add(t.get(j).getName(), owner);
+    }
+    List<Campus> c = campuses.asList();
+    for (int i=0; i<c.size(); i++) {
+      String owner = c.get(i).getName();
+      List<Classroom> r = c.get(i).getClassroomList();
+      for (int j=0; j<r.size(); j++) 
+        x[CLASSROOMS].add(r.get(j).getName(), owner);
+    }
+    directories = x;
+    POManager.dirty(this);
+    return x;
+  }
+
+  private static NameDirectory[] newDirectories() {
+    return new NameDirectory[] { new NameDirectory(0), 
+    	new NameDirectory(0), new NameDirectory(0) };
+  }
+
+  /**
+   * Looks up a course, instructor or classroom by name.  The owners
+   * of the name are taken from the directory, and are searched in the
+   * order of the extent, so that the object found is the same as by a
+   * scan of the extent.
+   *
+   * @param kind	COURSES, INSTRUCTORS or CLASSROOMS
+   * @param name	the name
+   * @return the object.  Null if none matched.
+   */
+  private NamedObject lookup(int kind, String name) {
+    if (name == null) return null;
+    String[] owners = getDirectory(kind).get(name);
+    if (owners == null) return null;
+    List<? extends NamedObject> l =
+    	(kind == CLASSROOMS) ? getCampusList() : getDepartmentList();
+    for (int i=0; i<l.size(); i++) {
+      NamedObject owner = l.get(i);
+      for (int j=0; j<owners.length; j++) {
+        if (!owners[j].equals(owner.getName())) continue;
+	NamedObject o = find(kind, owner, name);
+	if (o != null) return o;
+	break;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the course, instructor or classroom of an owner by name.
+   */
+  private static NamedObject find(int kind, NamedObject owner, String name) {
+    switch (kind) {
+      case COURSES:
+        return ((Department) owner).getCourse(name);
+      case INSTRUCTORS:
+        return ((Department) owner).getInstructor(name);
+      default:
+        return ((Campus) owner).getClassroom(name);
+    }
+  }
+
+  /**
+   * Adds a course, instructor or classroom to its directory.  Called
+   * by Department and Campus.
+   *
+   * @param o		the object added
+   * @param owner	its department or campus
+   */
+  void indexAdd(NamedObject o, NamedObject owner) {
+    getDirectory(kindOf(o)).add(o.getName(), owner.getName());
+  }
+
+  /**
+   * Removes a course, instructor or classroom from its directory.
+   * Called by Department and Campus.
+   *
+   * @param o		the object removed
+   * @param owner	its department or campus
+   */
+  void indexRemove(NamedObject o, NamedObject owner) {
+    drop(kindOf(o), o.getName(), owner.getName());
+  }
+
+  /**
+   * Removes the objects of an owner from their directory, e.g. when
+   * all the courses of a department are removed.
+   *
+   * @param removed	the objects removed
+   * @param owner	their department or campus
+   */
+  void indexRemoveAll(NamedObject[] removed, NamedObject owner) {
+    for (int i=0; i<removed.length; i++) indexRemove(removed[i], owner);
+  }
+
+  /**
+   * Updates the directory of a course, instructor or classroom that
+   * has been renamed.  Called by Department and Campus.
+   *
+   * @param o		the object renamed
+   * @param oldName	the name before
+   * @param owner	its department or campus
+   */
+  void indexRename(NamedObject o, String oldName, NamedObject owner) {
+    drop(kindOf(o), oldName, owner.getName());
+    indexAdd(o, owner);
+  }
+
+  /**
+   * Removes an owner of a name from a directory, unless a department
+   * or campus of that name still has an object of that name.
+   *
+   * @param kind	COURSES, INSTRUCTORS or CLASSROOMS
+   * @param name	the name of the object
+   * @param owner	the name of the owner
+   */
+  private void drop(int kind, String name, String owner) {
+    if (name == null || owner == null) return;
+    List<? extends NamedObject> l =
+    	(kind == CLASSROOMS) ? getCampusList() : getDepartmentList();
+    for (int i=0; i<l.size(); i++) {
+      NamedObject o = l.get(i);
+      if (owner.equals(o.getName()) && find(kind, o, name) != null) return;
+    }
+    getDirectory(kind).remove(name, owner);
+  }
+
+  /**
+   * Called when a department or campus is renamed.  It is renamed in
+   * the directory entries of its courses, etc.
+   *
+   * @param v		the extent
+   * @param element	the department or campus
+   * @param oldKey	the old name of it
+   */
+  public void keyChanged(PVector v, Object element, Object oldKey) {
+    if (directories == null) return;  // built on the next lookup
+    NamedObject owner = (NamedObject) element;
+    if (v == departments) {
+      Department d = (Department) element;
+      renameOwner(COURSES, d.getCourseList(), (String) oldKey, owner);
+      renameOwner(INSTRUCTORS, d.getInstructorList(), (String) oldKey, owner);
+    } else if (v == campuses) {
+      renameOwner(CLASSROOMS, ((Campus) element).getClassroomList(), 
+      		(String) oldKey, owner);
+    }
+  }
+
+  private void renameOwner(int kind, List<? extends NamedObject> l,
+  	String oldName, NamedObject owner) {
+    for (int i=0; i<l.size(); i++) {
+      NamedObject o = l.get(i);
+      drop(kind, o.getName(), oldName);
+      indexAdd(o, owner);
+    }
+  }
+
+  /**
+   * Listens to the renaming of the departments and campuses.
+   */
+  private void listen() {
+    departments.setKeyListener(this);
+    campuses.setKeyListener(this);
+  }
+
+  private static int kindOf(NamedObject o) {
+    if (o instanceof Course) return COURSES;
+    if (o instanceof Instructor) return INSTRUCTORS;
+    return CLASSROOMS;
   }
 
   /******** Other queries *********/
 
   /**
-   * Returns the course object for the input name.  It scans thru
-   * all departments to locate the course.
+   * Returns the course object for the input name.  It looks up the
+   * departments that have it in the directory of courses.
    *
    * @param name 	Name of course
    * @return Course object.  Null if none matched.
    */
   public Course getCourse(String name) {
-    Enumeration e = departments.elements();
-    while (e.hasMoreElements()) {
-      Department d = (Department) e.nextElement();
-      Course c = d.getCourse(name);
-      if (c != null) return c;
-    }
-    return null;
+    return (Course) lookup(COURSES, name);
   }
 
   /**
-   * Returns the instructor object for the input name.  It scans thru
-   * all departments to locate the instructor.
+   * Returns the instructor object for the input name.  It looks up
+   * the departments that have it in the directory of instructors.
    *
    * @param name 	Name of instructor
    * @return Instructor object.  Null if none matched.
    */
   public Instructor getInstructor(String name) {
-    Enumeration e = departments.elements();
-    while (e.hasMoreElements()) {
-      Department d = (Department) e.nextElement();
-      Instructor c = d.getInstructor(name);
-      if (c != null) return c;
-    }
-    return null;
+    return (Instructor) lookup(INSTRUCTORS, name);
   }
 
   /**
-   * Returns the classroom object for the input name.  It scans thru
-   * all campuss to locate the classroom.
+   * Returns the classroom object for the input name.  It looks up the
+   * campuses that have it in the directory of classrooms.
    *
    * @param name 	Name of classroom
    * @return Classroom object.  Null if none matched.
    */
   public Classroom getClassroom(String name) {
-    Enumeration e = campuses.elements();
-    while (e.hasMoreElements()) {
-      Campus d = (Campus) e.nextElement();
-      Classroom c = d.getClassroom(name);
-      if (c != null) return c;
+    return (Classroom) lookup(CLASSROOMS, name);
+  }
+
+  /**
+   * Returns the statistics of the departments and campuses: the
+   * courses, instructors and sessions of each department, and the use
+   * of the classrooms of each campus.  They are computed in parallel
+   * on a fork-join pool.
+   *
+   * @param parallelism	number of threads
+   * @return the statistics
+   */
+  public Analytics analyze(int parallelism) {
+    return Analytics.compute(this, parallelism);
+  }
+
+  /**
+   * Returns all the scheduling conflicts in the university: sessions
+   * whose time slots overlap in the same classroom or with the same
+   * instructor.  Course.addSession rejects them, but a database may
+   * have some from an earlier version.  They are found in one sweep
+   * over the sessions of all courses.
+   *
+   * @return the conflicts
+   */
+  public SessionIndex.Conflict[] getConflicts() {
+    Vector<Session> all = new Vector<Session>();
+    List<Department> ds = getDepartmentList();
+    for (int i=0; i<ds.size(); i++) {
+      List<Course> cs = ds.get(i).getCourseList();
+      for (int j=0; j<cs.size(); j++) all.addAll(cs.get(j).getSessionList());
     }
-    return null;
+    return SessionIndex.findConflicts(all);
   }
 
 
   /**
    * Runs a command-line terminal for the object o with the input.
-   * It can handle o being a persistent object.
+   * It can handle o being a persistent object.  Each command that
+   * may change the database is logged as a redo record.
    */
   public static void runTerminal(University o, InputStream input) {
 
@@ -377,191 +691,510 @@ public class University extends NamedObject {
 	return;
       }
 
+      // Queries run in a read transaction, which logs nothing.  They
+      // hold TOKEN too, so they see no update half done.
+      else if (isQuery(command)) {
+        long waitStart = TrxStats.start();
+        synchronized (POManager.TOKEN) {
+          POManager.recordLockWait(waitStart);
+          try {
+            if (POManager.getDB() != null) POManager.beginReadTrx();
+
+            execute(o, command, tokenizer, System.out);
+
+            if (POManager.getDB() != null) POManager.commitTrx();
+          } catch (Exception e) {
+            if (POManager.getDB() != null) POManager.handleTrxError(e);
+            System.out.println(e.getMessage());
+          }
+        }
+        continue;
+      }
+
+      // Runs a command file in batch mode; see runBatch.
+      else if ("batch".startsWith(command)) {
+	try {
+	  String file = readString(tokenizer);
+	  int chunkSize = DEFAULT_CHUNK;
+	  if (tokenizer.hasMoreTokens()) chunkSize = readInt(tokenizer);
+	  InputStream batch = new FileInputStream(file);
+	  try {
+	    runBatch(o, batch, chunkSize);
+	  } finally {
+	    batch.close();
+	  }
+	} catch (Exception e) {
+	  System.out.println(e.getMessage());
+	}
+	continue;
+      }
+
+      // Statistics of the transactions, see POManager.getStats.
+      else if ("stats".startsWith(command)) {
+	if (tokenizer.hasMoreTokens() && "reset".equals(tokenizer.nextToken()))
+	  POManager.getStats().reset();
+	else
+	  show(POManager.getStats().snapshot().toString());
+	continue;
+      }
+
      // Commands below may involve transaction.  We put them in
      // a synchronized block to make threads cooperating with 
      // each other.
+     long waitStart = TrxStats.start();
      synchronized (POManager.TOKEN) {
+      POManager.recordLockWait(waitStart);
       try {
         if (POManager.getDB() != null) POManager.beginUpdateTrx();
 
-        if ("show".startsWith(command)) {
-	  String name = "";
-	  try { name = readString(tokenizer); }
-	  catch(TerminalException e) { 
-	    name = "all";  // default to all if no name specified
-	  }
-	  
-	  if ("all".startsWith(name)) {
-	    Department[] ps = o.getDepartments();
-	    for (int i=0; i<ps.length; i++) {
-	      Department p = ps[i];
-	      show(p.toString());
-	    }
-	    Campus[] cs = o.getCampuses();
-	    for (int i=0; i<cs.length; i++) {
-	      Campus c = cs[i];
-	      show(c.toString());
-	    }
-          } else {
-	    Department p = o.getDepartment(name);
-	    if (p != null) {
-	      show(p.toString());
-	    } else {
-  	      Campus c = o.getCampus(name);
-	      if (c != null) show(c.toString());
-	      else show("None found.");
-	    } 
-          }
-	  show("--------------------");
-        }
+        if (execute(o, command, tokenizer, System.out))
+          POManager.logUpdate(inputLine);  // redo record for the update
 
-        else if ("adddepartment".startsWith(command)) {
-          String name = readString(tokenizer);
-	  o.addDepartment(name);
-        }
+        if (POManager.getDB() != null) POManager.commitTrx();
+	
+      } catch (Exception e) {
 
-        else if ("addcourse".startsWith(command)) {
-          String name = readString(tokenizer);
-          String dept = readString(tokenizer);
-	  Department d = o.getDepartment(dept);
-	  if (d != null) {
-	    d.addCourse(name);
-	  } else {
-	    show("No such department: " + dept);
-	  }
-        }
+        if (POManager.getDB() != null) POManager.handleTrxError(e);
+	System.out.println(e.getMessage());
+      }
+     }
 
-        else if ("addinstructor".startsWith(command)) {
-          String name = readString(tokenizer);
-          String dept = readString(tokenizer);
-	  Department d = o.getDepartment(dept);
-	  if (d != null) {
-	    d.addInstructor(name);
-	  } else {
-	    show("No such department: " + dept);
-	  }
-        }
+    }
 
-        else if ("addcampus".startsWith(command)) {
-          String name = readString(tokenizer);
-	  o.addCampus(name);
-        }
+  }
 
-        else if ("addclassroom".startsWith(command)) {
-          String name = readString(tokenizer);
-          String campus = readString(tokenizer);
-	  Campus c = o.getCampus(campus);
-	  if (c != null) {
-	    c.addClassroom(name);
-	  } else {
-	    show("No such campus: " + campus);
-	  }
-        }
+  /** Numbers of the commands of execute, as in smCommands. */
+  private final static int SHOW = 0, ADDDEPARTMENT = 1, ADDCOURSE = 2,
+  	ADDINSTRUCTOR = 3, ADDCAMPUS = 4, ADDCLASSROOM = 5, ADDSESSION = 6,
+  	REMOVEDEPARTMENT = 7, REMOVECOURSE = 8, REMOVEINSTRUCTOR = 9,
+  	REMOVECAMPUS = 10, REMOVECLASSROOM = 11, REMOVESESSION = 12,
+  	REMOVEALL = 13, TEST = 14, CHECKPOINT = 15, CONFLICTS = 16,
+  	ANALYZE = 17, TIMETABLE = 18;
+
+  /** The commands of execute, in the order their prefixes are matched. */
+  private final static CommandTable smCommands = new CommandTable(
+    new String[] {
+    	"show", "adddepartment", "addcourse", "addinstructor", "addcampus",
+    	"addclassroom", "addsession", "removedepartment", "removecourse",
+    	"removeinstructor", "removecampus", "removeclassroom",
+    	"removesession", "removeall", "test", "checkpoint", "conflicts",
+    	"analyze", "timetable" });
 
-        else if ("addsession".startsWith(command)) {
-          String name = readString(tokenizer);
-          String course = readString(tokenizer);
-          String schedule = readString(tokenizer);
-          String classroom = readString(tokenizer);
-
-          String itor1 = readString(tokenizer);
-	  String itor2;
-	  try { itor2 = readString(tokenizer); }
-	  catch(TerminalException e) { 
-	    itor2 = "none";  // default to none
+  /**
+   * Runs the commands of the input in batch mode, e.g. for a bulk
+   * load.  The input is read a line at a time, without prompts.  The
+   * commands are run in update transactions of chunkSize commands
+   * each, holding POManager.TOKEN, so that a commit, and the write of
+   * the log, is shared by many commands.  Queries see the updates of
+   * the commands before them.  A command that fails is reported and
+   * not logged, as in runTerminal, and the others of its chunk are
+   * committed.  A checkpoint command ends its chunk, so that the
+   * commands before it are committed before the checkpoint.
+   * <P>
+   * The automatic checkpoints are put off until the end, since each
+   * one writes the whole database.  The number of lines per second is
+   * shown at the end.
+   *
+   * @param o		the university
+   * @param input	the commands, ending at the end of input or "quit"
+   * @param chunkSize	number of commands in a transaction
+   */
+  public static void runBatch(University o, InputStream input,
+  	int chunkSize) {
+    BufferedReader in = new BufferedReader(new InputStreamReader(input),
+    	BUFFER_SIZE);
+    boolean db = POManager.getDB() != null;
+    int interval = POManager.getCheckpointInterval();
+    long[] lines = new long[1];
+    long commands = 0, logged = 0, transactions = 0;
+    long t0 = System.currentTimeMillis();
+
+    if (db) POManager.setCheckpointInterval(Integer.MAX_VALUE);
+    try {
+      String line = readCommand(in, lines);
+      while (line != null) {
+	long waitStart = TrxStats.start();
+	synchronized (POManager.TOKEN) {
+	  POManager.recordLockWait(waitStart);
+	  try {
+	    if (db) POManager.beginUpdateTrx();
+	    for (int n=0; n<chunkSize && line != null; n++) {
+	      if (n > 0 && isCheckpoint(line)) break;  // commit the chunk first
+	      if (runCommand(o, line)) logged++;
+	      commands++;
+	      line = readCommand(in, lines);
+	    }
+	    if (db) POManager.commitTrx();
+	  } catch (Exception e) {
+	    if (db) POManager.handleTrxError(e);
+	    System.out.println(e.getMessage());
 	  }
-
-	  Course c = o.getCourse(course);
-	  if (c != null) {
-	    c.addSession(name, 
-	      new Schedule(schedule), o.getClassroom(classroom),
-	      o.getInstructor(itor1), o.getInstructor(itor2) );
-	  } else {
-	    show("No such course: " + course);
+	  transactions++;
+	}
+      }
+    } finally {
+      if (db) {
+	POManager.setCheckpointInterval(interval);
+	if (logged >= interval) {
+	  synchronized (POManager.TOKEN) {
+	    POManager.checkpoint();
 	  }
-        }
+	}
+      }
+    }
 
-        else if ("removedepartment".startsWith(command)) {
-          String name = readString(tokenizer);
-	  o.removeDepartment(name);
-        }
+    long millis = Math.max(System.currentTimeMillis() - t0, 1);
+    show("Batch: " + lines[0] + " lines, " + commands + " commands in "
+    	+ transactions + " transactions, " + millis + " ms, "
+	+ lines[0] * 1000 / millis + " lines/s");
+  }
 
-        else if ("removecourse".startsWith(command)) {
-          String name = readString(tokenizer);
-          String dept = readString(tokenizer);
-	  Department d = o.getDepartment(dept);
-	  if (d != null) {
-	    d.removeCourse(name);
-	  } else {
-	    show("No such department: " + dept);
-	  }
-        }
+  /**
+   * Returns whether a command line of runBatch is a checkpoint.
+   *
+   * @param line	the command line
+   * @return true if it is a checkpoint
+   */
+  private static boolean isCheckpoint(String line) {
+    StringTokenizer tokenizer = new StringTokenizer(line, " 	");
+    return smCommands.lookup(tokenizer.nextToken()) == CHECKPOINT;
+  }
 
-        else if ("removeinstructor".startsWith(command)) {
-          String name = readString(tokenizer);
-          String dept = readString(tokenizer);
-	  Department d = o.getDepartment(dept);
-	  if (d != null) {
-	    d.removeInstructor(name);
-	  } else {
-	    show("No such department: " + dept);
-	  }
-        }
+  /**
+   * Returns the next line of the input that has a command, skipping
+   * empty lines and comments.
+   *
+   * @param in	the input
+   * @param lines	lines[0] is the number of lines read
+   * @return the line, or null at the end of input or at "quit"
+   */
+  private static String readCommand(BufferedReader in, long[] lines) {
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+	lines[0]++;
+	if (line.startsWith("#")) continue;
+	StringTokenizer tokenizer = new StringTokenizer(line, " 	");
+	if (!tokenizer.hasMoreTokens()) continue;
+	String command = tokenizer.nextToken();
+	if ("quit".startsWith(command) || "shutdown".equalsIgnoreCase(line))
+	  return null;
+	return line;
+      }
+    } catch (IOException e) {
+      show("  " + e.toString());
+    }
+    return null;
+  }
 
-        else if ("removecampus".startsWith(command)) {
-          String name = readString(tokenizer);
-	  o.removeCampus(name);
-        }
+  /**
+   * Runs a command of runBatch in its transaction.
+   *
+   * @param o		the university
+   * @param line	the command line
+   * @return true if the command is logged
+   */
+  private static boolean runCommand(University o, String line) {
+    StringTokenizer tokenizer = new StringTokenizer(line, " 	");
+    String command = tokenizer.nextToken();
+    if ("help".startsWith(command)) {
+      printHelp();
+    } else if ("stats".startsWith(command)
+	&& smCommands.lookup(command) < 0) {
+      if (tokenizer.hasMoreTokens() && "reset".equals(tokenizer.nextToken()))
+	POManager.getStats().reset();
+      else
+	show(POManager.getStats().snapshot().toString());
+    } else {
+      try {
+	if (execute(o, command, tokenizer, System.out)) {
+	  POManager.logUpdate(line);  // redo record for the update
+	  return true;
+	}
+      } catch (Exception e) {
+	show(e.toString());  // as POManager.handleTrxError
+	System.out.println(e.getMessage());
+      }
+    }
+    return false;
+  }
 
-        else if ("removeclassroom".startsWith(command)) {
-          String name = readString(tokenizer);
-          String campus = readString(tokenizer);
-	  Campus c = o.getCampus(campus);
-	  if (c != null) {
-	    c.removeClassroom(name);
-	  } else {
-	    show("No such campus: " + campus);
-	  }
-        }
+  /**
+   * Returns whether the command only reads the database.
+   *
+   * @param command	the command (or a prefix of it)
+   * @return true if the command is a query
+   */
+  static boolean isQuery(String command) {
+    int k = smCommands.lookup(command);
+    return k == SHOW || k == CONFLICTS || k == ANALYZE;
+  }
 
-        else if ("removesession".startsWith(command)) {
-          String name = readString(tokenizer);
-          String course = readString(tokenizer);
+  /**
+   * Executes a command other than help and quit on the object o.
+   * It is called by runTerminal, runBatch, and by redo for a logged
+   * command.  The command is looked up in smCommands.
+   *
+   * @param o		the university
+   * @param command	the command (or a prefix of it)
+   * @param tokenizer	tokenizer for the arguments of the command
+   * @param out		where to write the output of the command
+   * @return true if the command may change the database
+   * @exception Exception if the command fails
+   */
+  static boolean execute(University o, String command, StringTokenizer tokenizer,
+      PrintStream out) throws Exception {
+    boolean update = true;
+
+    switch (smCommands.lookup(command)) {
+
+    case SHOW: {
+      update = false;
+      String name = "";
+      try { name = readString(tokenizer); }
+      catch(TerminalException e) { 
+	name = "all";  // default to all if no name specified
+      }
 
-	  Course c = o.getCourse(course);
+      // The objects write to the output through a buffer, so that the
+      // output is not built in memory.
+      PrintWriter w = new PrintWriter(new BufferedWriter(
+      	new OutputStreamWriter(out), BUFFER_SIZE));
+      if ("all".startsWith(name)) {
+	List<Department> ps = o.getDepartmentList();
+	for (int i=0; i<ps.size(); i++) {
+	  Department p = ps.get(i);
+	  p.writeTo(w);
+	  w.println();
+	}
+	List<Campus> cs = o.getCampusList();
+	for (int i=0; i<cs.size(); i++) {
+	  Campus c = cs.get(i);
+	  c.writeTo(w);
+	  w.println();
+	}
+      } else {
+	Department p = o.getDepartment(name);
+	if (p != null) {
+	  p.writeTo(w);
+	  w.println();
+	} else {
+	  Campus c = o.getCampus(name);
 	  if (c != null) {
-	    c.removeSession(name);
-	  } else {
-	    show("No such course: " + course);
+	    c.writeTo(w);
+	    w.println();
 	  }
-        }
+	  else w.println("None found.");
+	} 
+      }
+      w.println("--------------------");
+      w.flush();
+      break;
+    }
 
-        else if ("removeall".startsWith(command)) {
-	  o.removeAllCampuses();
-	  o.removeAllDepartments();
-        }
+    case ADDDEPARTMENT: {
+      String name = readString(tokenizer);
+      o.addDepartment(name);
+      break;
+    }
 
-        else if ("test".startsWith(command)) {
-          int nDept = readInt(tokenizer);
-          int nCourse = readInt(tokenizer);
-	  test(o, nDept, nCourse);
-	}
+    case ADDCOURSE: {
+      String name = readString(tokenizer);
+      String dept = readString(tokenizer);
+      Department d = o.getDepartment(dept);
+      if (d != null) {
+	d.addCourse(name);
+      } else {
+	out.println("No such department: " + dept);
+      }
+      break;
+    }
 
-        else {
-          show(" Command not recognized.  Try \"help\"");
-        }
+    case ADDINSTRUCTOR: {
+      String name = readString(tokenizer);
+      String dept = readString(tokenizer);
+      Department d = o.getDepartment(dept);
+      if (d != null) {
+	d.addInstructor(name);
+      } else {
+	out.println("No such department: " + dept);
+      }
+      break;
+    }
 
-        if (POManager.getDB() != null) POManager.commitTrx();
-	
-      } catch (Exception e) {
+    case ADDCAMPUS: {
+      String name = readString(tokenizer);
+      o.addCampus(name);
+      break;
+    }
 
-        if (POManager.getDB() != null) POManager.handleTrxError(e);
-	System.out.println(e.getMessage());
+    case ADDCLASSROOM: {
+      String name = readString(tokenizer);
+      String campus = readString(tokenizer);
+      Campus c = o.getCampus(campus);
+      if (c != null) {
+	c.addClassroom(name);
+      } else {
+	out.println("No such campus: " + campus);
+      }
+      break;
+    }
+
+    case ADDSESSION: {
+      String name = readString(tokenizer);
+      String course = readString(tokenizer);
+      String schedule = readString(tokenizer);
+      String classroom = readString(tokenizer);
+
+      String itor1 = readString(tokenizer);
+      String itor2;
+      try { itor2 = readString(tokenizer); }
+      catch(TerminalException e) { 
+	itor2 = "none";  // default to none
       }
-     }
 
+      Course c = o.getCourse(course);
+      if (c != null) {
+	c.addSession(name, 
+	  Schedule.parse(schedule), o.getClassroom(classroom),
+	  o.getInstructor(itor1), o.getInstructor(itor2) );
+      } else {
+	out.println("No such course: " + course);
+      }
+      break;
+    }
+
+    case REMOVEDEPARTMENT: {
+      String name = readString(tokenizer);
+      o.removeDepartment(name);
+      break;
+    }
+
+    case REMOVECOURSE: {
+      String name = readString(tokenizer);
+      String dept = readString(tokenizer);
+      Department d = o.getDepartment(dept);
+      if (d != null) {
+	d.removeCourse(name);
+      } else {
+	out.println("No such department: " + dept);
+      }
+      break;
+    }
+
+    case REMOVEINSTRUCTOR: {
+      String name = readString(tokenizer);
+      String dept = readString(tokenizer);
+      Department d = o.getDepartment(dept);
+      if (d != null) {
+	d.removeInstructor(name);
+      } else {
+	out.println("No such department: " + dept);
+      }
+      break;
     }
 
+    case REMOVECAMPUS: {
+      String name = readString(tokenizer);
+      o.removeCampus(name);
+      break;
+    }
+
+    case REMOVECLASSROOM: {
+      String name = readString(tokenizer);
+      String campus = readString(tokenizer);
+      Campus c = o.getCampus(campus);
+      if (c != null) {
+	c.removeClassroom(name);
+      } else {
+	out.println("No such campus: " + campus);
+      }
+      break;
+    }
+
+    case REMOVESESSION: {
+      String name = readString(tokenizer);
+      String course = readString(tokenizer);
+
+      Course c = o.getCourse(course);
+      if (c != null) {
+	c.removeSession(name);
+      } else {
+	out.println("No such course: " + course);
+      }
+      break;
+    }
+
+    case REMOVEALL: {
+      o.removeAllCampuses();
+      o.removeAllDepartments();
+      break;
+    }
+
+    case TEST: {
+      int nDept = readInt(tokenizer);
+      int nCourse = readInt(tokenizer);
+      test(o, nDept, nCourse);
+      break;
+    }
+
+    case CHECKPOINT: {
+      update = false;
+      POManager.checkpoint();
+      break;
+    }
+
+    case CONFLICTS: {
+      update = false;
+      SessionIndex.Conflict[] cs = o.getConflicts();
+      for (int i=0; i<cs.length; i++) out.println("  " + cs[i]);
+      out.println(cs.length + " conflicts found.");
+      break;
+    }
+
+    case ANALYZE: {
+      update = false;
+      int threads = Runtime.getRuntime().availableProcessors();
+      if (tokenizer.hasMoreTokens()) threads = readInt(tokenizer);
+      PrintWriter w = new PrintWriter(new BufferedWriter(
+      	new OutputStreamWriter(out), BUFFER_SIZE));
+      o.analyze(threads).writeTo(w);
+      w.flush();
+      break;
+    }
+
+    // The solver gives the same sessions for the same database, so the
+    // command is logged and redone like the others.
+    case TIMETABLE: {
+      Timetable t = new Timetable(o);
+      if (tokenizer.hasMoreTokens())
+	t.setSessionsPerCourse(readInt(tokenizer));
+      if (tokenizer.hasMoreTokens()) t.setSearches(readInt(tokenizer), 20000);
+      t.solve();
+      out.println(t.getReport());
+      out.println(t.apply() + " sessions added.");
+      break;
+    }
+
+    default: {
+      update = false;
+      out.println(" Command not recognized.  Try \"help\"");
+    }
+    }
+    return update;
+  }
+
+  /**
+   * Redoes a command logged by runTerminal.
+   *
+   * @param record	the command line
+   * @param out		where to write the output of the command
+   * @exception Exception if the command fails
+   */
+  public void redo(String record, PrintStream out) throws Exception {
+    StringTokenizer tokenizer = new StringTokenizer(record, " 	");
+    if (tokenizer.hasMoreTokens())
+      execute(this, tokenizer.nextToken(), tokenizer, out);
   }
 
   /** 
@@ -582,7 +1215,8 @@ public class University extends NamedObject {
     show("  addclassroom name campus // add a classroom to the campus");
 
     show("  addsession name course schedule classroom instructor1 [instructor2]");
-    show("                           // add a session to a course");
+    show("                           // add a session to a course;");
+    show("                           // schedule is e.g. M1-2&Th2-3");
 
     show("  removedepartment name      // remove the department");
     show("  removecourse name dept     // remove a course from department");
@@ -596,6 +1230,14 @@ public class University extends NamedObject {
 
     show("");
     show("  test nDept nCourse         // a test to add departments & course");
+    show("  checkpoint                 // save a snapshot & empty the log");
+    show("  conflicts                  // list the scheduling conflicts");
+    show("  timetable [nSession] [nSearch] // add sessions to the courses");
+    show("                             // without any, free of conflicts");
+    show("  analyze [nThread]          // statistics of departments & campuses");
+    show("  stats [reset]              // show or clear transaction statistics");
+    show("  batch file [nChunk]        // run a command file, nChunk commands");
+    show("                             // in a transaction");
     show("  quit                       // shutdown DB & quit");
     show("-----------------------------------------------");
   }
@@ -634,6 +1276,44 @@ public class University extends NamedObject {
   }
 
 
+  /**
+   * Writes the fields of this object to the stream.
+   *
+   * @param out	the stream to write to
+   * @exception IOException if an I/O error occurs
+   */
+  public void writeExternal(ObjectOutput out) throws IOException {
+    super.writeExternal(out);
+    out.writeObject(departments);
+    out.writeObject(campuses);
+    NameDirectory[] x = directories;
+    for (int i=0; i<3; i++) out.writeObject(x == null ? null : x[i]);
+  }
+
+  /**
+   * Reads the fields written by writeExternal.
+   *
+   * @param in	the stream to read from
+   * @exception IOException if an I/O error occurs
+   * @exception ClassNotFoundException if a class is not found
+   */
+  public void readExternal(ObjectInput in)
+          throws IOException, ClassNotFoundException {
+    super.readExternal(in);
+    departments = (PVector) in.readObject();
+    campuses = (PVector) in.readObject();
+    listen();
+    try {
+      NameDirectory[] x = new NameDirectory[3];
+      for (int i=0; i<x.length; i++) x[i] = (NameDirectory) in.readObject();
+      directories = (x[0] != null) ? x : null;
+    } catch (OptionalDataException e) {  // saved without directories
+      directories = null;
+    } catch (EOFException e) {
+      directories = null;
+    }
+  }
+
   /** 
    * Shows the input string.
    *
@@ -650,14 +1330,21 @@ public class University extends NamedObject {
    */
   public static void main(String[] args) throws Exception {
 
-    show("Usage: java University [database_file] [command_file.txt]");
+    show("Usage: java University [database_file] [command_file.txt] [nChunk]");
     show("  If no database file is specified, run on transient objects.");
+    show("  With nChunk, run the command file in batch mode.");
 
     String dbfile = null;
     if (args.length >= 1) {
       dbfile = args[0];
     }
 
+    int chunkSize = 0;  // not in batch mode
+    if (args.length >= 3) chunkSize = Integer.parseInt(args[2]);
+
+    // A terminal runs few transactions, so time all of them.
+    if (chunkSize == 0) TrxStats.setSampling(1);
+
     // Get input stream
     InputStream input = System.in;
     if (args.length >= 2) {
@@ -672,13 +1359,15 @@ public class University extends NamedObject {
 
       University mgr = (University)POManager.getDbRoot();
 
-      University.runTerminal(mgr, input);
+      if (chunkSize > 0) runBatch(mgr, input, chunkSize);
+      else University.runTerminal(mgr, input);
 
       POManager.shutdown();
 
     } else {  // transient test
       University mgr = new University();
-      runTerminal(mgr, input);
+      if (chunkSize > 0) runBatch(mgr, input, chunkSize);
+      else runTerminal(mgr, input);
     }
 
   }
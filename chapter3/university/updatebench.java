@@ -0,0 +1,205 @@
+//*************************************************************************
+/**
+ * UpdateBench.java - A benchmark for saving updates to random objects.
+ *
+ *   Copyright (C) 1998-2000    Yun-Tung Lau
+ *   All Rights Reserved.  See the license file in the home
+ *   directory of this package for important license information.
+ */
+//*************************************************************************
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class builds a university as SerializationBench does, and runs
+ * update transactions that add a course to a random department, or
+ * remove it again.  Each update is saved before the next one starts.
+ * It is run first with a checkpoint after each update, which rewrites
+ * the whole file, and then with MappedStore, which writes only the
+ * changed pages.  The average, median and longest time of an update
+ * are shown for each case, and the university is read back to check
+ * the number of courses.
+ * <P>
+ * Usage: java UpdateBench [nDept] [nCourse] [nUpdates]
+ * <P>
+ * The defaults are 20 departments with 500 courses each, and 1000
+ * updates (20 with checkpoints, since each takes much longer).
+ */
+public class UpdateBench {
+
+  /** Name of the database file with checkpoints. */
+  private final static String FULL_FILE = "update-full.odb";
+
+  /** Name of the database file of MappedStore. */
+  private final static String MAPPED_FILE = "update-mapped.odb";
+
+  /**
+   * Runs the updates, and returns the time of each in micro seconds.
+   *
+   * @param checkpoint	true to do a checkpoint after each update
+   * @param nDept	number of departments
+   * @param nUpdates	number of updates
+   * @return the time of each update
+   */
+  public static long[] runUpdates(boolean checkpoint, int nDept,
+  	int nUpdates) {
+    University u = (University) POManager.getDbRoot();
+    Random random = new Random(1);
+    Department[] added = new Department[nUpdates];
+    long[] times = new long[nUpdates];
+
+    for (int i=0; i<nUpdates; i++) {
+      long t0 = System.nanoTime();
+      synchronized (POManager.TOKEN) {
+        POManager.beginUpdateTrx();
+	try {
+	  if (i % 2 == 0) {
+	    added[i] = u.getDepartment("Department " + random.nextInt(nDept));
+	    added[i].addCourse("Extra " + i);
+	  } else {  // remove the course added before
+	    added[i-1].removeCourse("Extra " + (i-1));
+	  }
+	  POManager.commitTrx();
+	} catch (Exception e) {
+	  POManager.abortTrx();
+	  show(e.toString());
+	}
+      }
+      if (checkpoint) POManager.checkpoint();
+      times[i] = (System.nanoTime() - t0) / 1000;
+    }
+    return times;
+  }
+
+  /**
+   * Builds the university in the input file.
+   *
+   * @param file	the database file
+   * @param backend	the storage backend, or null
+   * @param nDept	number of departments
+   * @param nCourse	number of courses per department
+   * @exception Exception if any exception is thrown
+   */
+  public static void build(String file, POManager.Backend backend,
+  	int nDept, int nCourse) throws Exception {
+    delete(file);
+    POManager.setBackend(backend);
+    POManager.initialize(file, "University");
+    synchronized (POManager.TOKEN) {
+      POManager.beginUpdateTrx();
+      SerializationBench.build((University) POManager.getDbRoot(),
+      	nDept, nCourse);
+      POManager.commitTrx();
+    }
+    POManager.checkpoint();  // with a redo log
+  }
+
+  /**
+   * Reads the university back, and returns the number of courses.
+   *
+   * @param file	the database file
+   * @param backend	the storage backend, or null
+   * @return the number of courses
+   */
+  public static int countCourses(String file, POManager.Backend backend) {
+    POManager.setBackend(backend);
+    POManager.initialize(file, "University");
+    int n = 0;
+    Department[] d = ((University) POManager.getDbRoot()).getDepartments();
+    for (int i=0; i<d.length; i++) n += d[i].getCourseCount();
+    POManager.shutdown();
+    return n;
+  }
+
+  /**
+   * Shows the times of the updates.
+   *
+   * @param name	name of the case
+   * @param times	the times in micro seconds
+   * @param file	the database file
+   */
+  public static void showTimes(String name, long[] times, String file) {
+    long total = 0;
+    for (int i=0; i<times.length; i++) total += times[i];
+    long[] t = times.clone();
+    Arrays.sort(t);
+    show("  " + name + times.length + " updates:  average "
+    	+ (total / t.length) + " us,  median " + t[t.length / 2]
+	+ " us,  longest " + t[t.length - 1] + " us,  file "
+	+ (new File(file).length() / 1024) + " KB");
+  }
+
+  /**
+   * Deletes the database file and its log and journal.
+   *
+   * @param file	the database file
+   */
+  public static void delete(String file) {
+    new File(file).delete();
+    new File(file + ".log").delete();
+    new File(file + ".jnl").delete();
+  }
+
+  /**
+   * Shows the input string.
+   *
+   * @s the string to be shown
+   */
+  public static void show(String s) {
+    System.out.println(s);
+  }
+
+  /**
+   * Main method for the benchmark.
+   *
+   * @exception Exception if any exception is thrown
+   */
+  public static void main(String[] args) throws Exception {
+    int nDept = 20;
+    int nCourse = 500;
+    int nUpdates = 1000;
+    if (args.length >= 1) nDept = Integer.parseInt(args[0]);
+    if (args.length >= 2) nCourse = Integer.parseInt(args[1]);
+    if (args.length >= 3) nUpdates = Integer.parseInt(args[2]);
+    int nFull = Math.max(2, Math.min(20, nUpdates));
+
+    show("Departments: " + nDept + ", courses and sessions: "
+    	+ (nDept * nCourse));
+
+    // the whole file is rewritten after each update
+    build(FULL_FILE, null, nDept, nCourse);
+    runUpdates(true, nDept, 4);  // warm up
+    long[] full = runUpdates(true, nDept, nFull);
+    POManager.shutdown();
+    showTimes("checkpoint:   ", full, FULL_FILE);
+
+    // only the changed pages are written
+    MappedStore store = new MappedStore();
+    build(MAPPED_FILE, store, nDept, nCourse);
+    runUpdates(false, nDept, 100);  // warm up
+    long records = store.getRecordsWritten();
+    long pages = store.getPagesWritten();
+    long[] mapped = runUpdates(false, nDept, nUpdates);
+    records = store.getRecordsWritten() - records;
+    pages = store.getPagesWritten() - pages;
+    POManager.shutdown();
+    showTimes("MappedStore:  ", mapped, MAPPED_FILE);
+    show("    records per update " + (double) records / nUpdates
+    	+ ",  pages per update " + (double) pages / nUpdates
+	+ ",  pages in use " + store.getPageCount());
+
+    long t0 = System.currentTimeMillis();
+    int n = countCourses(MAPPED_FILE, new MappedStore());
+    long t1 = System.currentTimeMillis();
+    show("    read back in " + (t1 - t0) + " ms,  courses: " + n);
+    if (n != nDept * nCourse || countCourses(FULL_FILE, null) != n)
+      show("Wrong number of courses!");
+
+    POManager.setBackend(null);
+    delete(FULL_FILE);
+    delete(MAPPED_FILE);
+  }
+
+}
@@ -0,0 +1,156 @@
+//*************************************************************************
+/**
+ * BatchBench.java - A benchmark for the delivery of events in batches.
+ *
+ *   Copyright (C) 1998-2000    Yun-Tung Lau
+ *   All Rights Reserved.  See the license file in the home
+ *   directory of this package for important license information.
+ */
+//*************************************************************************
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class measures the events per second delivered to subscribers
+ * behind a simulated remote transport: each call to a subscriber waits
+ * for a round trip of latencyMicros, plus 2 micro seconds for each
+ * event it carries.  A producer with nSubscribers processes nEvents
+ * events at once, and the time until all are delivered is taken.
+ * <P>
+ * The first case has subscribers that take one event at a time
+ * (processEvent only).  The others have batch subscribers, with the
+ * batches of the Dispatcher limited to 1, 2, 4, ... 256 events.
+ * <P>
+ * Usage: java BatchBench [nSubscribers] [nEvents] [latencyMicros]
+ *	[nThreads]
+ * <P>
+ * The defaults are 20 subscribers, 2000 events, 1000 micro seconds
+ * and 8 threads.
+ */
+public class BatchBench {
+
+  /** Time to carry one event, in nano seconds. */
+  private final static long PER_EVENT = 2000;
+
+  /**
+   * A subscriber reached through the simulated transport, one event
+   * at a time.
+   */
+  static class Remote implements SubscriberIF {
+    private String name;
+    private long latency;  // in nano seconds
+    private int count;
+
+    Remote(String name, long latency) {
+      this.name = name;
+      this.latency = latency;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public void processEvent(EventData data) {
+      call(1);
+    }
+
+    /**
+     * Simulates a call that carries some events.
+     */
+    void call(int n) {
+      LockSupport.parkNanos(latency + n * PER_EVENT);
+      synchronized (this) {
+	count += n;
+	notifyAll();
+      }
+    }
+
+    synchronized void waitFor(int n) throws InterruptedException {
+      while (count < n) wait();
+    }
+  }
+
+  /**
+   * A subscriber reached through the simulated transport, in batches.
+   */
+  static class BatchRemote extends Remote implements BatchSubscriberIF {
+    BatchRemote(String name, long latency) {
+      super(name, latency);
+    }
+
+    public void processEvents(EventData[] data) {
+      call(data.length);
+    }
+  }
+
+  /**
+   * Shows the input string.
+   *
+   * @s the string to be shown
+   */
+  public static void show(String s) {
+    System.out.println(s);
+  }
+
+  /**
+   * Runs one case.
+   *
+   * @param batch	largest batch; 0 for subscribers that take one
+   *		event at a time
+   * @param nSubscribers	number of subscribers
+   * @param nEvents	number of events
+   * @param latency	time of a round trip in micro seconds
+   * @param nThreads	number of threads of the dispatcher
+   * @return events delivered per second
+   * @exception Exception if any exception is thrown
+   */
+  public static long runCase(int batch, int nSubscribers, int nEvents,
+  	long latency, int nThreads) throws Exception {
+    Dispatcher dispatcher = new Dispatcher(nThreads, Math.max(batch, 1),
+    	60000);
+    ProducerImpl prod = new ProducerImpl("Batch", dispatcher);
+    Remote[] subs = new Remote[nSubscribers];
+    for (int i=0; i<nSubscribers; i++) {
+      subs[i] = batch == 0 ? new Remote("Subscriber " + i, latency * 1000)
+      	: new BatchRemote("Subscriber " + i, latency * 1000);
+      prod.subscribe(subs[i]);
+    }
+
+    long t0 = System.nanoTime();
+    for (int i=0; i<nEvents; i++)
+      prod.processEvent(new EventData("Event " + i, "BatchBench"));
+    for (int i=0; i<nSubscribers; i++) subs[i].waitFor(nEvents);
+    long elapsed = Math.max(System.nanoTime() - t0, 1);
+    dispatcher.shutdown();
+    return (long) nSubscribers * nEvents * 1000000000L / elapsed;
+  }
+
+  /**
+   * Main method for the benchmark.
+   *
+   * @exception Exception if any exception is thrown
+   */
+  public static void main(String[] args) throws Exception {
+    int nSubscribers = 20;
+    int nEvents = 2000;
+    long latency = 1000;
+    int nThreads = ProducerImpl.DISPATCH_THREADS;
+    if (args.length >= 1) nSubscribers = Integer.parseInt(args[0]);
+    if (args.length >= 2) nEvents = Integer.parseInt(args[1]);
+    if (args.length >= 3) latency = Long.parseLong(args[2]);
+    if (args.length >= 4) nThreads = Integer.parseInt(args[3]);
+
+    // warm up the JIT compiler first
+    runCase(Dispatcher.MAX_BATCH, nSubscribers, nEvents, latency, nThreads);
+
+    show("Subscribers: " + nSubscribers + ", events: " + nEvents
+    	+ ", latency: " + latency + " us, threads: " + nThreads);
+    show("  batch     events/s");
+    show("  single    " + runCase(0, nSubscribers, nEvents, latency,
+    	nThreads));
+    for (int batch=1; batch<=Dispatcher.MAX_BATCH; batch*=2)
+      show("  " + batch + "\t    " + runCase(batch, nSubscribers, nEvents,
+      	latency, nThreads));
+  }
+
+}
@@ -0,0 +1,31 @@
+//*************************************************************************
+/**
+ * BatchSubscriberIF.java - An interface for a Subscriber that takes
+ *	events in batches.
+ *
+ *   Copyright (C) 1998-2000    Yun-Tung Lau
+ *   All Rights Reserved.  See the license file in the home 
+ *   directory of this package for important license information.
+ */
+//*************************************************************************
+
+/**
+ * This interface defines the operations for a Subscriber that takes
+ * several events in one call.  When the subscriber is remote, a batch
+ * costs one round trip instead of one for each event.
+ * <P>
+ * The Dispatcher sends the new events of a subscriber that implements
+ * it in batches, and those of other subscribers one at a time with
+ * processEvent.
+ */
+public interface BatchSubscriberIF extends SubscriberIF {
+ 
+  /** 
+   * Processes the events sent to this subscriber, in order.  If it
+   * fails, the whole batch is sent again later.
+   *
+   * @param data  the data for the events
+   */
+  public void processEvents(EventData[] data);
+
+}
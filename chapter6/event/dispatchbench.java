@@ -0,0 +1,168 @@
+//*************************************************************************
+/**
+ * DispatchBench.java - A benchmark for the delivery of events.
+ *
+ *   Copyright (C) 1998-2000    Yun-Tung Lau
+ *   All Rights Reserved.  See the license file in the home
+ *   directory of this package for important license information.
+ */
+//*************************************************************************
+
+import java.util.Arrays;
+
+/**
+ * This class measures the time from the processing of an event by a
+ * producer to its display to a subscriber.  nProducers producers share
+ * a Dispatcher, and each has nSubscribers / nProducers subscribers.
+ * A thread processes eventsPerSecond events in turn by the producers,
+ * for the given number of seconds.  When all the events have been
+ * received, the rate achieved and the median, 99th percentile and
+ * longest time of a delivery are shown.
+ * <P>
+ * Usage: java DispatchBench [eventsPerSecond] [nSubscribers] [nProducers]
+ *	[seconds] [nThreads]
+ * <P>
+ * The defaults are 10000 events per second, 1000 subscribers of 100
+ * producers, 5 seconds and 8 threads.  With the former polling every
+ * 2 seconds an event waited 1 second on average.
+ */
+public class DispatchBench {
+
+  /**
+   * The data of an event, with the time it was processed.
+   */
+  static class TimedData extends EventData {
+    long time = System.nanoTime();
+
+    TimedData(String message, String sender) {
+      super(message, sender);
+    }
+  }
+
+  /**
+   * A subscriber that records the delivery times of the events.
+   */
+  static class Recorder implements SubscriberIF {
+    private String name;
+    private long[] times;
+    private int[] count;
+
+    /**
+     * @param name	name of the subscriber
+     * @param times	the times of all deliveries, in nano seconds
+     * @param count	the number of deliveries, which guards times
+     */
+    Recorder(String name, long[] times, int[] count) {
+      this.name = name;
+      this.times = times;
+      this.count = count;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public void processEvent(EventData data) {
+      long t = System.nanoTime() - ((TimedData) data).time;
+      synchronized (count) {
+	if (count[0] < times.length) times[count[0]] = t;
+	count[0]++;
+	count.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Shows the input string.
+   *
+   * @s the string to be shown
+   */
+  public static void show(String s) {
+    System.out.println(s);
+  }
+
+  /**
+   * Runs one case.
+   *
+   * @param rate	events per second
+   * @param nSubscribers	number of subscribers
+   * @param nProducers	number of producers
+   * @param seconds	duration
+   * @param nThreads	number of threads of the dispatcher
+   * @return events per second achieved, deliveries, and the median,
+   *		99th percentile and longest time of a delivery in micro
+   *		seconds
+   * @exception Exception if any exception is thrown
+   */
+  public static long[] runCase(int rate, int nSubscribers, int nProducers,
+  	int seconds, int nThreads) throws Exception {
+    int perProducer = Math.max(nSubscribers / nProducers, 1);
+    int nEvents = rate * seconds;
+    long[] times = new long[nEvents * perProducer];
+    int[] count = new int[1];
+
+    Dispatcher dispatcher = new Dispatcher(nThreads);
+    ProducerImpl[] producers = new ProducerImpl[nProducers];
+    for (int p=0; p<nProducers; p++) {
+      producers[p] = new ProducerImpl("Producer " + p, dispatcher);
+      for (int k=0; k<perProducer; k++)
+	producers[p].subscribe(new Recorder("Subscriber " + p + "." + k,
+		times, count));
+    }
+
+    // process the events at the rate, catching up every milli second
+    long t0 = System.nanoTime();
+    for (int i=0; i<nEvents; ) {
+      long due = (System.nanoTime() - t0) * rate / 1000000000L + 1;
+      for (; i<nEvents && i<due; i++)
+	producers[i % nProducers].processEvent(
+		new TimedData("Event " + i, "DispatchBench"));
+      Thread.sleep(1);
+    }
+    long elapsed = Math.max(System.nanoTime() - t0, 1);
+
+    synchronized (count) {
+      while (count[0] < times.length) count.wait();
+    }
+    dispatcher.shutdown();
+
+    Arrays.sort(times);
+    long[] result = new long[5];
+    result[0] = nEvents * 1000000000L / elapsed;
+    result[1] = times.length;
+    result[2] = times[times.length / 2] / 1000;
+    result[3] = times[(int) (times.length * 0.99)] / 1000;
+    result[4] = times[times.length - 1] / 1000;
+    return result;
+  }
+
+  /**
+   * Main method for the benchmark.
+   *
+   * @exception Exception if any exception is thrown
+   */
+  public static void main(String[] args) throws Exception {
+    int rate = 10000;
+    int nSubscribers = 1000;
+    int nProducers = 100;
+    int seconds = 5;
+    int nThreads = ProducerImpl.DISPATCH_THREADS;
+    if (args.length >= 1) rate = Integer.parseInt(args[0]);
+    if (args.length >= 2) nSubscribers = Integer.parseInt(args[1]);
+    if (args.length >= 3) nProducers = Integer.parseInt(args[2]);
+    if (args.length >= 4) seconds = Integer.parseInt(args[3]);
+    if (args.length >= 5) nThreads = Integer.parseInt(args[4]);
+
+    // warm up the JIT compiler first
+    runCase(rate, nSubscribers, nProducers, 1, nThreads);
+
+    show("Events: " + rate + "/s for " + seconds + " s, subscribers: "
+    	+ nSubscribers + " of " + nProducers + " producers, threads: "
+	+ nThreads);
+    long[] r = runCase(rate, nSubscribers, nProducers, seconds, nThreads);
+    show("  events/s  deliveries  median (us)  99% (us)  longest (us)");
+    show("  " + r[0] + "\t    " + r[1] + "\t" + r[2] + "\t     " + r[3]
+    	+ "\t       " + r[4]);
+  }
+
+}
@@ -0,0 +1,176 @@
+//*************************************************************************
+/**
+ * Dispatcher.java - A dispatcher that pushes events to subscribers
+ *
+ *   Copyright (C) 1998-2000    Yun-Tung Lau
+ *   All Rights Reserved.  See the license file in the home
+ *   directory of this package for important license information.
+ */
+//*************************************************************************
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A dispatcher that sends the new events of event holders to their
+ * subscribers as soon as they are added, instead of polling the
+ * holders periodically.  An event holder is the queue of its
+ * subscriber: the producer adds an event to it and schedules it, and
+ * a thread of a bounded pool then sends its new events in order.
+ * <P>
+ * A holder is sent by one thread at a time, so its subscriber gets
+ * its events in order, and a holder that is scheduled again while it
+ * is being sent is sent once more afterwards.  Idle holders take no
+ * threads and no time.  If a subscriber fails, the rest of its events
+ * stay new until it is scheduled again.
+ * <P>
+ * The events of a subscriber that implements BatchSubscriberIF are sent
+ * in batches, each with one call of processEvents.  The size of the
+ * batches adapts to each subscriber: it starts at 1, doubles while the
+ * batches are full (more events are pending) and are taken within the
+ * deadline, and halves when a batch is late, up to maxBatch.  Other
+ * subscribers get their events one at a time.
+ * <P>
+ * The threads are daemon threads, so they do not keep a program
+ * running.
+ */
+public class Dispatcher {
+
+  /** Largest batch of events, by default. */
+  public final static int MAX_BATCH = 256;
+
+  /** Time a batch may take before the batches are made smaller, in
+      milli seconds, by default. */
+  public final static long DEADLINE = 50;
+
+  private ExecutorService executor;
+  private int maxBatch;
+  private long deadline;  // in nano seconds
+
+
+  /**
+   * Constructs a dispatcher, with batches of up to MAX_BATCH events
+   * and a deadline of DEADLINE.
+   *
+   * @param nThreads	number of threads that send the events
+   */
+  public Dispatcher(int nThreads) {
+    this(nThreads, MAX_BATCH, DEADLINE);
+  }
+
+  /**
+   * Constructs a dispatcher.
+   *
+   * @param nThreads	number of threads that send the events
+   * @param maxBatch	largest batch of events sent in one call
+   * @param deadline	time a batch may take, in milli seconds
+   */
+  public Dispatcher(int nThreads, int maxBatch, long deadline) {
+    this.maxBatch = Math.max(maxBatch, 1);
+    this.deadline = deadline * 1000000L;
+    executor = Executors.newFixedThreadPool(Math.max(nThreads, 1),
+      new ThreadFactory() {
+	private int count;
+
+	public synchronized Thread newThread(Runnable r) {
+	  Thread t = new Thread(r, "Dispatcher-" + (++count));
+	  t.setDaemon(true);
+	  return t;
+	}
+      });
+  }
+
+  /**
+   * Schedules an event holder to send its new events.  It returns at
+   * once; the events are sent by a thread of the dispatcher.
+   *
+   * @param holder	the event holder
+   */
+  public void schedule(final EventHolder holder) {
+    if (!holder.schedule()) return;  // it will be sent again anyway
+    try {
+      executor.execute(new Runnable() {
+	public void run() {
+	  do {
+	    send(holder);
+	  } while (holder.endSend());
+	}
+      });
+    } catch (RejectedExecutionException e) {
+      holder.endSend();  // shut down
+    }
+  }
+
+  /**
+   * Sends the new events of an event holder to its subscriber, and
+   * acknowledges those that were sent.  It stops at the first event,
+   * or batch, that fails.
+   *
+   * @param holder	the event holder
+   */
+  void send(EventHolder holder) {
+    SubscriberIF sub = holder.getSubscriber();
+    Event[] es = holder.getEvents(Event.NEW);
+    if (!(sub instanceof BatchSubscriberIF)) {
+      int n = 0;
+      try {
+	for (; n<es.length; n++)
+	  sub.processEvent(es[n].getData());  // this may go across network
+      } catch (Exception e) {
+	// try the rest again when the holder is scheduled again
+      }
+      if (n > 0) holder.acknowledge(es[n-1]);
+      return;
+    }
+
+    BatchSubscriberIF bsub = (BatchSubscriberIF) sub;
+    int batch = Math.min(holder.getBatchSize(), maxBatch);
+    for (int i=0; i<es.length; ) {
+      int n = Math.min(batch, es.length - i);
+      EventData[] data = new EventData[n];
+      for (int k=0; k<n; k++) data[k] = es[i + k].getData();
+
+      long t0 = System.nanoTime();
+      try {
+	bsub.processEvents(data);  // one call, even across network
+      } catch (Exception e) {
+	break;  // try again when the holder is scheduled again
+      }
+      long elapsed = System.nanoTime() - t0;
+      i += n;
+      holder.acknowledge(es[i-1]);
+
+      // adapt the batch size to the backlog and the deadline
+      if (elapsed > deadline) batch = Math.max(n / 2, 1);
+      else if (n == batch && i < es.length) batch = Math.min(2 * batch,
+      	maxBatch);
+    }
+    holder.setBatchSize(batch);
+  }
+
+  /**
+   * Stops the threads of this dispatcher after they have sent the
+   * holders that are scheduled.
+   */
+  public void shutdown() {
+    executor.shutdown();
+  }
+
+  /**
+   * Waits for the threads to finish after shutdown.
+   *
+   * @param millis	longest wait in milli seconds
+   * @return true if they have finished
+   */
+  public boolean awaitTermination(long millis) {
+    try {
+      return executor.awaitTermination(millis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      return false;
+    }
+  }
+
+}
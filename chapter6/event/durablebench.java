@@ -0,0 +1,149 @@
+//*************************************************************************
+/**
+ * DurableBench.java - A benchmark for the durable event store.
+ *
+ *   Copyright (C) 1998-2000    Yun-Tung Lau
+ *   All Rights Reserved.  See the license file in the home
+ *   directory of this package for important license information.
+ */
+//*************************************************************************
+
+import java.io.File;
+
+/**
+ * This class measures the events per second that a durable producer
+ * processes, when the store is synced after every 1, 10, 100 and 1000
+ * events, and only when it is closed, and those of a producer in
+ * memory.  The producer has no subscribers, so the log is trimmed and
+ * its segments deleted as it goes.
+ * <P>
+ * It then checks a restart: a subscriber takes some of the events and
+ * then fails; the producer is shut down and opened again, and the
+ * subscriber, subscribed again, should get the rest of the events
+ * from where it was.
+ * <P>
+ * Usage: java DurableBench [nEvents]
+ * <P>
+ * The default is 100000 events.  The files are written in the
+ * directory durablebench.events, which is deleted at the end.
+ */
+public class DurableBench {
+
+  /** Directory of the store. */
+  private final static File DIR = new File("durablebench.events");
+
+  /**
+   * A subscriber that takes a number of events and then fails.
+   */
+  static class Taker implements SubscriberIF {
+    private int limit;
+    int count;
+    String first;  // message of the first event taken
+
+    Taker(int limit) {
+      this.limit = limit;
+    }
+
+    public String getName() {
+      return "Taker";
+    }
+
+    public synchronized void processEvent(EventData data) {
+      if (count == limit) throw new RuntimeException("Offline");
+      if (count++ == 0) first = data.message;
+      notifyAll();
+    }
+
+    synchronized void waitFor(int n) throws InterruptedException {
+      long end = System.currentTimeMillis() + 10000;
+      while (count < n && System.currentTimeMillis() < end) wait(1000);
+    }
+  }
+
+  /**
+   * Deletes the files of the store.
+   */
+  static void delete() {
+    String[] names = DIR.list();
+    for (int i=0; names != null && i<names.length; i++)
+      new File(DIR, names[i]).delete();
+    DIR.delete();
+  }
+
+  /**
+   * Runs one case.
+   *
+   * @param nEvents	number of events
+   * @param syncEvery	events between syncs; 0 for only on close; -1
+   *		for a producer in memory
+   * @return events per second
+   * @exception Exception if any exception is thrown
+   */
+  public static long runCase(int nEvents, int syncEvery) throws Exception {
+    delete();
+    ProducerImpl prod = syncEvery < 0 ? new ProducerImpl("Durable")
+    	: new ProducerImpl("Durable", new EventStore(DIR,
+		EventStore.SEGMENT_SIZE, syncEvery));
+    long t0 = System.nanoTime();
+    for (int i=0; i<nEvents; i++)
+      prod.processEvent(new EventData("Event " + i, "DurableBench"));
+    prod.shutdown();
+    long elapsed = Math.max(System.nanoTime() - t0, 1);
+    return nEvents * 1000000000L / elapsed;
+  }
+
+  /**
+   * Shows the input string.
+   *
+   * @s the string to be shown
+   */
+  public static void show(String s) {
+    System.out.println(s);
+  }
+
+  /**
+   * Main method for the benchmark.
+   *
+   * @exception Exception if any exception is thrown
+   */
+  public static void main(String[] args) throws Exception {
+    int nEvents = 100000;
+    if (args.length >= 1) nEvents = Integer.parseInt(args[0]);
+
+    // warm up the JIT compiler first
+    runCase(nEvents / 10, 100);
+
+    show("Events: " + nEvents + ", segments of "
+    	+ EventStore.SEGMENT_SIZE / 1024 + " KB");
+    show("  sync every   events/s");
+    show("  in memory    " + runCase(nEvents, -1));
+    show("  close only   " + runCase(nEvents, 0));
+    int[] cases = { 1000, 100, 10, 1 };
+    for (int i=0; i<cases.length; i++)
+      show("  " + cases[i] + "\t       " + runCase(nEvents, cases[i]));
+
+    // a restart
+    int n = 1000;
+    int k = 300;
+    delete();
+    ProducerImpl prod = new ProducerImpl("Durable", new EventStore(DIR));
+    Taker taker = new Taker(k);
+    prod.subscribe(taker);
+    for (int i=0; i<n; i++)
+      prod.processEvent(new EventData("Event " + i, "DurableBench"));
+    taker.waitFor(k);
+    prod.shutdown();
+
+    prod = new ProducerImpl("Durable", new EventStore(DIR));
+    taker = new Taker(n);
+    prod.subscribe(taker);
+    taker.waitFor(n - k);
+    Thread.sleep(200);  // more would come by now
+    prod.shutdown();
+    show("  restart: " + k + " taken before, " + taker.count + " after from "
+    	+ taker.first + (taker.count == n - k
+	&& ("Event " + k).equals(taker.first) ? " (ok)" : " (wrong)"));
+    delete();
+  }
+
+}
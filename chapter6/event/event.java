@@ -26,6 +26,12 @@ public class Event implements java.io.Serializable {
    */
   private EventData data;
 
+  /** 
+   * @serial offset of the event in the log of its producer; -1 if
+   *		none
+   */
+  private long offset = -1;
+
   // some flags for status
   public static final char NEW = 'n';
   public static final char SENT = 's';
@@ -39,6 +45,17 @@ public class Event implements java.io.Serializable {
     this.data = data; 
   }
 
+  /** 
+   * Constructs an event object for an event of a log.
+   *
+   * @param data	data of the event
+   * @param offset	offset of the event in the log
+   */
+  public Event(EventData data, long offset) {
+    this.data = data; 
+    this.offset = offset;
+  }
+
   /** 
    * Returns the data of this event.
    *
@@ -48,6 +65,15 @@ public class Event implements java.io.Serializable {
     return data; 
   }
 
+  /** 
+   * Returns the offset of this event in the log of its producer.
+   *
+   * @return the offset, or -1 if none
+   */
+  public long getOffset() { 
+    return offset; 
+  }
+
   /** 
    * Returns the status of this event.
    *
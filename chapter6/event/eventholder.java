@@ -8,12 +8,23 @@
  */
 //*************************************************************************
 
-import java.util.Enumeration;
-import java.util.Vector;
-
 /**
- * A class containing a set of events to be sent to a subscriber.
+ * A class holding the events to be sent to a subscriber.
  * It is part of a subscription and notification service (asynchronous).
+ * It is the queue of its subscriber for a Dispatcher, which sends its
+ * new events when it is scheduled.  Its methods are synchronized, as
+ * events are added and sent by different threads.
+ * <P>
+ * The events themselves are kept once in the EventLog of the producer.
+ * A holder only keeps the offset of the next event to send, like a
+ * cursor: the events of the log before it have been sent, and the new
+ * events are those from it to the tail.  They are fetched without
+ * scanning the events before it.  A new holder starts at the tail of
+ * the log, so a subscriber gets the events processed after it
+ * subscribed.
+ * <P>
+ * The Event objects it returns are made on each call.  Each carries
+ * its offset, by which the dispatcher acknowledges the events sent.
  * <P>
  * This class is also Serializable.
  * 
@@ -26,18 +37,47 @@ public class EventHolder implements java.io.Serializable {
   private SubscriberIF subscriber;
 
   /**
-   * @serial events in this EventHolder
+   * @serial log of the events of the producer
+   */
+  private EventLog log;
+
+  /**
+   * @serial offset of the next event to be sent
    */
-  private PVector events = new PVector();
+  private long offset;
 
+  // see schedule; a new holder is not scheduled
+  private transient boolean scheduled;  // being sent, or about to be
+  private transient boolean again;      // scheduled while being sent
+  private transient int batchSize;      // see Dispatcher.send; 0 is 1
+
+
+  /** 
+   * Constructs a EventHolder object.  It starts at the tail of the
+   * log.
+   *
+   * @param subscriber	subscriber of the EventHolder
+   * @param log	log of the events of the producer
+   */
+  public EventHolder(SubscriberIF subscriber, EventLog log) {
+    this.subscriber = subscriber; 
+    this.log = log;
+    offset = log.getTail();
+  }
 
   /** 
-   * Constructs a EventHolder object.
+   * Constructs a EventHolder object that starts at an offset of the
+   * log, e.g. where its subscriber was before a restart.
    *
    * @param subscriber	subscriber of the EventHolder
+   * @param log	log of the events of the producer
+   * @param offset	offset of the next event to be sent; it is kept
+   *		within the events of the log
    */
-  public EventHolder(SubscriberIF subscriber) {
+  public EventHolder(SubscriberIF subscriber, EventLog log, long offset) {
     this.subscriber = subscriber; 
+    this.log = log;
+    this.offset = Math.max(log.getStart(), Math.min(offset, log.getTail()));
   }
 
   /** 
@@ -49,18 +89,25 @@ public class EventHolder implements java.io.Serializable {
     return subscriber; 
   }
 
+  /** 
+   * Returns the offset of the next event to be sent.
+   *
+   * @return the offset in the log
+   */
+  public synchronized long getOffset() { 
+    return offset; 
+  }
+
   /******** Events *********/
 
   /** 
-   * Returns the events of this EventHolder.
+   * Returns the events of this EventHolder, those sent that are still
+   * in the log and the new ones.
    *
    * @return the events of this EventHolder as an array
    */
-  public Event[] getEvents() {
-    Object[] o = events.toArray();
-    Event[] r = new Event[o.length];
-    for (int i=0; i<o.length; i++) r[i] = (Event)o[i];
-    return r;
+  public synchronized Event[] getEvents() {
+    return slice(log.getStart(), Long.MAX_VALUE);
   }
 
   /**
@@ -68,62 +115,115 @@ public class EventHolder implements java.io.Serializable {
    *
    * @return 	the number of event objects
    */
-  public int getEventCount() {
-    return events.size();
+  public synchronized int getEventCount() {
+    return log.getCount();
+  }
+
+  /**
+   * Returns the number of events that have not been sent.
+   *
+   * @return 	the number of new events
+   */
+  public synchronized int getPendingCount() {
+    return (int) (log.getTail() - offset);
   }
 
   /**
-   * Returns the event objects with the status.
+   * Returns the event objects with the status.  The new events and
+   * the sent ones are taken from either side of the offset, in time
+   * proportional to their number.
    *
    * @param status 	status of event
    * @return an array of Event objects.  Zero length array if none matched.
    */
-  public Event[] getEvents(char status) {
-    Vector ev = new Vector();
-    Enumeration e = events.elements();
-    while (e.hasMoreElements()) {
-      Event c = (Event) e.nextElement();
-      if (c.getStatus() == status) ev.addElement(c);
+  public synchronized Event[] getEvents(char status) {
+    if (status == Event.NEW) return slice(offset, Long.MAX_VALUE);
+    if (status == Event.SENT) return slice(log.getStart(), offset);
+    return new Event[0];
+  }
+
+  /**
+   * Returns some of the events of the log, in order.
+   *
+   * @param from	offset of the first event
+   * @param to	offset after the last event
+   * @return the events
+   */
+  private Event[] slice(long from, long to) {
+    from = Math.max(from, log.getStart());
+    EventData[] data = log.read(from, to);
+    Event[] r = new Event[data.length];
+    for (int i=0; i<r.length; i++) {
+      r[i] = new Event(data[i], from + i);
+      if (from + i < offset) r[i].setStatus(Event.SENT);
     }
-    return (Event[]) ev.toArray(new Event[0]);
+    return r;
+  }
+
+  /**
+   * Skips all the new events, so that they are not sent.
+   */
+  public synchronized void removeAllEvents( ) {
+    offset = log.getTail();
   }
 
   /**
-   * Returns whether the input event object exists.
+   * Marks the new events up to and including the input event as sent,
+   * by moving the offset past it.  Nothing is done if it is sent
+   * already.
    *
-   * @param event 	a event object
-   * @return true if the input event object is found.  False otherwise.
+   * @param event 	the last event that was sent
    */
-  public boolean contains(Event event) {
-    return events.contains(event);
+  public synchronized void acknowledge(Event event) {
+    offset = Math.max(offset, event.getOffset() + 1);
   }
 
   /**
-   * Adds a new event.
+   * Schedules this holder to be sent by a dispatcher.
    *
-   * @param event 	a event object
+   * @return true if the caller is to send it; false if it is being
+   *		sent, in which case it will be sent again
    */
-  public void addEvent(Event event) {
-    events.addElement(event);
+  synchronized boolean schedule() {
+    if (scheduled) {
+      again = true;
+      return false;
+    }
+    scheduled = true;
+    return true;
   }
 
   /**
-   * Removes the input event.
+   * Ends the sending of this holder by a dispatcher.
    *
-   * @param event  The event to be removed.
-   * @exception Exception if the event is not found
+   * @return true if it was scheduled meanwhile, so that it must be
+   *		sent again
    */
-  public void removeEvent(Event event) throws Exception {
-    if (!events.contains(event))
-      throw new Exception("Event not found: " + event);
-    events.removeElement(event);
+  synchronized boolean endSend() {
+    if (again) {
+      again = false;
+      return true;
+    }
+    scheduled = false;
+    return false;
   }
 
   /**
-   * Removes all event objects.
+   * Returns the number of events the dispatcher sends in a batch.
+   *
+   * @return the batch size, at least 1
    */
-  public void removeAllEvents( ) {
-    events.removeAllElements();
+  synchronized int getBatchSize() {
+    return Math.max(batchSize, 1);
+  }
+
+  /**
+   * Sets the number of events the dispatcher sends in a batch.
+   *
+   * @param batchSize	the batch size
+   */
+  synchronized void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
   }
 
   /** 
@@ -144,4 +244,3 @@ public class EventHolder implements java.io.Serializable {
   }
 
 }
-
@@ -0,0 +1,131 @@
+//*************************************************************************
+/**
+ * EventLog.java - A log of the events of a producer
+ *
+ *   Copyright (C) 1998-2000    Yun-Tung Lau
+ *   All Rights Reserved.  See the license file in the home
+ *   directory of this package for important license information.
+ */
+//*************************************************************************
+
+/**
+ * An append-only log of the event data of a producer, shared by its
+ * event holders.  Each event is stored once, at an offset that counts
+ * the events appended before it, and each holder only keeps the offset
+ * of the next event to send to its subscriber.
+ * <P>
+ * The events before the lowest offset of the holders are no longer
+ * needed.  The producer trims the log up to that offset, and when the
+ * trimmed events are at least COMPACT_MIN and as many as those left,
+ * they are dropped by copying the rest, so each event is copied once
+ * on average.  The offsets do not change.
+ * <P>
+ * This class is also Serializable.
+ */
+public class EventLog implements java.io.Serializable {
+
+  /** Least number of trimmed events that are dropped at a time. */
+  public final static int COMPACT_MIN = 64;
+
+  /**
+   * @serial the event data, from offset head on
+   */
+  private PVector entries = new PVector();
+
+  /**
+   * @serial offset of the first of entries
+   */
+  private long head;
+
+  /**
+   * @serial offset of the first event that is kept; the entries
+   *		before it are to be dropped
+   */
+  private long start;
+
+
+  /**
+   * Appends the data of an event.
+   *
+   * @param data	the data for the event
+   * @return the offset of the event
+   */
+  public synchronized long append(EventData data) {
+    entries.addElement(data);
+    return head + entries.size() - 1;
+  }
+
+  /**
+   * Returns the offset of the first event that is kept.
+   *
+   * @return the offset
+   */
+  public synchronized long getStart() {
+    return start;
+  }
+
+  /**
+   * Returns the offset the next event will be appended at.
+   *
+   * @return the offset
+   */
+  public synchronized long getTail() {
+    return head + entries.size();
+  }
+
+  /**
+   * Returns some of the events that are kept, in order.
+   *
+   * @param from	offset of the first event; it is raised to the
+   *		start if it is lower
+   * @param to	offset after the last event; it is lowered to the
+   *		tail if it is higher
+   * @return the event data
+   */
+  public synchronized EventData[] read(long from, long to) {
+    from = Math.max(from, start);
+    to = Math.min(to, getTail());
+    EventData[] r = new EventData[(int) Math.max(to - from, 0)];
+    for (int i=0; i<r.length; i++)
+      r[i] = (EventData) entries.elementAt((int) (from - head) + i);
+    return r;
+  }
+
+  /**
+   * Trims the events before an offset, which no holder needs.
+   *
+   * @param offset	offset of the first event to keep
+   */
+  public synchronized void trim(long offset) {
+    long tail = getTail();
+    start = Math.max(start, Math.min(offset, tail));
+    if (start - head >= COMPACT_MIN && start - head >= tail - start) {
+      PVector kept = new PVector();
+      for (long k=start; k<tail; k++)
+	kept.addElement(entries.elementAt((int) (k - head)));
+      entries = kept;
+      head = start;
+    }
+  }
+
+  /**
+   * Empties the log, so that the next event is appended at an offset.
+   * It is used to restore a log.
+   *
+   * @param offset	offset of the next event
+   */
+  synchronized void reset(long offset) {
+    entries = new PVector();
+    head = start = offset;
+  }
+
+  /**
+   * Returns the number of events that are kept.
+   *
+   * @return the number of events
+   */
+  public synchronized int getCount() {
+    return (int) (getTail() - start);
+  }
+
+}
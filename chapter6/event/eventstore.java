@@ -0,0 +1,344 @@
+//*************************************************************************
+/**
+ * EventStore.java - A durable log of the events of a producer
+ *
+ *   Copyright (C) 1998-2000    Yun-Tung Lau
+ *   All Rights Reserved.  See the license file in the home
+ *   directory of this package for important license information.
+ */
+//*************************************************************************
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.zip.CRC32;
+
+/**
+ * An event log that is also written to files, so that the events that
+ * have not been sent survive a restart of the producer.
+ * <P>
+ * The events are appended, serialized, to segment files of a fixed
+ * size in a directory, which are mapped into memory.  A segment is
+ * named after the offset of its first event, e.g.
+ * 00000000000000004096.seg.  Each record is the length of the data,
+ * its CRC-32 and the data; a zero length ends the segment.  The
+ * segments are forced to disk after every syncEvery events, so the
+ * cost of a sync is shared by a batch of events, and by sync and
+ * close.  The segments of which all the events have been trimmed are
+ * deleted.
+ * <P>
+ * The offsets of the subscribers are checkpointed in the file
+ * "offsets" of the directory, by name, after the events are forced.
+ * When a store is opened, the segments are read back up to the first
+ * record that is incomplete (e.g. torn by a crash), and the events
+ * from the lowest checkpointed offset on are kept in memory.  A
+ * subscriber thus resumes at the offset of its last checkpoint, and
+ * may get again the events it took after it.
+ * <P>
+ * Typical usage:
+ * <PRE>
+ *    EventStore store = new EventStore(new File("events"));
+ *    ProducerImpl prod = new ProducerImpl("Sports", store);
+ *    ...
+ *    prod.shutdown();  // checkpoints and closes the store
+ * </PRE>
+ */
+public class EventStore extends EventLog {
+
+  /** Size of a segment file, by default. */
+  public final static int SEGMENT_SIZE = 16 * 1024 * 1024;
+
+  /** Number of events between syncs, by default. */
+  public final static int SYNC_EVERY = 100;
+
+  /** Name of the file of the offsets. */
+  public final static String OFFSETS = "offsets";
+
+  private final static String SUFFIX = ".seg";
+
+  // the files are not serialized with the log
+  private transient File dir;
+  private transient int segmentSize;
+  private transient int syncEvery;
+  private transient long[] bases = new long[0];  // first offsets of segments
+  private transient FileChannel channel;  // of the last segment
+  private transient MappedByteBuffer segment;
+  private transient int unsynced;  // events appended since the last sync
+  private transient Hashtable<String, Long> offsets =
+  	new Hashtable<String, Long>();  // of the last checkpoint
+
+
+  /**
+   * Opens a store with SEGMENT_SIZE segments, synced every SYNC_EVERY
+   * events.
+   *
+   * @param dir	the directory of the files; it is made if needed
+   * @exception IOException if the files cannot be read or written
+   */
+  public EventStore(File dir) throws IOException {
+    this(dir, SEGMENT_SIZE, SYNC_EVERY);
+  }
+
+  /**
+   * Opens a store, and reads back the events and offsets in it.
+   *
+   * @param dir	the directory of the files; it is made if needed
+   * @param segmentSize	size of a segment file in bytes
+   * @param syncEvery	number of events between syncs; 0 to sync only
+   *		on sync, checkpoint and close
+   * @exception IOException if the files cannot be read or written
+   */
+  public EventStore(File dir, int segmentSize, int syncEvery)
+      throws IOException {
+    this.dir = dir;
+    this.segmentSize = segmentSize;
+    this.syncEvery = syncEvery;
+    dir.mkdirs();
+    readOffsets();
+    recover();
+  }
+
+  /**
+   * Returns the offsets of the subscribers at the last checkpoint.
+   *
+   * @return a table from the names of the subscribers to their
+   *		offsets as Long
+   */
+  public synchronized Hashtable<String, Long> getOffsets() {
+    return new Hashtable<String, Long>(offsets);
+  }
+
+  /**
+   * Appends the data of an event, and writes it to the last segment.
+   *
+   * @param data	the data for the event
+   * @return the offset of the event
+   * @exception UncheckedIOException if it cannot be written
+   */
+  public synchronized long append(EventData data) {
+    try {
+      byte[] b = serialize(data);
+      if (b.length + 8 > segmentSize)
+	throw new IOException("Event too large for a segment: " + b.length
+		+ " bytes");
+      long offset = super.append(data);
+      if (segment == null || segment.remaining() < b.length + 8)
+	newSegment(offset);
+
+      CRC32 crc = new CRC32();
+      crc.update(b);
+      segment.putInt(b.length);
+      segment.putInt((int) crc.getValue());
+      segment.put(b);
+
+      if (syncEvery > 0 && ++unsynced >= syncEvery) sync();
+      return offset;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Trims the events before an offset, and deletes the segments that
+   * only have such events.
+   *
+   * @param offset	offset of the first event to keep
+   */
+  public synchronized void trim(long offset) {
+    super.trim(offset);
+    long start = getStart();
+    int n = 0;
+    while (n + 1 < bases.length && bases[n+1] <= start) {
+      segmentFile(bases[n]).delete();
+      n++;
+    }
+    if (n > 0) bases = Arrays.copyOfRange(bases, n, bases.length);
+  }
+
+  /**
+   * Forces the events appended so far to disk.
+   */
+  public synchronized void sync() {
+    if (segment != null) segment.force();
+    unsynced = 0;
+  }
+
+  /**
+   * Forces the events to disk, and then writes the offsets of the
+   * subscribers, replacing the file of the offsets at once.
+   *
+   * @param offsets	a table from the names of the subscribers to their
+   *		offsets as Long
+   * @exception IOException if the offsets cannot be written
+   */
+  public synchronized void checkpoint(Hashtable<String, Long> offsets)
+      throws IOException {
+    sync();
+    File tmp = new File(dir, OFFSETS + ".tmp");
+    FileOutputStream f = new FileOutputStream(tmp);
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(f));
+    out.writeInt(offsets.size());
+    Enumeration<String> e = offsets.keys();
+    while (e.hasMoreElements()) {
+      String name = e.nextElement();
+      out.writeUTF(name);
+      out.writeLong(offsets.get(name).longValue());
+    }
+    out.flush();
+    f.getFD().sync();
+    out.close();
+    Files.move(tmp.toPath(), new File(dir, OFFSETS).toPath(),
+    	StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    this.offsets = new Hashtable<String, Long>(offsets);
+  }
+
+  /**
+   * Forces the events to disk and closes the last segment.
+   *
+   * @exception IOException if the segment cannot be closed
+   */
+  public synchronized void close() throws IOException {
+    sync();
+    segment = null;
+    if (channel != null) channel.close();
+    channel = null;
+  }
+
+  /**
+   * Returns the file of a segment.
+   *
+   * @param base	offset of the first event of the segment
+   * @return the file
+   */
+  private File segmentFile(long base) {
+    String s = "0000000000000000000" + base;
+    return new File(dir, s.substring(s.length() - 20) + SUFFIX);
+  }
+
+  /**
+   * Maps a segment file.  It is made, zero filled, if it is new.
+   *
+   * @param base	offset of the first event of the segment
+   * @exception IOException if the file cannot be mapped
+   */
+  private void mapSegment(long base) throws IOException {
+    if (channel != null) channel.close();
+    RandomAccessFile f = new RandomAccessFile(segmentFile(base), "rw");
+    channel = f.getChannel();
+    segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+  }
+
+  /**
+   * Starts a new segment, after syncing the last one.
+   *
+   * @param base	offset of the first event of the segment
+   * @exception IOException if the segment cannot be made
+   */
+  private void newSegment(long base) throws IOException {
+    sync();
+    mapSegment(base);
+    bases = Arrays.copyOf(bases, bases.length + 1);
+    bases[bases.length - 1] = base;
+  }
+
+  /**
+   * Reads back the offsets of the last checkpoint.
+   */
+  private void readOffsets() throws IOException {
+    File f = new File(dir, OFFSETS);
+    if (!f.exists()) return;
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+    	new FileInputStream(f)));
+    try {
+      int n = in.readInt();
+      for (int i=0; i<n; i++) {
+	String name = in.readUTF();
+	offsets.put(name, Long.valueOf(in.readLong()));
+      }
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Reads back the segments.  The events from the lowest checkpointed
+   * offset on are appended to the log in memory, and the last segment
+   * is left mapped for the events to come.
+   */
+  private void recover() throws IOException {
+    String[] names = dir.list();
+    Arrays.sort(names);  // by first offset, as they are zero padded
+    int n = 0;
+    bases = new long[names.length];
+    for (int i=0; i<names.length; i++) {
+      if (names[i].endsWith(SUFFIX)) bases[n++] = Long.parseLong(
+      	names[i].substring(0, names[i].length() - SUFFIX.length()));
+    }
+    bases = Arrays.copyOf(bases, n);
+    if (n == 0) return;
+
+    long keep = Long.MAX_VALUE;  // lowest offset still needed
+    Enumeration<Long> e = offsets.elements();
+    while (e.hasMoreElements())
+      keep = Math.min(keep, e.nextElement().longValue());
+
+    long offset = bases[0];
+    reset(offset);
+    for (int i=0; i<n; i++) {
+      offset = bases[i];
+      mapSegment(offset);
+      while (segment.remaining() >= 8) {
+	int at = segment.position();
+	int length = segment.getInt();
+	int sum = segment.getInt();
+	if (length <= 0 || length > segment.remaining()) {  // the end
+	  segment.position(at);
+	  break;
+	}
+	byte[] b = new byte[length];
+	segment.get(b);
+	CRC32 crc = new CRC32();
+	crc.update(b);
+	if ((int) crc.getValue() != sum) {  // torn by a crash
+	  segment.position(at);
+	  break;
+	}
+	if (offset >= keep) {
+	  if (getTail() != offset) reset(offset);  // the first one kept
+	  super.append(deserialize(b));
+	}
+	offset++;
+      }
+    }
+    if (getTail() != offset) reset(offset);  // none kept
+  }
+
+  /**
+   * Returns the data of an event as bytes.
+   */
+  private static byte[] serialize(EventData data) throws IOException {
+    ByteArrayOutputStream b = new ByteArrayOutputStream(128);
+    ObjectOutputStream out = new ObjectOutputStream(b);
+    out.writeObject(data);
+    out.close();
+    return b.toByteArray();
+  }
+
+  /**
+   * Returns the data of an event from its bytes.
+   */
+  private static EventData deserialize(byte[] b) throws IOException {
+    ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(b));
+    try {
+      return (EventData) in.readObject();
+    } catch (ClassNotFoundException e) {
+      throw new IOException(e.toString());
+    }
+  }
+
+}
@@ -0,0 +1,130 @@
+//*************************************************************************
+/**
+ * MemoryBench.java - A measure of the memory of a producer's backlog.
+ *
+ *   Copyright (C) 1998-2000    Yun-Tung Lau
+ *   All Rights Reserved.  See the license file in the home
+ *   directory of this package for important license information.
+ */
+//*************************************************************************
+
+/**
+ * This class subscribes many subscribers that are offline, i.e. each
+ * fails to take its events, to a producer, and processes some events.
+ * As none is sent, the producer keeps them all.  The heap used by the
+ * subscriptions and by the events is shown, and the bytes kept for
+ * each event and subscriber.
+ * <P>
+ * It then subscribes a late subscriber, which should have no pending
+ * events and receive only the events processed after it.
+ * <P>
+ * Usage: java MemoryBench [nSubscribers] [nEvents]
+ * <P>
+ * The defaults are 10000 subscribers and 100 events.
+ */
+public class MemoryBench {
+
+  /** Thrown by the subscribers that are offline. */
+  private final static RuntimeException OFFLINE =
+  	new RuntimeException("Offline");
+
+  /**
+   * A subscriber that is offline.
+   */
+  static class Offline implements SubscriberIF {
+    private String name;
+
+    Offline(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public void processEvent(EventData data) {
+      throw OFFLINE;
+    }
+  }
+
+  /**
+   * A subscriber that counts the events it receives.
+   */
+  static class Late implements SubscriberIF {
+    int count;
+
+    public String getName() {
+      return "Late";
+    }
+
+    public synchronized void processEvent(EventData data) {
+      count++;
+      notifyAll();
+    }
+  }
+
+  /**
+   * Returns the heap in use after a garbage collection.
+   *
+   * @return the heap in use in bytes
+   */
+  static long usedHeap() {
+    Runtime rt = Runtime.getRuntime();
+    for (int i=0; i<3; i++) System.gc();
+    return rt.totalMemory() - rt.freeMemory();
+  }
+
+  /**
+   * Shows the input string.
+   *
+   * @s the string to be shown
+   */
+  public static void show(String s) {
+    System.out.println(s);
+  }
+
+  /**
+   * Main method for the benchmark.
+   *
+   * @exception Exception if any exception is thrown
+   */
+  public static void main(String[] args) throws Exception {
+    int nSubscribers = 10000;
+    int nEvents = 100;
+    if (args.length >= 1) nSubscribers = Integer.parseInt(args[0]);
+    if (args.length >= 2) nEvents = Integer.parseInt(args[1]);
+
+    ProducerImpl prod = new ProducerImpl("Memory");
+    long h0 = usedHeap();
+    for (int i=0; i<nSubscribers; i++)
+      prod.subscribe(new Offline("Subscriber " + i));
+    long h1 = usedHeap();
+    for (int i=0; i<nEvents; i++)
+      prod.processEvent(new EventData("Event " + i, "MemoryBench"));
+    Thread.sleep(2000);  // let the dispatcher try them
+    long h2 = usedHeap();
+
+    show("Subscribers: " + nSubscribers + ", events: " + nEvents);
+    show("  subscriptions: " + (h1 - h0) / 1024 + " KB, "
+    	+ (h1 - h0) / nSubscribers + " bytes each");
+    show("  events:        " + (h2 - h1) / 1024 + " KB, "
+    	+ (h2 - h1) / nEvents + " bytes each, "
+	+ (h2 - h1) / nEvents / nSubscribers + " bytes per subscriber");
+
+    Late late = new Late();
+    prod.subscribe(late);
+    int pending = prod.getEventHolder(late).getPendingCount();
+    prod.processEvent(new EventData("Last event", "MemoryBench"));
+    synchronized (late) {
+      long end = System.currentTimeMillis() + 10000;
+      while (late.count < 1 && System.currentTimeMillis() < end)
+	late.wait(1000);
+    }
+    Thread.sleep(200);  // more would come by now
+    show("  late subscriber: " + pending + " pending, " + late.count
+    	+ " received" + (pending == 0 && late.count == 1 ? " (ok)"
+	: " (wrong)"));
+    prod.shutdown();
+  }
+
+}
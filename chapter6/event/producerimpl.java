@@ -8,16 +8,35 @@
  */
 //*************************************************************************
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.UncheckedIOException;
+import java.util.Enumeration;
+import java.util.Hashtable;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.util.Vector;
 
 /**
  * An event producer that generates events.  It implement the ProducerIF
  * interface.  
  * <P>
- * Once created, it periodically notifies all subscribers
- * that have new events pending.
- * Note that we did not inherit from Thread but choose to use an
- * unnamed inner class (Thread) in the constructor to do the job.
+ * When an event is processed, it is appended once to the EventLog of
+ * the producer, and the event holders of the subscribers are scheduled
+ * on a Dispatcher, whose threads send the new events to the
+ * subscribers at once.  (Earlier a thread polled all the holders every
+ * 2 seconds.)  A holder only keeps its offset in the log.  A new
+ * subscriber starts at the tail of the log, and the events that all
+ * the subscribers have been sent are trimmed from it.
+ * <P>
+ * A producer constructed with an EventStore is durable: the events are
+ * also written to its files, and the offsets of the subscribers are
+ * checkpointed there by a timer every CHECKPOINT_INTERVAL, when a
+ * subscriber subscribes, and on shutdown.  When
+ * a producer is constructed again with the store, e.g. after a
+ * restart, a subscriber that subscribes under the same name resumes
+ * at the offset of its last checkpoint instead of the tail.  Until
+ * then its events are kept.
  *
  * <P>
  * This class is also Serializable.
@@ -33,46 +52,165 @@ public class ProducerImpl
   /**
    * @serial list of eventHolders
    */
-  private Vector eventHolders = new Vector();
+  private Vector<EventHolder> eventHolders = new Vector<EventHolder>();
+
+  /**
+   * @serial log of the events
+   */
+  private EventLog log = new EventLog();
+
+  /** Number of threads of the dispatcher, by default. */
+  public final static int DISPATCH_THREADS = 8;
 
   /**
-   * @serial interval between notifications in milli secs
+   * @serial number of threads of the dispatcher
    */
-  private final int interval = 2000;  
+  private int nThreads;
+
+  // sends the events, see getDispatcher
+  private transient Dispatcher dispatcher;
+
+  /** Time between checkpoints of a durable producer, in milli secs. */
+  public final static long CHECKPOINT_INTERVAL = 1000;
+
+  /** Longest wait for the events to be sent on shutdown of a durable
+      producer, in milli secs. */
+  public final static long SHUTDOWN_WAIT = 10000;
+
+  // the durable log, or null
+  private transient EventStore store;
+
+  // offsets of the subscribers of the store that have not subscribed
+  // again, by name; made again by readObject
+  private transient Hashtable<String, Long> resume =
+  	new Hashtable<String, Long>();
+
+  // checkpoints a durable producer, or null
+  private transient Timer checkpointer;
 
 
   /** 
-   * Constructs a ProducerImpl object.  It also kicks off the periodic
-   * notification service.
+   * Constructs a ProducerImpl object, with DISPATCH_THREADS threads
+   * to send the events.
    *
    * @param name	name of this ProducerImpl
    */
   public ProducerImpl(String name) {
+    this(name, DISPATCH_THREADS);
+  }
+
+  /** 
+   * Constructs a ProducerImpl object.
+   *
+   * @param name	name of this ProducerImpl
+   * @param nThreads	number of threads that send the events
+   */
+  public ProducerImpl(String name, int nThreads) {
     this.name = name;
+    this.nThreads = nThreads;
+  }
 
-    // an unnamed inner class instance to invoke
-    // notifySubscribers periodically.
-    Thread t = new Thread() {
-
-      /** 
-       * Invokes notifySubscribers periodically.
-       */
-       public void run() {
-
-	while (true) {
-	  // wait a little
-	  try {
-	    Thread.sleep(interval);
-	    show("... notifying subscribers");
-	    notifySubscribers();
-	  } catch (Exception e) {
-	    // do nothing, just continue
-	  }
+  /** 
+   * Constructs a ProducerImpl object that shares a dispatcher with
+   * other producers, so that many producers do not need many threads.
+   *
+   * @param name	name of this ProducerImpl
+   * @param dispatcher	the dispatcher that sends the events
+   */
+  public ProducerImpl(String name, Dispatcher dispatcher) {
+    this(name, DISPATCH_THREADS);
+    this.dispatcher = dispatcher;
+  }
+
+  /** 
+   * Constructs a durable ProducerImpl object.  Its subscribers resume
+   * at the offsets checkpointed in the store.
+   *
+   * @param name	name of this ProducerImpl
+   * @param store	the store of the events
+   */
+  public ProducerImpl(String name, EventStore store) {
+    this(name, DISPATCH_THREADS);
+    this.store = store;
+    log = store;
+    resume = store.getOffsets();
+    checkpointer = new Timer("Checkpoint " + name, true);
+    checkpointer.schedule(new TimerTask() {
+      public void run() {
+	try {
+	  checkpoint();
+	} catch (IOException e) {
+	  show("Checkpoint of " + getName() + " failed: " + e);
 	}
       }
-    };
+    }, CHECKPOINT_INTERVAL, CHECKPOINT_INTERVAL);
+  }
 
-    t.start();
+  /**
+   * Reads this producer, and makes the transient table of the
+   * subscribers to resume, which is empty as the producer is no
+   * longer durable.
+   *
+   * @param in	the stream to read from
+   * @exception IOException if an I/O error occurs
+   * @exception ClassNotFoundException if a class is not found
+   */
+  private void readObject(ObjectInputStream in)
+      throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    resume = new Hashtable<String, Long>();
+  }
+
+  /**
+   * Returns the dispatcher that sends the events.  It is started on
+   * first use, also after this producer is deserialized.
+   *
+   * @return the dispatcher
+   */
+  public synchronized Dispatcher getDispatcher() {
+    if (dispatcher == null) dispatcher = new Dispatcher(nThreads);
+    return dispatcher;
+  }
+
+  /**
+   * Stops the threads of the dispatcher, after the events processed
+   * so far are sent.  A durable producer waits for them, up to
+   * SHUTDOWN_WAIT, and then checkpoints and closes its store.
+   *
+   * @exception UncheckedIOException if the store cannot be closed
+   */
+  public synchronized void shutdown() {
+    if (checkpointer != null) checkpointer.cancel();
+    checkpointer = null;
+    if (dispatcher != null) {
+      dispatcher.shutdown();
+      if (store != null) dispatcher.awaitTermination(SHUTDOWN_WAIT);
+    }
+    dispatcher = null;
+    if (store == null) return;
+    try {
+      checkpoint();
+      store.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Checkpoints the offsets of the subscribers of a durable producer,
+   * including those that have not subscribed again.
+   *
+   * @exception IOException if the offsets cannot be written
+   */
+  public synchronized void checkpoint() throws IOException {
+    if (store == null) return;
+    Hashtable<String, Long> offsets = new Hashtable<String, Long>(resume);
+    Enumeration<EventHolder> e = eventHolders.elements();
+    while (e.hasMoreElements()) {
+      EventHolder eh = e.nextElement();
+      offsets.put(eh.getSubscriber().getName(), Long.valueOf(eh.getOffset()));
+    }
+    store.checkpoint(offsets);
   }
 
   /** 
@@ -87,14 +225,31 @@ public class ProducerImpl
   /** 
    * Subscribe to this producer.
    *
+   * A durable producer checkpoints, so that the subscriber resumes
+   * here after a restart.
+   *
    * @param subscriber	subscriber to this producer
    * @exception EventError	if the subscriber is already there
+   * @exception UncheckedIOException if the checkpoint fails
    */
   public void subscribe(SubscriberIF subscriber) throws EventError {
     EventHolder eh = getEventHolder(subscriber);
     if (eh != null) throw new EventError("Subscriber already exists: " + subscriber.getName());
-    eh = new EventHolder(subscriber);
-    eventHolders.addElement(eh);
+    Long offset = resume.remove(subscriber.getName());
+    if (offset == null) {
+      eh = new EventHolder(subscriber, log);
+      eventHolders.addElement(eh);
+    } else {  // resumes where it was
+      eh = new EventHolder(subscriber, log, offset.longValue());
+      eventHolders.addElement(eh);
+      getDispatcher().schedule(eh);
+    }
+    if (store == null) return;
+    try {
+      checkpoint();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
   }
 
   /** 
@@ -107,6 +262,7 @@ public class ProducerImpl
     EventHolder eh = getEventHolder(subscriber);
     if (eh == null) throw new EventError("Subscriber not found: " + subscriber.getName());
     eventHolders.removeElement(eh);
+    trimLog();
   }
 
   /** 
@@ -116,9 +272,9 @@ public class ProducerImpl
    * @return the subscriber of this producer.  Null if none found.
    */
   public EventHolder getEventHolder(SubscriberIF subscriber) {
-    java.util.Enumeration e = eventHolders.elements();
+    Enumeration<EventHolder> e = eventHolders.elements();
     while (e.hasMoreElements()) {
-      EventHolder eh = (EventHolder) e.nextElement();
+      EventHolder eh = e.nextElement();
       SubscriberIF sub = eh.getSubscriber();
       if ( sub == subscriber || 
         sub.getName().equals(subscriber.getName()) ) return eh;
@@ -127,43 +283,56 @@ public class ProducerImpl
   }
 
   /** 
-   * Processes the event data by adding them to the event holders.
+   * Returns the log of the events.
+   *
+   * @return the log
+   */
+  public EventLog getLog() { 
+    return log; 
+  }
+
+  /** 
+   * Processes the event data by appending them to the log, and
+   * schedules the event holders to send it to their subscribers.
    *
    * @param data  	the data for the event
    */
   public void processEvent(EventData data) {
-    java.util.Enumeration e = eventHolders.elements();
-    while (e.hasMoreElements()) {
-      EventHolder eh = (EventHolder) e.nextElement();	
-      // we must create a new object for each holder since they
-      // may have different status.
-      Event ev = new Event(data);
-      eh.addEvent(ev);
-    }
+    long offset = log.append(data);
+    Dispatcher d = getDispatcher();
+    Enumeration<EventHolder> e = eventHolders.elements();
+    while (e.hasMoreElements())
+      d.schedule(e.nextElement());
+
+    // now and then, trim the events that all have been sent
+    if ((offset + 1) % EventLog.COMPACT_MIN == 0) trimLog();
   }
 
   /** 
-   * Sends the event data in event holders to all subscribers.
-   * This is periodically called by a separate thread.
+   * Trims the log up to the lowest offset of the event holders, and
+   * of the subscribers that are to resume.
    */
-  public void notifySubscribers( ) {
-    java.util.Enumeration e = eventHolders.elements();
-
-    while (e.hasMoreElements()) {
-      EventHolder eh = (EventHolder) e.nextElement();	
-      SubscriberIF sub = eh.getSubscriber();
+  private void trimLog() {
+    long min = log.getTail();
+    Enumeration<EventHolder> e = eventHolders.elements();
+    while (e.hasMoreElements())
+      min = Math.min(min, e.nextElement().getOffset());
+    Enumeration<Long> r = resume.elements();
+    while (r.hasMoreElements())
+      min = Math.min(min, r.nextElement().longValue());
+    log.trim(min);
+  }
 
-      try {
-        // send all new events
-        Event[] es = eh.getEvents(Event.NEW);
-        for (int i=0; i<es.length; i++) {
-	  sub.processEvent(es[i].getData());  // this may go across network
-	  es[i].setStatus(Event.SENT);  // set the flag if sent
-        }
-      } catch (Exception e1) {
-	// do nothing, just continue with next holder
-      }
-    }
+  /** 
+   * Sends the event data in event holders to all subscribers, e.g.
+   * the events a subscriber failed to take.  It returns at once; the
+   * events are sent by the threads of the dispatcher.
+   */
+  public void notifySubscribers( ) {
+    Dispatcher d = getDispatcher();
+    Enumeration<EventHolder> e = eventHolders.elements();
+    while (e.hasMoreElements())
+      d.schedule(e.nextElement());
   }
 
 
@@ -175,9 +344,9 @@ public class ProducerImpl
   public String toString() { 
     String s = "Producer: " + name + "\n";
     s += "  Subscribers: ";
-    java.util.Enumeration e = eventHolders.elements();
+    Enumeration<EventHolder> e = eventHolders.elements();
     while (e.hasMoreElements()) {
-      EventHolder c = (EventHolder) e.nextElement();
+      EventHolder c = e.nextElement();
       s += " " + c.getSubscriber().getName();
     }
     return s;
@@ -240,7 +409,7 @@ public class ProducerImpl
     prod.processEvent(ed);
 
     try {
-      Thread.sleep(8 * 1000);  // wait a little before exiting
+      Thread.sleep(1 * 1000);  // wait a little before exiting
     } catch (Exception e) {}
 
 
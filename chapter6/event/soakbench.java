@@ -0,0 +1,123 @@
+//*************************************************************************
+/**
+ * SoakBench.java - A long running test of the memory of event holders.
+ *
+ *   Copyright (C) 1998-2000    Yun-Tung Lau
+ *   All Rights Reserved.  See the license file in the home
+ *   directory of this package for important license information.
+ */
+//*************************************************************************
+
+/**
+ * This class sends events to the subscribers of a producer at a steady
+ * rate for a long time, and shows at each interval the events sent so
+ * far, the events still kept by the holders, and the heap in use after
+ * a garbage collection.  As the holders drop the events that were
+ * sent, the last two should stay flat however long it runs.
+ * <P>
+ * Usage: java SoakBench [minutes] [eventsPerSecond] [nSubscribers]
+ *	[intervalSeconds]
+ * <P>
+ * The defaults are 1 minute of 2000 events per second to 100
+ * subscribers, shown every 10 seconds.  Give e.g. 180 minutes for a
+ * soak of hours.
+ */
+public class SoakBench {
+
+  /**
+   * A subscriber that counts the events it receives.
+   */
+  static class Counter implements SubscriberIF {
+    private String name;
+    private long count;
+
+    Counter(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public synchronized void processEvent(EventData data) {
+      count++;
+    }
+
+    synchronized long getCount() {
+      return count;
+    }
+  }
+
+  /**
+   * Returns the heap in use after a garbage collection.
+   *
+   * @return the heap in use in kilo bytes
+   */
+  static long usedHeap() {
+    Runtime rt = Runtime.getRuntime();
+    for (int i=0; i<3; i++) System.gc();
+    return (rt.totalMemory() - rt.freeMemory()) / 1024;
+  }
+
+  /**
+   * Shows the input string.
+   *
+   * @s the string to be shown
+   */
+  public static void show(String s) {
+    System.out.println(s);
+  }
+
+  /**
+   * Main method for the test.
+   *
+   * @exception Exception if any exception is thrown
+   */
+  public static void main(String[] args) throws Exception {
+    int minutes = 1;
+    int rate = 2000;
+    int nSubscribers = 100;
+    int interval = 10;
+    if (args.length >= 1) minutes = Integer.parseInt(args[0]);
+    if (args.length >= 2) rate = Integer.parseInt(args[1]);
+    if (args.length >= 3) nSubscribers = Integer.parseInt(args[2]);
+    if (args.length >= 4) interval = Integer.parseInt(args[3]);
+
+    ProducerImpl prod = new ProducerImpl("Soak");
+    Counter[] subs = new Counter[nSubscribers];
+    for (int i=0; i<nSubscribers; i++) {
+      subs[i] = new Counter("Subscriber " + i);
+      prod.subscribe(subs[i]);
+    }
+
+    show("Events: " + rate + "/s to " + nSubscribers + " subscribers for "
+    	+ minutes + " min");
+    show("  time (s)  events  received  kept  heap (KB)");
+    long t0 = System.currentTimeMillis();
+    long end = t0 + minutes * 60000L;
+    long next = t0 + interval * 1000L;
+    long sent = 0;
+    while (true) {
+      long now = System.currentTimeMillis();
+      long due = (now - t0) * rate / 1000;
+      for (; sent<due; sent++)
+	prod.processEvent(new EventData("Event " + sent, "SoakBench"));
+
+      if (now >= next || now >= end) {
+	long received = 0;
+	long kept = 0;
+	for (int i=0; i<nSubscribers; i++) {
+	  received += subs[i].getCount();
+	  kept += prod.getEventHolder(subs[i]).getEventCount();
+	}
+	show("  " + (now - t0) / 1000 + "\t    " + sent + "\t    " + received
+		+ "\t" + kept + "\t" + usedHeap());
+	next += interval * 1000L;
+	if (now >= end) break;
+      }
+      Thread.sleep(1);
+    }
+    prod.shutdown();
+  }
+
+}
@@ -11,9 +11,9 @@
 /**
  * This implements the SubscriberIF interface by displaying the messages
  * sent from an EventHolder.   It demonstrates a subscription and 
- * notification service (asynchronous).
+ * notification service (asynchronous).  It takes events in batches.
  */
-public class SubscriberImpl implements SubscriberIF {
+public class SubscriberImpl implements BatchSubscriberIF {
 
   private String name;  // name of this Subscriber
 
@@ -44,6 +44,15 @@ public class SubscriberImpl implements SubscriberIF {
     show("Display to " + name + " - " + data.toString());
   }
 
+  /** 
+   * Processes the events sent to this subscriber, in order.
+   *
+   * @param data  the data for the events
+   */
+  public void processEvents(EventData[] data) {
+    for (int i=0; i<data.length; i++) processEvent(data[i]);
+  }
+
 
   /** 
    * Shows the input string.
@@ -30,6 +30,13 @@ public class Agent {
   /* Agent's related sessions */
   private OSVector mSessions = new OSVector();
 
+  /**
+   * Constructor for an object read from the database, which sets
+   * its fields.
+   */
+  protected Agent() {
+  }
+
   /**
    * Constructor hidden.
    *
@@ -20,6 +20,13 @@ public class ATM extends Agent {
   /* ATM Location. */
   private String mLocation;
 
+  /**
+   * Constructor for an object read from the database, which sets
+   * its fields.
+   */
+  protected ATM() {
+  }
+
   /**
    * Constructor.
    *
@@ -28,6 +28,12 @@ public class ATMManager {
   private OSVector mDailyLogs = new OSVector();
   private OSVector mAgents = new OSVector();
 
+  /** Size of the input buffer of runBatch. */
+  private final static int BUFFER_SIZE = 65536;
+
+  /** Number of commands of a transaction of runBatch, by default. */
+  private final static int DEFAULT_CHUNK = 1000;
+
   /**
    * Constructor.
    */
@@ -435,159 +441,321 @@ public class ATMManager {
 	return;
       }
 
-     // Commands below may involve transaction.  We put them in
-     // a synchronized block to make threads cooperating with 
-     // each other.
-     synchronized (DBManager.TOKEN) {
+      // Runs a command file in batch mode; see runBatch.
+      else if ("batch".startsWith(command)) {
+	try {
+	  String file = readString(tokenizer);
+	  int chunkSize = DEFAULT_CHUNK;
+	  if (tokenizer.hasMoreTokens()) chunkSize = readInt(tokenizer);
+	  InputStream batch = new FileInputStream(file);
+	  try {
+	    runBatch(o, batch, chunkSize);
+	  } finally {
+	    batch.close();
+	  }
+	} catch (Exception e) {
+	  System.out.println(e.getMessage());
+	}
+	continue;
+      }
+
+     // Commands below may involve transaction.  A command may use
+     // any object, so we lock the whole database to make threads
+     // cooperating with each other.
+      DBManager.lockWriteAll();
       try {
         if (DBManager.getDB() != null) DBManager.beginUpdateTrx();
 
-        if ("addbankinfo".startsWith(command)) {
-          String name = readString(tokenizer);
-          int prefix = readInt(tokenizer);
-          String serverName = readString(tokenizer);
-	  o.addBankInfo(name, prefix, serverName);
-        }
-
-        else if ("showbankinfo".startsWith(command)) {
-	  int number = 0;
-	  String name = "";
-	  try { number = readInt(tokenizer); }
-	  catch(TerminalException e) { 
-	    name = "all";
-	  }
-	  
-	  if (number > 0) {
-	    BankInfo b = o.getBankInfo(number);
-	    show(" " + b.getName() + " @ " + b.getServerName() + " (" + 
-		 b.getPrefix() + ")" );
-
-	  } else if ("all".startsWith(name)) {
-	    BankInfo[] bs = o.getBankInfos();
-	    for (int i=0; i<bs.length; i++) {
-	      BankInfo b = bs[i];
-	      show(" " + b.getName() + " @ " + b.getServerName() + " (" + 
-		b.getPrefix() + ")" );
-	    }
-          } else {
-	    BankInfo b = o.getBankInfo(name);
-	    show(" " + b.getName() + " @ " + b.getServerName() + " (" + 
-		 b.getPrefix() + ")" );
-          }
-        }
-
-        else if ("addatm".startsWith(command)) {
-          String id = readString(tokenizer);
-          String name = readString(tokenizer);
-          String location = readString(tokenizer);
-	  Agent a = new ATM(id, name, location);
-	  o.addAgent(a);
-        }
-
-        else if ("showagent".startsWith(command)) {
-	  String id;
-	  try {
-            id = readString(tokenizer);
-	  } catch(TerminalException e) { 
-	    id = "all";
-	  }
-	  if ("all".startsWith(id)) {
-	    Agent[] bs = o.getAgents();
-	    for (int i=0; i<bs.length; i++) {
-	      ATM b = (ATM) bs[i];
-	      show(" " + b.getId() + ": " + b.getName() + " @ " + 
-		b.getLocation() + "" );
-	    }
-          } else {
-	    ATM b = (ATM) o.getAgent(id);
-	    if (b==null) show("Agent " + id + " not found.");
-	    else show(" " + b.getId() + ": " + b.getName() + " @ " + 
-	    		b.getLocation() + "" );
-	  }
-        }
-
-        else if ("addcard".startsWith(command)) {
-          int number = readInt(tokenizer);
-          String name = readString(tokenizer);
-          int accNumber = readInt(tokenizer);
-	  BankInfo b = o.getBankInfo(number);
-	  if (b==null) show("No bank matching the card.");
-	  b.addCard(number, name, accNumber);
-        }
-
-        else if ("showcard".startsWith(command)) {
-	  int number = 0;
-	  String name = "";
-	  try { number = readInt(tokenizer); }
-	  catch(TerminalException e) { 
-	    name = "all";
-	  }
-	  
-	  if (number > 0) {
-	    BankInfo b = o.getBankInfo(number);
-	    Card c = b.getCard(number);
-	    show(" " + c.getName() + " card: " + c.getNumber() 
-	      + " acc:" + c.getAccountNumber() + "" );
+        execute(o, command, tokenizer);
 
-	  } else if ("all".startsWith(name)) {
-	    BankInfo[] bs = o.getBankInfos();
-	    for (int j=0; j<bs.length; j++) {
-	      BankInfo b = bs[j];
-	      show("--- " + b.getName());
-	      Card[] cs = b.getCards();
-	      for (int i=0; i<cs.length; i++) {
-		Card c = cs[i];
-		show(" " + c.getName() + " card: " + c.getNumber() 
-		  + " acc:" + c.getAccountNumber() + "" );
-	      }
-	    }
-          } 
-        }
-
-        else if ("showdailylog".startsWith(command)) {
-          int relDate = 0;  // default to today
-	  try { relDate = readInt(tokenizer); }
-	  catch(TerminalException e) {  }
-
-	  DateTime date = new DateTime();
-	  date.shiftDate(relDate);
-	  DailyLog dl = o.getDailyLog(date);
-	  if (dl == null) {
-	    throw new Exception("No log for this day.");
-	  }
+        if (DBManager.getDB() != null) DBManager.commitTrx();
+	
+      } catch (Exception e) {
 
-	  Session[] ss = dl.getSessions();
-	  for (int i=0; i<ss.length; i++) {
-	    Session s = (Session) ss[i];
-	    show("Session for card " + s.getCard().getNumber() 
-	      + " and agent " + s.getAgent().getName() + "" );
-	    show("  start " + s.getStartTime() );
+        if (DBManager.getDB() != null) DBManager.handleTrxError(e);
+	System.out.println(e.getMessage());
+      } finally {
+        DBManager.unlock();
+      }
 
-	    Transaction[] tt = s.getTransactions();
-	    for (int j=0; j<tt.length; j++) {
-  	      Transaction t = (Transaction) tt[j];
-	      show("  " + t.getTime() + " " + t.getContent() );
-	    }
+    }
 
-	    show("  end " + s.getEndTime() );
-	  }
-        }
+  }
 
-        else {
-          show(" Command not recognized.  Try \"help\"");
-        }
+  /** Numbers of the commands of execute, as in smCommands. */
+  private final static int ADDBANKINFO = 0, SHOWBANKINFO = 1, ADDATM = 2,
+  	SHOWAGENT = 3, ADDCARD = 4, SHOWCARD = 5, SHOWDAILYLOG = 6;
 
+  /** The commands of execute, in the order their prefixes are matched. */
+  private final static CommandTable smCommands = new CommandTable(
+    new String[] {
+    	"addbankinfo", "showbankinfo", "addatm", "showagent", "addcard",
+    	"showcard", "showdailylog" });
+
+  /**
+   * Runs the commands of the input in batch mode, e.g. for a bulk
+   * load.  The first line is the admin password, as for runTerminal.
+   * The input is then read a line at a time, without prompts.  The
+   * commands are run in update transactions of chunkSize commands
+   * each, holding the lock of the whole database, so that a commit is
+   * shared by many commands.  A command that fails is reported, and
+   * the others of its chunk are committed.  The number of lines per
+   * second is shown at the end.
+   *
+   * @param o		the database root
+   * @param input	the commands, ending at the end of input, "quit"
+   *		or "shutdown"
+   * @param chunkSize	number of commands in a transaction
+   */
+  public static void runBatch(ATMManager o, InputStream input,
+  	int chunkSize) {
+    BufferedReader in = new BufferedReader(new InputStreamReader(input),
+    	BUFFER_SIZE);
+    long[] lines = new long[1];
+    long commands = 0, transactions = 0;
+    long t0 = System.currentTimeMillis();
+
+    try {
+      lines[0]++;
+      if (!ATMManager.validatePassword(in.readLine())) {
+        System.out.println("Invalid admin password.  Exiting...");
+        return;
+      }
+    } catch (Exception e) {
+      show("  " + e.toString());
+      return;
+    }
+
+    String line = readCommand(in, lines);
+    while (line != null) {
+      DBManager.lockWriteAll();
+      try {
+        if (DBManager.getDB() != null) DBManager.beginUpdateTrx();
+	for (int n=0; n<chunkSize && line != null; n++) {
+	  runCommand(o, line);
+	  commands++;
+	  line = readCommand(in, lines);
+	}
         if (DBManager.getDB() != null) DBManager.commitTrx();
-	
       } catch (Exception e) {
-
         if (DBManager.getDB() != null) DBManager.handleTrxError(e);
 	System.out.println(e.getMessage());
+      } finally {
+        DBManager.unlock();
+      }
+      transactions++;
+    }
+
+    long millis = Math.max(System.currentTimeMillis() - t0, 1);
+    show("Batch: " + lines[0] + " lines, " + commands + " commands in "
+    	+ transactions + " transactions, " + millis + " ms, "
+	+ lines[0] * 1000 / millis + " lines/s");
+  }
+
+  /**
+   * Returns the next line of the input that has a command, skipping
+   * empty lines and comments.
+   *
+   * @param in	the input
+   * @param lines	lines[0] is the number of lines read
+   * @return the line, or null at the end of input, "quit" or "shutdown"
+   */
+  private static String readCommand(BufferedReader in, long[] lines) {
+    try {
+      String line;
+      while ((line = in.readLine()) != null) {
+	lines[0]++;
+	if (line.startsWith("#")) continue;
+	StringTokenizer tokenizer = new StringTokenizer(line, " 	");
+	if (!tokenizer.hasMoreTokens()) continue;
+	String command = tokenizer.nextToken();
+	if ("quit".startsWith(command) || "shutdown".equalsIgnoreCase(line))
+	  return null;
+	return line;
+      }
+    } catch (IOException e) {
+      show("  " + e.toString());
+    }
+    return null;
+  }
+
+  /**
+   * Runs a command of runBatch in its transaction.
+   *
+   * @param o		the database root
+   * @param line	the command line
+   */
+  private static void runCommand(ATMManager o, String line) {
+    StringTokenizer tokenizer = new StringTokenizer(line, " 	");
+    String command = tokenizer.nextToken();
+    if ("help".startsWith(command)) {
+      printHelp();
+    } else {
+      try {
+	execute(o, command, tokenizer);
+      } catch (Exception e) {
+	show(e.toString());  // as DBManager.handleTrxError
+	System.out.println(e.getMessage());
       }
-     }
+    }
+  }
+
+  /**
+   * Executes a command other than help and quit on the object
+   * o, in the transaction of the caller.  It is called by runTerminal
+   * and runBatch.  The command is looked up in smCommands.
+   *
+   * @param o		the database root
+   * @param command	the command (or a prefix of it)
+   * @param tokenizer	tokenizer for the arguments of the command
+   * @exception Exception if the command fails
+   */
+  static void execute(ATMManager o, String command, StringTokenizer tokenizer)
+      throws Exception {
+    switch (smCommands.lookup(command)) {
+
+    case ADDBANKINFO: {
+      String name = readString(tokenizer);
+      int prefix = readInt(tokenizer);
+      String serverName = readString(tokenizer);
+      o.addBankInfo(name, prefix, serverName);
+      break;
+    }
+
+    case SHOWBANKINFO: {
+      int number = 0;
+      String name = "";
+      try { number = readInt(tokenizer); }
+      catch(TerminalException e) { 
+	name = "all";
+      }
+	  
+      if (number > 0) {
+	BankInfo b = o.getBankInfo(number);
+	show(" " + b.getName() + " @ " + b.getServerName() + " (" + 
+	     b.getPrefix() + ")" );
+
+      } else if ("all".startsWith(name)) {
+	BankInfo[] bs = o.getBankInfos();
+	for (int i=0; i<bs.length; i++) {
+	  BankInfo b = bs[i];
+	  show(" " + b.getName() + " @ " + b.getServerName() + " (" + 
+	    b.getPrefix() + ")" );
+	}
+      } else {
+	BankInfo b = o.getBankInfo(name);
+	show(" " + b.getName() + " @ " + b.getServerName() + " (" + 
+	     b.getPrefix() + ")" );
+      }
+      break;
+    }
 
+    case ADDATM: {
+      String id = readString(tokenizer);
+      String name = readString(tokenizer);
+      String location = readString(tokenizer);
+      Agent a = new ATM(id, name, location);
+      o.addAgent(a);
+      break;
     }
 
+    case SHOWAGENT: {
+      String id;
+      try {
+	id = readString(tokenizer);
+      } catch(TerminalException e) { 
+	id = "all";
+      }
+      if ("all".startsWith(id)) {
+	Agent[] bs = o.getAgents();
+	for (int i=0; i<bs.length; i++) {
+	  ATM b = (ATM) bs[i];
+	  show(" " + b.getId() + ": " + b.getName() + " @ " + 
+	    b.getLocation() + "" );
+	}
+      } else {
+	ATM b = (ATM) o.getAgent(id);
+	if (b==null) show("Agent " + id + " not found.");
+	else show(" " + b.getId() + ": " + b.getName() + " @ " + 
+		    b.getLocation() + "" );
+      }
+      break;
+    }
+
+    case ADDCARD: {
+      int number = readInt(tokenizer);
+      String name = readString(tokenizer);
+      int accNumber = readInt(tokenizer);
+      BankInfo b = o.getBankInfo(number);
+      if (b==null) show("No bank matching the card.");
+      b.addCard(number, name, accNumber);
+      break;
+    }
+
+    case SHOWCARD: {
+      int number = 0;
+      String name = "";
+      try { number = readInt(tokenizer); }
+      catch(TerminalException e) { 
+	name = "all";
+      }
+	  
+      if (number > 0) {
+	BankInfo b = o.getBankInfo(number);
+	Card c = b.getCard(number);
+	show(" " + c.getName() + " card: " + c.getNumber() 
+	  + " acc:" + c.getAccountNumber() + "" );
+
+      } else if ("all".startsWith(name)) {
+	BankInfo[] bs = o.getBankInfos();
+	for (int j=0; j<bs.length; j++) {
+	  BankInfo b = bs[j];
+	  show("--- " + b.getName());
+	  Card[] cs = b.getCards();
+	  for (int i=0; i<cs.length; i++) {
+	    Card c = cs[i];
+	    show(" " + c.getName() + " card: " + c.getNumber() 
+	      + " acc:" + c.getAccountNumber() + "" );
+	  }
+	}
+      } 
+      break;
+    }
+
+    case SHOWDAILYLOG: {
+      int relDate = 0;  // default to today
+      try { relDate = readInt(tokenizer); }
+      catch(TerminalException e) {  }
+
+      DateTime date = new DateTime();
+      date.shiftDate(relDate);
+      DailyLog dl = o.getDailyLog(date);
+      if (dl == null) {
+	throw new Exception("No log for this day.");
+      }
+
+      Session[] ss = dl.getSessions();
+      for (int i=0; i<ss.length; i++) {
+	Session s = (Session) ss[i];
+	show("Session for card " + s.getCard().getNumber() 
+	  + " and agent " + s.getAgent().getName() + "" );
+	show("  start " + s.getStartTime() );
+
+	Transaction[] tt = s.getTransactions();
+	for (int j=0; j<tt.length; j++) {
+	  Transaction t = (Transaction) tt[j];
+	  show("  " + t.getTime() + " " + t.getContent() );
+	}
+
+	show("  end " + s.getEndTime() );
+      }
+      break;
+    }
+
+    default: {
+      show(" Command not recognized.  Try \"help\"");
+    }
+    }
   }
 
   // show help
@@ -604,6 +772,8 @@ public class ATMManager {
     show("  showcard [number]        // show one or all cards");
 
     show("  showdailylog rel_date    // show dailylog (rel_date = 0 means today)");
+    show("  batch file [nChunk]      // run a command file, nChunk commands");
+    show("                           // in a transaction");
 
     show("");
     show("  shutdown                    // shutdown DB & quit");
@@ -649,14 +819,18 @@ public class ATMManager {
 
   public static void main(String[] args) {
 
-    show("Usage: java atmcs.ATMManager [database_file] [command_file.txt]");
+    show("Usage: java atmcs.ATMManager [database_file] [command_file.txt] [nChunk]");
     show("  If no database file is specified, run on transient objects.");
+    show("  With nChunk, run the command file in batch mode.");
 
     String dbfile = null;
     if (args.length >= 1) {
       dbfile = args[0];
     }
 
+    int chunkSize = 0;  // not in batch mode
+    if (args.length >= 3) chunkSize = Integer.parseInt(args[2]);
+
     // Get input stream
     InputStream input = System.in;
     if (args.length >= 2) {
@@ -671,13 +845,15 @@ public class ATMManager {
 
       ATMManager mgr = (ATMManager)DBManager.getDbRoot();
 
-      ATMManager.runTerminal(mgr, input);
+      if (chunkSize > 0) runBatch(mgr, input, chunkSize);
+      else ATMManager.runTerminal(mgr, input);
 
       DBManager.shutdown();
 
     } else {  // transient test
       ATMManager mgr = new ATMManager();
-      runTerminal(mgr, input);
+      if (chunkSize > 0) runBatch(mgr, input, chunkSize);
+      else runTerminal(mgr, input);
     }
 
   }
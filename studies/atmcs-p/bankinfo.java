@@ -34,6 +34,13 @@ public class BankInfo {
   /* Vector of Cards */
   private OSVector mCards = new OSVector(50, 10);
 
+  /**
+   * Constructor for an object read from the database, which sets
+   * its fields.
+   */
+  protected BankInfo() {
+  }
+
   /**
    * Constructor
    *
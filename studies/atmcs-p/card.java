@@ -32,6 +32,13 @@ public class Card {
 
   private OSVector mSessions = new OSVector();
 
+  /**
+   * Constructor for an object read from the database, which sets
+   * its fields.
+   */
+  protected Card() {
+  }
+
   /**
    * Constructor.
    *
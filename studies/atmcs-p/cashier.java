@@ -20,6 +20,13 @@ public class Cashier extends Agent {
   /* Cashier Branch. */
   private String mBranch;
 
+  /**
+   * Constructor for an object read from the database, which sets
+   * its fields.
+   */
+  protected Cashier() {
+  }
+
   /**
    * Constructor.
    *
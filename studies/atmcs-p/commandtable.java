@@ -0,0 +1,71 @@
+//*************************************************************************
+/**
+ * CommandTable.java - A table of the commands of a terminal
+ *
+ *   Copyright (C) 1998-2000 	Yun-Tung Lau
+ *   All Rights Reserved.  The contents of this file are proprietary to
+ *   the above copyright holder.
+ */
+//*************************************************************************
+
+package atmcs;
+
+import java.util.Hashtable;
+
+/**
+ * This class finds the command that a word of the input stands for.
+ * A command may be given by any prefix of its name, e.g. "addc" for
+ * "addcourse".  If several commands begin with a prefix, it stands
+ * for the first of them in the table, as it did for the chains of
+ * "command".startsWith tests that the terminals used.
+ * <P>
+ * All the prefixes are put in a hash table when the table is built,
+ * so a word is looked up once, instead of being tested against the
+ * names in turn.  Terminals switch on the number that is returned.
+ */
+public class CommandTable {
+
+  private String[] names;
+  private Hashtable<String, Integer> prefixes =
+  	new Hashtable<String, Integer>();  // prefix to number
+
+
+  /**
+   * Constructs a table.
+   *
+   * @param names	names of the commands, in the order they are
+   *		matched; the number of a command is its index
+   */
+  public CommandTable(String[] names) {
+    this.names = names;
+    for (int i=0; i<names.length; i++) {
+      for (int k=1; k<=names[i].length(); k++) {
+	String prefix = names[i].substring(0, k);
+	if (!prefixes.containsKey(prefix))
+	  prefixes.put(prefix, Integer.valueOf(i));
+      }
+    }
+  }
+
+  /**
+   * Returns the number of the command that a word stands for.
+   *
+   * @param word	the command, or a prefix of it
+   * @return the index of the command in the table, or -1 if none
+   */
+  public int lookup(String word) {
+    Integer i = prefixes.get(word);
+    return i == null ? -1 : i.intValue();
+  }
+
+  /**
+   * Returns the name of a command.
+   *
+   * @param i	the number of the command
+   * @return the name
+   */
+  public String getName(int i) {
+    return names[i];
+  }
+
+}
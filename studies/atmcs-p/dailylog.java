@@ -27,6 +27,13 @@ public class DailyLog {
   /* sessions started in this date */
   private OSVector mSessions = new OSVector();
 
+  /**
+   * Constructor for an object read from the database, which sets
+   * its fields.
+   */
+  protected DailyLog() {
+  }
+
   /**
    * Constructor.
    *
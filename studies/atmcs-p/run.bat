@@ -5,7 +5,7 @@ set OLD_CLASSPATH=%CLASSPATH%
 set PSE_CLASSPATH=%PSE_HOME%\pro.jar;%PSE_HOME%\tools.jar
 set CLASSPATH=%PSE_CLASSPATH%;%CLASSPATH%
 
-java atmcs.ATMManager %1 %2
+java atmcs.ATMManager %1 %2 %3
 
 set CLASSPATH=%OLD_CLASSPATH%
 set OLD_CLASSPATH=
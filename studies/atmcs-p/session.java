@@ -34,6 +34,13 @@ public class Session {
   /* The Transactions in this session. */
   private OSVector mTransactions = new OSVector();
 
+  /**
+   * Constructor for an object read from the database, which sets
+   * its fields.
+   */
+  protected Session() {
+  }
+
   /**
    * Constructor.
    *
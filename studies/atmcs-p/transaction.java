@@ -23,6 +23,13 @@ public class Transaction {
   /* Transaction holder's name */
   private String mContent;
 
+  /**
+   * Constructor for an object read from the database, which sets
+   * its fields.
+   */
+  protected Transaction() {
+  }
+
   /**
    * Constructor.
    *
@@ -139,9 +139,9 @@ class SessionImpl implements SessionIFOperations {
 
     if (mpSession != null) {  // log trx to db
 
-     // Since it involves transaction, we put them in a synchronized 
-     // block to make threads cooperating with each other.
-     synchronized (DBManager.TOKEN) {
+     // Since it involves transaction, we lock the session first.
+     // Threads of other sessions are not blocked.
+     DBManager.lockWrite(mpSession);
      try {
       DBManager.beginUpdateTrx();
       mpSession.addTransaction((new DateTime()), content);
@@ -150,7 +150,8 @@ class SessionImpl implements SessionIFOperations {
      } catch (Exception e) {
       DBManager.handleTrxError(e);
       e.printStackTrace();
-     }
+     } finally {
+      DBManager.unlock();
      }
 
     }
@@ -202,9 +203,10 @@ class SessionMgrImpl implements SessionMgrIFOperations {
     Session psession = null; // persistent session object
 
     if (mpATMMgr != null) {  // retrieve values from db
-     // Since it involves transaction, we put them in a synchronized 
-     // block to make threads cooperating with each other.
-     synchronized (DBManager.TOKEN) {
+     // Since it involves transaction, we lock the ATM manager first.
+     // Its lock also covers the sessions of the agents, cards and
+     // daily logs, which only a login changes.
+     DBManager.lockWrite(mpATMMgr);
      try {
       DBManager.beginUpdateTrx();
 
@@ -231,7 +233,8 @@ class SessionMgrImpl implements SessionMgrIFOperations {
       DBManager.handleTrxError(e);
       e.printStackTrace();
       throw new AtmcsError("SessionMgrImpl.login: " + e.toString()); 
-     }
+     } finally {
+      DBManager.unlock();
      }
 
     }
@@ -309,9 +312,8 @@ class SessionMgrImpl implements SessionMgrIFOperations {
     Session s = sessionImpl.getPersistentObject();
 
     if (s != null) {
-     // Since it involves transaction, we put them in a synchronized 
-     // block to make threads cooperating with each other.
-     synchronized (DBManager.TOKEN) {
+     // Since it involves transaction, we lock the session first.
+     DBManager.lockWrite(s);
      try {
       DBManager.beginUpdateTrx();
       s.endSession(new DateTime());
@@ -320,7 +322,8 @@ class SessionMgrImpl implements SessionMgrIFOperations {
      } catch (Exception e) {
       DBManager.handleTrxError(e);
       e.printStackTrace();
-     }
+     } finally {
+      DBManager.unlock();
      }
     }
 
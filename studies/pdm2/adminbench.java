@@ -0,0 +1,225 @@
+//*************************************************************************
+/**
+ * AdminBench.java - A load test for the admin server.
+ *
+ *   Copyright (C) 1998-2000 	Yun-Tung Lau
+ *   All Rights Reserved.  The contents of this file are proprietary to
+ *   the above copyright holder.
+ */
+//*************************************************************************
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class starts an AdminServer on a catalog, and connects many
+ * clients to it over the loopback address, as admins with telnet
+ * would.  When all are connected, each sends its commands one at a
+ * time and waits for the reply: "getpart" of a random part, or in
+ * updatePercent of the commands "addpart" or "removepart" of a part of
+ * its own.  The output of each getpart is checked.  The commands per
+ * second, the times of a reply, and the transactions they took are
+ * shown.  It is run first with one worker thread, which serves the
+ * commands one at a time like the admin terminal, and then with
+ * nWorkers.
+ * <P>
+ * Usage: java AdminBench [nClients] [nCommands] [updatePercent] [nWorkers]
+ * <P>
+ * The defaults are 500 clients with 40 commands each, 10% updates,
+ * and 16 workers.  The catalog is that of LockBench: 200 parts with 4
+ * attributes each.
+ */
+public class AdminBench {
+
+  /** Name of the temporary database file. */
+  private final static String DB_FILE = "adminbench.odb";
+
+  /** Number of parts, as in LockBench. */
+  private final static int PARTS = 200;
+
+  /**
+   * Reads a reply of the server, up to and including its prompt.
+   *
+   * @param in	the input of the connection
+   * @return the reply without the prompt
+   * @exception IOException if the connection fails or is closed
+   */
+  static String readReply(InputStream in) throws IOException {
+    StringBuffer b = new StringBuffer();
+    while (true) {
+      int c = in.read();
+      if (c < 0) throw new EOFException("Connection closed");
+      b.append((char) c);
+      int n = b.length();
+      if (c == ' ' && n >= 2 && b.charAt(n-2) == '>'
+	  && (n == 2 || b.charAt(n-3) == '\n'))
+	return b.substring(0, n-2);
+    }
+  }
+
+  /**
+   * Runs one case.
+   *
+   * @param catalog	the catalog
+   * @param nClients	number of clients
+   * @param nCommands	number of commands of each client
+   * @param percent	percentage of the commands that update
+   * @param nWorkers	number of worker threads of the server
+   * @return commands per second, the median, 99th percentile and
+   *		longest time of a reply in micro seconds, the
+   *		transactions, and the errors
+   * @exception Exception if any exception is thrown
+   */
+  public static long[] runCase(Catalog catalog, int nClients,
+  	final int nCommands, final int percent, int nWorkers)
+      throws Exception {
+    final AdminServer server = new AdminServer(catalog, 0, nWorkers);
+    Thread serverThread = new Thread(server, "Admin Server");
+    serverThread.start();
+
+    final long[] times = new long[nClients * nCommands];
+    final int[] errors = new int[1];
+    final Object start = new Object();
+    final int[] connected = new int[1];
+    final boolean[] go = new boolean[1];
+    Thread[] clients = new Thread[nClients];
+
+    for (int t=0; t<nClients; t++) {
+      final int id = t;
+      clients[t] = new Thread("Client " + t) {
+	public void run() {
+	  Random random = new Random(id);
+	  boolean added = false;
+	  try {
+	    Socket s = new Socket(InetAddress.getLoopbackAddress(),
+	    	server.getPort());
+	    s.setTcpNoDelay(true);
+	    InputStream in = new BufferedInputStream(s.getInputStream());
+	    Writer out = new OutputStreamWriter(s.getOutputStream(),
+	    	"ISO-8859-1");
+	    readReply(in);  // the help
+	    synchronized (start) {
+	      connected[0]++;
+	      start.notifyAll();
+	      while (!go[0]) start.wait();
+	    }
+
+	    for (int k=0; k<nCommands; k++) {
+	      String part = "part" + random.nextInt(PARTS);
+	      String command = "getpart " + part;
+	      if (random.nextInt(100) < percent) {
+		command = (added ? "removepart c" : "addpart c") + id;
+		added = !added;
+	      }
+	      long t0 = System.nanoTime();
+	      out.write(command + "\n");
+	      out.flush();
+	      String reply = readReply(in);
+	      times[id * nCommands + k] = System.nanoTime() - t0;
+	      if (command.startsWith("getpart")
+		  ? !reply.startsWith("  " + part + "\n")
+		  : reply.indexOf("Exception") >= 0) {
+		synchronized (errors) {
+		  if (errors[0]++ == 0) show("Wrong reply: " + reply);
+		}
+	      }
+	    }
+	    if (added) {  // leave the catalog as it was
+	      out.write("removepart c" + id + "\n");
+	      out.flush();
+	      readReply(in);
+	    }
+	    out.write("quit\n");
+	    out.flush();
+	    s.close();
+	  } catch (Exception e) {
+	    synchronized (errors) {
+	      if (errors[0]++ == 0) show("Client " + id + ": " + e);
+	    }
+	    synchronized (start) {  // do not hold up the others
+	      connected[0]++;
+	      start.notifyAll();
+	    }
+	  }
+	}
+      };
+      clients[t].start();
+    }
+
+    // start the commands when all the clients are connected
+    synchronized (start) {
+      while (connected[0] < nClients) start.wait();
+      go[0] = true;
+      start.notifyAll();
+    }
+    long trx0 = DBManager.getTransactionCount();
+    long t0 = System.currentTimeMillis();
+    for (int t=0; t<nClients; t++) clients[t].join();
+    long elapsed = Math.max(System.currentTimeMillis() - t0, 1);
+    long trx = DBManager.getTransactionCount() - trx0;
+    server.close();
+    serverThread.join();
+
+    Arrays.sort(times);
+    long[] result = new long[6];
+    result[0] = times.length * 1000L / elapsed;
+    result[1] = times[times.length / 2] / 1000;
+    result[2] = times[(int) (times.length * 0.99)] / 1000;
+    result[3] = times[times.length - 1] / 1000;
+    result[4] = trx;
+    result[5] = errors[0];
+    return result;
+  }
+
+  /**
+   * Shows the input string.
+   *
+   * @s the string to be shown
+   */
+  public static void show(String s) {
+    System.out.println(s);
+  }
+
+  /**
+   * Main method for the benchmark.
+   *
+   * @exception Exception if any exception is thrown
+   */
+  public static void main(String[] args) throws Exception {
+    int nClients = 500;
+    int nCommands = 40;
+    int percent = 10;
+    int nWorkers = 16;
+    if (args.length >= 1) nClients = Integer.parseInt(args[0]);
+    if (args.length >= 2) nCommands = Integer.parseInt(args[1]);
+    if (args.length >= 3) percent = Integer.parseInt(args[2]);
+    if (args.length >= 4) nWorkers = Integer.parseInt(args[3]);
+
+    new File(DB_FILE).delete();
+    DBManager.initialize(DB_FILE, "Catalog");
+    Catalog catalog = (Catalog) DBManager.getDbRoot();
+    LockBench.build(catalog);
+
+    show("Clients: " + nClients + " x " + nCommands + " commands, updates: "
+    	+ percent + "%, parts: " + PARTS);
+
+    // warm up the JIT compiler first
+    runCase(catalog, Math.min(nClients, 50), nCommands, percent, nWorkers);
+
+    show("  workers  commands/s  median (us)  99% (us)  longest (us)"
+    	+ "  transactions  errors");
+    int[] cases = { 1, nWorkers };
+    for (int i=0; i<cases.length; i++) {
+      long[] r = runCase(catalog, nClients, nCommands, percent, cases[i]);
+      show("  " + cases[i] + "\t   " + r[0] + "\t\t" + r[1] + "\t     "
+      	+ r[2] + "\t" + r[3] + "\t      " + r[4] + "\t    " + r[5]);
+    }
+
+    DBManager.shutdown();
+    new File(DB_FILE).delete();
+  }
+
+}
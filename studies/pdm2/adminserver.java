@@ -0,0 +1,347 @@
+//*************************************************************************
+/**
+ * AdminServer.java - a TCP endpoint for the admin commands of a catalog
+ *
+ *   Copyright (C) 1998-2000 	Yun-Tung Lau
+ *   All Rights Reserved.  The contents of this file are proprietary to
+ *   the above copyright holder.
+ */
+//*************************************************************************
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This class serves the commands of Catalog.runTerminal to many admin
+ * clients at a time, e.g. "telnet localhost 7070".  It listens on the
+ * loopback address only.  One thread reads and writes all the
+ * connections with a selector, without blocking, and hands each
+ * command line to a pool of worker threads, which run it with
+ * Catalog.runCommand.  The queries of different clients thus run at
+ * the same time in a shared read transaction; the updates wait for
+ * the locks they need, as the requests of the ORB clients do.
+ * <P>
+ * The commands of a connection run one at a time, in order.  The
+ * output of each is followed by the prompt "> ".  "quit" ends the
+ * connection; "shutdown" is only accepted from the console, so it
+ * ends the connection too.
+ * <P>
+ * Typical usage:
+ * <PRE>
+ *    AdminServer admin = new AdminServer(catalog, AdminServer.DEFAULT_PORT, 8);
+ *    (new Thread(admin, "Admin Server")).start();
+ *    ...
+ *    admin.close();
+ * </PRE>
+ */
+public class AdminServer implements Runnable {
+
+  /** The default port. */
+  public final static int DEFAULT_PORT = 7070;
+
+  /** Size of the input buffer of a connection. */
+  private final static int BUFFER_SIZE = 4096;
+
+  /** Longest command line; a longer one ends the connection. */
+  private final static int MAX_LINE = 4096;
+
+  /** Number of lines a connection may send ahead before it is
+      no longer read. */
+  private final static int MAX_PENDING = 64;
+
+  private Catalog mCatalog;
+  private Selector mSelector;
+  private ServerSocketChannel mServer;
+  private ExecutorService mWorkers;
+  private ConcurrentLinkedQueue mDone = new ConcurrentLinkedQueue();  // Connections
+  private volatile boolean mClosed;
+  private int mConnections;  // open now
+
+
+  /**
+   * Constructs a server and binds it to a port of the loopback address.
+   *
+   * @param catalog	the catalog
+   * @param port	the port; 0 for any free port
+   * @param nWorkers	number of threads that run the commands
+   * @exception IOException if the port cannot be bound
+   */
+  public AdminServer(Catalog catalog, int port, int nWorkers)
+      throws IOException {
+    mCatalog = catalog;
+    mSelector = Selector.open();
+    mServer = ServerSocketChannel.open();
+    mServer.socket().setReuseAddress(true);
+    mServer.socket().bind(
+    	new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+    mServer.configureBlocking(false);
+    mServer.register(mSelector, SelectionKey.OP_ACCEPT);
+    mWorkers = Executors.newFixedThreadPool(Math.max(nWorkers, 1));
+  }
+
+  /**
+   * Returns the port the server listens on.
+   */
+  public int getPort() {
+    return mServer.socket().getLocalPort();
+  }
+
+  /**
+   * Serves the connections until close is called.
+   */
+  public void run() {
+    try {
+      while (!mClosed) {
+	mSelector.select();
+	finishCommands();
+
+	Iterator keys = mSelector.selectedKeys().iterator();
+	while (keys.hasNext()) {
+	  SelectionKey key = (SelectionKey) keys.next();
+	  keys.remove();
+	  try {
+	    if (!key.isValid()) continue;
+	    if (key.isAcceptable()) accept();
+	    else {
+	      Connection c = (Connection) key.attachment();
+	      if (key.isReadable()) c.read();
+	      if (key.isValid() && key.isWritable()) c.write();
+	    }
+	  } catch (IOException e) {  // the client is gone
+	    Object c = key.attachment();
+	    if (c != null) ((Connection) c).close();
+	  }
+	}
+      }
+    } catch (IOException e) {
+      show("  " + e.toString());
+    } finally {
+      shutdown();
+    }
+  }
+
+  /**
+   * Stops the server, and closes its connections.  The commands that
+   * are running are still finished by their workers.
+   */
+  public void close() {
+    mClosed = true;
+    mSelector.wakeup();
+  }
+
+  /**
+   * Returns the number of open connections.
+   */
+  public synchronized int getConnectionCount() {
+    return mConnections;
+  }
+
+  private void shutdown() {
+    mWorkers.shutdown();
+    try {
+      mServer.close();
+      Iterator keys = mSelector.keys().iterator();
+      while (keys.hasNext()) {
+	Object c = ((SelectionKey) keys.next()).attachment();
+	if (c != null) ((Connection) c).close();
+      }
+      mSelector.close();
+    } catch (IOException e) {
+      show("  " + e.toString());
+    }
+  }
+
+  /**
+   * Accepts a connection, and greets it with the help.
+   */
+  private void accept() throws IOException {
+    SocketChannel channel = mServer.accept();
+    if (channel == null) return;
+    channel.configureBlocking(false);
+    channel.socket().setTcpNoDelay(true);
+    Connection c = new Connection(channel);
+    c.key = channel.register(mSelector, SelectionKey.OP_READ, c);
+    synchronized (this) {
+      mConnections++;
+    }
+    StringWriter help = new StringWriter();
+    Catalog.printHelp(new PrintWriter(help));
+    c.send(help.toString() + "\n> ");
+  }
+
+  /**
+   * Sends the output of the commands the workers have run, and starts
+   * the next command of each connection.
+   */
+  private void finishCommands() throws IOException {
+    Connection c;
+    while ((c = (Connection) mDone.poll()) != null) {
+      c.busy = false;
+      if (!c.key.isValid()) continue;  // closed meanwhile
+      c.send(c.output + "> ");
+      c.output = null;
+      c.next();
+    }
+  }
+
+  /**
+   * Shows the input string.
+   *
+   * @s the string to be shown
+   */
+  public static void show(String s) {
+    System.out.println(s);
+  }
+
+  /**
+   * A client connection.  Its fields are used by the selector thread,
+   * except output, which the worker that runs its command sets before
+   * it puts the connection in mDone.
+   */
+  private class Connection implements Runnable {
+    SocketChannel channel;
+    SelectionKey key;
+    ByteBuffer in = ByteBuffer.allocate(BUFFER_SIZE);
+    StringBuffer line = new StringBuffer();
+    LinkedList pending = new LinkedList();  // command lines to run
+    LinkedList replies = new LinkedList();  // ByteBuffers to write
+    boolean busy;      // a worker is running its command
+    boolean ending;    // close after the replies are written
+    String command;    // the command being run
+    String output;     // and its output
+
+    Connection(SocketChannel channel) {
+      this.channel = channel;
+    }
+
+    /**
+     * Reads what the client has sent, and splits it into lines.
+     */
+    void read() throws IOException {
+      in.clear();
+      int n = channel.read(in);
+      if (n < 0) {  // end of input
+	ending = true;
+	key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+	if (!busy && pending.isEmpty()) endIfSent();
+	return;
+      }
+      for (int i=0; i<n; i++) {
+	char ch = (char) (in.get(i) & 0xff);
+	if (ch == '\n') {
+	  int k = line.length();
+	  if (k > 0 && line.charAt(k-1) == '\r') line.setLength(k-1);
+	  pending.addLast(line.toString());
+	  line.setLength(0);
+	} else if (line.length() < MAX_LINE) {
+	  line.append(ch);
+	} else {
+	  close();  // not a command line
+	  return;
+	}
+      }
+      next();
+    }
+
+    /**
+     * Starts the next command, if none is running.  It is given to a
+     * worker, except quit, shutdown, comments and empty lines, which
+     * only get a prompt as in the terminal.
+     */
+    void next() throws IOException {
+      while (!busy && !pending.isEmpty()) {
+	String s = (String) pending.removeFirst();
+	StringTokenizer tokenizer = new StringTokenizer(s, " 	");
+	if (s.startsWith("#") || !tokenizer.hasMoreTokens()) {
+	  send("> ");
+	  continue;
+	}
+	String word = tokenizer.nextToken();
+	if ("quit".startsWith(word) || "shutdown".equalsIgnoreCase(s)) {
+	  pending.clear();
+	  ending = true;
+	  break;
+	}
+	command = s;
+	busy = true;
+	mWorkers.execute(this);
+      }
+      if (ending && !busy) endIfSent();
+      if (!key.isValid()) return;
+      // stop reading while the client is far ahead of its replies
+      int ops = key.interestOps() & ~SelectionKey.OP_READ;
+      if (!ending && pending.size() < MAX_PENDING) ops |= SelectionKey.OP_READ;
+      key.interestOps(ops);
+    }
+
+    /**
+     * Runs the command in a worker thread.
+     */
+    public void run() {
+      StringWriter s = new StringWriter();
+      PrintWriter out = new PrintWriter(s);
+      try {
+	Catalog.runCommand(mCatalog, command, out);
+      } catch (RuntimeException e) {
+	out.println("  " + e.toString());
+      }
+      out.flush();
+      output = s.toString();
+      mDone.offer(this);
+      mSelector.wakeup();
+    }
+
+    /**
+     * Queues text to be written to the client.
+     */
+    void send(String s) throws IOException {
+      byte[] b = s.getBytes("ISO-8859-1");
+      replies.addLast(ByteBuffer.wrap(b));
+      write();
+    }
+
+    /**
+     * Writes what the client will take without blocking.
+     */
+    void write() throws IOException {
+      while (!replies.isEmpty()) {
+	ByteBuffer b = (ByteBuffer) replies.getFirst();
+	channel.write(b);
+	if (b.hasRemaining()) break;
+	replies.removeFirst();
+      }
+      if (!key.isValid()) return;
+      if (replies.isEmpty()) {
+	key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+	if (ending && !busy && pending.isEmpty()) close();
+      } else {
+	key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+      }
+    }
+
+    void endIfSent() {
+      if (replies.isEmpty()) close();
+    }
+
+    void close() {
+      if (!channel.isOpen()) return;
+      key.cancel();
+      try {
+	channel.close();
+      } catch (IOException e) {}
+      synchronized (AdminServer.this) {
+	mConnections--;
+      }
+    }
+  }
+
+}
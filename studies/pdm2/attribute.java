@@ -17,6 +17,12 @@ public class Attribute extends NamedObject {
   private double value;
   private String unit;
 
+  /** 
+   * Constructs an attribute object to be read from the database.
+   */
+  protected Attribute() {
+  }
+
   /** 
    * Constructs an attribute object.  
    *
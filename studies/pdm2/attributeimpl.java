@@ -67,19 +67,20 @@ class AttributeImpl implements AttributeIFOperations {
   public String getName() {
     String name = null;
 
-    // Commands below may involve transaction.  We put them in
-    // a synchronized block to make threads cooperating with 
-    // each other.
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginReadTrx();
-	name = attribute.getName();
-        DBManager.commitTrx();
+    // Commands below may involve transaction.  We lock the objects
+    // they use first, so that threads using other objects can run
+    // at the same time.
+    DBManager.lockRead(attribute);
+    try {
+      DBManager.beginReadTrx();
+      name = attribute.getName();
+      DBManager.commitTrx();
 
-      } catch (Exception e) {
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
-      }
+    } catch (Exception e) {
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
     return name;
   }
@@ -90,16 +91,17 @@ class AttributeImpl implements AttributeIFOperations {
    * @param name	the name of the attribute
    */
   public void setName(String name) {
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginUpdateTrx();
-	attribute.setName(name);
-        DBManager.commitTrx();
+    DBManager.lockWriteAll();
+    try {
+      DBManager.beginUpdateTrx();
+      attribute.setName(name);
+      DBManager.commitTrx();
 
-      } catch (Exception e) {
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
-      }
+    } catch (Exception e) {
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
   }
 
@@ -111,19 +113,20 @@ class AttributeImpl implements AttributeIFOperations {
   public String getUnit() {
     String unit = null;
 
-    // Commands below may involve transaction.  We put them in
-    // a synchronized block to make threads cooperating with 
-    // each other.
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginReadTrx();
-	unit = _getUnit(attribute);
-        DBManager.commitTrx();
+    // Commands below may involve transaction.  We lock the objects
+    // they use first, so that threads using other objects can run
+    // at the same time.
+    DBManager.lockRead(attribute);
+    try {
+      DBManager.beginReadTrx();
+      unit = _getUnit(attribute);
+      DBManager.commitTrx();
 
-      } catch (Exception e) {
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
-      }
+    } catch (Exception e) {
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
     return unit;
   }
@@ -153,22 +156,23 @@ class AttributeImpl implements AttributeIFOperations {
    */
   public void setUnit(String unit) {
 
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginUpdateTrx();
-	if (attribute instanceof StringAttribute) {
-	  // do nothing
-	} else if (attribute instanceof FloatAttribute) {
-	  ((FloatAttribute)attribute).setUnit(unit);
-	} else if (attribute instanceof DoubleAttribute) {
-	  ((DoubleAttribute)attribute).setUnit(unit);
-	}
-        DBManager.commitTrx();
-
-      } catch (Exception e) {
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
+    DBManager.lockWrite(attribute);
+    try {
+      DBManager.beginUpdateTrx();
+      if (attribute instanceof StringAttribute) {
+	// do nothing
+      } else if (attribute instanceof FloatAttribute) {
+	((FloatAttribute)attribute).setUnit(unit);
+      } else if (attribute instanceof DoubleAttribute) {
+	((DoubleAttribute)attribute).setUnit(unit);
       }
+      DBManager.commitTrx();
+
+    } catch (Exception e) {
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
   }
 
@@ -180,19 +184,20 @@ class AttributeImpl implements AttributeIFOperations {
   public double getValue() {
     double value = 0.0;
 
-    // Commands below may involve transaction.  We put them in
-    // a synchronized block to make threads cooperating with 
-    // each other.
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginReadTrx();
-	_getValue(attribute);
-        DBManager.commitTrx();
+    // Commands below may involve transaction.  We lock the objects
+    // they use first, so that threads using other objects can run
+    // at the same time.
+    DBManager.lockRead(attribute);
+    try {
+      DBManager.beginReadTrx();
+      _getValue(attribute);
+      DBManager.commitTrx();
 
-      } catch (Exception e) {
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
-      }
+    } catch (Exception e) {
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
     return value;
   }
@@ -222,24 +227,25 @@ class AttributeImpl implements AttributeIFOperations {
    */
   public void setValue(double value) {
 
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginUpdateTrx();
+    DBManager.lockWrite(attribute);
+    try {
+      DBManager.beginUpdateTrx();
 
-	if (attribute instanceof StringAttribute) {
-	  // do nothing
-	} else if (attribute instanceof FloatAttribute) {
-	  ((FloatAttribute)attribute).setValue((float)value);
-	} else if (attribute instanceof DoubleAttribute) {
-	  ((DoubleAttribute)attribute).setValue(value);
-	}
+      if (attribute instanceof StringAttribute) {
+	// do nothing
+      } else if (attribute instanceof FloatAttribute) {
+	((FloatAttribute)attribute).setValue((float)value);
+      } else if (attribute instanceof DoubleAttribute) {
+	((DoubleAttribute)attribute).setValue(value);
+      }
 
-        DBManager.commitTrx();
+      DBManager.commitTrx();
 
-      } catch (Exception e) {
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
-      }
+    } catch (Exception e) {
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
   }
 
@@ -50,6 +50,9 @@ if "%1"=="persistent" goto :EOF
 
 REM interface layer 
 javac -classpath "%serverclasspath%;%PSE_CLASSPATH%;%CLASSPATH%" Server.java
+javac -classpath "%serverclasspath%;%PSE_CLASSPATH%;%CLASSPATH%" LockBench.java
+javac -classpath "%serverclasspath%;%PSE_CLASSPATH%;%CLASSPATH%" WalkBench.java
+javac -classpath "%serverclasspath%;%PSE_CLASSPATH%;%CLASSPATH%" AdminBench.java
 if "%1"=="server" goto :EOF
 
 :CLIENT
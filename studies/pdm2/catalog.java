@@ -21,7 +21,7 @@ public class Catalog extends NamedObject {
    * A vector of parts.  It uses PVector, which is a 
    * persistent enabled class. 
    */
-  private PVector parts = new PVector();
+  private PVector parts = new PVector(NAME_KEY);
 
 
   /**
@@ -48,10 +48,17 @@ public class Catalog extends NamedObject {
    * @return  an array of part objects
    */
   public Part[] getParts() {
-    Object[] o = parts.toArray();
-    Part[] u = new Part[o.length];
-    for (int i=0; i<o.length; i++) u[i] = (Part)o[i];
-    return u;
+    return (Part[]) parts.toArray(new Part[parts.size()]);
+  }
+
+  /**
+   * Returns a read-only list view of the parts.  Unlike getParts,
+   * it does not copy the parts.
+   *
+   * @return the parts as a read-only list
+   */
+  public List<Part> getPartList() {
+    return parts.asList();
   }
 
   /**
@@ -70,12 +77,7 @@ public class Catalog extends NamedObject {
    * @return Part object.  Null if none matched the part name.
    */
   public Part getPart(String name) {
-    Enumeration e = parts.elements();
-    while (e.hasMoreElements()) {
-      Part u = (Part) e.nextElement();
-      if (u.getName().equals(name)) return u;
-    }
-    return null;
+    return (Part) parts.getByKey(name);
   }
 
   /**
@@ -154,9 +156,9 @@ public class Catalog extends NamedObject {
    */
   public String toString() { 
     String s = getName() + "\n";
-    Part[] c = getParts();
-    for (int i=0; i<c.length; i++) {
-      s += c[i].toString(true, "  ");  // recursive
+    List<Part> c = getPartList();
+    for (int i=0; i<c.size(); i++) {
+      s += c.get(i).toString(true, "  ");  // recursive
     }
     return s;
   }
@@ -168,8 +170,9 @@ public class Catalog extends NamedObject {
 
     /* read command input */
     BufferedReader instream = new BufferedReader(new InputStreamReader(input));
+    PrintWriter out = new PrintWriter(System.out, true);
     /* print help message describing the legal commands */
-    printHelp();
+    printHelp(out);
     System.out.println();
 
     while (true) {
@@ -199,55 +202,12 @@ public class Catalog extends NamedObject {
         if (!tokenizer.hasMoreTokens()) continue;
         String command = tokenizer.nextToken();
 
-        if ("help".startsWith(command)) {
-          printHelp();
-        }
-
-        else if ("getname".startsWith(command)) {
-	  show( o.getName() );
-        }
-
-        else if ("getpart".startsWith(command)) {
-          String name = readString(tokenizer);
-	  Part p = o.getPart(name);
-	  if (p != null) showPartTree( p );
-	}
-
-        else if ("getparts".startsWith(command)) {
-	  Part[] ps = o.getParts();
-	  show("All parts in catalog:");
-	  for (int i=0; i<ps.length; i++) {
-	    Part p = ps[i];
-	    showPartTree( p );
-	  }
-	}
-
-        else if ("addpart".startsWith(command)) {
-          String name = readString(tokenizer);
-
-	  // Simply add an empty Part.
-	  Part p = o.addPart(name);
-	  if (p != null) show( "Added " + p.getName() );
-	}
-
-        else if ("removepart".startsWith(command)) {
-          String name = readString(tokenizer);
-	  o.removePart(name);
-	  show( name + " removed" );
-	}
-
-        else if ("quit".startsWith(command)) {
+        if ("quit".startsWith(command)) {
           DBManager.shutdown();
     	  System.exit(0);  // end all threads
         }
 
-        else {
-          show(" Command not recognized.  Try \"help\"");
-        }
-
-      } catch (TerminalException e) {  // other command errors
-        show("  " + e.toString());
-        continue;
+        runCommand(o, inputLine, out);
 
       } catch (Exception e) {  // exit on any other exceptions
         show("  " + e.toString());
@@ -258,19 +218,140 @@ public class Catalog extends NamedObject {
 
   }
 
-  static void printHelp() {
-    show("-----------------------------------------------");
-    show("Enter: command option1 option2 ...");
-    show("Valid commands");
-    show("  help                    // print this message");
-    show("  getname                 // get the name of the catalog");
-    show("  getpart name            // get the part with the name");
-    show("  getparts                // get a list of all parts");
-    show("  addpart name            // add a part with the name");
-    show("  removepart name         // remove the part with the name");
-    show("");
-    show("  shutdown                // shutdown DB & quit");
-    show("-----------------------------------------------");
+  /**
+   * Runs a command line other than quit and shutdown, and writes its
+   * output.  It is called by runTerminal, and by AdminServer for its
+   * clients, so it may be called by many threads at a time.  The
+   * queries lock what they read and run in a read transaction, which
+   * they share with the other readers; the updates lock the catalog
+   * for update, as the servants of CatalogImpl do.
+   *
+   * @param o		the catalog
+   * @param line	the command line
+   * @param out		where to write the output
+   */
+  public static void runCommand(Catalog o, String line, PrintWriter out) {
+    // Tokenize the command input with a StringTokenizer.
+    // Space and \t are separators
+    StringTokenizer tokenizer = new StringTokenizer(line, " 	");
+    if (!tokenizer.hasMoreTokens()) return;
+    String command = tokenizer.nextToken();
+
+    if ("help".startsWith(command)) {
+      printHelp(out);
+      return;
+    }
+
+    // Statistics of the transactions, see DBManager.getStats.
+    if ("stats".startsWith(command)) {
+      if (tokenizer.hasMoreTokens() && "reset".equals(tokenizer.nextToken()))
+	DBManager.getStats().reset();
+      else
+	out.println(DBManager.getStats().snapshot().toString());
+      return;
+    }
+
+    // Read the arguments before the transaction, so that a mistyped
+    // command does not join it.
+    String name = null;
+    if ("getname".startsWith(command) || "getparts".equals(command)) {
+      // no arguments
+    } else if ("getpart".startsWith(command) || "addpart".startsWith(command)
+	       || "removepart".startsWith(command)) {
+      try {
+	name = readString(tokenizer);
+      } catch (TerminalException e) {
+	out.println("  " + e.toString());
+	return;
+      }
+    } else {
+      out.println(" Command not recognized.  Try \"help\"");
+      return;
+    }
+
+    boolean update = "addpart".startsWith(command)
+      || "removepart".startsWith(command);
+    if (update)
+      DBManager.lockWrite(o);
+    else if ("getname".startsWith(command))
+      DBManager.lockRead(o);
+    else
+      DBManager.lockReadAll();  // the parts and their components
+    try {
+      if (update) DBManager.beginUpdateTrx();
+      else DBManager.beginReadTrx();
+
+      execute(o, command, name, out);
+
+      DBManager.commitTrx();
+
+    } catch (Exception e) {  // the command errors
+      // A part not found is found before anything is changed, so
+      // only this thread leaves the transaction; see DBManager.
+      if (e instanceof RuntimeException) DBManager.abortTrx();
+      else DBManager.cancelTrx();
+      out.println("  " + e.toString());
+    } finally {
+      DBManager.unlock();
+    }
+  }
+
+  /**
+   * Executes a command of runCommand, in its transaction.
+   *
+   * @param o		the catalog
+   * @param command	the command (or a prefix of it)
+   * @param name	the argument of the command, null if none
+   * @param out		where to write the output
+   * @exception Exception if the command fails
+   */
+  static void execute(Catalog o, String command, String name,
+      PrintWriter out) throws Exception {
+
+    if ("getname".startsWith(command)) {
+      out.println( o.getName() );
+    }
+
+    else if ("getpart".startsWith(command)) {
+      Part p = o.getPart(name);
+      if (p != null) showPartTree( p, out );
+    }
+
+    else if ("getparts".startsWith(command)) {
+      List<Part> ps = o.getPartList();
+      out.println("All parts in catalog:");
+      for (int i=0; i<ps.size(); i++) {
+	Part p = ps.get(i);
+	showPartTree( p, out );
+      }
+    }
+
+    else if ("addpart".startsWith(command)) {
+      // Simply add an empty Part.
+      Part p = o.addPart(name);
+      if (p != null) out.println( "Added " + p.getName() );
+    }
+
+    else if ("removepart".startsWith(command)) {
+      o.removePart(name);
+      out.println( name + " removed" );
+    }
+  }
+
+  static void printHelp(PrintWriter out) {
+    out.println("-----------------------------------------------");
+    out.println("Enter: command option1 option2 ...");
+    out.println("Valid commands");
+    out.println("  help                    // print this message");
+    out.println("  getname                 // get the name of the catalog");
+    out.println("  getpart name            // get the part with the name");
+    out.println("  getparts                // get a list of all parts");
+    out.println("  addpart name            // add a part with the name");
+    out.println("  removepart name         // remove the part with the name");
+    out.println("  stats [reset]           // show or clear transaction statistics");
+    out.println("");
+    out.println("  shutdown                // shutdown DB & quit");
+    out.println("-----------------------------------------------");
   }
 
   static String readString(StringTokenizer tokenizer) throws TerminalException {
@@ -311,19 +392,19 @@ public class Catalog extends NamedObject {
   /** 
    * Shows the input part by itself.
    */
-  public static void showPart(Part p) throws Exception {
+  public static void showPart(Part p, PrintWriter out) throws Exception {
     if (p == null) return;
-    show("  " + p.getName());
-    showAttributes(p);
+    out.println("  " + p.getName());
+    showAttributes(p, out);
   }
 
   /** 
    * Shows the input part with its components.
    */
-  public static void showPartTree(Part p) throws Exception {
+  public static void showPartTree(Part p, PrintWriter out) throws Exception {
     if (p == null) return;
-    showPart( p );
-    showPartSubTree( p, "  " );
+    showPart( p, out );
+    showPartSubTree( p, "  ", out );
   }
 
   /** 
@@ -331,26 +412,29 @@ public class Catalog extends NamedObject {
    *
    * @param p	The input part.
    * @param s	The indentation string for display.
+   * @param out	Where to show it.
    */
-  public static void showPartSubTree(Part p, String s) throws Exception {
+  public static void showPartSubTree(Part p, String s, PrintWriter out)
+      throws Exception {
     if (p == null) return;
-    Part[] comps = p.getComponents();
-    for (int i = 0; i < comps.length; i++) {
-       System.out.print(s);
-       showPart( comps[i] );
-       showPartSubTree( comps[i], s + "  " );
+    List<Part> comps = p.getComponentList();
+    for (int i = 0; i < comps.size(); i++) {
+       out.print(s);
+       showPart( comps.get(i), out );
+       showPartSubTree( comps.get(i), s + "  ", out );
     }
   }
 
   /** 
    * Shows the part's attributes.
    */
-  public static void showAttributes(Part p) throws Exception {
+  public static void showAttributes(Part p, PrintWriter out)
+      throws Exception {
     if (p == null) return;
-    Attribute[] attrs = p.getAttributes();
-    for (int i = 0; i < attrs.length; i++) {
-      Attribute a = attrs[i];
-      show( "      " + a.toString() );
+    List<Attribute> attrs = p.getAttributeList();
+    for (int i = 0; i < attrs.size(); i++) {
+      Attribute a = attrs.get(i);
+      out.println( "      " + a.toString() );
     }
   }
 
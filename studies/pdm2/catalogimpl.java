@@ -10,6 +10,8 @@
 
 import pdm.*;  // from pdm.idl
 
+import java.util.List;
+
 /** 
  * Implementation for CatalogIF.  It uses Catalog from the persistent layer as
  * a servant class.
@@ -45,19 +47,20 @@ class CatalogImpl implements CatalogIFOperations {
   public String getName() {
     String name = null;
 
-    // Commands below may involve transaction.  We put them in
-    // a synchronized block to make threads cooperating with 
-    // each other.
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginReadTrx();
-	name = catalog.getName();
-        DBManager.commitTrx();
-
-      } catch (Exception e) {
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
-      }
+    // Commands below may involve transaction.  We lock the objects
+    // they use first, so that threads using other objects can run
+    // at the same time.
+    DBManager.lockRead(catalog);
+    try {
+      DBManager.beginReadTrx();
+      name = catalog.getName();
+      DBManager.commitTrx();
+
+    } catch (Exception e) {
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
     return name;
   }
@@ -65,17 +68,18 @@ class CatalogImpl implements CatalogIFOperations {
   /** Returns the number of parts in the catalog. */
   public int getPartCount() {
     int count = 0;
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginReadTrx();
-	count = catalog.getPartCount();
-
-        DBManager.commitTrx();
-
-      } catch (Exception e) {
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
-      }
+    DBManager.lockRead(catalog);
+    try {
+      DBManager.beginReadTrx();
+      count = catalog.getPartCount();
+
+      DBManager.commitTrx();
+
+    } catch (Exception e) {
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
     return count;
   }
@@ -84,20 +88,21 @@ class CatalogImpl implements CatalogIFOperations {
   public PartIF[] getParts() {
     PartIF[] partIFs = null;
 
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginReadTrx();
-	Part[] parts = catalog.getParts();
-	partIFs = new PartIF[parts.length];
-	for (int i=0; i<parts.length; i++) {
-  	  partIFs[i] = LayerMediator.getPartIF(parts[i]);
-        }
-        DBManager.commitTrx();
-
-      } catch (Exception e) {
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
+    DBManager.lockRead(catalog);
+    try {
+      DBManager.beginReadTrx();
+      List<Part> parts = catalog.getPartList();
+      partIFs = new PartIF[parts.size()];
+      for (int i=0; i<parts.size(); i++) {
+	partIFs[i] = LayerMediator.getPartIF(parts.get(i));
       }
+      DBManager.commitTrx();
+
+    } catch (Exception e) {
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
     return partIFs;
   }
@@ -109,23 +114,24 @@ class CatalogImpl implements CatalogIFOperations {
   public PartData[] getPartDatas() {
     PartData[] pDatas = null;
 
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginReadTrx();
+    DBManager.lockReadAll();
+    try {
+      DBManager.beginReadTrx();
 
-	Part[] parts = catalog.getParts();
-	pDatas = new PartData[parts.length];
+      List<Part> parts = catalog.getPartList();
+      pDatas = new PartData[parts.size()];
 
-	for (int i=0; i<parts.length; i++) {
-  	  pDatas[i] = PartImpl.toPartData(parts[i]);
-        }
+      for (int i=0; i<parts.size(); i++) {
+	pDatas[i] = PartImpl.toPartData(parts.get(i));
+      }
 
-        DBManager.commitTrx();
+      DBManager.commitTrx();
 
-      } catch (Exception e) {
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
-      }
+    } catch (Exception e) {
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
     return pDatas;
   }
@@ -141,17 +147,18 @@ class CatalogImpl implements CatalogIFOperations {
   public PartIF getPart(String partName) throws PdmError {
     PartIF partIF = null;
 
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginReadTrx();
-	Part part = catalog.getPart(partName);
-	partIF = LayerMediator.getPartIF(part);
-        DBManager.commitTrx();
-      } catch (Exception e) {
-
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
-      }
+    DBManager.lockRead(catalog);
+    try {
+      DBManager.beginReadTrx();
+      Part part = catalog.getPart(partName);
+      partIF = LayerMediator.getPartIF(part);
+      DBManager.commitTrx();
+    } catch (Exception e) {
+
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
     return partIF;
   }
@@ -168,21 +175,20 @@ class CatalogImpl implements CatalogIFOperations {
   public PartData getPartData(String partName) throws PdmError {
     PartData partData = null;
 
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginReadTrx();
-	Part part = catalog.getPart(partName);
-	if (part == null) return null;
-
-	partData = PartImpl.toPartData(part);
+    DBManager.lockReadAll();
+    try {
+      DBManager.beginReadTrx();
+      Part part = catalog.getPart(partName);
+      if (part != null) partData = PartImpl.toPartData(part);
 
-        DBManager.commitTrx();
+      DBManager.commitTrx();
 
-      } catch (Exception e) {
+    } catch (Exception e) {
 
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
-      }
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
     return partData;
   }
@@ -196,18 +202,19 @@ class CatalogImpl implements CatalogIFOperations {
   public boolean contains(PartIF partIF) {
     boolean result = false;
     
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginReadTrx();
-	Part part = LayerMediator.getPart(partIF);
-	result = catalog.contains(part);
-	DBManager.commitTrx();
+    DBManager.lockRead(catalog);
+    try {
+      DBManager.beginReadTrx();
+      Part part = LayerMediator.getPart(partIF);
+      result = catalog.contains(part);
+      DBManager.commitTrx();
 	
-      } catch (Exception e) {
+    } catch (Exception e) {
 
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
-      }
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
     return result;
   }
@@ -218,16 +225,17 @@ class CatalogImpl implements CatalogIFOperations {
    * @param name	the name of the catalog
    */
   public void setName(String name) {
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginUpdateTrx();
-	catalog.setName(name);
-        DBManager.commitTrx();
-
-      } catch (Exception e) {
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
-      }
+    DBManager.lockWrite(catalog);
+    try {
+      DBManager.beginUpdateTrx();
+      catalog.setName(name);
+      DBManager.commitTrx();
+
+    } catch (Exception e) {
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
   }
 
@@ -254,23 +262,24 @@ class CatalogImpl implements CatalogIFOperations {
     if (attributes == null) attributes = new AttributeData[0];
     if (components == null) components = new PartData[0];
 
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginUpdateTrx();
+    DBManager.lockWrite(catalog);
+    try {
+      DBManager.beginUpdateTrx();
 
-	// use the static operation in PartImpl
-	Part part = PartImpl.createPart(name, attributes, components);
+      // use the static operation in PartImpl
+      Part part = PartImpl.createPart(name, attributes, components);
 
-	partIF = LayerMediator.getPartIF(part);
-	catalog.addPart(part);
+      partIF = LayerMediator.getPartIF(part);
+      catalog.addPart(part);
 
-        DBManager.commitTrx();
+      DBManager.commitTrx();
 
-      } catch (Exception e) {
+    } catch (Exception e) {
 
-        DBManager.handleTrxError(e);
-	throw new PdmError(e.getMessage());
-      }
+      DBManager.handleTrxError(e);
+      throw new PdmError(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
     return partIF;
   }
@@ -282,16 +291,17 @@ class CatalogImpl implements CatalogIFOperations {
    * @exception PdmError if the part is not found or transaction error occurs
    */
   public void removePartByName(String partName) throws PdmError {
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginUpdateTrx();
-	catalog.removePart(partName);
-        DBManager.commitTrx();
-
-      } catch (Exception e) {
-        DBManager.handleTrxError(e);
-	throw new PdmError(e.getMessage());
-      }
+    DBManager.lockWrite(catalog);
+    try {
+      DBManager.beginUpdateTrx();
+      catalog.removePart(partName);
+      DBManager.commitTrx();
+
+    } catch (Exception e) {
+      DBManager.handleTrxError(e);
+      throw new PdmError(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
   }
 
@@ -302,20 +312,21 @@ class CatalogImpl implements CatalogIFOperations {
    * @exception PdmError if the part is not found or transaction error occurs
    */
   public void removePart(PartIF partIF) throws PdmError {
-    synchronized (DBManager.TOKEN) {
+    DBManager.lockWrite(catalog);
+    try {
+      DBManager.beginUpdateTrx();
       try {
-        DBManager.beginUpdateTrx();
-	try {
-  	  catalog.removePart(LayerMediator.getPart(partIF));
-	} catch (Exception e1) {
-	  throw new PdmError(e1.getMessage());
-	}
-        DBManager.commitTrx();
-
-      } catch (Exception e) {
-        DBManager.handleTrxError(e);
-	throw new PdmError(e.getMessage());
+	catalog.removePart(LayerMediator.getPart(partIF));
+      } catch (Exception e1) {
+	throw new PdmError(e1.getMessage());
       }
+      DBManager.commitTrx();
+
+    } catch (Exception e) {
+      DBManager.handleTrxError(e);
+      throw new PdmError(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
   }
 
@@ -323,18 +334,42 @@ class CatalogImpl implements CatalogIFOperations {
    * Remove the all the parts.
    */
   public void removeAllParts() {
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginUpdateTrx();
-	catalog.removeAllParts();
-        DBManager.commitTrx();
+    DBManager.lockWrite(catalog);
+    try {
+      DBManager.beginUpdateTrx();
+      catalog.removeAllParts();
+      DBManager.commitTrx();
+
+    } catch (Exception e) {
+
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
+    }
+  }
 
-      } catch (Exception e) {
 
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
-      }
-    }
+  /**
+   * Begins a read session.  The get operations of all the servants
+   * called until it ends share one read transaction, instead of
+   * beginning one each.  Updates wait until the session ends.
+   *
+   * @param timeout	time in ms after which the session ends by itself,
+   *		at most DBManager.MAX_READ_SESSION
+   * @return id of the session, for endReadSession
+   */
+  public int beginReadSession(int timeout) {
+    return DBManager.beginReadSession(timeout);
+  }
+
+  /**
+   * Ends a read session.  Does nothing if it has ended.
+   *
+   * @param session	id of the session
+   */
+  public void endReadSession(int session) {
+    DBManager.endReadSession(session);
   }
 
 
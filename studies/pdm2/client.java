@@ -14,6 +14,9 @@ import pdm.*;  // from pdm.idl
 
 public class Client {
 
+  /** Timeout of the read sessions, in ms. */
+  final static int READ_SESSION_TIMEOUT = 2000;
+
   static CatalogIF manager;
 
   public static void main(String args[])  {
@@ -118,11 +121,17 @@ public class Client {
 	}
 
         else if ("getparts".startsWith(command)) {
-	  PartIF[] ps = o.getParts();
-	  show("All parts in catalog: " + o.getName());
-	  for (int i=0; i<ps.length; i++) {
-	    PartIF p = ps[i];
-	    showPart( p );
+	  // many small calls, so read them in one read session
+	  int session = o.beginReadSession(READ_SESSION_TIMEOUT);
+	  try {
+	    PartIF[] ps = o.getParts();
+	    show("All parts in catalog: " + o.getName());
+	    for (int i=0; i<ps.length; i++) {
+	      PartIF p = ps[i];
+	      showPart( p );
+	    }
+	  } finally {
+	    o.endReadSession(session);
 	  }
 	}
 
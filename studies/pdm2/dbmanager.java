@@ -9,6 +9,11 @@
  */
 //*************************************************************************
 
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.Iterator;
+import java.util.Vector;
+
 import COM.odi.Transaction;
 import COM.odi.Session;
 
@@ -17,16 +22,71 @@ import COM.odi.util.*;
 
 /**
  * This class provides static methods to open and close a database file etc.
+ * <P>
+ * It also locks the objects used by concurrent threads, e.g. the
+ * requests of the clients of a server.  A request locks the objects
+ * it reads or updates, begins a transaction, and unlocks them after
+ * it ends the transaction:
+ * <PRE>
+ *     DBManager.lockWrite(part);
+ *     try {
+ *        DBManager.beginUpdateTrx();
+ *        ...
+ *        DBManager.commitTrx();
+ *     } catch (Exception e) {
+ *        DBManager.handleTrxError(e);
+ *     } finally {
+ *        DBManager.unlock();
+ *     }
+ * </PRE>
+ * A lock on an object covers only its own fields and those of the
+ * objects it alone refers to, such as its vectors.
  */
 public class DBManager {
 
-  /** A dummy token object used as a synchronization lock. */
-  public static Object TOKEN = new Object();
+  /** Lock modes of the root: intention shared, intention exclusive,
+      shared and exclusive.  The objects are locked in S or X mode. */
+  private final static int IS = 0, IX = 1, S = 2, X = 3;
+
+  /** The longest time of a read session in ms.  Updates may wait
+      for a session that long. */
+  public final static long MAX_READ_SESSION = 2000;
+
+  /** Number of stripes of the object locks. */
+  private final static int STRIPES = 64;
 
   private static Database smDb;      // Database
   private static Object smDbRoot;    // DB root object
   private static Session  smSession; // Active session for OS.
 
+  // Locks: one for the whole database, and the stripes for the objects.
+  private static GranularLock smRootLock = new GranularLock();
+  private static GranularLock[] smStripes = new GranularLock[STRIPES];
+  private static boolean smObjectLocking = true;
+  private static ThreadLocal<LockSet> smHeld = new ThreadLocal<LockSet>();
+
+  // The transaction shared by the threads, see beginReadTrx.
+  private static Object smTrxLock = new Object();
+  private static Vector<Member> smMembers = new Vector<Member>();  // threads in it
+  private static int smPresent;      // threads that have not left it
+  private static boolean smUpdate;   // the transaction is an update
+  private static boolean smClosed;   // no more threads may join it
+  private static boolean smFailed;   // it must be aborted
+  private static int smWriters;      // threads waiting to update
+  private static ThreadLocal<Member> smJoined = new ThreadLocal<Member>();
+  private static long smTrxCount;    // transactions begun
+
+  // The read sessions, see beginReadSession.
+  private static Hashtable<Integer, ReadSession> smReadSessions
+     = new Hashtable<Integer, ReadSession>();
+  private static int smLastSession;  // id of the last one
+
+  private static TrxStats smStats = new TrxStats();  // see getStats
+
+  static {
+     for (int i=0; i<STRIPES; i++) smStripes[i] = new GranularLock();
+  }
+
   /**
    * Open a database file or create it if not found.
    * Also setup the database root or create it if not found.
@@ -71,6 +131,7 @@ public class DBManager {
    * @return    None
    */
   public static void shutdown() {
+     endReadSessions();
      closeDb();
      if (smSession != null) {
 	smSession.terminate();
@@ -88,8 +149,185 @@ public class DBManager {
      smDb = null;
   }
 
+  /********** Locking *************/
+
+  /**
+   * Lock an object for reading.  The threads may read the same
+   * objects at the same time, but not while one of them updates it
+   * or the whole database.  A thread locks what it needs before it
+   * begins the transaction, and unlocks it after the transaction ends.
+   * If the thread already holds locks, the call has no effect, but
+   * they must cover what it needs: a thread that holds read locks
+   * cannot lock for update.
+   *
+   * @param o	the object, e.g. a catalog or part
+   */
+  public static void lockRead(Object o) {
+     lock(new Object[] { o }, false);
+  }
+
+  /**
+   * Lock an object for update.  Other threads may use other objects
+   * at the same time.  See lockRead.
+   *
+   * @param o	the object, e.g. a catalog or part
+   */
+  public static void lockWrite(Object o) {
+     lock(new Object[] { o }, true);
+  }
+
+  /**
+   * Lock objects for update.  The objects are locked in a fixed
+   * order, so that two threads cannot wait for each other.
+   * See lockRead.
+   *
+   * @param objects	the objects
+   */
+  public static void lockWrite(Object[] objects) {
+     lock(objects, true);
+  }
+
+  /**
+   * Lock the whole database for reading, e.g. to follow references
+   * to objects not locked by lockRead.  See lockRead.
+   */
+  public static void lockReadAll() {
+     lock(null, false);
+  }
+
+  /**
+   * Lock the whole database for update, e.g. to change the keys of
+   * an index.  No other thread may use the database meanwhile.
+   * See lockRead.
+   */
+  public static void lockWriteAll() {
+     lock(null, true);
+  }
+
+  /**
+   * Release the locks of the current thread.  Do nothing if it
+   * holds none, or if they were locked by an outer call.
+   */
+  public static void unlock() {
+     LockSet held = smHeld.get();
+     if (held == null) return;
+     if (held.depth > 0) {
+	held.depth--;
+	return;
+     }
+     for (int i=held.stripes.length-1; i>=0; i--)
+	smStripes[held.stripes[i]].unlock(held.mode == IX ? X : S);
+     smRootLock.unlock(held.mode);
+     smHeld.set(null);
+  }
+
+  /**
+   * Choose whether objects are locked one by one, which is the
+   * default.  If not, every lock is for the whole database, so that
+   * the threads run one at a time.  Must not be called while a
+   * thread holds locks.
+   *
+   * @param on	true to lock objects, false for the whole database
+   */
+  public static void setObjectLocking(boolean on) {
+     smObjectLocking = on;
+  }
+
+  /**
+   * Lock objects, or the whole database if they are null.  The root
+   * is always locked first, and then the stripes of the objects in
+   * ascending order.
+   *
+   * @exception ObjectStoreException if the thread holds locks that
+   *		do not cover the objects
+   */
+  private static void lock(Object[] objects, boolean write) {
+     LockSet held = smHeld.get();
+     if (held != null) {
+	// The locks cannot be raised: two threads that raise their read
+	// locks would wait for each other.
+	if (!covers(held, objects, write))
+	   throw new ObjectStoreException(write
+		? "The thread holds no update lock on the objects"
+		: "The thread holds no lock on the objects");
+	held.depth++;
+	return;
+     }
+     held = new LockSet();
+     if (objects == null || !smObjectLocking) {
+	held.mode = write ? X : S;
+	held.stripes = new int[0];
+     } else {
+	held.mode = write ? IX : IS;
+	if (objects.length == 1) {
+	   held.stripes = new int[] { stripe(objects[0]) };
+	} else {
+	   boolean[] used = new boolean[STRIPES];
+	   int n = 0;
+	   for (int i=0; i<objects.length; i++) {
+	      int k = stripe(objects[i]);
+	      if (!used[k]) n++;
+	      used[k] = true;
+	   }
+	   held.stripes = new int[n];
+	   for (int k=0, i=0; k<STRIPES; k++)
+	      if (used[k]) held.stripes[i++] = k;
+	}
+     }
+     // A thread that waits for read sessions ends them at their timeout.
+     while (!smRootLock.lock(held.mode, expireReadSessions()))
+	;
+     for (int i=0; i<held.stripes.length; i++)
+	smStripes[held.stripes[i]].lock(write ? X : S);
+     smHeld.set(held);
+  }
+
+  /**
+   * Return true if the locks of a thread cover the input objects,
+   * or the whole database if they are null.
+   */
+  private static boolean covers(LockSet held, Object[] objects,
+				boolean write) {
+     if (held.mode == X) return true;
+     if (write && held.mode != IX) return false;
+     if (held.mode == S) return true;
+     if (objects == null) return false;
+     for (int i=0; i<objects.length; i++)
+	if (Arrays.binarySearch(held.stripes, stripe(objects[i])) < 0)
+	   return false;
+     return true;
+  }
+
+  /**
+   * Return the stripe of the lock of an object.
+   */
+  private static int stripe(Object o) {
+     return (System.identityHashCode(o) & 0x7fffffff) % STRIPES;
+  }
+
   /********** Transaction handling *************/
 
+  /*
+   * All threads of a session share its transaction.  A thread joins
+   * the transaction in progress if it is of the same type, or else
+   * waits for it to end; a reader may also join an update.  The
+   * transaction ends when its last thread leaves it, so the updates
+   * of threads that overlap are committed together.  A thread that
+   * updates waits in commitTrx for the commit, and no more threads
+   * may join after it.
+   *
+   * The transaction can only be aborted as a whole.  So a thread that
+   * fails before it changes anything, e.g. because an object it is
+   * asked to remove is not there, leaves the transaction with
+   * cancelTrx, and the updates of the other threads are committed.
+   * Only if a thread aborts after it may have changed objects is the
+   * whole transaction aborted, and the other updates fail in commitTrx.
+   *
+   * A thread must hold its locks before it begins a transaction, and
+   * release them after it commits or aborts.  Then it does not wait
+   * for another thread while it is in the transaction.
+   */
+
   /**
    * Open a read-only database transaction.  Do nothing if database
    * not opened.
@@ -98,7 +336,9 @@ public class DBManager {
      if (smDb == null) return;
      // Join the current thread to the current database session.
      connectCurrentThread();
-     Transaction.begin(ObjectStore.READONLY);
+     long start = TrxStats.start();
+     join(false);
+     smStats.record(TrxStats.BEGIN_READ, start);
   }
 
   /**
@@ -108,26 +348,303 @@ public class DBManager {
   public static void beginUpdateTrx() {
      if (smDb == null) return;
      connectCurrentThread();
-     Transaction.begin(ObjectStore.UPDATE);
+     long start = TrxStats.start();
+     join(true);
+     smStats.record(TrxStats.BEGIN_UPDATE, start);
   }
 
   /**
    * Abort a database transaction.  Do nothing if database
-   * not opened.
+   * not opened.  The transaction is aborted when the other threads
+   * in it leave.
    */
   public static void abortTrx() {
      if (smDb == null) return;
-     if (Transaction.inTransaction())
-	Transaction.current().abort(ObjectStore.RETAIN_HOLLOW);
+     if (smJoined.get() == null) return;
+     long start = TrxStats.start();
+     leave(false, true);
+     smStats.record(TrxStats.ABORT, start);
+  }
+
+  /**
+   * Leave a database transaction in which the current thread has not
+   * changed anything, e.g. after a check of its input fails.  Unlike
+   * abortTrx, the transaction goes on for the other threads in it.
+   * Do nothing if database not opened.
+   */
+  public static void cancelTrx() {
+     if (smDb == null) return;
+     if (smJoined.get() == null) return;
+     long start = TrxStats.start();
+     leave(false, false);
+     smStats.record(TrxStats.ABORT, start);
   }
 
   /**
    * Commit a database transaction.  Do nothing if database
    * not opened.
+   *
+   * @exception ObjectStoreException if the transaction is aborted
    */
   public static void commitTrx() {
      if (smDb == null) return;
-     Transaction.current().commit(ObjectStore.RETAIN_READONLY);
+     Member m = smJoined.get();
+     if (m == null)
+	throw new ObjectStoreException("No transaction is in progress");
+     long start = TrxStats.start();
+     try {
+	leave(true, true);
+     } finally {
+	smStats.record(m.update ? TrxStats.COMMIT_UPDATE
+			: TrxStats.COMMIT_READ, start);
+     }
+  }
+
+  /**
+   * Join the current thread to the transaction in progress, or begin
+   * one.
+   */
+  private static void join(boolean update) {
+     Member m = smJoined.get();
+     if (m != null) {
+	if (update && !m.update)
+	   throw new ObjectStoreException("The thread is in a read-only transaction");
+	m.depth++;
+	return;
+     }
+     m = new Member(update);
+     boolean interrupted = false;
+     synchronized (smTrxLock) {
+	if (update) smWriters++;
+	try {
+	   // Readers give way to the threads waiting to update.
+	   while (smClosed || smPresent > 0 && !smUpdate
+		  && (update || smWriters > 0))
+	      interrupted |= waitFor(smTrxLock);
+	} finally {
+	   if (update) smWriters--;
+	}
+	if (smPresent == 0) begin(update);
+	smMembers.addElement(m);
+	smPresent++;
+     }
+     smJoined.set(m);
+     if (interrupted) Thread.currentThread().interrupt();
+  }
+
+  /**
+   * Remove the current thread from the transaction.  The last thread
+   * ends it; a thread that updates waits for that.
+   *
+   * @param commit	false to abort or cancel the transaction
+   * @param changed	false if the thread has not changed anything
+   * @exception ObjectStoreException if the update is not committed
+   */
+  private static void leave(boolean commit, boolean changed) {
+     Member m = smJoined.get();
+     if (m.depth > 0) {
+	m.depth--;
+	if (!commit && changed) m.failed = true;
+	return;
+     }
+     smJoined.set(null);
+     boolean interrupted = false;
+     synchronized (smTrxLock) {
+	// Only an update can spoil the transaction.  Its changes must
+	// not be seen by threads that join later.
+	if (m.update && changed) {
+	   if (!commit || m.failed) smFailed = true;
+	   smClosed = true;
+	}
+	if (--smPresent == 0) {
+	   end();
+	} else if (m.update && commit) {
+	   while (!m.ended) interrupted |= waitFor(smTrxLock);
+	}
+     }
+     if (interrupted) Thread.currentThread().interrupt();
+     if (m.update && commit && m.failed)
+	throw new ObjectStoreException("The transaction is aborted");
+  }
+
+  /**
+   * Begin the shared transaction.  Called with smTrxLock held.
+   */
+  private static void begin(boolean update) {
+     Transaction.begin(update ? ObjectStore.UPDATE : ObjectStore.READONLY);
+     smUpdate = update;
+     smFailed = false;
+     smTrxCount++;
+  }
+
+  /**
+   * Return the number of database transactions begun so far.  The
+   * threads that share a transaction count as one.
+   */
+  public static long getTransactionCount() {
+     synchronized (smTrxLock) {
+	return smTrxCount;
+     }
+  }
+
+  /**
+   * Commit or abort the transaction, and tell its threads.
+   */
+  private static void end() {
+     boolean ok = !smFailed;
+     try {
+	if (ok && smUpdate) {
+	   // the size of an update is the number of threads in it
+	   int n = 0;
+	   for (int i=0; i<smMembers.size(); i++)
+	      if (smMembers.elementAt(i).update) n++;
+	   smStats.recordValue(TrxStats.COMMIT_SIZE, n);
+	}
+	if (ok)
+	   Transaction.current().commit(ObjectStore.RETAIN_READONLY);
+	else
+	   Transaction.current().abort(ObjectStore.RETAIN_HOLLOW);
+     } catch (ObjectStoreException e) {
+	// A failed commit is aborted.
+	if (Transaction.inTransaction())
+	   Transaction.current().abort(ObjectStore.RETAIN_HOLLOW);
+	System.out.println(e.toString());
+	ok = false;
+     } finally {
+	Member[] members = new Member[smMembers.size()];
+	smMembers.copyInto(members);
+	smMembers.removeAllElements();
+	for (int i=0; i<members.length; i++) {
+	   members[i].ended = true;
+	   if (!ok) members[i].failed = true;
+	}
+	smClosed = false;
+	smTrxLock.notifyAll();
+     }
+  }
+
+  /**
+   * Wait for a notification on an object, whose monitor the current
+   * thread owns.
+   *
+   * @return true if the thread was interrupted, which the caller
+   *		should set again when it is done waiting
+   */
+  private static boolean waitFor(Object o) {
+     try {
+	o.wait();
+	return false;
+     } catch (InterruptedException e) {
+	return true;
+     }
+  }
+
+  /********** Read sessions *************/
+
+  /**
+   * Begin a read session, so that a client can make many calls that
+   * read in one transaction.  Until the session ends, the read-only
+   * transaction is kept open, and the calls join it instead of
+   * beginning their own.  Updates wait until all read sessions end,
+   * so a session ends by itself after the timeout: the threads that
+   * wait for it end it then.  A read session does not wait for other
+   * ones, but it waits for the updates in progress or waiting.
+   *
+   * @param timeout	time in ms after which the session ends, at most
+   *		MAX_READ_SESSION
+   * @return id of the session, 0 if database not opened
+   */
+  public static int beginReadSession(long timeout) {
+     if (smDb == null) return 0;
+     connectCurrentThread();
+     expireReadSessions();
+     timeout = Math.max(1, Math.min(timeout, MAX_READ_SESSION));
+
+     // Lock the whole database for reading first, like any reader.
+     smRootLock.lockSession();
+     ReadSession rs = new ReadSession();
+     boolean interrupted = false;
+     synchronized (smTrxLock) {
+	while (smClosed || smPresent > 0 && smUpdate)
+	   interrupted |= waitFor(smTrxLock);
+	if (smPresent == 0) begin(false);
+	smMembers.addElement(rs.member);
+	smPresent++;
+	rs.id = ++smLastSession;
+	rs.until = System.currentTimeMillis() + timeout;
+	smReadSessions.put(Integer.valueOf(rs.id), rs);
+     }
+     if (interrupted) Thread.currentThread().interrupt();
+     return rs.id;
+  }
+
+  /**
+   * End a read session.  Do nothing if it has ended.
+   *
+   * @param id	id of the session
+   * @return true if it was ended now, false if it had ended
+   */
+  public static boolean endReadSession(int id) {
+     synchronized (smTrxLock) {
+	if (smReadSessions.remove(Integer.valueOf(id)) == null) return false;
+	connectCurrentThread();
+	if (--smPresent == 0) end();
+     }
+     smRootLock.unlockSession();
+     return true;
+  }
+
+  /**
+   * End the read sessions that have timed out.  It is called by the
+   * threads that lock before they wait for the sessions, so that a
+   * session is ended by a thread that uses the database, rather than
+   * by a timer.
+   *
+   * @return the time at which the next session times out, 0 if none
+   */
+  private static long expireReadSessions() {
+     if (smReadSessions.isEmpty()) return 0;
+     Vector<Integer> ids = new Vector<Integer>();
+     long next = 0;
+     synchronized (smTrxLock) {
+	long now = System.currentTimeMillis();
+	Iterator<ReadSession> i = smReadSessions.values().iterator();
+	while (i.hasNext()) {
+	   ReadSession rs = i.next();
+	   if (rs.until <= now) ids.addElement(Integer.valueOf(rs.id));
+	   else if (next == 0 || rs.until < next) next = rs.until;
+	}
+     }
+     for (int i=0; i<ids.size(); i++) {
+	int id = ids.elementAt(i).intValue();
+	if (endReadSession(id))
+	   System.out.println("Read session " + id + " timed out");
+     }
+     return next;
+  }
+
+  /**
+   * End all read sessions.
+   */
+  private static void endReadSessions() {
+     Integer[] ids;
+     synchronized (smTrxLock) {
+	ids = smReadSessions.keySet().toArray(new Integer[0]);
+     }
+     for (int i=0; i<ids.length; i++)
+	endReadSession(ids[i].intValue());
+  }
+
+  /**
+   * Return the statistics of the transactions: the time of each kind
+   * of begin, commit and abort, of the waits for locks that are held,
+   * and the number of threads whose updates each commit holds.  Call snapshot on it
+   * for a copy that does not change.
+   *
+   * @return the statistics
+   */
+  public static TrxStats getStats() {
+     return smStats;
   }
 
   /**
@@ -165,13 +682,18 @@ public class DBManager {
 
   /**
    * Handle an exception thrown in any of the above methods:
-   * 1. Abort the current database transaction, if any.
+   * 1. Leave the current database transaction, if any.  A checked
+   *    exception is thrown by the methods of the objects before they
+   *    change anything, so the transaction is cancelled (see
+   *    cancelTrx); otherwise it is aborted.  The locks of the thread
+   *    are kept until it calls unlock.
    * 2. Show the exception message
    *
    * @return    none
    */
   public static void handleTrxError(Exception e) {
-     DBManager.abortTrx();
+     if (e instanceof RuntimeException) DBManager.abortTrx();
+     else DBManager.cancelTrx();
      System.out.println(e.toString());
   }
 
@@ -195,8 +717,8 @@ public class DBManager {
 
        // Create the database root.
        try {
-	 Class c = Class.forName(dbRootClassName);
-	 smDbRoot = c.newInstance();
+	 Class<?> c = Class.forName(dbRootClassName);
+	 smDbRoot = c.getDeclaredConstructor().newInstance();
        } catch (Exception e2) {
 	 System.out.println(e2);
        }
@@ -207,4 +729,141 @@ public class DBManager {
      tr.commit(ObjectStore.RETAIN_HOLLOW);
   }
 
+
+  /**
+   * The locks held by a thread.
+   */
+  private static class LockSet {
+     int mode;       // mode of the root lock
+     int[] stripes;  // the stripes locked, in ascending order
+     int depth;      // number of nested lock calls
+  }
+
+  /**
+   * A thread in the shared transaction.
+   */
+  private static class Member {
+     boolean update;  // the thread may update
+     boolean ended;   // the transaction has ended
+     boolean failed;  // it was aborted
+     int depth;       // number of nested transactions
+
+     Member(boolean update) {
+	this.update = update;
+     }
+  }
+
+  /**
+   * A read session, see beginReadSession.
+   */
+  private static class ReadSession {
+     int id;
+     Member member = new Member(false);  // its place in the transaction
+     long until;                         // time at which it times out
+  }
+
+  /**
+   * A lock that may be held in the modes IS, IX, S and X.  IS and IX
+   * say that the holder will lock objects below it in S and X mode.
+   * A request waits while another thread holds an incompatible mode.
+   * New requests also give way to the requests for X waiting, and
+   * IX to those for S, so that none of them waits forever.
+   */
+  private static class GranularLock {
+     private int[] held = new int[4];     // holders in each mode
+     private int[] waiting = new int[4];  // threads waiting for each mode
+     private int sessions;                // read sessions among held[S]
+
+     void lock(int mode) {
+	lock(mode, 0);
+     }
+
+     /**
+      * Lock in a mode.  A request that waits for read sessions stops
+      * waiting when the time given comes, so that the caller can end
+      * the sessions that have timed out, and try again.
+      *
+      * @param mode	the mode
+      * @param until	time at which the next session times out, 0
+      *		if there was none
+      * @return true if locked, false if the wait was stopped
+      */
+     synchronized boolean lock(int mode, long until) {
+	boolean interrupted = false;
+	boolean granted = true;
+	waiting[mode]++;
+	if (!grantable(mode)) {
+	   long start = TrxStats.startWait();  // only real waits count
+	   do {
+	      if (sessions > 0 && until == 0)  // a session still beginning
+		 until = System.currentTimeMillis() + 10;
+	      long left = until - System.currentTimeMillis();
+	      if (sessions > 0 && left <= 0) {
+		 granted = false;
+		 break;
+	      }
+	      try {
+		 wait(sessions > 0 ? left : 0);
+	      } catch (InterruptedException e) {
+		 interrupted = true;
+	      }
+	   } while (!grantable(mode));
+	   smStats.record(TrxStats.LOCK_WAIT, start);
+	}
+	waiting[mode]--;
+	if (granted) held[mode]++;
+	else notifyAll();  // the requests that gave way to this one
+	if (interrupted) Thread.currentThread().interrupt();
+	return granted;
+     }
+
+     synchronized void unlock(int mode) {
+	held[mode]--;
+	notifyAll();
+     }
+
+     /**
+      * Lock in S mode for a read session, which may be released by
+      * another thread.  While there are sessions, the requests for
+      * IS and S do not give way to those for X, since these wait for
+      * the sessions anyway.  A session gives way to the requests for
+      * IX as well, so that the sessions cannot keep updates waiting
+      * by overlapping.
+      */
+     synchronized void lockSession() {
+	boolean interrupted = false;
+	long start = 0;
+	while (held[IX] + held[X] + waiting[IX] + waiting[X] > 0) {
+	   if (start == 0) start = TrxStats.startWait();
+	   try {
+	      wait();
+	   } catch (InterruptedException e) {
+	      interrupted = true;
+	   }
+	}
+	smStats.record(TrxStats.LOCK_WAIT, start);
+	held[S]++;
+	sessions++;
+	if (interrupted) Thread.currentThread().interrupt();
+     }
+
+     synchronized void unlockSession() {
+	sessions--;
+	unlock(S);
+     }
+
+     private boolean grantable(int mode) {
+	switch (mode) {
+	case IS:
+	   return held[X] == 0 && (waiting[X] == 0 || sessions > 0);
+	case IX:
+	   return held[S] + held[X] == 0 && waiting[S] + waiting[X] == 0;
+	case S:
+	   return held[IX] + held[X] == 0 && (waiting[X] == 0 || sessions > 0);
+	default:
+	   return held[IS] + held[IX] + held[S] + held[X] == 0;
+	}
+     }
+  }
+
 }
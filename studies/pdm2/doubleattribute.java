@@ -18,6 +18,12 @@ public class DoubleAttribute extends Attribute {
   private double value;
   private String unit;
 
+  /** 
+   * Constructs a double attribute object to be read from the database.
+   */
+  protected DoubleAttribute() {
+  }
+
   /** 
    * Constructs a double attribute object.
    *
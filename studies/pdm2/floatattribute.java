@@ -18,6 +18,12 @@ public class FloatAttribute extends Attribute {
   private float value;
   private String unit;
 
+  /** 
+   * Constructs a float attribute object to be read from the database.
+   */
+  protected FloatAttribute() {
+  }
+
   /** 
    * Constructs a float attribute object.
    *
@@ -52,14 +52,16 @@ public class LayerMediator {
   public static CatalogIF getCatalogIF(Catalog catalog) throws Exception {
     if (catalog == null) return null;
 
-    // try to find it
-    CatalogIF catalogIF = (CatalogIF) objectPairs.get(catalog);
-
-    if (catalogIF == null) {  // then create it
-      catalogIF = new _tie_CatalogIF(new CatalogImpl(catalog));
-      objectPairs.put(catalog, catalogIF);
+    // try to find it, or create it.  Threads may ask at the same time.
+    synchronized (objectPairs) {
+      CatalogIF catalogIF = (CatalogIF) objectPairs.get(catalog);
+
+      if (catalogIF == null) {  // then create it
+	catalogIF = new _tie_CatalogIF(new CatalogImpl(catalog));
+	objectPairs.put(catalog, catalogIF);
+      }
+      return catalogIF;
     }
-    return catalogIF;
   }
 
 
@@ -86,14 +88,16 @@ public class LayerMediator {
   public static PartIF getPartIF(Part part) throws Exception {
     if (part == null) return null;
 
-    // try to find it
-    PartIF partIF = (PartIF) objectPairs.get(part);
+    // try to find it, or create it.  Threads may ask at the same time.
+    synchronized (objectPairs) {
+      PartIF partIF = (PartIF) objectPairs.get(part);
 
-    if (partIF == null) {  // then create it
-      partIF = new _tie_PartIF(new PartImpl(part));
-      objectPairs.put(part, partIF);
+      if (partIF == null) {  // then create it
+	partIF = new _tie_PartIF(new PartImpl(part));
+	objectPairs.put(part, partIF);
+      }
+      return partIF;
     }
-    return partIF;
   }
 
 
@@ -121,14 +125,16 @@ public class LayerMediator {
   	throws Exception {
     if (attribute == null) return null;
 
-    // try to find it
-    AttributeIF attributeIF = (AttributeIF) objectPairs.get(attribute);
+    // try to find it, or create it.  Threads may ask at the same time.
+    synchronized (objectPairs) {
+      AttributeIF attributeIF = (AttributeIF) objectPairs.get(attribute);
 
-    if (attributeIF == null) {  // then create it
-      attributeIF = new _tie_AttributeIF(new AttributeImpl(attribute));
-      objectPairs.put(attribute, attributeIF);
+      if (attributeIF == null) {  // then create it
+	attributeIF = new _tie_AttributeIF(new AttributeImpl(attribute));
+	objectPairs.put(attribute, attributeIF);
+      }
+      return attributeIF;
     }
-    return attributeIF;
   }
 
 }
@@ -0,0 +1,196 @@
+//*************************************************************************
+/**
+ * LockBench.java - A benchmark for the locks of concurrent requests.
+ *
+ *   Copyright (C) 1998-2000 	Yun-Tung Lau
+ *   All Rights Reserved.  The contents of this file are proprietary to
+ *   the above copyright holder.
+ */
+//*************************************************************************
+
+import pdm.*;  // from pdm.idl
+
+import java.io.File;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * This class runs threads that call the servants of a catalog, as the
+ * clients of the server would, but in the same process and without
+ * the ORB.  Each call reads the attribute count of a random part and
+ * the unit of one of its attributes, or sets the value of the
+ * attribute.  It is run first with one lock for the whole database,
+ * as DBManager.TOKEN was, and then with the objects locked one by one.
+ * The calls per second, and the longest time of a call, are shown for
+ * each case.
+ * <P>
+ * Usage: java LockBench [nThreads] [seconds] [updatePercent]
+ * <P>
+ * The defaults are 8 threads, 2 seconds per case and 10% updates.
+ * The cases take turns, for half of the time each.
+ * The catalog has 200 parts with 4 attributes each.
+ */
+public class LockBench {
+
+  /** Name of the temporary database file. */
+  private final static String DB_FILE = "lockbench.odb";
+
+  /** Number of parts, and of attributes of each part. */
+  private final static int PARTS = 200, ATTRIBUTES = 4;
+
+  /** Set to stop the threads of a case. */
+  private static volatile boolean smStop;
+
+  private static PartImpl[] smParts;            // servants of the parts
+  private static AttributeImpl[][] smAttributes; // and of their attributes
+
+  /**
+   * Adds the parts to the catalog, and makes their servants.
+   *
+   * @param catalog	the catalog
+   * @exception Exception if any exception is thrown
+   */
+  public static void build(Catalog catalog) throws Exception {
+    CatalogImpl c = new CatalogImpl(catalog);
+    for (int i=0; i<PARTS; i++) {
+      AttributeData[] a = new AttributeData[ATTRIBUTES];
+      for (int k=0; k<ATTRIBUTES; k++)
+	a[k] = new AttributeData("a" + k, k, "mm");
+      c.addPart("part" + i, a, null);
+    }
+
+    smParts = new PartImpl[PARTS];
+    smAttributes = new AttributeImpl[PARTS][ATTRIBUTES];
+    DBManager.lockReadAll();
+    try {
+      DBManager.beginReadTrx();
+      List<Part> parts = catalog.getPartList();
+      for (int i=0; i<PARTS; i++) {
+	Part p = parts.get(i);
+	smParts[i] = new PartImpl(p);
+	List<Attribute> attributes = p.getAttributeList();
+	for (int k=0; k<ATTRIBUTES; k++)
+	  smAttributes[i][k] = new AttributeImpl(attributes.get(k));
+      }
+      DBManager.commitTrx();
+    } finally {
+      DBManager.unlock();
+    }
+  }
+
+  /**
+   * Runs one case.
+   *
+   * @param objectLocking	true to lock the objects one by one
+   * @param nThreads	number of threads
+   * @param millis	duration of the case
+   * @param percent	percentage of the calls that update
+   * @return reads and updates per second, and the longest call in
+   *		micro seconds
+   * @exception Exception if any exception is thrown
+   */
+  public static long[] runCase(boolean objectLocking, int nThreads,
+  	long millis, final int percent) throws Exception {
+    final long[] reads = new long[nThreads];
+    final long[] updates = new long[nThreads];
+    final long[] longest = new long[nThreads];
+    Thread[] threads = new Thread[nThreads];
+    DBManager.setObjectLocking(objectLocking);
+    smStop = false;
+
+    for (int t=0; t<nThreads; t++) {
+      final int id = t;
+      threads[t] = new Thread("Caller " + t) {
+	public void run() {
+	  Random random = new Random(id);
+	  while (!smStop) {
+	    int i = random.nextInt(PARTS);
+	    AttributeImpl a = smAttributes[i][random.nextInt(ATTRIBUTES)];
+	    long t0 = System.nanoTime();
+	    if (random.nextInt(100) < percent) {
+	      a.setValue(random.nextDouble());
+	      updates[id]++;
+	    } else {
+	      if (smParts[i].getAttributeCount() != ATTRIBUTES
+		  || !"mm".equals(a.getUnit()))
+		show("Wrong part " + i);
+	      reads[id]++;
+	    }
+	    longest[id] = Math.max(longest[id], System.nanoTime() - t0);
+	  }
+	}
+      };
+    }
+    long start = System.currentTimeMillis();
+    for (int t=0; t<nThreads; t++) threads[t].start();
+    Thread.sleep(millis);
+    smStop = true;
+    for (int t=0; t<nThreads; t++) threads[t].join();
+    long elapsed = System.currentTimeMillis() - start;
+
+    long[] result = new long[3];
+    for (int t=0; t<nThreads; t++) {
+      result[0] += reads[t];
+      result[1] += updates[t];
+      result[2] = Math.max(result[2], longest[t] / 1000);
+    }
+    result[0] = result[0] * 1000 / elapsed;
+    result[1] = result[1] * 1000 / elapsed;
+    return result;
+  }
+
+  /**
+   * Shows the input string.
+   *
+   * @s the string to be shown
+   */
+  public static void show(String s) {
+    System.out.println(s);
+  }
+
+  /**
+   * Main method for the benchmark.
+   *
+   * @exception Exception if any exception is thrown
+   */
+  public static void main(String[] args) throws Exception {
+    int nThreads = 8;
+    int seconds = 2;
+    int percent = 10;
+    if (args.length >= 1) nThreads = Integer.parseInt(args[0]);
+    if (args.length >= 2) seconds = Integer.parseInt(args[1]);
+    if (args.length >= 3) percent = Integer.parseInt(args[2]);
+
+    new File(DB_FILE).delete();
+    DBManager.initialize(DB_FILE, "Catalog");
+    build((Catalog) DBManager.getDbRoot());
+
+    show("Threads: " + nThreads + ", updates: " + percent + "%, parts: "
+    	+ PARTS + " x " + ATTRIBUTES + " attributes");
+
+    // warm up the JIT compiler first
+    runCase(false, nThreads, 1000, percent);
+    runCase(true, nThreads, 1000, percent);
+
+    // the cases take turns, so that both get the same conditions
+    long[] s = new long[3];
+    long[] t = new long[3];
+    for (int round=0; round<2; round++) {
+      long[] rs = runCase(false, nThreads, seconds * 500L, percent);
+      long[] rt = runCase(true, nThreads, seconds * 500L, percent);
+      for (int i=0; i<2; i++) {
+	s[i] += rs[i] / 2;
+	t[i] += rt[i] / 2;
+      }
+      s[2] = Math.max(s[2], rs[2]);
+      t[2] = Math.max(t[2], rt[2]);
+    }
+    show("                  reads/s   updates/s   longest call (us)");
+    show("  one lock        " + s[0] + "\t    " + s[1] + "\t\t" + s[2]);
+    show("  object locks    " + t[0] + "\t    " + t[1] + "\t\t" + t[2]);
+
+    DBManager.shutdown();
+    new File(DB_FILE).delete();
+  }
+
+}
@@ -10,14 +10,28 @@
 
 /**
  * This is a simple class with a name.  It is also serializable.
+ * <P>
+ * The keyed PVectors that hold it, i.e. look it up by name, are its
+ * holders.  When it is renamed, it tells them, so that they update
+ * their indexes.
  */
-public class NamedObject implements java.io.Serializable {
+public class NamedObject implements java.io.Serializable,
+	PVector.KeyedElement {
+
+  /** 
+   * A key extractor that returns the name of a NamedObject.  Use it
+   * to construct a PVector that looks up its elements by name.
+   */
+  public static final PVector.KeyExtractor NAME_KEY = new NameKey();
 
   /**
    * @serial name of this object
    */
   private String name;
 
+  /** The keyed vectors that hold this object.  Not persistent. */
+  private transient PVector[] holders;
+
 
   /** 
    * Constructs an object.
@@ -50,7 +64,48 @@ public class NamedObject implements java.io.Serializable {
    * @param name	the new name of this object
    */
   public void setName(String name) { 
+    String oldName = this.name;
     this.name = name; 
+    PVector[] h = getHolders();
+    for (int i=0; i<h.length; i++) h[i].keyChanged(this, oldName);
+  }
+
+  /** 
+   * Adds a keyed vector that holds this object.  Called by PVector.
+   *
+   * @param v	the vector
+   */
+  public synchronized void addHolder(PVector v) {
+    PVector[] h = getHolders();
+    PVector[] x = new PVector[h.length + 1];
+    System.arraycopy(h, 0, x, 0, h.length);
+    x[h.length] = v;
+    holders = x;
+  }
+
+  /** 
+   * Removes a keyed vector that held this object.  Called by PVector.
+   *
+   * @param v	the vector
+   */
+  public synchronized void removeHolder(PVector v) {
+    PVector[] h = getHolders();
+    for (int i=0; i<h.length; i++) {
+      if (h[i] == v) {
+        PVector[] x = new PVector[h.length - 1];
+        System.arraycopy(h, 0, x, 0, i);
+        System.arraycopy(h, i+1, x, i, h.length-i-1);
+        holders = x;
+	return;
+      }
+    }
+  }
+
+  /** 
+   * Returns the keyed vectors that hold this object.
+   */
+  private synchronized PVector[] getHolders() {
+    return holders == null ? new PVector[0] : holders;
   }
  
   /** 
@@ -62,5 +117,13 @@ public class NamedObject implements java.io.Serializable {
     return name;
   }
 
-}
+  /**
+   * A key extractor that returns the name of a NamedObject.
+   */
+  static class NameKey implements PVector.KeyExtractor {
+    public Object getKey(Object element) {
+      return ((NamedObject) element).getName();
+    }
+  }
 
+}
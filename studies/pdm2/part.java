@@ -8,7 +8,7 @@
  */
 //*************************************************************************
 
-import java.util.Enumeration;
+import java.util.List;
 
 /**
  * A class describing a part in the persistent layer.  It is serializable.
@@ -17,10 +17,16 @@ import java.util.Enumeration;
 public class Part extends NamedObject {
 
   /** A persistent enabled vector is used to contain the attributes. */
-  private PVector attributes = new PVector();
+  private PVector attributes = new PVector(NAME_KEY);
 
   /** A persistent enabled vector is used to contain the components. */
-  private PVector components = new PVector();
+  private PVector components = new PVector(NAME_KEY);
+
+  /** 
+   * Constructs a part object to be read from the database.
+   */
+  protected Part() {
+  }
 
   /** 
    * Constructs a part object.
@@ -38,11 +44,18 @@ public class Part extends NamedObject {
    *
    * @return the attributes under this part as an array
    */
-  public Attribute[] getAttributes() { 
-    Object[] o = attributes.toArray();
-    Attribute[] u = new Attribute[o.length];
-    for (int i=0; i<o.length; i++) u[i] = (Attribute)o[i];
-    return u;
+  public Attribute[] getAttributes() {
+    return (Attribute[]) attributes.toArray(new Attribute[attributes.size()]);
+  }
+
+  /**
+   * Returns a read-only list view of the attributes.  Unlike getAttributes,
+   * it does not copy the attributes.
+   *
+   * @return the attributes as a read-only list
+   */
+  public List<Attribute> getAttributeList() {
+    return attributes.asList();
   }
 
   /**
@@ -61,12 +74,7 @@ public class Part extends NamedObject {
    * @return the attribute.  Null if none matched the name.
    */
   public Attribute getAttribute(String name) {
-    Enumeration e = attributes.elements();
-    while (e.hasMoreElements()) {
-      Attribute o = (Attribute) e.nextElement();
-      if (o.getName().equals(name)) return o;
-    }
-    return null;
+    return (Attribute) attributes.getByKey(name);
   }
 
   /**
@@ -129,11 +137,18 @@ public class Part extends NamedObject {
    *
    * @return the components under this part as an array
    */
-  public Part[] getComponents() { 
-    Object[] o = components.toArray();
-    Part[] u = new Part[o.length];
-    for (int i=0; i<o.length; i++) u[i] = (Part)o[i];
-    return u;
+  public Part[] getComponents() {
+    return (Part[]) components.toArray(new Part[components.size()]);
+  }
+
+  /**
+   * Returns a read-only list view of the components.  Unlike getComponents,
+   * it does not copy the components.
+   *
+   * @return the components as a read-only list
+   */
+  public List<Part> getComponentList() {
+    return components.asList();
   }
 
   /**
@@ -152,12 +167,7 @@ public class Part extends NamedObject {
    * @return the component.  Null if none matched the name.
    */
   public Part getComponent(String name) {
-    Enumeration e = components.elements();
-    while (e.hasMoreElements()) {
-      Part o = (Part) e.nextElement();
-      if (o.getName().equals(name)) return o;
-    }
-    return null;
+    return (Part) components.getByKey(name);
   }
 
   /**
@@ -227,16 +237,16 @@ public class Part extends NamedObject {
   public String toString(boolean recursive, String lead) { 
     String s = lead + getName() + "\n";
     if (getAttributeCount() > 0) s += lead + "    Components:\n";
-    Attribute[] c = getAttributes();
-    for (int i=0; i<c.length; i++) {
-      s += lead + "      " + c[i].toString();
+    List<Attribute> c = getAttributeList();
+    for (int i=0; i<c.size(); i++) {
+      s += lead + "      " + c.get(i).toString();
     }
 
     if (!recursive) return s;
 
-    Part[] ps = getComponents();
-    for (int i=0; i<ps.length; i++) {
-      Part p = ps[i];
+    List<Part> ps = getComponentList();
+    for (int i=0; i<ps.size(); i++) {
+      Part p = ps.get(i);
       s += p.toString(true, lead+lead);
     }
 
@@ -10,6 +10,8 @@
 
 import pdm.*;  // from pdm.idl
 
+import java.util.List;
+
 /** 
  * Implementation for PartIF.  It uses Part from the persistent layer as
  * a servant class.
@@ -63,19 +65,20 @@ class PartImpl implements PartIFOperations {
   public String getName() {
     String name = null;
 
-    // Commands below may involve transaction.  We put them in
-    // a synchronized block to make threads cooperating with 
-    // each other.
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginReadTrx();
-	name = part.getName();
-        DBManager.commitTrx();
-
-      } catch (Exception e) {
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
-      }
+    // Commands below may involve transaction.  We lock the objects
+    // they use first, so that threads using other objects can run
+    // at the same time.
+    DBManager.lockRead(part);
+    try {
+      DBManager.beginReadTrx();
+      name = part.getName();
+      DBManager.commitTrx();
+
+    } catch (Exception e) {
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
     return name;
   }
@@ -86,16 +89,17 @@ class PartImpl implements PartIFOperations {
    * @param name	the name of the part
    */
   public void setName(String name) {
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginUpdateTrx();
-	part.setName(name);
-        DBManager.commitTrx();
-
-      } catch (Exception e) {
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
-      }
+    DBManager.lockWriteAll();
+    try {
+      DBManager.beginUpdateTrx();
+      part.setName(name);
+      DBManager.commitTrx();
+
+    } catch (Exception e) {
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
   }
 
@@ -104,16 +108,17 @@ class PartImpl implements PartIFOperations {
   /** Returns the number of attributes in the part. */
   public int getAttributeCount() {
     int count = 0;
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginReadTrx();
-	count = part.getAttributeCount();
-        DBManager.commitTrx();
-
-      } catch (Exception e) {
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
-      }
+    DBManager.lockRead(part);
+    try {
+      DBManager.beginReadTrx();
+      count = part.getAttributeCount();
+      DBManager.commitTrx();
+
+    } catch (Exception e) {
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
     return count;
   }
@@ -122,20 +127,21 @@ class PartImpl implements PartIFOperations {
   public AttributeIF[] getAttributes() {
     AttributeIF[] attributeIFs = null;
 
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginReadTrx();
-	Attribute[] attributes = part.getAttributes();
-	attributeIFs = new AttributeIF[attributes.length];
-	for (int i=0; i<attributes.length; i++) {
-  	  attributeIFs[i] = LayerMediator.getAttributeIF(attributes[i]);
-        }
-        DBManager.commitTrx();
-
-      } catch (Exception e) {
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
+    DBManager.lockRead(part);
+    try {
+      DBManager.beginReadTrx();
+      List<Attribute> attributes = part.getAttributeList();
+      attributeIFs = new AttributeIF[attributes.size()];
+      for (int i=0; i<attributes.size(); i++) {
+	attributeIFs[i] = LayerMediator.getAttributeIF(attributes.get(i));
       }
+      DBManager.commitTrx();
+
+    } catch (Exception e) {
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
     return attributeIFs;
   }
@@ -147,20 +153,21 @@ class PartImpl implements PartIFOperations {
   public AttributeData[] getAttributeDatas() {
     AttributeData[] pDatas = null;
 
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginReadTrx();
-	Attribute[] attributes = part.getAttributes();
-	pDatas = new AttributeData[attributes.length];
-	for (int i=0; i<attributes.length; i++) {
-  	  pDatas[i] = AttributeImpl.toAttributeData(attributes[i]);
-        }
-        DBManager.commitTrx();
-
-      } catch (Exception e) {
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
+    DBManager.lockReadAll();
+    try {
+      DBManager.beginReadTrx();
+      List<Attribute> attributes = part.getAttributeList();
+      pDatas = new AttributeData[attributes.size()];
+      for (int i=0; i<attributes.size(); i++) {
+	pDatas[i] = AttributeImpl.toAttributeData(attributes.get(i));
       }
+      DBManager.commitTrx();
+
+    } catch (Exception e) {
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
     return pDatas;
   }
@@ -176,17 +183,18 @@ class PartImpl implements PartIFOperations {
   public AttributeIF getAttribute(String attributeName) throws PdmError {
     AttributeIF attributeIF = null;
 
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginReadTrx();
-	Attribute attribute = part.getAttribute(attributeName);
-	attributeIF = LayerMediator.getAttributeIF(attribute);
-        DBManager.commitTrx();
-      } catch (Exception e) {
-
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
-      }
+    DBManager.lockRead(part);
+    try {
+      DBManager.beginReadTrx();
+      Attribute attribute = part.getAttribute(attributeName);
+      attributeIF = LayerMediator.getAttributeIF(attribute);
+      DBManager.commitTrx();
+    } catch (Exception e) {
+
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
     return attributeIF;
   }
@@ -203,19 +211,20 @@ class PartImpl implements PartIFOperations {
   public AttributeData getAttributeData(String attributeName) throws PdmError {
     AttributeData attributeData = null;
 
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginReadTrx();
-	Attribute attribute = part.getAttribute(attributeName);
-	if (attribute == null) return null;
+    DBManager.lockReadAll();
+    try {
+      DBManager.beginReadTrx();
+      Attribute attribute = part.getAttribute(attributeName);
+      if (attribute != null)
 	attributeData = AttributeImpl.toAttributeData(attribute);
-        DBManager.commitTrx();
+      DBManager.commitTrx();
 
-      } catch (Exception e) {
+    } catch (Exception e) {
 
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
-      }
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
     return attributeData;
   }
@@ -229,17 +238,18 @@ class PartImpl implements PartIFOperations {
   public boolean containsAttribute(AttributeIF attributeIF) {
     boolean result = false;
     
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginReadTrx();
-	Attribute attribute = LayerMediator.getAttribute(attributeIF);
-	result = part.contains(attribute);
-	DBManager.commitTrx();
-      } catch (Exception e) {
-
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
-      }
+    DBManager.lockRead(part);
+    try {
+      DBManager.beginReadTrx();
+      Attribute attribute = LayerMediator.getAttribute(attributeIF);
+      result = part.contains(attribute);
+      DBManager.commitTrx();
+    } catch (Exception e) {
+
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
     return result;
   }
@@ -258,22 +268,23 @@ class PartImpl implements PartIFOperations {
   			String unit)  throws PdmError {
     AttributeIF attributeIF = null;
 
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginUpdateTrx();
+    DBManager.lockWrite(part);
+    try {
+      DBManager.beginUpdateTrx();
 
-	DoubleAttribute attribute
-	  = new DoubleAttribute(name, value, unit);
-	part.addAttribute(attribute);
-	attributeIF = LayerMediator.getAttributeIF(attribute);
+      DoubleAttribute attribute
+	= new DoubleAttribute(name, value, unit);
+      attributeIF = LayerMediator.getAttributeIF(attribute);
+      part.addAttribute(attribute);
 
-        DBManager.commitTrx();
+      DBManager.commitTrx();
 
-      } catch (Exception e) {
+    } catch (Exception e) {
 
-        DBManager.handleTrxError(e);
-	throw new PdmError(e.getMessage());
-      }
+      DBManager.handleTrxError(e);
+      throw new PdmError(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
     return attributeIF;
   }
@@ -285,17 +296,18 @@ class PartImpl implements PartIFOperations {
    * @exception PdmError if the attribute is not found or transaction error occurs
    */
   public void removeAttributeByName(String attributeName) throws PdmError {
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginUpdateTrx();
-	part.removeAttribute(attributeName);
-        DBManager.commitTrx();
-
-      } catch (Exception e) {
-
-        DBManager.handleTrxError(e);
-	throw new PdmError(e.getMessage());
-      }
+    DBManager.lockWrite(part);
+    try {
+      DBManager.beginUpdateTrx();
+      part.removeAttribute(attributeName);
+      DBManager.commitTrx();
+
+    } catch (Exception e) {
+
+      DBManager.handleTrxError(e);
+      throw new PdmError(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
   }
 
@@ -306,17 +318,18 @@ class PartImpl implements PartIFOperations {
    * @exception PdmError if the attribute is not found or transaction error occurs
    */
   public void removeAttribute(AttributeIF attributeIF) throws PdmError {
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginUpdateTrx();
-	part.removeAttribute(LayerMediator.getAttribute(attributeIF));
-        DBManager.commitTrx();
-
-      } catch (Exception e) {
-
-        DBManager.handleTrxError(e);
-	throw new PdmError(e.getMessage());
-      }
+    DBManager.lockWrite(part);
+    try {
+      DBManager.beginUpdateTrx();
+      part.removeAttribute(LayerMediator.getAttribute(attributeIF));
+      DBManager.commitTrx();
+
+    } catch (Exception e) {
+
+      DBManager.handleTrxError(e);
+      throw new PdmError(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
   }
 
@@ -324,17 +337,18 @@ class PartImpl implements PartIFOperations {
    * Remove the all the attributes.
    */
   public void removeAllAttributes() {
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginUpdateTrx();
-	part.removeAllAttributes();
-        DBManager.commitTrx();
-
-      } catch (Exception e) {
-
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
-      }
+    DBManager.lockWrite(part);
+    try {
+      DBManager.beginUpdateTrx();
+      part.removeAllAttributes();
+      DBManager.commitTrx();
+
+    } catch (Exception e) {
+
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
   }
 
@@ -344,17 +358,18 @@ class PartImpl implements PartIFOperations {
   /** Returns the number of components in the part. */
   public int getComponentCount() {
     int count = 0;
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginReadTrx();
-	count = part.getComponentCount();
-
-        DBManager.commitTrx();
-
-      } catch (Exception e) {
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
-      }
+    DBManager.lockRead(part);
+    try {
+      DBManager.beginReadTrx();
+      count = part.getComponentCount();
+
+      DBManager.commitTrx();
+
+    } catch (Exception e) {
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
     return count;
   }
@@ -363,20 +378,21 @@ class PartImpl implements PartIFOperations {
   public PartIF[] getComponents() {
     PartIF[] componentIFs = null;
 
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginReadTrx();
-	Part[] parts = part.getComponents();
-	componentIFs = new PartIF[parts.length];
-	for (int i=0; i<parts.length; i++) {
-  	  componentIFs[i] = LayerMediator.getPartIF(parts[i]);
-        }
-        DBManager.commitTrx();
-
-      } catch (Exception e) {
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
+    DBManager.lockRead(part);
+    try {
+      DBManager.beginReadTrx();
+      List<Part> parts = part.getComponentList();
+      componentIFs = new PartIF[parts.size()];
+      for (int i=0; i<parts.size(); i++) {
+	componentIFs[i] = LayerMediator.getPartIF(parts.get(i));
       }
+      DBManager.commitTrx();
+
+    } catch (Exception e) {
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
     return componentIFs;
   }
@@ -388,23 +404,24 @@ class PartImpl implements PartIFOperations {
   public PartData[] getComponentDatas() {
     PartData[] pDatas = null;
 
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginReadTrx();
+    DBManager.lockReadAll();
+    try {
+      DBManager.beginReadTrx();
 
-	Part[] parts = part.getComponents();
-	pDatas = new PartData[parts.length];
+      List<Part> parts = part.getComponentList();
+      pDatas = new PartData[parts.size()];
 
-	for (int i=0; i<parts.length; i++) {
-  	  pDatas[i] = toPartData(parts[i]);
-        }
+      for (int i=0; i<parts.size(); i++) {
+	pDatas[i] = toPartData(parts.get(i));
+      }
 
-        DBManager.commitTrx();
+      DBManager.commitTrx();
 
-      } catch (Exception e) {
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
-      }
+    } catch (Exception e) {
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
     return pDatas;
   }
@@ -420,17 +437,18 @@ class PartImpl implements PartIFOperations {
   public PartIF getComponent(String name) throws PdmError {
     PartIF componentIF = null;
 
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginReadTrx();
-	Part p = part.getComponent(name);
-	componentIF = LayerMediator.getPartIF(p);
-        DBManager.commitTrx();
-      } catch (Exception e) {
-
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
-      }
+    DBManager.lockRead(part);
+    try {
+      DBManager.beginReadTrx();
+      Part p = part.getComponent(name);
+      componentIF = LayerMediator.getPartIF(p);
+      DBManager.commitTrx();
+    } catch (Exception e) {
+
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
     return componentIF;
   }
@@ -447,21 +465,20 @@ class PartImpl implements PartIFOperations {
   public PartData getComponentData(String name) throws PdmError {
     PartData partData = null;
 
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginReadTrx();
-	Part p = part.getComponent(name);
-	if (p == null) return null;
-
-	partData = toPartData(p);
+    DBManager.lockReadAll();
+    try {
+      DBManager.beginReadTrx();
+      Part p = part.getComponent(name);
+      if (p != null) partData = toPartData(p);
 
-        DBManager.commitTrx();
+      DBManager.commitTrx();
 
-      } catch (Exception e) {
+    } catch (Exception e) {
 
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
-      }
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
     return partData;
   }
@@ -475,18 +492,19 @@ class PartImpl implements PartIFOperations {
   public boolean containsComponent(PartIF componentIF) {
     boolean result = false;
     
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginReadTrx();
-	Part p = LayerMediator.getPart(componentIF);
-	result = part.contains(p);
-	DBManager.commitTrx();
+    DBManager.lockRead(part);
+    try {
+      DBManager.beginReadTrx();
+      Part p = LayerMediator.getPart(componentIF);
+      result = part.contains(p);
+      DBManager.commitTrx();
 	
-      } catch (Exception e) {
+    } catch (Exception e) {
 
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
-      }
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
     return result;
   }
@@ -513,23 +531,24 @@ class PartImpl implements PartIFOperations {
     if (attributes == null) attributes = new AttributeData[0];
     if (components == null) components = new PartData[0];
 
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginUpdateTrx();
+    DBManager.lockWrite(part);
+    try {
+      DBManager.beginUpdateTrx();
 
-	// use the static operation in PartImpl
-	Part p = createPart(name, attributes, components);
+      // use the static operation in PartImpl
+      Part p = createPart(name, attributes, components);
 
-	componentIF = LayerMediator.getPartIF(p);
-	part.addComponent(p);
+      componentIF = LayerMediator.getPartIF(p);
+      part.addComponent(p);
 
-        DBManager.commitTrx();
+      DBManager.commitTrx();
 
-      } catch (Exception e) {
+    } catch (Exception e) {
 
-        DBManager.handleTrxError(e);
-	throw new PdmError(e.getMessage());
-      }
+      DBManager.handleTrxError(e);
+      throw new PdmError(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
     return componentIF;
   }
@@ -541,17 +560,18 @@ class PartImpl implements PartIFOperations {
    * @exception PdmError if the component is not found or transaction error occurs
    */
   public void removeComponentByName(String name) throws PdmError {
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginUpdateTrx();
-	part.removeComponent(name);
-        DBManager.commitTrx();
-
-      } catch (Exception e) {
-
-        DBManager.handleTrxError(e);
-	throw new PdmError(e.getMessage());
-      }
+    DBManager.lockWrite(part);
+    try {
+      DBManager.beginUpdateTrx();
+      part.removeComponent(name);
+      DBManager.commitTrx();
+
+    } catch (Exception e) {
+
+      DBManager.handleTrxError(e);
+      throw new PdmError(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
   }
 
@@ -562,18 +582,19 @@ class PartImpl implements PartIFOperations {
    * @exception PdmError if the component is not found or transaction error occurs
    */
   public void removeComponent(PartIF componentIF) throws PdmError {
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginUpdateTrx();
-	Part p = LayerMediator.getPart(componentIF);
-	part.removeComponent(p);
-        DBManager.commitTrx();
-
-      } catch (Exception e) {
-
-        DBManager.handleTrxError(e);
-	throw new PdmError(e.getMessage());
-      }
+    DBManager.lockWrite(part);
+    try {
+      DBManager.beginUpdateTrx();
+      Part p = LayerMediator.getPart(componentIF);
+      part.removeComponent(p);
+      DBManager.commitTrx();
+
+    } catch (Exception e) {
+
+      DBManager.handleTrxError(e);
+      throw new PdmError(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
   }
 
@@ -581,17 +602,18 @@ class PartImpl implements PartIFOperations {
    * Remove the all the components.
    */
   public void removeAllComponents() {
-    synchronized (DBManager.TOKEN) {
-      try {
-        DBManager.beginUpdateTrx();
-	part.removeAllComponents();
-        DBManager.commitTrx();
-
-      } catch (Exception e) {
-
-        DBManager.handleTrxError(e);
-	show(e.getMessage());
-      }
+    DBManager.lockWrite(part);
+    try {
+      DBManager.beginUpdateTrx();
+      part.removeAllComponents();
+      DBManager.commitTrx();
+
+    } catch (Exception e) {
+
+      DBManager.handleTrxError(e);
+      show(e.getMessage());
+    } finally {
+      DBManager.unlock();
     }
   }
 
@@ -607,20 +629,20 @@ class PartImpl implements PartIFOperations {
    * @return the PartData for the Part and its subtree
    */
   public static PartData toPartData(Part p) {
-    Attribute[] attr = p.getAttributes();
-    AttributeData[] ad = new AttributeData[attr.length]; 
+    List<Attribute> attr = p.getAttributeList();
+    AttributeData[] ad = new AttributeData[attr.size()]; 
 
     // create the attribute data from the attribute objects
-    for (int i=0; i<attr.length; i++) {
-      ad[i] = AttributeImpl.toAttributeData(attr[i]);
+    for (int i=0; i<attr.size(); i++) {
+      ad[i] = AttributeImpl.toAttributeData(attr.get(i));
     }
 
-    Part[] components = p.getComponents();
-    PartData[] pd = new PartData[components.length];
+    List<Part> components = p.getComponentList();
+    PartData[] pd = new PartData[components.size()];
 
     // create the component data from the component objects recursively
-    for (int i=0; i<components.length; i++) {
-      pd[i] = toPartData(components[i]);
+    for (int i=0; i<components.size(); i++) {
+      pd[i] = toPartData(components.get(i));
     }
 
     return new PartData(p.getName(), ad, pd);
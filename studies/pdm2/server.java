@@ -29,9 +29,11 @@ public class Server {
 
   public static void main(String[] args) throws Exception {
 
-    System.out.println("Usage: java Server [database_file.odb] [command_file.txt]");
+    System.out.println("Usage: java Server [database_file.odb] [command_file.txt] [admin_port]");
     System.out.println("  If no database file is specified, run on transient objects.");
     System.out.println("  If command file is specified, start a thread to process it.");
+    System.out.println("  If admin port is specified, serve the admin commands on it");
+    System.out.println("  to the clients on this host, e.g. telnet localhost " + AdminServer.DEFAULT_PORT + ".");
     System.out.println("==> Type in 'shutdown' to stop the server.");
 
     String dbfile = null;
@@ -44,6 +46,11 @@ public class Server {
       cmdfile = args[1];
     }
 
+    int adminPort = -1;
+    if (args.length >= 3) {
+      adminPort = Integer.parseInt(args[2]);
+    }
+
     Catalog catalog = null;
 
     if (dbfile != null) {  // with persistent objects
@@ -91,6 +98,15 @@ public class Server {
     if (catalog != null)
       (new TerminalThread("Admin Terminal", catalog)).start();
 
+    // And the admin server for many terminals at a time.  Its workers
+    // mostly wait for locks, so there are more than the processors.
+    if (catalog != null && adminPort >= 0) {
+      AdminServer admin = new AdminServer(catalog, adminPort,
+      	2 * Runtime.getRuntime().availableProcessors());
+      (new Thread(admin, "Admin Server")).start();
+      System.out.println("Admin commands on port " + admin.getPort() + ".");
+    }
+
   }
 
   /**
@@ -17,6 +17,12 @@ public class StringAttribute extends Attribute {
   // Private attributes of the class
   private String value;
 
+  /** 
+   * Constructs a string attribute object to be read from the database.
+   */
+  protected StringAttribute() {
+  }
+
   /** 
    * Constructs a string attribute object.
    *
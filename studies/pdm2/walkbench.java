@@ -0,0 +1,170 @@
+//*************************************************************************
+/**
+ * WalkBench.java - A benchmark for the read sessions of the servants.
+ *
+ *   Copyright (C) 1998-2000 	Yun-Tung Lau
+ *   All Rights Reserved.  The contents of this file are proprietary to
+ *   the above copyright holder.
+ */
+//*************************************************************************
+
+import pdm.*;  // from pdm.idl
+
+import java.io.File;
+
+/**
+ * This class walks a whole catalog through its servants, as the
+ * "getparts" command of the client does: the parts, and the name and
+ * attributes of each part and of its components.  The servants are
+ * called in the same process, without the ORB.  The walk is run first
+ * with a transaction for each call, and then in a read session.  The
+ * calls and transactions of a walk, and its time, are shown for each
+ * case.
+ * <P>
+ * Usage: java WalkBench [nParts] [nWalks]
+ * <P>
+ * The defaults are 100 parts, each with 4 attributes and 2 components
+ * that have 4 attributes each, and 50 walks.
+ */
+public class WalkBench {
+
+  /** Name of the temporary database file. */
+  private final static String DB_FILE = "walkbench.odb";
+
+  /** Number of attributes and components of each part. */
+  private final static int ATTRIBUTES = 4, COMPONENTS = 2;
+
+  /** Number of calls to the servants. */
+  private static long smCalls;
+
+  /**
+   * Adds the parts to the catalog.
+   *
+   * @param c	servant of the catalog
+   * @param nParts	number of parts
+   * @exception Exception if any exception is thrown
+   */
+  public static void build(CatalogImpl c, int nParts) throws Exception {
+    AttributeData[] a = new AttributeData[ATTRIBUTES];
+    for (int k=0; k<ATTRIBUTES; k++)
+      a[k] = new AttributeData("a" + k, k, "mm");
+    PartData[] components = new PartData[COMPONENTS];
+    for (int k=0; k<COMPONENTS; k++)
+      components[k] = new PartData("c" + k, a, new PartData[0]);
+    for (int i=0; i<nParts; i++)
+      c.addPart("part" + i, a, components);
+  }
+
+  /**
+   * Returns the servant of a part.
+   */
+  static PartImpl getImpl(PartIF p) {
+    return (PartImpl) ((_tie_PartIF) p)._delegate();
+  }
+
+  /**
+   * Walks a part and its components.
+   *
+   * @param p	servant of the part
+   * @return the number of attributes
+   */
+  public static int walk(PartImpl p) {
+    p.getName();
+    int n = p.getAttributeCount();
+    AttributeIF[] as = p.getAttributes();
+    for (int i=0; i<as.length; i++) {
+      AttributeImpl a = (AttributeImpl) ((_tie_AttributeIF) as[i])._delegate();
+      a.getName();
+      a.getValue();
+      a.getUnit();
+      smCalls += 3;
+    }
+    PartIF[] cs = p.getComponents();
+    smCalls += 4;
+    for (int i=0; i<cs.length; i++) n += walk(getImpl(cs[i]));
+    return n;
+  }
+
+  /**
+   * Walks the catalog.
+   *
+   * @param c	servant of the catalog
+   * @param session	true to walk in a read session
+   * @return the number of attributes
+   */
+  public static int walk(CatalogImpl c, boolean session) {
+    int id = session ? c.beginReadSession(2000) : 0;
+    try {
+      int n = 0;
+      PartIF[] ps = c.getParts();
+      smCalls++;
+      for (int i=0; i<ps.length; i++) n += walk(getImpl(ps[i]));
+      return n;
+    } finally {
+      if (session) c.endReadSession(id);
+    }
+  }
+
+  /**
+   * Runs one case.
+   *
+   * @param c	servant of the catalog
+   * @param session	true to walk in read sessions
+   * @param nWalks	number of walks
+   * @return calls and transactions per walk, and the time of a walk
+   *		in micro seconds
+   */
+  public static long[] runCase(CatalogImpl c, boolean session, int nWalks) {
+    smCalls = 0;
+    long trx = DBManager.getTransactionCount();
+    long t0 = System.nanoTime();
+    for (int i=0; i<nWalks; i++) walk(c, session);
+    long t = System.nanoTime() - t0;
+    return new long[] { smCalls / nWalks,
+    	(DBManager.getTransactionCount() - trx) / nWalks,
+	t / nWalks / 1000 };
+  }
+
+  /**
+   * Shows the input string.
+   *
+   * @s the string to be shown
+   */
+  public static void show(String s) {
+    System.out.println(s);
+  }
+
+  /**
+   * Main method for the benchmark.
+   *
+   * @exception Exception if any exception is thrown
+   */
+  public static void main(String[] args) throws Exception {
+    int nParts = 100;
+    int nWalks = 50;
+    if (args.length >= 1) nParts = Integer.parseInt(args[0]);
+    if (args.length >= 2) nWalks = Integer.parseInt(args[1]);
+
+    new File(DB_FILE).delete();
+    DBManager.initialize(DB_FILE, "Catalog");
+    CatalogImpl c = new CatalogImpl((Catalog) DBManager.getDbRoot());
+    build(c, nParts);
+
+    show("Parts: " + nParts + " with " + COMPONENTS + " components, "
+    	+ ATTRIBUTES + " attributes each, walks: " + nWalks);
+
+    // warm up the JIT compiler first
+    runCase(c, false, nWalks);
+    runCase(c, true, nWalks);
+
+    long[] s = runCase(c, false, nWalks);
+    long[] t = runCase(c, true, nWalks);
+    show("                      calls   transactions   time (us)");
+    show("  transaction a call  " + s[0] + "\t" + s[1] + "\t       " + s[2]);
+    show("  read session        " + t[0] + "\t" + t[1] + "\t       " + t[2]);
+
+    DBManager.shutdown();
+    new File(DB_FILE).delete();
+  }
+
+}
@@ -0,0 +1,3 @@
+@echo off
+rem The classes need no post processing with the local stand-in
+rem for PSE Pro, so this does nothing.
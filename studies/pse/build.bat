@@ -0,0 +1,7 @@
+@echo off
+rem Build pro.jar, a local stand-in for PSE Pro.
+rem Set PSE_HOME to this directory to build and run the samples with it.
+
+javac -d . *.java util\*.java
+
+jar -c0f pro.jar COM\odi\*.class COM\odi\util\*.class
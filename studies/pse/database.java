@@ -0,0 +1,1086 @@
+//*************************************************************************
+/*
+ * Database.java - a database file of persistent objects
+ *
+ *   Copyright (C) 1998-2000 	Yun-Tung Lau
+ *   All Rights Reserved.  The contents of this file are proprietary to
+ *   the above copyright holder.
+ *
+ */
+//*************************************************************************
+
+package COM.odi;
+
+import java.io.*;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Hashtable;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Objects;
+import java.util.Vector;
+
+import COM.odi.util.OSVector;
+
+/**
+ * A database file that holds persistent objects, reached from named
+ * roots.  An object is persistent if it is reachable from a root and
+ * its class is not a system class (java.*, javax.*, sun.*).  Strings,
+ * boxed primitives and arrays are stored as part of the objects that
+ * refer to them.  Other system objects are serialized into them, if
+ * they are serializable.
+ * <P>
+ * Each persistent object is a record of the fields of its class,
+ * except static and transient ones.  The classes need no post
+ * processing, and need not be serializable, but they need a
+ * constructor without arguments, which may be private: an object
+ * that is read is created with it, and then its fields are set.
+ * The fields of a class are kept by name in the database, so that
+ * fields may be added to or removed from a class.
+ * <P>
+ * Objects are read when they are first reached, except the contents
+ * of an OSVector, which are read when the vector is first used.  The
+ * objects that have been read stay in memory until the database is
+ * closed.  A commit encodes each of them and compares it with the
+ * record read or written last, so that only the changed objects are
+ * written.  Objects that are no longer reachable are not removed from
+ * the file.
+ * <P>
+ * This class provides the subset of the PSE Pro API that the samples
+ * use.  The methods that read statistics are not in PSE Pro.
+ */
+public class Database {
+
+  /** Oid of the record of the roots. */
+  private final static int ROOTS = 0;
+
+  /** Oid of the record of the classes. */
+  private final static int CLASSES = 1;
+
+  /** Tags of the values of reference fields. */
+  private final static int NULL = 0, REF = 1, VECTOR = 2, STRING = 3,
+  	BOOLEAN = 4, BYTE = 5, CHAR = 6, SHORT = 7, INT = 8, LONG = 9,
+	FLOAT = 10, DOUBLE = 11, ARRAY = 12, SERIAL = 13;
+
+  /** Kinds of objects, for snapshots. */
+  private final static int PERSISTENT_KIND = 0, VALUE_KIND = 1,
+  	ARRAY_KIND = 2, OTHER_KIND = 3;
+
+  /** The kind of the objects of each class. */
+  private static ClassValue smKind = new ClassValue() {
+    protected Object computeValue(Class c) {
+      if (c.isArray()) return Integer.valueOf(ARRAY_KIND);
+      if (c == String.class || c == Integer.class || c == Long.class
+      	  || c == Double.class || c == Float.class || c == Short.class
+	  || c == Byte.class || c == Boolean.class || c == Character.class)
+        return Integer.valueOf(VALUE_KIND);
+      if (c.isEnum() || isSystem(c)) return Integer.valueOf(OTHER_KIND);
+      return Integer.valueOf(PERSISTENT_KIND);
+    }
+  };
+
+  /** Open databases, by their canonical paths. */
+  private static Hashtable smOpen = new Hashtable();
+
+  /**
+   * An object that has been reached in the database.
+   */
+  private static class Resident {
+    int oid;
+    Object object;
+    long hash;        // hash of the record read or written last
+    boolean loaded;   // false while it is hollow
+    boolean isNew;    // not yet written
+    byte[] pending;   // record read, to be decoded
+    ClassInfo info;   // the fields of its class
+    Object[] refs;    // the reference fields read or written last
+    long[] values;    // the primitive fields read or written last
+
+    Resident(int oid, Object object) {
+      this.oid = oid;
+      this.object = object;
+    }
+  }
+
+  /**
+   * The fields of a class, as they are stored in the database.
+   */
+  private static class ClassInfo {
+    int id;
+    String name;
+    String[] names;   // field names
+    char[] types;     // field types: 'L' for references
+    Field[] fields;   // the fields, null if a field no longer exists
+    int refs;         // number of reference fields
+    Constructor creator;
+  }
+
+  private String path;          // canonical path of the file
+  private Session session;
+  private PageFile file;
+  private boolean readOnly;
+
+  private IdentityHashMap residents = new IdentityHashMap(); // by object
+  private HashMap byOid = new HashMap();   // residents by oid
+  private ArrayList all = new ArrayList(); // residents in order
+  private LinkedList toDecode = new LinkedList();  // objects being read
+
+  private Hashtable roots;                 // oids of roots by name
+  private Hashtable committedRoots;
+  private Vector classes = new Vector();   // ClassInfo by id
+  private HashMap classInfo = new HashMap(); // current ClassInfo by Class
+  private int storedClasses;               // classes in the file
+
+  private byte[] buf = new byte[256];      // the record being encoded
+  private int len;                         // its length
+  private long objectsRead;
+  private long objectsWritten;
+
+
+  /**
+   * Opens or creates a database file.
+   */
+  private Database(String path, Session session, boolean create,
+  	boolean readOnly) throws IOException {
+    this.path = path;
+    this.session = session;
+    this.readOnly = readOnly;
+    file = new PageFile(new File(path), create, readOnly,
+    	session.getPageCache());
+    if (create) {
+      roots = new Hashtable();
+      file.newOid();  // ROOTS
+      file.newOid();  // CLASSES
+      file.write(ROOTS, encodeRoots());
+      file.write(CLASSES, encodeClasses());
+      file.commit();
+    } else {
+      readRoots();
+      readClasses();
+    }
+    committedRoots = (Hashtable) roots.clone();
+  }
+
+  /**
+   * Opens a database file in the session of the current thread.  If
+   * the database is already open in the session, it is returned.
+   *
+   * @param name	the file name
+   * @param mode	ObjectStore.OPEN_UPDATE or ObjectStore.OPEN_READONLY
+   * @return the database
+   * @exception DatabaseNotFoundException if the file does not exist
+   * @exception ObjectStoreException if the file cannot be opened
+   */
+  public static Database open(String name, int mode) {
+    if (!new File(name).exists())
+      throw new DatabaseNotFoundException("Database not found: " + name);
+    return open(name, false, mode == ObjectStore.OPEN_READONLY);
+  }
+
+  /**
+   * Creates a database file in the session of the current thread, and
+   * opens it for update.
+   *
+   * @param name	the file name
+   * @param permissions	e.g. ObjectStore.ALL_READ | ObjectStore.ALL_WRITE;
+   *		not used
+   * @return the database
+   * @exception ObjectStoreException if the file exists or cannot be
+   *		created
+   */
+  public static Database create(String name, int permissions) {
+    if (new File(name).exists())
+      throw new ObjectStoreException("Database already exists: " + name);
+    return open(name, true, false);
+  }
+
+  private static Database open(String name, boolean create,
+  	boolean readOnly) {
+    Session s = Session.current();
+    synchronized (smOpen) {
+      String path;
+      try {
+        path = new File(name).getCanonicalPath();
+      } catch (IOException e) {
+        throw new ObjectStoreException("Cannot open the database: " + e);
+      }
+      Database db = (Database) smOpen.get(path);
+      if (db != null) {
+        if (db.session != s)
+	  throw new ObjectStoreException("Database is open in another session: "
+	  	+ name);
+	return db;
+      }
+      try {
+        db = new Database(path, s, create, readOnly);
+      } catch (IOException e) {
+        throw new ObjectStoreException("Cannot open the database: " + e);
+      }
+      smOpen.put(path, db);
+      s.getDatabases().addElement(db);
+      return db;
+    }
+  }
+
+  /**
+   * Returns the path of the database file.
+   */
+  public String getPath() {
+    return path;
+  }
+
+  /**
+   * Tells if the database is open.
+   */
+  public boolean isOpen() {
+    return file != null;
+  }
+
+  /**
+   * Closes the database.  Changes not committed are lost.  The objects
+   * read from the database may still be used, but hollow ones can no
+   * longer be read.
+   */
+  public void close() {
+    synchronized (smOpen) {
+      synchronized (this) {
+        if (file == null) return;
+	file.close();
+	file = null;
+	residents.clear();
+	byOid.clear();
+	all.clear();
+	smOpen.remove(path);
+	session.getDatabases().removeElement(this);
+      }
+    }
+    ObjectStore.forget(this);
+  }
+
+  /**
+   * Returns a root object.
+   *
+   * @param name	the name of the root
+   * @return the object
+   * @exception DatabaseRootNotFoundException if there is no such root
+   */
+  public synchronized Object getRoot(String name) {
+    checkOpen();
+    Integer oid = (Integer) roots.get(name);
+    if (oid == null)
+      throw new DatabaseRootNotFoundException("Root not found: " + name);
+    try {
+      Object o = get(oid.intValue(), false);
+      decodePending();
+      return o;
+    } catch (IOException e) {
+      throw new ObjectStoreException("Cannot read the database: " + e);
+    }
+  }
+
+  /**
+   * Creates a root, or sets it to another object.  The object and the
+   * objects reachable from it are written when the transaction commits.
+   *
+   * @param name	the name of the root
+   * @param o	the object
+   */
+  public synchronized void createRoot(String name, Object o) {
+    checkOpen();
+    if (readOnly) throw new ObjectStoreException("Database is read only");
+    if (!isPersistent(o))
+      throw new ObjectStoreException("Cannot be a root: " + o);
+    roots.put(name, Integer.valueOf(oidOf(o, true)));
+  }
+
+  /**
+   * Sets a root to another object.
+   *
+   * @param name	the name of the root
+   * @param o	the object
+   */
+  public void setRoot(String name, Object o) {
+    createRoot(name, o);
+  }
+
+  /**
+   * Returns the number of objects read from the database so far.
+   */
+  public long getObjectsRead() {
+    return objectsRead;
+  }
+
+  /**
+   * Returns the number of objects written to the database so far.
+   */
+  public long getObjectsWritten() {
+    return objectsWritten;
+  }
+
+  /**
+   * Returns the statistics of the pages of the database file.
+   *
+   * @return pages read from the file, pages found in the page cache,
+   *		pages written, and pages in the file
+   */
+  public synchronized long[] getPageStats() {
+    checkOpen();
+    long[] s = file.getStats();
+    return new long[] { s[0], s[1], s[2], file.getPageCount() };
+  }
+
+  /********** Used by ObjectStore and Transaction *************/
+
+  /**
+   * Reads the contents of a hollow object.
+   *
+   * @param o	the object
+   */
+  synchronized void fetch(Object o) {
+    Resident r = (Resident) residents.get(o);
+    if (r == null || r.loaded) return;
+    try {
+      byte[] record = file.read(r.oid);
+      if (record == null) throw notFound(r.oid);
+      decode(o, record);
+      r.hash = hash(record, record.length);
+      snapshot(r);
+      r.loaded = true;
+      objectsRead++;
+      decodePending();
+    } catch (IOException e) {
+      throw new ObjectStoreException("Cannot read the database: " + e);
+    }
+    ObjectStore.fetched(o);
+  }
+
+  /**
+   * Writes the changed and new objects, and forces them to disk.
+   *
+   * @exception ObjectStoreException if they cannot be written
+   */
+  synchronized void commitObjects() {
+    if (file == null || readOnly) return;
+    try {
+      // Encode the objects first, since the new ones are found
+      // on the way (and added to all), and a failure leaves nothing
+      // to undo.
+      Vector changed = new Vector();
+      for (int i=0; i<all.size(); i++) {
+        Resident r = (Resident) all.get(i);
+	if (!r.loaded || (!r.isNew && isSame(r))) continue;
+	encode(r.object, true);
+	if (r.isNew || hash(buf, len) != r.hash) {
+	  byte[] record = new byte[len];
+	  System.arraycopy(buf, 0, record, 0, len);
+	  changed.addElement(r);
+	  changed.addElement(record);
+	}
+      }
+      for (int i=0; i<changed.size(); i+=2) {
+        Resident r = (Resident) changed.elementAt(i);
+	file.write(r.oid, (byte[]) changed.elementAt(i + 1));
+      }
+      if (!roots.equals(committedRoots)) file.write(ROOTS, encodeRoots());
+      if (classes.size() > storedClasses)
+        file.write(CLASSES, encodeClasses());
+      file.commit();
+
+      for (int i=0; i<changed.size(); i+=2) {
+        Resident r = (Resident) changed.elementAt(i);
+	byte[] record = (byte[]) changed.elementAt(i + 1);
+	r.hash = hash(record, record.length);
+	snapshot(r);
+	r.isNew = false;
+      }
+      objectsWritten += changed.size() / 2;
+      storedClasses = classes.size();
+      committedRoots = (Hashtable) roots.clone();
+    } catch (IOException e) {
+      throw new ObjectStoreException("Cannot write the database: " + e);
+    }
+  }
+
+  /**
+   * Reads back the objects changed since the last commit, and removes
+   * the new ones.
+   */
+  synchronized void abortObjects() {
+    if (file == null) return;
+    try {
+      if (file.isChanged()) {  // a failed commit: start from the file
+        file.close();
+	file = new PageFile(new File(path), false, readOnly,
+		session.getPageCache());
+	readRoots();
+	readClasses();
+	classInfo.clear();
+      } else {
+        roots = (Hashtable) committedRoots.clone();
+      }
+      committedRoots = (Hashtable) roots.clone();
+
+      Iterator i = all.iterator();
+      while (i.hasNext()) {
+        Resident r = (Resident) i.next();
+	if (r.isNew) {
+	  i.remove();
+	  residents.remove(r.object);
+	  byOid.remove(Integer.valueOf(r.oid));
+	}
+      }
+      for (int k=0, n=all.size(); k<n; k++) {
+        Resident r = (Resident) all.get(k);
+	if (!r.loaded || !isChanged(r)) continue;
+	byte[] record = file.read(r.oid);
+	if (record == null) throw notFound(r.oid);
+	decode(r.object, record);
+	r.hash = hash(record, record.length);
+	snapshot(r);
+	decodePending();
+      }
+    } catch (IOException e) {
+      throw new ObjectStoreException("Cannot read the database: " + e);
+    }
+  }
+
+  /********** Objects *************/
+
+  /**
+   * Returns the object of an oid.  It is created if it has not been
+   * reached before, and its record is decoded by decodePending.
+   *
+   * @param oid	the oid
+   * @param vector	true if it is an OSVector, which is left hollow
+   */
+  private Object get(int oid, boolean vector) throws IOException {
+    Resident r = (Resident) byOid.get(Integer.valueOf(oid));
+    if (r != null) return r.object;
+
+    if (vector) {
+      r = register(oid, new OSVector(this));
+      ObjectStore.hollow(r.object, this);
+      return r.object;
+    }
+    byte[] record = file.read(oid);
+    if (record == null) throw notFound(oid);
+    int id = ((record[0] & 0xff) << 24) | ((record[1] & 0xff) << 16)
+    	| ((record[2] & 0xff) << 8) | (record[3] & 0xff);
+    r = register(oid, newInstance(storedInfo(id)));
+    r.pending = record;
+    toDecode.add(r);
+    return r.object;
+  }
+
+  /**
+   * Decodes the records of the objects reached, until there are none.
+   */
+  private void decodePending() throws IOException {
+    while (!toDecode.isEmpty()) {
+      Resident r = (Resident) toDecode.removeFirst();
+      decode(r.object, r.pending);
+      r.hash = hash(r.pending, r.pending.length);
+      snapshot(r);
+      r.pending = null;
+      r.loaded = true;
+      objectsRead++;
+    }
+  }
+
+  /**
+   * Returns the oid of an object.  A new object gets an oid, and is
+   * written by the commit, if assign is true.
+   *
+   * @return the oid, or -1 if the object is new and assign is false
+   */
+  private int oidOf(Object o, boolean assign) {
+    Resident r = (Resident) residents.get(o);
+    if (r != null) return r.oid;
+    if (!assign) return -1;
+    r = register(file.newOid(), o);
+    r.loaded = true;
+    r.isNew = true;
+    return r.oid;
+  }
+
+  private Resident register(int oid, Object o) {
+    Resident r = new Resident(oid, o);
+    residents.put(o, r);
+    byOid.put(Integer.valueOf(oid), r);
+    all.add(r);
+    return r;
+  }
+
+  /**
+   * Keeps the values of the fields of an object, with copies of
+   * arrays, to be compared by isSame.
+   */
+  private void snapshot(Resident r) {
+    ClassInfo ci = info(r.object.getClass());
+    Object o = r.object;
+    r.info = ci;
+    r.refs = new Object[ci.refs];
+    r.values = new long[ci.fields.length - ci.refs];
+    try {
+      for (int i=0, k=0, m=0; i<ci.fields.length; i++) {
+        if (ci.types[i] == 'L')
+	  r.refs[k++] = copy(ci.fields[i].get(o));
+	else
+	  r.values[m++] = valueOf(ci.fields[i], ci.types[i], o);
+      }
+    } catch (IllegalAccessException e) {
+      r.refs = null;
+    }
+  }
+
+  private static long valueOf(Field f, char type, Object o)
+  	throws IllegalAccessException {
+    switch (type) {
+    case 'Z': return f.getBoolean(o) ? 1 : 0;
+    case 'F':
+    case 'D': return Double.doubleToRawLongBits(f.getDouble(o));
+    default: return f.getLong(o);
+    }
+  }
+
+  private static Object copy(Object v) {
+    if (v == null || !v.getClass().isArray()) return v;
+    int n = Array.getLength(v);
+    Object a = Array.newInstance(v.getClass().getComponentType(), n);
+    System.arraycopy(v, 0, a, 0, n);
+    if (a instanceof Object[][]) {
+      Object[] b = (Object[]) a;
+      for (int i=0; i<n; i++) b[i] = copy(b[i]);
+    }
+    return a;
+  }
+
+  /**
+   * Tells if the fields of an object are the same as in its snapshot:
+   * the same objects, or equal strings and boxed primitives.  Then it
+   * need not be encoded to find out if it has changed.  An object
+   * with other system objects in it, which may have been changed in
+   * place, is never the same.
+   */
+  private static boolean isSame(Resident r) {
+    ClassInfo ci = r.info;
+    Object o = r.object;
+    if (r.refs == null || ci.fields.length != r.refs.length + r.values.length)
+      return false;
+    try {
+      for (int i=0, k=0, m=0; i<ci.fields.length; i++) {
+        if (ci.types[i] == 'L') {
+	  if (!same(ci.fields[i].get(o), r.refs[k++])) return false;
+	} else {
+	  if (valueOf(ci.fields[i], ci.types[i], o) != r.values[m++])
+	    return false;
+	}
+      }
+    } catch (IllegalAccessException e) {
+      return false;
+    }
+    return true;
+  }
+
+  private static boolean same(Object v, Object old) {
+    if (v == null || old == null) return v == old;
+    int kind = kindOf(v);
+    if (kind == ARRAY_KIND) {
+      if (v.getClass() != old.getClass()) return false;
+      if (!(v instanceof Object[])) return Objects.deepEquals(v, old);
+      Object[] a = (Object[]) v;
+      Object[] b = (Object[]) old;
+      if (a.length != b.length) return false;
+      for (int i=0; i<a.length; i++) {
+        if (a[i] != b[i] || a[i] instanceof Object[]) {
+	  if (!same(a[i], b[i])) return false;
+	} else if (a[i] != null && kindOf(a[i]) == OTHER_KIND) {
+	  return false;
+	}
+      }
+      return true;
+    }
+    if (v == old) return kind != OTHER_KIND;
+    return kind == VALUE_KIND && v.equals(old);
+  }
+
+  /**
+   * Tells if an object differs from the record read or written last.
+   */
+  private boolean isChanged(Resident r) {
+    if (isSame(r)) return false;
+    try {
+      encode(r.object, false);
+      return hash(buf, len) != r.hash;
+    } catch (ObjectStoreException e) {
+      return true;  // it refers to an object that cannot be stored
+    }
+  }
+
+  /**
+   * Tells if the object is stored as a record of its own.
+   */
+  private static boolean isPersistent(Object o) {
+    return o != null && kindOf(o) == PERSISTENT_KIND;
+  }
+
+  private static int kindOf(Object o) {
+    return ((Integer) smKind.get(o.getClass())).intValue();
+  }
+
+  private static boolean isSystem(Class c) {
+    String name = c.getName();
+    return name.startsWith("java.") || name.startsWith("javax.")
+    	|| name.startsWith("sun.") || name.startsWith("jdk.");
+  }
+
+  private ObjectStoreException notFound(int oid) {
+    return new ObjectStoreException("Object " + oid + " not found in "
+    	+ path);
+  }
+
+  private void checkOpen() {
+    if (file == null) throw new ObjectStoreException("Database is closed: "
+    	+ path);
+  }
+
+  /**
+   * Returns a 64 bit FNV-1a hash of a record.
+   */
+  private static long hash(byte[] b, int len) {
+    long h = 0xcbf29ce484222325L;
+    for (int i=0; i<len; i++) {
+      h ^= b[i] & 0xff;
+      h *= 0x100000001b3L;
+    }
+    return h;
+  }
+
+  /********** Records *************/
+
+  /**
+   * Encodes an object into buf: the id of its class, then its fields.
+   *
+   * @param assign	true to give oids to new objects reached
+   */
+  private void encode(Object o, boolean assign) {
+    ClassInfo ci = info(o.getClass());
+    len = 0;
+    putInt(ci.id);
+    try {
+      for (int i=0; i<ci.fields.length; i++) {
+        Field f = ci.fields[i];
+	switch (ci.types[i]) {
+	case 'Z': putByte(f.getBoolean(o) ? 1 : 0); break;
+	case 'B': putByte(f.getByte(o)); break;
+	case 'C': putShort(f.getChar(o)); break;
+	case 'S': putShort(f.getShort(o)); break;
+	case 'I': putInt(f.getInt(o)); break;
+	case 'J': putLong(f.getLong(o)); break;
+	case 'F': putInt(Float.floatToIntBits(f.getFloat(o))); break;
+	case 'D': putLong(Double.doubleToLongBits(f.getDouble(o))); break;
+	default: putValue(f.get(o), assign);
+	}
+      }
+    } catch (IllegalAccessException e) {
+      throw new ObjectStoreException("Cannot encode " + ci.name + ": " + e);
+    }
+  }
+
+  private void putValue(Object v, boolean assign) {
+    if (v == null) {
+      putByte(NULL);
+    } else if (v instanceof String) {
+      String s = (String) v;
+      int n = s.length();
+      putByte(STRING);
+      putInt(n);
+      room(2 * n);
+      for (int i=0; i<n; i++) {
+        char c = s.charAt(i);
+	buf[len++] = (byte) (c >>> 8);
+	buf[len++] = (byte) c;
+      }
+    } else if (isPersistent(v)) {
+      putByte(v.getClass() == OSVector.class ? VECTOR : REF);
+      putInt(oidOf(v, assign));
+    } else if (v.getClass().isArray()) {
+      putByte(ARRAY);
+      putString(v.getClass().getName());
+      int n = Array.getLength(v);
+      putInt(n);
+      if (v instanceof Object[]) {
+        Object[] a = (Object[]) v;
+	for (int i=0; i<n; i++) putValue(a[i], assign);
+      } else {
+        for (int i=0; i<n; i++) putPrimitive(Array.get(v, i));
+      }
+    } else if (putPrimitive(v)) {
+      // a boxed primitive
+    } else if (v instanceof Serializable) {
+      putSerial(v);
+    } else {
+      throw new ObjectStoreException("Cannot store an object of "
+      	+ v.getClass().getName());
+    }
+  }
+
+  /**
+   * Writes a boxed primitive with its tag.
+   *
+   * @return false if it is not a boxed primitive
+   */
+  private boolean putPrimitive(Object v) {
+    if (v instanceof Integer) {
+      putByte(INT);
+      putInt(((Integer) v).intValue());
+    } else if (v instanceof Long) {
+      putByte(LONG);
+      putLong(((Long) v).longValue());
+    } else if (v instanceof Double) {
+      putByte(DOUBLE);
+      putLong(Double.doubleToLongBits(((Double) v).doubleValue()));
+    } else if (v instanceof Float) {
+      putByte(FLOAT);
+      putInt(Float.floatToIntBits(((Float) v).floatValue()));
+    } else if (v instanceof Boolean) {
+      putByte(BOOLEAN);
+      putByte(((Boolean) v).booleanValue() ? 1 : 0);
+    } else if (v instanceof Short) {
+      putByte(SHORT);
+      putShort(((Short) v).shortValue());
+    } else if (v instanceof Byte) {
+      putByte(BYTE);
+      putByte(((Byte) v).byteValue());
+    } else if (v instanceof Character) {
+      putByte(CHAR);
+      putShort(((Character) v).charValue());
+    } else {
+      return false;
+    }
+    return true;
+  }
+
+  private void putSerial(Object v) {
+    ByteArrayOutputStream b = new ByteArrayOutputStream();
+    try {
+      ObjectOutputStream oos = new ObjectOutputStream(b);
+      oos.writeObject(v);
+      oos.close();
+    } catch (IOException e) {
+      throw new ObjectStoreException("Cannot store an object of "
+      	+ v.getClass().getName() + ": " + e);
+    }
+    putByte(SERIAL);
+    putInt(b.size());
+    room(b.size());
+    System.arraycopy(b.toByteArray(), 0, buf, len, b.size());
+    len += b.size();
+  }
+
+  private void putString(String s) {
+    putValue(s, false);
+  }
+
+  private void putByte(int v) {
+    room(1);
+    buf[len++] = (byte) v;
+  }
+
+  private void putShort(int v) {
+    room(2);
+    buf[len++] = (byte) (v >>> 8);
+    buf[len++] = (byte) v;
+  }
+
+  private void putInt(int v) {
+    room(4);
+    buf[len++] = (byte) (v >>> 24);
+    buf[len++] = (byte) (v >>> 16);
+    buf[len++] = (byte) (v >>> 8);
+    buf[len++] = (byte) v;
+  }
+
+  private void putLong(long v) {
+    putInt((int) (v >>> 32));
+    putInt((int) v);
+  }
+
+  private void room(int n) {
+    if (len + n > buf.length) {
+      byte[] b = new byte[Math.max(len + n, 2 * buf.length)];
+      System.arraycopy(buf, 0, b, 0, len);
+      buf = b;
+    }
+  }
+
+  /**
+   * Sets the fields of an object from its record.
+   */
+  private void decode(Object o, byte[] record) throws IOException {
+    DataInputStream in = new DataInputStream(
+    	new ByteArrayInputStream(record));
+    ClassInfo ci = storedInfo(in.readInt());
+    try {
+      for (int i=0; i<ci.types.length; i++) {
+        Object v;
+	switch (ci.types[i]) {
+	case 'Z': v = Boolean.valueOf(in.readBoolean()); break;
+	case 'B': v = Byte.valueOf(in.readByte()); break;
+	case 'C': v = Character.valueOf(in.readChar()); break;
+	case 'S': v = Short.valueOf(in.readShort()); break;
+	case 'I': v = Integer.valueOf(in.readInt()); break;
+	case 'J': v = Long.valueOf(in.readLong()); break;
+	case 'F': v = Float.valueOf(in.readFloat()); break;
+	case 'D': v = Double.valueOf(in.readDouble()); break;
+	default: v = readValue(in);
+	}
+	if (ci.fields[i] != null) {
+	  try {
+	    ci.fields[i].set(o, v);
+	  } catch (IllegalArgumentException e) {
+	    // the type of the field has changed: leave it
+	  }
+	}
+      }
+    } catch (IllegalAccessException e) {
+      throw new ObjectStoreException("Cannot decode " + ci.name + ": " + e);
+    }
+  }
+
+  private Object readValue(DataInputStream in) throws IOException {
+    int tag = in.readByte();
+    switch (tag) {
+    case NULL: return null;
+    case REF: return get(in.readInt(), false);
+    case VECTOR: return get(in.readInt(), true);
+    case STRING:
+      char[] c = new char[in.readInt()];
+      for (int i=0; i<c.length; i++) c[i] = in.readChar();
+      return new String(c);
+    case BOOLEAN: return Boolean.valueOf(in.readBoolean());
+    case BYTE: return Byte.valueOf(in.readByte());
+    case CHAR: return Character.valueOf(in.readChar());
+    case SHORT: return Short.valueOf(in.readShort());
+    case INT: return Integer.valueOf(in.readInt());
+    case LONG: return Long.valueOf(in.readLong());
+    case FLOAT: return Float.valueOf(in.readFloat());
+    case DOUBLE: return Double.valueOf(in.readDouble());
+    case ARRAY:
+      Class ac = classFor((String) readValue(in));
+      int n = in.readInt();
+      Object a = Array.newInstance(ac.getComponentType(), n);
+      for (int i=0; i<n; i++) Array.set(a, i, readValue(in));
+      return a;
+    case SERIAL:
+      byte[] b = new byte[in.readInt()];
+      in.readFully(b);
+      ObjectInputStream ois = new ObjectInputStream(
+      	new ByteArrayInputStream(b));
+      try {
+        return ois.readObject();
+      } catch (ClassNotFoundException e) {
+        throw new ObjectStoreException("Class not found: " + e.getMessage());
+      }
+    default:
+      throw new ObjectStoreException("Bad record in " + path);
+    }
+  }
+
+  /********** Classes *************/
+
+  /**
+   * Returns the ClassInfo used to write objects of a class.  It is a
+   * stored one if the fields are the same, and a new one otherwise.
+   */
+  private ClassInfo info(Class c) {
+    ClassInfo ci = (ClassInfo) classInfo.get(c);
+    if (ci != null) return ci;
+
+    Vector v = new Vector();
+    for (Class k=c; k != null && !isSystem(k); k=k.getSuperclass()) {
+      Field[] f = k.getDeclaredFields();
+      for (int i=0; i<f.length; i++) {
+        int m = f[i].getModifiers();
+	if (!Modifier.isStatic(m) && !Modifier.isTransient(m)) v.add(f[i]);
+      }
+    }
+    ci = new ClassInfo();
+    ci.name = c.getName();
+    ci.fields = (Field[]) v.toArray(new Field[v.size()]);
+    ci.names = new String[ci.fields.length];
+    ci.types = new char[ci.fields.length];
+    for (int i=0; i<ci.fields.length; i++) {
+      ci.fields[i].setAccessible(true);
+      ci.names[i] = fieldName(ci.fields, i);
+      ci.types[i] = typeOf(ci.fields[i].getType());
+      if (ci.types[i] == 'L') ci.refs++;
+    }
+
+    for (int i=0; i<classes.size(); i++) {
+      ClassInfo s = (ClassInfo) classes.elementAt(i);
+      if (s.name.equals(ci.name)
+      	  && java.util.Arrays.equals(s.names, ci.names)
+	  && java.util.Arrays.equals(s.types, ci.types)) {
+        ci.id = s.id;
+	ci.creator = s.creator;
+	classes.setElementAt(ci, i);
+	classInfo.put(c, ci);
+	return ci;
+      }
+    }
+    ci.id = classes.size();
+    classes.addElement(ci);
+    classInfo.put(c, ci);
+    return ci;
+  }
+
+  /**
+   * Returns a stored ClassInfo, with its fields found in the class.
+   */
+  private ClassInfo storedInfo(int id) {
+    if (id < 0 || id >= classes.size())
+      throw new ObjectStoreException("Bad record in " + path);
+    ClassInfo ci = (ClassInfo) classes.elementAt(id);
+    if (ci.fields == null) {
+      Class c = classFor(ci.name);
+      ClassInfo current = info(c);
+      if (current.id == id) return current;
+      ci.fields = new Field[ci.names.length];
+      for (int i=0; i<ci.names.length; i++) {
+        for (int k=0; k<current.names.length; k++) {
+	  if (current.names[k].equals(ci.names[i])
+	      && current.types[k] == ci.types[i])
+	    ci.fields[i] = current.fields[k];
+	}
+      }
+    }
+    return ci;
+  }
+
+  /**
+   * Creates an object with the constructor without arguments of its
+   * class, which may be private.  Its fields are set afterwards.
+   *
+   * @exception ObjectStoreException if the class has no such
+   *		constructor
+   */
+  private Object newInstance(ClassInfo ci) {
+    try {
+      if (ci.creator == null) {
+        Constructor c;
+        try {
+          c = classFor(ci.name).getDeclaredConstructor(new Class[0]);
+        } catch (NoSuchMethodException e) {
+          throw new ObjectStoreException(ci.name
+		+ " needs a constructor without arguments");
+        }
+        c.setAccessible(true);
+        ci.creator = c;
+      }
+      return ci.creator.newInstance(new Object[0]);
+    } catch (ObjectStoreException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new ObjectStoreException("Cannot create " + ci.name + ": " + e);
+    }
+  }
+
+  private static Class classFor(String name) {
+    try {
+      return Class.forName(name, false,
+      	Thread.currentThread().getContextClassLoader());
+    } catch (ClassNotFoundException e) {
+      throw new ObjectStoreException("Class not found: " + name);
+    }
+  }
+
+  /**
+   * Returns the name of a field, with its class if a field of a
+   * subclass has the same name.
+   */
+  private static String fieldName(Field[] f, int i) {
+    for (int k=0; k<i; k++) {
+      if (f[k].getName().equals(f[i].getName()))
+        return f[i].getDeclaringClass().getName() + "." + f[i].getName();
+    }
+    return f[i].getName();
+  }
+
+  private static char typeOf(Class t) {
+    if (t == Boolean.TYPE) return 'Z';
+    if (t == Byte.TYPE) return 'B';
+    if (t == Character.TYPE) return 'C';
+    if (t == Short.TYPE) return 'S';
+    if (t == Integer.TYPE) return 'I';
+    if (t == Long.TYPE) return 'J';
+    if (t == Float.TYPE) return 'F';
+    if (t == Double.TYPE) return 'D';
+    return 'L';
+  }
+
+  /********** Roots and classes in the file *************/
+
+  private byte[] encodeRoots() throws IOException {
+    ByteArrayOutputStream b = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(b);
+    out.writeInt(roots.size());
+    Enumeration e = roots.keys();
+    while (e.hasMoreElements()) {
+      String name = (String) e.nextElement();
+      out.writeUTF(name);
+      out.writeInt(((Integer) roots.get(name)).intValue());
+    }
+    return b.toByteArray();
+  }
+
+  private void readRoots() throws IOException {
+    DataInputStream in = new DataInputStream(
+    	new ByteArrayInputStream(file.read(ROOTS)));
+    roots = new Hashtable();
+    for (int n=in.readInt(); n>0; n--)
+      roots.put(in.readUTF(), Integer.valueOf(in.readInt()));
+  }
+
+  private byte[] encodeClasses() throws IOException {
+    ByteArrayOutputStream b = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(b);
+    out.writeInt(classes.size());
+    for (int i=0; i<classes.size(); i++) {
+      ClassInfo ci = (ClassInfo) classes.elementAt(i);
+      out.writeUTF(ci.name);
+      out.writeInt(ci.names.length);
+      for (int k=0; k<ci.names.length; k++) {
+        out.writeUTF(ci.names[k]);
+	out.writeChar(ci.types[k]);
+      }
+    }
+    return b.toByteArray();
+  }
+
+  private void readClasses() throws IOException {
+    DataInputStream in = new DataInputStream(
+    	new ByteArrayInputStream(file.read(CLASSES)));
+    classes = new Vector();
+    for (int n=in.readInt(), id=0; id<n; id++) {
+      ClassInfo ci = new ClassInfo();
+      ci.id = id;
+      ci.name = in.readUTF();
+      ci.names = new String[in.readInt()];
+      ci.types = new char[ci.names.length];
+      for (int k=0; k<ci.names.length; k++) {
+        ci.names[k] = in.readUTF();
+	ci.types[k] = in.readChar();
+      }
+      classes.addElement(ci);
+    }
+    storedClasses = classes.size();
+  }
+
+}
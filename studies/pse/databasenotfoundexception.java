@@ -0,0 +1,29 @@
+//*************************************************************************
+/*
+ * DatabaseNotFoundException.java - thrown when a database file does not exist
+ *
+ *   Copyright (C) 1998-2000 	Yun-Tung Lau
+ *   All Rights Reserved.  The contents of this file are proprietary to
+ *   the above copyright holder.
+ *
+ */
+//*************************************************************************
+
+package COM.odi;
+
+/**
+ * This exception is thrown by Database.open when the database file
+ * does not exist.
+ */
+public class DatabaseNotFoundException extends ObjectStoreException {
+
+  /**
+   * Constructs the exception.
+   *
+   * @param s	the detail message
+   */
+  public DatabaseNotFoundException(String s) {
+    super(s);
+  }
+
+}
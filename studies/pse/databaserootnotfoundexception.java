@@ -0,0 +1,29 @@
+//*************************************************************************
+/*
+ * DatabaseRootNotFoundException.java - thrown when a database root does not exist
+ *
+ *   Copyright (C) 1998-2000 	Yun-Tung Lau
+ *   All Rights Reserved.  The contents of this file are proprietary to
+ *   the above copyright holder.
+ *
+ */
+//*************************************************************************
+
+package COM.odi;
+
+/**
+ * This exception is thrown by Database.getRoot when the database has
+ * no root of the input name.
+ */
+public class DatabaseRootNotFoundException extends ObjectStoreException {
+
+  /**
+   * Constructs the exception.
+   *
+   * @param s	the detail message
+   */
+  public DatabaseRootNotFoundException(String s) {
+    super(s);
+  }
+
+}
@@ -0,0 +1,256 @@
+//*************************************************************************
+/*
+ * LoadTest.java - a load test of the local object store
+ *
+ *   Copyright (C) 1998-2000 	Yun-Tung Lau
+ *   All Rights Reserved.  The contents of this file are proprietary to
+ *   the above copyright holder.
+ *
+ */
+//*************************************************************************
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Random;
+
+import COM.odi.*;
+import COM.odi.util.*;
+
+/**
+ * This class loads a database with accounts, each with a history of
+ * entries in an OSVector, as DBManager would: one session, and a
+ * transaction for each request.  It then measures the time to reopen
+ * the database, of random read transactions, and of random update
+ * transactions that add an entry to an account.  The database is
+ * read back at the end to check the number of entries.
+ * <P>
+ * Usage: java LoadTest [nAccounts] [nEntries] [nRequests]
+ * <P>
+ * The defaults are 20000 accounts with 20 entries each, and 2000
+ * requests.  The page cache size is set by the property
+ * COM.odi.pageCache (in pages of 4 KB).
+ */
+public class LoadTest {
+
+  /** Name of the database file. */
+  private final static String DB_FILE = "loadtest.odb";
+
+  /** Name of the root. */
+  private final static String ROOT = "Bank";
+
+  /**
+   * The root of the database.
+   */
+  static class Bank {
+    private OSVector accounts = new OSVector(1000, 0);
+  }
+
+  /**
+   * An account with its history.
+   */
+  static class Account {
+    private String id;
+    private long balance;
+    private OSVector history = new OSVector();
+
+    Account() {  // for the database
+    }
+
+    Account(String id) {
+      this.id = id;
+    }
+
+    void post(Entry e) {
+      history.addElement(e);
+      balance += e.amount;
+    }
+  }
+
+  /**
+   * An entry of the history of an account.
+   */
+  static class Entry {
+    private long time;
+    private int amount;
+    private String memo;
+
+    Entry() {  // for the database
+    }
+
+    Entry(long time, int amount, String memo) {
+      this.time = time;
+      this.amount = amount;
+      this.memo = memo;
+    }
+  }
+
+  private static Session smSession;
+  private static Database smDb;
+
+  /**
+   * Opens the database in a new session.
+   *
+   * @param create	true to create it
+   */
+  public static void open(boolean create) {
+    smSession = Session.create(null, null);
+    smSession.join();
+    if (create) {
+      new File(DB_FILE).delete();
+      smDb = Database.create(DB_FILE,
+      	ObjectStore.ALL_READ | ObjectStore.ALL_WRITE);
+    } else {
+      smDb = Database.open(DB_FILE, ObjectStore.OPEN_UPDATE);
+    }
+  }
+
+  /**
+   * Closes the database and ends the session.
+   */
+  public static void close() {
+    smDb.close();
+    smSession.terminate();
+  }
+
+  /**
+   * Creates the accounts, committing every 1000 of them.
+   *
+   * @param nAccounts	number of accounts
+   * @param nEntries	number of entries of each account
+   */
+  public static void load(int nAccounts, int nEntries) {
+    Transaction t = Transaction.begin(ObjectStore.UPDATE);
+    Bank bank = new Bank();
+    smDb.createRoot(ROOT, bank);
+    for (int i=0; i<nAccounts; i++) {
+      Account a = new Account("A" + i);
+      for (int k=0; k<nEntries; k++)
+        a.post(new Entry(k, 10 + k, "deposit"));
+      bank.accounts.addElement(a);
+      if (i % 1000 == 999) {
+        t.commit(ObjectStore.RETAIN_HOLLOW);
+	t = Transaction.begin(ObjectStore.UPDATE);
+      }
+    }
+    t.commit(ObjectStore.RETAIN_HOLLOW);
+  }
+
+  /**
+   * Runs requests on random accounts, each in its own transaction.
+   *
+   * @param update	true to add an entry, false to add up the history
+   * @param n	number of requests
+   * @param seed	seed of the random accounts
+   * @return the time of each request in micro seconds
+   */
+  public static long[] run(boolean update, int n, long seed) {
+    Random random = new Random(seed);
+    long[] times = new long[n];
+    for (int i=0; i<n; i++) {
+      long t0 = System.nanoTime();
+      Transaction t = Transaction.begin(update ? ObjectStore.UPDATE
+      	: ObjectStore.READONLY);
+      Bank bank = (Bank) smDb.getRoot(ROOT);
+      Account a = (Account) bank.accounts.elementAt(
+      	random.nextInt(bank.accounts.size()));
+      if (update) {
+        a.post(new Entry(i, 1, "update " + i));
+      } else {
+        long sum = 0;
+	Iterator e = a.history.iterator();
+	while (e.hasNext()) sum += ((Entry) e.next()).amount;
+	if (sum != a.balance) show("Wrong balance of " + a.id);
+      }
+      t.commit(ObjectStore.RETAIN_HOLLOW);
+      times[i] = (System.nanoTime() - t0) / 1000;
+    }
+    return times;
+  }
+
+  /**
+   * Returns the number of entries of all accounts.
+   */
+  public static long countEntries() {
+    Transaction t = Transaction.begin(ObjectStore.READONLY);
+    OSVector accounts = ((Bank) smDb.getRoot(ROOT)).accounts;
+    long n = 0;
+    for (int i=0; i<accounts.size(); i++)
+      n += ((Account) accounts.elementAt(i)).history.size();
+    t.commit(ObjectStore.RETAIN_HOLLOW);
+    return n;
+  }
+
+  /**
+   * Shows the times of the requests, and the pages read and written.
+   *
+   * @param name	name of the case
+   * @param times	the times in micro seconds
+   * @param before	page statistics before the requests
+   */
+  public static void showTimes(String name, long[] times, long[] before) {
+    long total = 0;
+    for (int i=0; i<times.length; i++) total += times[i];
+    long[] t = (long[]) times.clone();
+    Arrays.sort(t);
+    long[] after = smDb.getPageStats();
+    double n = times.length;
+    show("  " + name + times.length + " requests:  average "
+    	+ (total / t.length) + " us,  median " + t[t.length / 2]
+	+ " us,  longest " + t[t.length - 1] + " us");
+    show("    pages read per request " + (after[0] - before[0]) / n
+    	+ ",  cache hits " + (after[1] - before[1]) / n
+	+ ",  pages written " + (after[2] - before[2]) / n);
+  }
+
+  /**
+   * Shows the input string.
+   *
+   * @s the string to be shown
+   */
+  public static void show(String s) {
+    System.out.println(s);
+  }
+
+  /**
+   * Main method for the load test.
+   */
+  public static void main(String[] args) {
+    int nAccounts = 20000;
+    int nEntries = 20;
+    int nRequests = 2000;
+    if (args.length >= 1) nAccounts = Integer.parseInt(args[0]);
+    if (args.length >= 2) nEntries = Integer.parseInt(args[1]);
+    if (args.length >= 3) nRequests = Integer.parseInt(args[2]);
+    show("Accounts: " + nAccounts + ", entries: "
+    	+ ((long) nAccounts * nEntries) + ", page cache: "
+	+ System.getProperty(Session.PAGE_CACHE, "default"));
+
+    long t0 = System.currentTimeMillis();
+    open(true);
+    load(nAccounts, nEntries);
+    close();
+    long t1 = System.currentTimeMillis();
+    show("  load:  " + (t1 - t0) + " ms,  file "
+    	+ (new File(DB_FILE).length() / 1024) + " KB");
+
+    open(false);
+    long[] s = smDb.getPageStats();
+    long[] first = run(false, 1, 0);
+    show("  reopen and first request:  "
+    	+ (System.currentTimeMillis() - t1) + " ms,  pages read "
+	+ (smDb.getPageStats()[0] - s[0]) + " of " + s[3]);
+    s = smDb.getPageStats();
+    showTimes("read:    ", run(false, nRequests, 1), s);
+    s = smDb.getPageStats();
+    showTimes("update:  ", run(true, nRequests, 2), s);
+    close();
+
+    open(false);
+    long n = countEntries();
+    close();
+    if (n != (long) nAccounts * nEntries + nRequests)
+      show("Wrong number of entries: " + n);
+    new File(DB_FILE).delete();
+  }
+
+}
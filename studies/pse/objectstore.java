@@ -0,0 +1,122 @@
+//*************************************************************************
+/*
+ * ObjectStore.java - constants and static methods of the object store
+ *
+ *   Copyright (C) 1998-2000 	Yun-Tung Lau
+ *   All Rights Reserved.  The contents of this file are proprietary to
+ *   the above copyright holder.
+ *
+ */
+//*************************************************************************
+
+package COM.odi;
+
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+
+/**
+ * This class holds the constants used to open databases and to begin
+ * and end transactions, as in PSE Pro.  It also keeps the hollow
+ * objects of all open databases, whose contents are read from the
+ * database file when they are first used (see fetch).
+ */
+public class ObjectStore {
+
+  /** Transaction type: the objects are only read. */
+  public final static int READONLY = 1;
+
+  /** Transaction type: the objects may be changed. */
+  public final static int UPDATE = 2;
+
+  /** Open mode: the database may be changed. */
+  public final static int OPEN_UPDATE = 3;
+
+  /** Open mode: the database is only read. */
+  public final static int OPEN_READONLY = 5;
+
+  /** Permission of a new database: all users may read. */
+  public final static int ALL_READ = 4;
+
+  /** Permission of a new database: all users may write. */
+  public final static int ALL_WRITE = 8;
+
+  /** Retain mode: objects are read again when they are next used. */
+  public final static int RETAIN_HOLLOW = 1;
+
+  /** Retain mode: objects may be read after the transaction. */
+  public final static int RETAIN_READONLY = 2;
+
+  /** Retain mode: objects may not be used after the transaction. */
+  public final static int RETAIN_STALE = 3;
+
+  /** Retain mode: objects may be changed after the transaction. */
+  public final static int RETAIN_UPDATE = 4;
+
+  /** Hollow objects, and the databases that hold them. */
+  private static IdentityHashMap smHollow = new IdentityHashMap();
+
+
+  /**
+   * Reads the contents of a hollow object from its database.  Nothing
+   * is done if the object is not hollow, or if its database has been
+   * closed.  Persistent collections such as OSVector call it before
+   * they are used.
+   *
+   * @param o	the object
+   */
+  public static void fetch(Object o) {
+    Database db;
+    synchronized (smHollow) {
+      db = (Database) smHollow.get(o);
+    }
+    if (db != null) db.fetch(o);
+  }
+
+  /**
+   * Marks an object as changed.  Nothing needs to be done, since
+   * changed objects are found when the transaction commits.  It is
+   * kept for code written for PSE Pro.
+   *
+   * @param o	the object
+   */
+  public static void dirty(Object o) {
+  }
+
+  /**
+   * Records a hollow object of a database.
+   *
+   * @param o	the object
+   * @param db	the database
+   */
+  static void hollow(Object o, Database db) {
+    synchronized (smHollow) {
+      smHollow.put(o, db);
+    }
+  }
+
+  /**
+   * Removes an object that is no longer hollow.
+   *
+   * @param o	the object
+   */
+  static void fetched(Object o) {
+    synchronized (smHollow) {
+      smHollow.remove(o);
+    }
+  }
+
+  /**
+   * Removes the hollow objects of a database that is closed.
+   *
+   * @param db	the database
+   */
+  static void forget(Database db) {
+    synchronized (smHollow) {
+      Iterator i = smHollow.values().iterator();
+      while (i.hasNext()) {
+        if (i.next() == db) i.remove();
+      }
+    }
+  }
+
+}
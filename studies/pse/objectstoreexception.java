@@ -0,0 +1,30 @@
+//*************************************************************************
+/*
+ * ObjectStoreException.java - the exception thrown by the object store
+ *
+ *   Copyright (C) 1998-2000 	Yun-Tung Lau
+ *   All Rights Reserved.  The contents of this file are proprietary to
+ *   the above copyright holder.
+ *
+ */
+//*************************************************************************
+
+package COM.odi;
+
+/**
+ * This exception is thrown when an operation of the object store
+ * fails, e.g. when a database file cannot be written, or when there
+ * is no transaction in progress.
+ */
+public class ObjectStoreException extends RuntimeException {
+
+  /**
+   * Constructs the exception.
+   *
+   * @param s	the detail message
+   */
+  public ObjectStoreException(String s) {
+    super(s);
+  }
+
+}
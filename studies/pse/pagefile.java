@@ -0,0 +1,620 @@
+//*************************************************************************
+/*
+ * PageFile.java - pages of a database file, with a page cache.
+ *
+ *   Copyright (C) 1998-2000 	Yun-Tung Lau
+ *   All Rights Reserved.  The contents of this file are proprietary to
+ *   the above copyright holder.
+ *
+ */
+//*************************************************************************
+
+package COM.odi;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * This class keeps records in fixed-size pages of a file.  A record
+ * is found by its object id (oid) in the object table.  It is used
+ * by Database, which decides what the records contain.
+ * <P>
+ * Small records are packed into pages, and a record larger than a
+ * page gets a run of pages of its own.  A record is rewritten in
+ * place if it still fits, and is moved otherwise.  A page is compacted
+ * when more than half of it is free.  The bytes used in each page are
+ * kept in the free space map, so the file need not be scanned when
+ * it is opened.
+ * <P>
+ * Pages are read through a cache of the most recently used pages.
+ * Writes go to images of the changed pages, which commit writes to a
+ * journal first and then to the file.  A journal left by a crash is
+ * redone when the file is opened.
+ * <P>
+ * The first page is the header.  The object table and the free space
+ * map are runs of pages, which are moved to larger runs as they fill.
+ */
+class PageFile {
+
+  /** Size of a page in bytes. */
+  final static int PAGE_SIZE = 4096;
+
+  /** Magic number at the start of the file. */
+  private final static int MAGIC = 0x50534531;  // "PSE1"
+
+  /** Version of the file format. */
+  private final static int VERSION = 1;
+
+  /** Length of a record header: oid, capacity and length. */
+  private final static int HEADER = 12;
+
+  /** Length of an entry in the object table and the free space map. */
+  private final static int ENTRY = 8;
+
+  /** Entries in a page of the object table or free space map. */
+  private final static int PER_PAGE = PAGE_SIZE / ENTRY;
+
+  /** Bytes used in pages that do not hold packed records. */
+  private final static int NONE = -1;
+
+  private RandomAccessFile file;      // the database file
+  private FileChannel channel;
+  private FileLock lock;              // keeps other programs out
+  private File journal;               // pages of the last commit
+  private boolean readOnly;
+
+  private int nPages;                 // pages in use
+  private int tablePage;              // first page of the object table
+  private int tableSize;              // entries in the object table
+  private int nOids;                  // oids given out so far
+  private int committedOids;          // nOids at the last commit
+  private int mapPage;                // first page of the free space map
+  private int mapSize;                // entries in the free space map
+
+  private int[] used = new int[0];    // bytes used in each page
+  private int[] live = new int[0];    // bytes of live records in each page
+  private BitSet empty = new BitSet(); // pages without records
+  private BitSet changedMap = new BitSet(); // pages with changed entries
+  private LinkedList roomy = new LinkedList(); // compacted pages
+  private int fillPage;               // page being filled, 0 if none
+
+  private LinkedHashMap cache;        // page to image, least recent first
+  private int cacheSize;              // maximum pages in the cache
+  private TreeMap dirtyPages = new TreeMap(); // page to its new image
+
+  private long reads;                 // pages read from the file
+  private long hits;                  // pages found in the cache
+  private long writes;                // pages written by commits
+
+
+  /**
+   * Opens a file, or creates it.
+   *
+   * @param f	the file
+   * @param create	true to create a new file
+   * @param readOnly	true to open it for reading only
+   * @param cacheSize	number of pages in the cache
+   * @exception IOException if the file cannot be opened
+   */
+  PageFile(File f, boolean create, boolean readOnly, int cacheSize)
+  	throws IOException {
+    this.readOnly = readOnly;
+    this.cacheSize = Math.max(cacheSize, 16);
+    cache = new LinkedHashMap(64, 0.75f, true);  // in access order
+    journal = new File(f.getPath() + ".jnl");
+    file = new RandomAccessFile(f, readOnly ? "r" : "rw");
+    channel = file.getChannel();
+    lock = channel.tryLock(0, Long.MAX_VALUE, readOnly);
+    if (lock == null) {
+      close();
+      throw new IOException("Database is used by another program: " + f);
+    }
+
+    if (create) {
+      format();
+      return;
+    }
+
+    if (!readOnly) recover();
+    ByteBuffer h = ByteBuffer.wrap(page(0));
+    if (h.getInt(0) != MAGIC || h.getInt(4) != VERSION
+    	|| h.getInt(8) != PAGE_SIZE) {
+      close();
+      throw new IOException("Not a database: " + f);
+    }
+    nPages = h.getInt(12);
+    tablePage = h.getInt(16);
+    tableSize = h.getInt(20);
+    nOids = h.getInt(24);
+    committedOids = nOids;
+    mapPage = h.getInt(28);
+    mapSize = h.getInt(32);
+
+    // Read the free space map.
+    growPages(nPages);
+    for (int p=0; p<nPages; p++) {
+      ByteBuffer b = ByteBuffer.wrap(page(mapPage + p / PER_PAGE));
+      used[p] = b.getInt((p % PER_PAGE) * ENTRY);
+      live[p] = b.getInt((p % PER_PAGE) * ENTRY + 4);
+      if (p > 0 && used[p] == 0) empty.set(p);
+    }
+  }
+
+  /**
+   * Returns the number of oids given out.
+   */
+  int getOidCount() {
+    return nOids;
+  }
+
+  /**
+   * Returns the number of pages in the file.
+   */
+  int getPageCount() {
+    return nPages;
+  }
+
+  /**
+   * Returns the statistics of the page cache and writes.
+   *
+   * @return pages read from the file, pages found in the cache, and
+   *		pages written
+   */
+  long[] getStats() {
+    return new long[] { reads, hits, writes };
+  }
+
+  /**
+   * Tells if there are changes not committed.
+   */
+  boolean isChanged() {
+    return nOids != committedOids || !dirtyPages.isEmpty()
+    	|| !changedMap.isEmpty();
+  }
+
+  /**
+   * Returns a new oid.
+   *
+   * @return the oid
+   */
+  int newOid() {
+    if (nOids == tableSize) moveTable(2 * tableSize);
+    return nOids++;
+  }
+
+  /**
+   * Reads the record of the input oid.
+   *
+   * @param oid	the oid
+   * @return the record, or null if there is none
+   * @exception IOException if the file cannot be read
+   */
+  byte[] read(int oid) throws IOException {
+    if (oid < 0 || oid >= nOids) return null;
+    int page = entryInt(oid, 0);
+    if (page == 0) return null;
+    int pos = page * PAGE_SIZE + entryInt(oid, 4);
+    byte[] record = new byte[readInt(pos + 8)];
+    for (int i=0; i<record.length; ) {
+      int off = (pos + HEADER + i) % PAGE_SIZE;
+      int n = Math.min(record.length - i, PAGE_SIZE - off);
+      System.arraycopy(page((pos + HEADER + i) / PAGE_SIZE), off,
+      	record, i, n);
+      i += n;
+    }
+    return record;
+  }
+
+  /**
+   * Writes the record of the input oid.  It is written to the file
+   * by the next commit.
+   *
+   * @param oid	the oid
+   * @param record	the record
+   * @exception IOException if a page cannot be read
+   */
+  void write(int oid, byte[] record) throws IOException {
+    int len = record.length;
+    int page = entryInt(oid, 0);
+    if (page != 0) {
+      int pos = page * PAGE_SIZE + entryInt(oid, 4);
+      int cap = readInt(pos + 4);
+      if (len <= cap) {  // in place
+        writeInt(pos + 8, len);
+	writeBytes(pos + HEADER, record);
+	return;
+      }
+      free(oid, page, entryInt(oid, 4), HEADER + cap);
+    }
+
+    int cap = len + len / 4;  // room to grow
+    int pos;
+    if (HEADER + len <= PAGE_SIZE) {
+      cap = Math.min(cap, PAGE_SIZE - HEADER);
+      pos = allocate(HEADER + cap);
+    } else {
+      int n = (HEADER + cap + PAGE_SIZE - 1) / PAGE_SIZE;
+      cap = n * PAGE_SIZE - HEADER;
+      pos = allocateRun(n) * PAGE_SIZE;
+    }
+    writeInt(pos, oid);
+    writeInt(pos + 4, cap);
+    writeInt(pos + 8, len);
+    writeBytes(pos + HEADER, record);
+    writeEntry(oid, pos / PAGE_SIZE, pos % PAGE_SIZE);
+  }
+
+  /**
+   * Writes the changed pages: first to the journal, and then to the
+   * file.  Both are forced to disk.
+   *
+   * @exception IOException if the file cannot be written
+   */
+  void commit() throws IOException {
+    if (!isChanged()) return;
+    if (readOnly) throw new IOException("Database is read only");
+
+    // The free space map entries changed, and the header.
+    for (int p=changedMap.nextSetBit(0); p>=0; p=changedMap.nextSetBit(p+1)) {
+      if (p >= nPages) break;
+      ByteBuffer b = ByteBuffer.wrap(image(mapPage + p / PER_PAGE));
+      b.putInt((p % PER_PAGE) * ENTRY, used[p]);
+      b.putInt((p % PER_PAGE) * ENTRY + 4, live[p]);
+    }
+    changedMap.clear();
+    ByteBuffer h = ByteBuffer.wrap(image(0));
+    h.putInt(0, MAGIC);
+    h.putInt(4, VERSION);
+    h.putInt(8, PAGE_SIZE);
+    h.putInt(12, nPages);
+    h.putInt(16, tablePage);
+    h.putInt(20, tableSize);
+    h.putInt(24, nOids);
+    h.putInt(28, mapPage);
+    h.putInt(32, mapSize);
+
+    FileOutputStream fos = new FileOutputStream(journal);
+    CheckedOutputStream cos = new CheckedOutputStream(
+    	new BufferedOutputStream(fos, 65536), new CRC32());
+    DataOutputStream out = new DataOutputStream(cos);
+    Iterator i = dirtyPages.entrySet().iterator();
+    while (i.hasNext()) {
+      Map.Entry e = (Map.Entry) i.next();
+      out.writeInt(((Integer) e.getKey()).intValue());
+      out.write((byte[]) e.getValue());
+    }
+    long crc = cos.getChecksum().getValue();
+    out.writeInt(dirtyPages.size());
+    out.writeLong(crc);
+    out.flush();
+    fos.getFD().sync();
+    out.close();
+
+    // Write the pages in place, and keep them in the cache.
+    i = dirtyPages.entrySet().iterator();
+    while (i.hasNext()) {
+      Map.Entry e = (Map.Entry) i.next();
+      int p = ((Integer) e.getKey()).intValue();
+      channel.write(ByteBuffer.wrap((byte[]) e.getValue()),
+      	(long) p * PAGE_SIZE);
+      cache(e.getKey(), (byte[]) e.getValue());
+    }
+    channel.force(false);
+    writes += dirtyPages.size();
+    dirtyPages.clear();
+    committedOids = nOids;
+    journal.delete();
+  }
+
+  /**
+   * Closes the file.  Changes not committed are lost.
+   */
+  void close() {
+    try {
+      if (lock != null) lock.release();
+      channel.close();
+      file.close();
+    } catch (IOException e) {
+      // nothing to do
+    }
+    cache.clear();
+    dirtyPages.clear();
+  }
+
+  /********** Space management *************/
+
+  /**
+   * Frees a record, and compacts its page if it is mostly free.
+   */
+  private void free(int oid, int page, int offset, int size)
+  	throws IOException {
+    writeEntry(oid, 0, 0);  // not live, when the page is compacted
+    if (size > PAGE_SIZE) {
+      freeRun(page, size / PAGE_SIZE);
+      return;
+    }
+    live[page] -= size;
+    changedMap.set(page);
+    if (live[page] == 0) {
+      used[page] = 0;
+      if (page != fillPage) empty.set(page);
+    } else if (used[page] - live[page] > PAGE_SIZE / 2) {
+      compact(page);
+    }
+  }
+
+  /**
+   * Returns the position of free space in a page with other records.
+   */
+  private int allocate(int size) throws IOException {
+    if (fillPage == 0 || PAGE_SIZE - used[fillPage] < size) {
+      fillPage = 0;
+      while (fillPage == 0 && !roomy.isEmpty()) {
+        int p = ((Integer) roomy.removeFirst()).intValue();
+	if (used[p] != NONE && PAGE_SIZE - used[p] >= size) fillPage = p;
+      }
+      if (fillPage == 0) {
+        fillPage = allocateRun(1);
+	used[fillPage] = 0;
+      }
+    }
+    int pos = fillPage * PAGE_SIZE + used[fillPage];
+    used[fillPage] += size;
+    live[fillPage] += size;
+    empty.clear(fillPage);
+    changedMap.set(fillPage);
+    return pos;
+  }
+
+  /**
+   * Returns the first of n empty pages in a row.  The file is extended
+   * if there are none.
+   */
+  private int allocateRun(int n) throws IOException {
+    int p = empty.nextSetBit(1);
+    while (p >= 0 && empty.nextClearBit(p) - p < n)
+      p = empty.nextSetBit(empty.nextClearBit(p));
+    if (p < 0) {
+      p = nPages;
+      growPages(nPages + n);
+      if (nPages > mapSize) moveMap(2 * nPages);
+    }
+    empty.clear(p, p + n);
+    for (int i=0; i<n; i++) {
+      used[p + i] = NONE;
+      live[p + i] = 0;
+      changedMap.set(p + i);
+    }
+    return p;
+  }
+
+  /**
+   * Makes a run of pages empty.
+   */
+  private void freeRun(int page, int n) {
+    for (int p=page; p<page + n; p++) {
+      used[p] = 0;
+      live[p] = 0;
+      changedMap.set(p);
+    }
+    empty.set(page, page + n);
+  }
+
+  /**
+   * Moves the live records of a page to its start.
+   */
+  private void compact(int page) throws IOException {
+    byte[] b = image(page);
+    ByteBuffer bb = ByteBuffer.wrap(b);
+    int to = 0;
+    for (int off=0; off<used[page]; ) {
+      int oid = bb.getInt(off);
+      int size = HEADER + bb.getInt(off + 4);
+      if (oid >= 0 && oid < nOids && entryInt(oid, 0) == page
+      	  && entryInt(oid, 4) == off) {
+        if (to != off) {
+	  System.arraycopy(b, off, b, to, size);
+	  writeEntry(oid, page, to);
+	}
+	to += size;
+      }
+      off += size;
+    }
+    used[page] = to;
+    changedMap.set(page);
+    if (page != fillPage) roomy.add(Integer.valueOf(page));
+  }
+
+  /**
+   * Moves the object table to a larger run of pages.
+   */
+  private void moveTable(int size) {
+    try {
+      int old = tablePage;
+      int n = tableSize / PER_PAGE;
+      int p = allocateRun(size / PER_PAGE);
+      for (int k=0; k<n; k++)
+        System.arraycopy(page(old + k), 0, image(p + k), 0, PAGE_SIZE);
+      for (int k=n; k<size / PER_PAGE; k++) clear(p + k);
+      tablePage = p;
+      tableSize = size;
+      freeRun(old, n);
+    } catch (IOException e) {
+      throw new ObjectStoreException("Cannot read the object table: " + e);
+    }
+  }
+
+  /**
+   * Moves the free space map to a larger run of pages.  Its entries
+   * are written by commit.
+   */
+  private void moveMap(int size) throws IOException {
+    size = (size + PER_PAGE - 1) / PER_PAGE * PER_PAGE;
+    int old = mapPage;
+    int n = mapSize / PER_PAGE;
+    mapSize = size;  // large enough for the pages allocated below
+    mapPage = allocateRun(size / PER_PAGE);
+    if (n > 0) freeRun(old, n);
+    changedMap.set(0, nPages);
+  }
+
+  /**
+   * Writes a new file with a header, an empty object table and a free
+   * space map.
+   */
+  private void format() throws IOException {
+    file.setLength(0);
+    growPages(1);
+    used[0] = NONE;
+    moveMap(PER_PAGE);
+    tableSize = PER_PAGE;
+    tablePage = allocateRun(1);
+    clear(tablePage);
+    commit();
+  }
+
+  /********** Pages *************/
+
+  /**
+   * Returns the contents of a page, for reading only.
+   */
+  private byte[] page(int page) throws IOException {
+    Integer key = Integer.valueOf(page);
+    byte[] b = (byte[]) dirtyPages.get(key);
+    if (b != null) return b;
+    b = (byte[]) cache.get(key);
+    if (b != null) {
+      hits++;
+      return b;
+    }
+    b = new byte[PAGE_SIZE];
+    ByteBuffer bb = ByteBuffer.wrap(b);
+    while (bb.hasRemaining()) {
+      if (channel.read(bb, (long) page * PAGE_SIZE + bb.position()) < 0)
+        break;  // past the end: zeros
+    }
+    reads++;
+    cache(key, b);
+    return b;
+  }
+
+  /**
+   * Returns the new image of a page, to be written by the next commit.
+   */
+  private byte[] image(int page) throws IOException {
+    Integer key = Integer.valueOf(page);
+    byte[] b = (byte[]) dirtyPages.get(key);
+    if (b == null) {
+      b = (byte[]) page(page).clone();
+      dirtyPages.put(key, b);
+    }
+    return b;
+  }
+
+  /**
+   * Makes the image of a page all zeros.
+   */
+  private void clear(int page) {
+    dirtyPages.put(Integer.valueOf(page), new byte[PAGE_SIZE]);
+  }
+
+  /**
+   * Puts a page into the cache, and drops the least recently used
+   * page if the cache is full.
+   */
+  private void cache(Object key, byte[] b) {
+    cache.put(key, b);
+    if (cache.size() > cacheSize) {
+      Iterator i = cache.keySet().iterator();
+      i.next();
+      i.remove();
+    }
+  }
+
+  private int entryInt(int oid, int off) throws IOException {
+    return ByteBuffer.wrap(page(tablePage + oid / PER_PAGE))
+    	.getInt((oid % PER_PAGE) * ENTRY + off);
+  }
+
+  private void writeEntry(int oid, int page, int offset) throws IOException {
+    ByteBuffer b = ByteBuffer.wrap(image(tablePage + oid / PER_PAGE));
+    b.putInt((oid % PER_PAGE) * ENTRY, page);
+    b.putInt((oid % PER_PAGE) * ENTRY + 4, offset);
+  }
+
+  private int readInt(int pos) throws IOException {
+    return ByteBuffer.wrap(page(pos / PAGE_SIZE)).getInt(pos % PAGE_SIZE);
+  }
+
+  private void writeInt(int pos, int v) throws IOException {
+    ByteBuffer.wrap(image(pos / PAGE_SIZE)).putInt(pos % PAGE_SIZE, v);
+  }
+
+  private void writeBytes(int pos, byte[] b) throws IOException {
+    for (int i=0; i<b.length; ) {
+      int off = (pos + i) % PAGE_SIZE;
+      int n = Math.min(b.length - i, PAGE_SIZE - off);
+      System.arraycopy(b, i, image((pos + i) / PAGE_SIZE), off, n);
+      i += n;
+    }
+  }
+
+  /**
+   * Grows the free space map in memory to the input number of pages.
+   */
+  private void growPages(int pages) {
+    if (pages > used.length) {
+      int n = Math.max(pages, 2 * used.length);
+      int[] u = new int[n];
+      int[] l = new int[n];
+      System.arraycopy(used, 0, u, 0, used.length);
+      System.arraycopy(live, 0, l, 0, live.length);
+      used = u;
+      live = l;
+    }
+    nPages = pages;
+  }
+
+  /**
+   * Redoes the journal, if it is complete.
+   */
+  private void recover() throws IOException {
+    if (!journal.exists()) return;
+    long len = journal.length() - 12;
+    if (len >= 0 && len % (4 + PAGE_SIZE) == 0) {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(
+      	new FileInputStream(journal), 65536));
+      try {
+        byte[] pages = new byte[(int) len];
+	in.readFully(pages);
+	int n = in.readInt();
+	CRC32 crc = new CRC32();
+	crc.update(pages);
+	if (n == len / (4 + PAGE_SIZE) && in.readLong() == crc.getValue()) {
+	  ByteBuffer b = ByteBuffer.wrap(pages);
+	  for (int k=0; k<n; k++) {
+	    int p = b.getInt();
+	    channel.write(ByteBuffer.wrap(pages, b.position(), PAGE_SIZE),
+	    	(long) p * PAGE_SIZE);
+	    b.position(b.position() + PAGE_SIZE);
+	  }
+	  channel.force(false);
+	}
+      } finally {
+        in.close();
+      }
+    }
+    journal.delete();  // a torn journal was never applied
+  }
+
+}
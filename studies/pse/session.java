@@ -0,0 +1,149 @@
+//*************************************************************************
+/*
+ * Session.java - a session of the object store
+ *
+ *   Copyright (C) 1998-2000 	Yun-Tung Lau
+ *   All Rights Reserved.  The contents of this file are proprietary to
+ *   the above copyright holder.
+ *
+ */
+//*************************************************************************
+
+package COM.odi;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Vector;
+import java.util.WeakHashMap;
+
+/**
+ * A session holds the databases opened in it and at most one
+ * transaction in progress.  A thread must join a session before it
+ * opens a database or begins a transaction, and all threads joined
+ * to a session share its transaction.
+ * <P>
+ * The property "COM.odi.pageCache" sets the number of pages of 4 KB
+ * kept in memory for each database.  It may also be set as a system
+ * property.  The default is 2048 pages.
+ */
+public class Session {
+
+  /** Name of the property of the page cache size. */
+  public final static String PAGE_CACHE = "COM.odi.pageCache";
+
+  /** Default number of pages in the page cache. */
+  private final static int DEFAULT_PAGE_CACHE = 2048;
+
+  /** The session of each thread that has joined one. */
+  private static Map smSessions =
+  	Collections.synchronizedMap(new WeakHashMap());
+
+  private Vector databases = new Vector();  // the open databases
+  private Transaction transaction;  // the transaction in progress
+  private int pageCache;            // pages in the cache of a database
+  private boolean active = true;    // false when terminated
+
+
+  /**
+   * Constructs a session.
+   */
+  private Session(Properties props) {
+    String s = System.getProperty(PAGE_CACHE);
+    if (props != null && props.getProperty(PAGE_CACHE) != null)
+      s = props.getProperty(PAGE_CACHE);
+    pageCache = DEFAULT_PAGE_CACHE;
+    if (s != null) pageCache = Integer.parseInt(s.trim());
+  }
+
+  /**
+   * Creates a session.  The current thread is not joined to it.
+   *
+   * @param host	not used; PSE Pro has no server
+   * @param props	properties of the session, or null
+   * @return the session
+   */
+  public static Session create(String host, Properties props) {
+    return new Session(props);
+  }
+
+  /**
+   * Returns the session that a thread has joined.
+   *
+   * @param t	the thread
+   * @return the session, or null if there is none
+   */
+  public static Session ofThread(Thread t) {
+    return (Session) smSessions.get(t);
+  }
+
+  /**
+   * Returns the session of the current thread.
+   *
+   * @return the session
+   * @exception ObjectStoreException if the thread has not joined one
+   */
+  static Session current() {
+    Session s = ofThread(Thread.currentThread());
+    if (s == null)
+      throw new ObjectStoreException("The thread has not joined a session");
+    return s;
+  }
+
+  /**
+   * Joins the current thread to this session.
+   */
+  public void join() {
+    if (!active) throw new ObjectStoreException("The session is terminated");
+    smSessions.put(Thread.currentThread(), this);
+  }
+
+  /**
+   * Removes the current thread from this session.
+   */
+  public void leave() {
+    if (ofThread(Thread.currentThread()) == this)
+      smSessions.remove(Thread.currentThread());
+  }
+
+  /**
+   * Ends this session.  A transaction in progress is aborted, the
+   * databases are closed, and all threads leave the session.
+   */
+  public synchronized void terminate() {
+    if (!active) return;
+    if (transaction != null) transaction.abort(ObjectStore.RETAIN_STALE);
+    while (!databases.isEmpty())
+      ((Database) databases.lastElement()).close();
+    synchronized (smSessions) {
+      smSessions.values().removeAll(Collections.singleton(this));
+    }
+    active = false;
+  }
+
+  /**
+   * Tells if this session is not terminated.
+   */
+  public boolean isActive() {
+    return active;
+  }
+
+  /********** Used by Database and Transaction *************/
+
+  int getPageCache() {
+    return pageCache;
+  }
+
+  Vector getDatabases() {
+    return databases;
+  }
+
+  Transaction getTransaction() {
+    return transaction;
+  }
+
+  void setTransaction(Transaction t) {
+    transaction = t;
+  }
+
+}
@@ -0,0 +1,161 @@
+//*************************************************************************
+/*
+ * Transaction.java - a transaction of the object store
+ *
+ *   Copyright (C) 1998-2000 	Yun-Tung Lau
+ *   All Rights Reserved.  The contents of this file are proprietary to
+ *   the above copyright holder.
+ *
+ */
+//*************************************************************************
+
+package COM.odi;
+
+import java.util.Vector;
+
+/**
+ * A transaction of the session of the current thread.  When an update
+ * transaction commits, the changed and new objects of each open
+ * database are written to its file, which is forced to disk.  When
+ * it aborts, the changed objects are read back from the files.
+ * <P>
+ * All retain modes keep the objects in memory after the transaction,
+ * since no other program may change the databases while they are
+ * open.  A read only transaction writes nothing when it commits.
+ * The commit of a transaction that changes more than one database is
+ * atomic for each database, but not for all of them.
+ */
+public class Transaction {
+
+  private Session session;   // the session of the transaction
+  private int type;          // READONLY or UPDATE
+  private boolean active = true;
+
+
+  /**
+   * Constructs a transaction.
+   */
+  private Transaction(Session session, int type) {
+    this.session = session;
+    this.type = type;
+  }
+
+  /**
+   * Begins a transaction in the session of the current thread.
+   *
+   * @param type	ObjectStore.READONLY or ObjectStore.UPDATE
+   * @return the transaction
+   * @exception ObjectStoreException if a transaction is in progress
+   */
+  public static Transaction begin(int type) {
+    Session s = Session.current();
+    synchronized (s) {
+      if (s.getTransaction() != null)
+        throw new ObjectStoreException("A transaction is in progress");
+      Transaction t = new Transaction(s, type);
+      s.setTransaction(t);
+      return t;
+    }
+  }
+
+  /**
+   * Tells if the session of the current thread has a transaction in
+   * progress.
+   */
+  public static boolean inTransaction() {
+    Session s = Session.ofThread(Thread.currentThread());
+    return s != null && s.getTransaction() != null;
+  }
+
+  /**
+   * Returns the transaction in progress.
+   *
+   * @return the transaction
+   * @exception ObjectStoreException if there is none
+   */
+  public static Transaction current() {
+    Transaction t = Session.current().getTransaction();
+    if (t == null)
+      throw new ObjectStoreException("No transaction is in progress");
+    return t;
+  }
+
+  /**
+   * Returns the type of the transaction.
+   */
+  public int getType() {
+    return type;
+  }
+
+  /**
+   * Tells if the transaction is in progress.
+   */
+  public boolean isActive() {
+    return active;
+  }
+
+  /**
+   * Commits the transaction.  If a database cannot be written, the
+   * transaction is aborted.
+   *
+   * @param retain	the retain mode, e.g. ObjectStore.RETAIN_HOLLOW
+   * @exception ObjectStoreException if a database cannot be written
+   */
+  public void commit(int retain) {
+    synchronized (session) {
+      checkActive();
+      if (type == ObjectStore.UPDATE) {
+        Vector dbs = session.getDatabases();
+	for (int i=0; i<dbs.size(); i++) {
+	  try {
+	    ((Database) dbs.elementAt(i)).commitObjects();
+	  } catch (RuntimeException e) {
+	    abort(retain);
+	    throw e;
+	  }
+	}
+      }
+      end();
+    }
+  }
+
+  /**
+   * Commits the transaction, with RETAIN_HOLLOW.
+   */
+  public void commit() {
+    commit(ObjectStore.RETAIN_HOLLOW);
+  }
+
+  /**
+   * Aborts the transaction.  The objects changed by it are read back
+   * from the database files, and new roots are removed.
+   *
+   * @param retain	the retain mode, e.g. ObjectStore.RETAIN_HOLLOW
+   */
+  public void abort(int retain) {
+    synchronized (session) {
+      checkActive();
+      Vector dbs = session.getDatabases();
+      for (int i=0; i<dbs.size(); i++)
+        ((Database) dbs.elementAt(i)).abortObjects();
+      end();
+    }
+  }
+
+  /**
+   * Aborts the transaction, with RETAIN_HOLLOW.
+   */
+  public void abort() {
+    abort(ObjectStore.RETAIN_HOLLOW);
+  }
+
+  private void checkActive() {
+    if (!active) throw new ObjectStoreException("The transaction has ended");
+  }
+
+  private void end() {
+    active = false;
+    session.setTransaction(null);
+  }
+
+}
@@ -0,0 +1,19 @@
+//*************************************************************************
+/*
+ * Iterator.java - an iterator over a persistent collection
+ *
+ *   Copyright (C) 1998-2000 	Yun-Tung Lau
+ *   All Rights Reserved.  The contents of this file are proprietary to
+ *   the above copyright holder.
+ *
+ */
+//*************************************************************************
+
+package COM.odi.util;
+
+/**
+ * An iterator over the elements of a persistent collection such as
+ * OSVector.
+ */
+public interface Iterator extends java.util.Iterator {
+}
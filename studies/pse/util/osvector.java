@@ -0,0 +1,371 @@
+//*************************************************************************
+/*
+ * OSVector.java - a persistent vector
+ *
+ *   Copyright (C) 1998-2000 	Yun-Tung Lau
+ *   All Rights Reserved.  The contents of this file are proprietary to
+ *   the above copyright holder.
+ *
+ */
+//*************************************************************************
+
+package COM.odi.util;
+
+import java.util.Enumeration;
+import java.util.NoSuchElementException;
+
+import COM.odi.Database;
+import COM.odi.ObjectStore;
+import COM.odi.ObjectStoreException;
+
+/**
+ * A growable array of objects, like java.util.Vector, that is read
+ * from its database only when it is first used.  Until then it is
+ * hollow: its array is null, which a vector made by its other
+ * constructors never has.
+ * <P>
+ * Unlike java.util.Vector, its methods are not synchronized.
+ */
+public class OSVector {
+
+  private Object[] data;    // the elements, null if hollow
+  private int count;        // number of elements
+  private int increment;    // growth of the array; 0 to double it
+
+
+  /**
+   * Constructs an empty vector.
+   */
+  public OSVector() {
+    this(10, 0);
+  }
+
+  /**
+   * Constructs an empty vector.
+   *
+   * @param capacity	the initial capacity
+   */
+  public OSVector(int capacity) {
+    this(capacity, 0);
+  }
+
+  /**
+   * Constructs an empty vector.
+   *
+   * @param capacity	the initial capacity
+   * @param increment	the growth of the capacity; 0 to double it
+   */
+  public OSVector(int capacity, int increment) {
+    if (capacity < 0)
+      throw new IllegalArgumentException("Capacity: " + capacity);
+    data = new Object[capacity];
+    this.increment = increment;
+  }
+
+  /**
+   * Constructs a hollow vector, which its database reads when it is
+   * first used.  Only the database calls it.
+   *
+   * @param db	the database of the vector
+   */
+  public OSVector(Database db) {
+  }
+
+  /**
+   * Returns the number of elements.
+   */
+  public int size() {
+    fetch();
+    return count;
+  }
+
+  /**
+   * Tells if there are no elements.
+   */
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  /**
+   * Returns an element.
+   *
+   * @param index	index of the element
+   * @return the element
+   */
+  public Object elementAt(int index) {
+    fetch();
+    check(index, count);
+    return data[index];
+  }
+
+  /**
+   * Returns an element.
+   *
+   * @param index	index of the element
+   * @return the element
+   */
+  public Object get(int index) {
+    return elementAt(index);
+  }
+
+  /**
+   * Returns the first element.
+   */
+  public Object firstElement() {
+    if (size() == 0) throw new NoSuchElementException();
+    return data[0];
+  }
+
+  /**
+   * Returns the last element.
+   */
+  public Object lastElement() {
+    if (size() == 0) throw new NoSuchElementException();
+    return data[count - 1];
+  }
+
+  /**
+   * Returns the index of an element, compared with equals.
+   *
+   * @param o	the element
+   * @return the index, or -1 if it is not found
+   */
+  public int indexOf(Object o) {
+    fetch();
+    for (int i=0; i<count; i++) {
+      if (o == null ? data[i] == null : o.equals(data[i])) return i;
+    }
+    return -1;
+  }
+
+  /**
+   * Tells if the vector contains an element.
+   *
+   * @param o	the element
+   */
+  public boolean contains(Object o) {
+    return indexOf(o) >= 0;
+  }
+
+  /**
+   * Adds an element at the end.
+   *
+   * @param o	the element
+   */
+  public void addElement(Object o) {
+    fetch();
+    grow(count + 1);
+    data[count++] = o;
+  }
+
+  /**
+   * Adds an element at the end.
+   *
+   * @param o	the element
+   * @return true
+   */
+  public boolean add(Object o) {
+    addElement(o);
+    return true;
+  }
+
+  /**
+   * Inserts an element.
+   *
+   * @param o	the element
+   * @param index	where it is inserted
+   */
+  public void insertElementAt(Object o, int index) {
+    fetch();
+    check(index, count + 1);
+    grow(count + 1);
+    System.arraycopy(data, index, data, index + 1, count - index);
+    data[index] = o;
+    count++;
+  }
+
+  /**
+   * Replaces an element.
+   *
+   * @param o	the new element
+   * @param index	index of the element
+   */
+  public void setElementAt(Object o, int index) {
+    set(index, o);
+  }
+
+  /**
+   * Replaces an element.
+   *
+   * @param index	index of the element
+   * @param o	the new element
+   * @return the old element
+   */
+  public Object set(int index, Object o) {
+    fetch();
+    check(index, count);
+    Object old = data[index];
+    data[index] = o;
+    return old;
+  }
+
+  /**
+   * Removes an element.
+   *
+   * @param index	index of the element
+   * @return the element removed
+   */
+  public Object remove(int index) {
+    fetch();
+    check(index, count);
+    Object old = data[index];
+    System.arraycopy(data, index + 1, data, index, count - index - 1);
+    data[--count] = null;
+    return old;
+  }
+
+  /**
+   * Removes an element.
+   *
+   * @param index	index of the element
+   */
+  public void removeElementAt(int index) {
+    remove(index);
+  }
+
+  /**
+   * Removes the first occurrence of an element.
+   *
+   * @param o	the element
+   * @return true if it was found
+   */
+  public boolean removeElement(Object o) {
+    int i = indexOf(o);
+    if (i < 0) return false;
+    remove(i);
+    return true;
+  }
+
+  /**
+   * Removes all elements.
+   */
+  public void removeAllElements() {
+    fetch();
+    for (int i=0; i<count; i++) data[i] = null;
+    count = 0;
+  }
+
+  /**
+   * Removes all elements.
+   */
+  public void clear() {
+    removeAllElements();
+  }
+
+  /**
+   * Returns an enumeration of the elements.
+   */
+  public Enumeration elements() {
+    final Iterator i = iterator();
+    return new Enumeration() {
+      public boolean hasMoreElements() {
+        return i.hasNext();
+      }
+      public Object nextElement() {
+        return i.next();
+      }
+    };
+  }
+
+  /**
+   * Returns an iterator over the elements.  Its remove method removes
+   * the last element returned.
+   */
+  public Iterator iterator() {
+    fetch();
+    return new Iterator() {
+      int next = 0;
+      int last = -1;
+      public boolean hasNext() {
+        return next < count;
+      }
+      public Object next() {
+        if (next >= count) throw new NoSuchElementException();
+	last = next;
+	return data[next++];
+      }
+      public void remove() {
+        if (last < 0) throw new IllegalStateException();
+	OSVector.this.remove(last);
+	next = last;
+	last = -1;
+      }
+    };
+  }
+
+  /**
+   * Returns the elements in an array.
+   */
+  public Object[] toArray() {
+    fetch();
+    Object[] a = new Object[count];
+    System.arraycopy(data, 0, a, 0, count);
+    return a;
+  }
+
+  /**
+   * Returns the elements in an array of the type of the input array.
+   *
+   * @param a	the array, used if it is large enough
+   * @return the array
+   */
+  public Object[] toArray(Object[] a) {
+    fetch();
+    if (a.length < count) {
+      a = (Object[]) java.lang.reflect.Array.newInstance(
+      	a.getClass().getComponentType(), count);
+    }
+    System.arraycopy(data, 0, a, 0, count);
+    if (a.length > count) a[count] = null;
+    return a;
+  }
+
+  /**
+   * Returns the elements as a string.
+   */
+  public String toString() {
+    fetch();
+    StringBuffer s = new StringBuffer("[");
+    for (int i=0; i<count; i++) {
+      if (i > 0) s.append(", ");
+      s.append(data[i]);
+    }
+    return s.append("]").toString();
+  }
+
+  /**
+   * Reads the elements if the vector is hollow.
+   */
+  private void fetch() {
+    if (data == null) {
+      ObjectStore.fetch(this);
+      if (data == null)
+        throw new ObjectStoreException("The database of the vector is closed");
+    }
+  }
+
+  private void grow(int min) {
+    if (min > data.length) {
+      int n = increment > 0 ? data.length + increment : 2 * data.length;
+      Object[] a = new Object[Math.max(n, min)];
+      System.arraycopy(data, 0, a, 0, count);
+      data = a;
+    }
+  }
+
+  private static void check(int index, int limit) {
+    if (index < 0 || index >= limit)
+      throw new ArrayIndexOutOfBoundsException(index);
+  }
+
+}